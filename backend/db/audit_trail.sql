@@ -0,0 +1,19 @@
+-- Audit trail table for lsk.audit.sink=jdbc.
+--
+-- Apply once to the db.* database before enabling the audit trail with the jdbc sink
+-- (lsk.audit.enabled=true). The service does not create it: until it exists, every audit batch
+-- fails its write attempts and its records are counted as failed.
+--
+-- One row per assigned value; nothing is ever updated or deleted by the service.
+
+CREATE TABLE IF NOT EXISTS LskAuditTrail (
+    request_id     VARCHAR(64)  NOT NULL,
+    placeholder    VARCHAR(512) NOT NULL,
+    table_name     VARCHAR(255) NOT NULL,
+    column_name    VARCHAR(255) NOT NULL,
+    assigned_value BIGINT       NOT NULL,
+    assigned_at    TIMESTAMP    NOT NULL
+);
+
+-- "Who got value X of table:column?" is the main audit question
+CREATE INDEX IF NOT EXISTS LskAuditTrail_counter_value ON LskAuditTrail (table_name, column_name, assigned_value);
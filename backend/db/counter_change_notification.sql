@@ -0,0 +1,25 @@
+-- Counter change notifications for the counter inspection API (/api/counters).
+--
+-- Optional. Apply once per counter database (every shard when db.shards is set) if nodes should
+-- see each other's reservations immediately. Without it the inspection snapshot only picks them
+-- up on its periodic resync (lsk.inspection.resyncSeconds).
+--
+-- Cost: every committed change of LogicalSeedKeyCounters sends one NOTIFY per counter row, and
+-- PostgreSQL serializes the commits of notifying transactions. Measure reservation throughput
+-- before and after applying this on a busy system. Remove with:
+--   DROP TRIGGER IF EXISTS lsk_counter_changes ON LogicalSeedKeyCounters;
+--   DROP FUNCTION IF EXISTS lsk_notify_counter_change();
+--
+-- Payload on channel lsk_counter_changes: table TAB column TAB last_assigned_value
+
+CREATE OR REPLACE FUNCTION lsk_notify_counter_change() RETURNS trigger AS $$
+BEGIN
+    PERFORM pg_notify('lsk_counter_changes', NEW.table_name || E'\t' || NEW.column_name || E'\t' || NEW.last_assigned_value);
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS lsk_counter_changes ON LogicalSeedKeyCounters;
+CREATE TRIGGER lsk_counter_changes
+    AFTER INSERT OR UPDATE OF last_assigned_value ON LogicalSeedKeyCounters
+    FOR EACH ROW EXECUTE PROCEDURE lsk_notify_counter_change();
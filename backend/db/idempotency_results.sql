@@ -0,0 +1,18 @@
+-- Idempotency spill table for lsk.idempotency.spill.enabled=true.
+--
+-- Apply once to the db.* database before enabling the spill. The service does not create it:
+-- until it exists, spill reads and writes fail, are logged, and the idempotency cache keeps
+-- working from memory only.
+--
+-- mappings holds one "placeholder TAB resolved" pair per line. Rows older than
+-- lsk.idempotency.ttlSeconds are deleted by the service, at most once per TTL.
+
+CREATE TABLE IF NOT EXISTS LskIdempotencyResults (
+    cache_key    VARCHAR(512) PRIMARY KEY,
+    content_hash VARCHAR(64)  NOT NULL,
+    mappings     TEXT         NOT NULL,
+    created_at   TIMESTAMP    NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+
+-- Expiry purge deletes by age
+CREATE INDEX IF NOT EXISTS lsk_idempotency_results_created ON LskIdempotencyResults (created_at);
@@ -0,0 +1,25 @@
+-- Range lease table for the /api/leases endpoints (lsk.lease.enabled=true, counter.store=jdbc).
+--
+-- Apply once to the db.* database before enabling range leases. The service does not create it:
+-- until it exists, creating a lease fails after its values were reserved (they are skipped, never
+-- handed out twice) and the other lease endpoints answer 500.
+--
+-- Rows are never deleted by the service; archive old RETURNED/EXPIRED rows as needed.
+
+CREATE TABLE IF NOT EXISTS LskRangeLeases (
+    lease_id    VARCHAR(36)  PRIMARY KEY,
+    table_name  VARCHAR(255) NOT NULL,
+    column_name VARCHAR(255) NOT NULL,
+    range_start BIGINT       NOT NULL,
+    range_end   BIGINT       NOT NULL,
+    client      VARCHAR(255),
+    status      VARCHAR(16)  NOT NULL,
+    last_used   BIGINT,
+    reclaimed   BOOLEAN      NOT NULL DEFAULT FALSE,
+    created_at  TIMESTAMP    NOT NULL,
+    expires_at  TIMESTAMP,
+    closed_at   TIMESTAMP
+);
+
+-- The reaper looks for ACTIVE leases whose expires_at has passed; listing filters by status
+CREATE INDEX IF NOT EXISTS lsk_range_leases_due ON LskRangeLeases (status, expires_at);
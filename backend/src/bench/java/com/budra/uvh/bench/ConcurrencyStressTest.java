@@ -0,0 +1,251 @@
+package com.budra.uvh.bench;
+
+import com.budra.uvh.dbConfig.ConnectionManager;
+import com.budra.uvh.metrics.CounterContention;
+import com.budra.uvh.metrics.Metrics;
+import com.budra.uvh.model.CombiningCounterStore;
+import com.budra.uvh.model.CounterStore;
+import com.budra.uvh.model.JdbcCounterStore;
+import com.budra.uvh.model.JournalCounterStore;
+import com.budra.uvh.model.LskCounterRepository;
+import com.budra.uvh.model.LskCounterRepository.ReservationMode;
+import com.budra.uvh.service.HiLoKeyAllocator;
+import com.budra.uvh.service.LskResolution;
+import com.budra.uvh.service.ResolvedDocument;
+import com.budra.uvh.utils.CounterKey;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * End-to-end uniqueness and contention stress test for LskResolution against the PostgreSQL
+ * instance configured in uvh_config.properties (a local throwaway database is enough; every run
+ * uses fresh counter names so it never touches real counters).
+ *
+ * N clients resolve synthetic documents concurrently. Counters are drawn from a Zipf distribution,
+ * so with a high exponent most placeholders hit a few hot counters. Every value handed out is
+ * recorded per counter; the run fails if any value is handed out twice, if any request fails for
+ * good, or if no values were handed out at all.
+ *
+ * JOURNAL mode uses the local journal counter store in a temp directory instead of PostgreSQL.
+ * "combine" puts the request combiner (lsk.combiner.* settings) in front of the store.
+ *
+ * Reported: throughput, latency p50/p99/p999, unrecoverable failures, and the contention the
+ * service itself recorded (lsk_counter_conflicts_total, lsk_counter_retries_total and
+ * lsk_counter_retries_exhausted_total, summed over counters). Retries happen inside the counter
+ * store (lsk.retry.* settings); the harness does not retry, so a failure here is one a client sees.
+ *
+ * Usage (db.pool.maxSize should be at least the client count for maximum contention):
+ *   mvn -Pbench compile exec:java -Dexec.mainClass=com.budra.uvh.bench.ConcurrencyStressTest \
+ *       -Dexec.args="[clients] [requestsPerClient] [counters] [zipfExponent] [placeholdersPerDoc] [LOCKING|UPSERT|ALLOCATOR|JOURNAL] [combine]"
+ */
+public class ConcurrencyStressTest {
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder duplicates = new LongAdder();
+    private final LongAdder valuesHandedOut = new LongAdder();
+    private final ConcurrentHashMap<CounterKey, Set<Long>> seenValues = new ConcurrentHashMap<>();
+
+    public static void main(String[] args) throws Exception {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : 32;
+        int requestsPerClient = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        int counters = args.length > 2 ? Integer.parseInt(args[2]) : 50;
+        double zipfExponent = args.length > 3 ? Double.parseDouble(args[3]) : 1.2;
+        int placeholdersPerDoc = args.length > 4 ? Integer.parseInt(args[4]) : 20;
+        String mode = args.length > 5 ? args[5].toUpperCase() : "LOCKING";
+        boolean combine = args.length > 6 && "combine".equalsIgnoreCase(args[6]);
+
+        System.out.printf("clients=%d requests/client=%d counters=%d zipf=%.2f placeholders/doc=%d mode=%s combine=%s%n",
+                clients, requestsPerClient, counters, zipfExponent, placeholdersPerDoc, mode, combine);
+
+        HiLoKeyAllocator allocator = null;
+        CounterStore store = null;
+        try {
+            if ("JOURNAL".equals(mode)) {
+                // Local journal store in a throwaway directory; needs no database
+                store = new JournalCounterStore(Files.createTempDirectory("uvh-stress"), 64 * 1024 * 1024, true, 200, 0);
+            } else {
+                store = new JdbcCounterStore("ALLOCATOR".equals(mode)
+                        ? new LskCounterRepository(ReservationMode.UPSERT)
+                        : new LskCounterRepository(ReservationMode.valueOf(mode)));
+            }
+            if (combine) {
+                store = CombiningCounterStore.fromConfig(store);
+            }
+            if ("ALLOCATOR".equals(mode)) {
+                allocator = HiLoKeyAllocator.fromConfig(store);
+            }
+            LskResolution resolution = new LskResolution(store, allocator);
+
+            ConcurrencyStressTest test = new ConcurrencyStressTest();
+            boolean passed = test.run(resolution, clients, requestsPerClient, counters, zipfExponent, placeholdersPerDoc);
+            if (!passed) {
+                System.exit(1);
+            }
+        } finally {
+            if (allocator != null) {
+                allocator.shutdown();
+            }
+            if (store != null) {
+                store.close();
+            }
+            ConnectionManager.closeDataSource();
+        }
+    }
+
+    private boolean run(LskResolution resolution, int clients, int requestsPerClient, int counters,
+                        double zipfExponent, int placeholdersPerDoc) throws Exception {
+        String tablePrefix = "Stress_" + letters(System.currentTimeMillis()) + "_"; // Fresh counters per run
+        double[] zipfCdf = zipfCdf(counters, zipfExponent);
+
+        ExecutorService pool = Executors.newFixedThreadPool(clients);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<long[]>> futures = new ArrayList<>();
+        for (int c = 0; c < clients; c++) {
+            final long seed = c;
+            futures.add(pool.submit(() -> {
+                Random random = new Random(seed);
+                long[] latencies = new long[requestsPerClient];
+                start.await();
+                for (int r = 0; r < requestsPerClient; r++) {
+                    byte[] document = document(random, tablePrefix, zipfCdf, placeholdersPerDoc);
+                    long t0 = System.nanoTime();
+                    ResolvedDocument resolved = resolve(resolution, document);
+                    latencies[r] = System.nanoTime() - t0;
+                    if (resolved != null) {
+                        record(resolved.getResolvedMappings());
+                    } else {
+                        latencies[r] = -1;
+                    }
+                }
+                return latencies;
+            }));
+        }
+
+        long wallStart = System.nanoTime();
+        start.countDown();
+        List<long[]> perClient = new ArrayList<>();
+        for (Future<long[]> future : futures) {
+            perClient.add(future.get());
+        }
+        long wallNanos = System.nanoTime() - wallStart;
+        pool.shutdown();
+
+        long[] latencies = perClient.stream().flatMapToLong(Arrays::stream).filter(l -> l >= 0).sorted().toArray();
+        double seconds = wallNanos / 1_000_000_000.0;
+        System.out.printf("requests ok=%d failed=%d throughput=%.1f req/s (%.0f keys/s)%n",
+                latencies.length, failures.sum(), latencies.length / seconds, valuesHandedOut.sum() / seconds);
+        System.out.printf("latency ms p50=%.2f p99=%.2f p999=%.2f max=%.2f%n",
+                percentileMillis(latencies, 0.50), percentileMillis(latencies, 0.99), percentileMillis(latencies, 0.999),
+                latencies.length == 0 ? Double.NaN : latencies[latencies.length - 1] / 1_000_000.0);
+        // A transaction is charged to every counter it covers, so these sums can exceed the transaction count
+        long conflicts = 0, retries = 0, exhausted = 0;
+        for (CounterContention contention : Metrics.contentionByCounter().values()) {
+            conflicts += contention.getConflicts();
+            retries += contention.getRetries();
+            exhausted += contention.getExhausted();
+        }
+        System.out.printf("lsk_counter_conflicts_total=%d lsk_counter_retries_total=%d lsk_counter_retries_exhausted_total=%d%n",
+                conflicts, retries, exhausted);
+        System.out.printf("counters used=%d values handed out=%d duplicates=%d -> %s%n",
+                seenValues.size(), valuesHandedOut.sum(), duplicates.sum(), duplicates.sum() == 0 ? "UNIQUE" : "DUPLICATES FOUND");
+        if (failures.sum() > 0) {
+            System.err.println("FAILED: " + failures.sum() + " requests failed for good.");
+        }
+        if (valuesHandedOut.sum() == 0) {
+            System.err.println("FAILED: no values were handed out.");
+        }
+        return duplicates.sum() == 0 && failures.sum() == 0 && valuesHandedOut.sum() > 0;
+    }
+
+    /**
+     * Resolves one document; conflicts are retried by the counter store, not here.
+     *
+     * @return The resolved document, or null if it failed.
+     */
+    private ResolvedDocument resolve(LskResolution resolution, byte[] document) {
+        try {
+            return resolution.resolveDocument(ByteBuffer.wrap(document));
+        } catch (Exception e) {
+            failures.increment();
+            System.err.println("Request failed: " + e);
+            return null;
+        }
+    }
+
+    private void record(Map<String, String> resolvedMappings) {
+        for (String resolvedLsk : resolvedMappings.values()) {
+            int valueStart = resolvedLsk.lastIndexOf(':');
+            int columnStart = resolvedLsk.lastIndexOf(':', valueStart - 1);
+            CounterKey counter = new CounterKey(resolvedLsk.substring(0, columnStart), resolvedLsk.substring(columnStart + 1, valueStart));
+            long value = Long.parseLong(resolvedLsk.substring(valueStart + 1));
+            if (!seenValues.computeIfAbsent(counter, k -> ConcurrentHashMap.newKeySet()).add(value)) {
+                duplicates.increment();
+                System.err.println("DUPLICATE value handed out: " + resolvedLsk);
+            }
+            valuesHandedOut.increment();
+        }
+    }
+
+    // Each placeholder is unique within the document; its counter is drawn from the Zipf distribution
+    private static byte[] document(Random random, String tablePrefix, double[] zipfCdf, int placeholders) {
+        StringBuilder xml = new StringBuilder(placeholders * 96 + 64);
+        xml.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<manifest>\n");
+        for (int i = 0; i < placeholders; i++) {
+            int counter = sampleZipf(random, zipfCdf);
+            xml.append("  <Row ref=\"").append(tablePrefix).append(letters(counter)).append(":ID_COL:__PLACEHOLDER_P")
+                    .append(i).append("__\"/>\n");
+        }
+        xml.append("</manifest>\n");
+        return xml.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    // Cumulative probabilities of ranks 1..n with P(k) proportional to 1 / k^s
+    private static double[] zipfCdf(int n, double s) {
+        double[] cdf = new double[n];
+        double total = 0;
+        for (int k = 1; k <= n; k++) {
+            total += 1.0 / Math.pow(k, s);
+            cdf[k - 1] = total;
+        }
+        for (int i = 0; i < n; i++) {
+            cdf[i] /= total;
+        }
+        return cdf;
+    }
+
+    private static int sampleZipf(Random random, double[] cdf) {
+        int index = Arrays.binarySearch(cdf, random.nextDouble());
+        return Math.min(cdf.length - 1, index < 0 ? -index - 1 : index);
+    }
+
+    private static double percentileMillis(long[] sorted, double p) {
+        if (sorted.length == 0) {
+            return Double.NaN;
+        }
+        int index = (int) Math.min(sorted.length - 1, Math.ceil(p * sorted.length) - 1);
+        return sorted[Math.max(0, index)] / 1_000_000.0;
+    }
+
+    // Table names must be [a-zA-Z_]+, so numbers are encoded in letters
+    private static String letters(long n) {
+        StringBuilder name = new StringBuilder();
+        do {
+            name.append((char) ('A' + n % 26));
+            n /= 26;
+        } while (n > 0);
+        return name.toString();
+    }
+}
@@ -0,0 +1,69 @@
+package com.budra.uvh.bench;
+
+import com.budra.uvh.model.JournalCounterStore;
+import com.budra.uvh.utils.CounterKey;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * JMH benchmark of single reservations against the journal counter store, with and without
+ * fsync. Run with several threads to see group commit amortise the fsync:
+ *   mvn -Pbench compile exec:exec@jmh -Djmh.args="CounterStoreBenchmark -t 1"
+ *   mvn -Pbench compile exec:exec@jmh -Djmh.args="CounterStoreBenchmark -t 16"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+public class CounterStoreBenchmark {
+    private static final CounterKey COUNTER = new CounterKey("Department", "DEPT_ID");
+
+    @Param({"true", "false"})
+    public boolean fsync;
+
+    @Param({"0", "200"})
+    public long groupCommitMicros;
+
+    private Path directory;
+    private JournalCounterStore store;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("uvh-counter-bench");
+        store = new JournalCounterStore(directory, 64 * 1024 * 1024, fsync, groupCommitMicros, 0);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        store.close();
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public long reserveBlock() {
+        return store.reserveBlock(COUNTER, 1);
+    }
+}
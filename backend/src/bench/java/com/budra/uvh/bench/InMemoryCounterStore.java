@@ -0,0 +1,64 @@
+package com.budra.uvh.bench;
+
+import com.budra.uvh.model.CounterStore;
+import com.budra.uvh.utils.CounterKey;
+
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Non-durable CounterStore that keeps counters in memory.
+ * Lets benchmarks exercise the reservation path (grouping, block hand-out, LSK building)
+ * without PostgreSQL or disk I/O, so the numbers show the Java-side cost only.
+ */
+public class InMemoryCounterStore implements CounterStore {
+    private final ConcurrentHashMap<CounterKey, AtomicLong> counters = new ConcurrentHashMap<>();
+
+    @Override
+    public SortedMap<CounterKey, Long> reserveBlocks(Map<CounterKey, Integer> counts) {
+        SortedMap<CounterKey, Long> blockStarts = new TreeMap<>();
+        for (Map.Entry<CounterKey, Integer> entry : new TreeMap<>(counts).entrySet()) {
+            if (entry.getValue() == null || entry.getValue() <= 0) {
+                throw new IllegalArgumentException("Count must be positive for " + entry.getKey() + ".");
+            }
+            blockStarts.put(entry.getKey(), reserve(entry.getKey(), entry.getValue()));
+        }
+        return blockStarts;
+    }
+
+    @Override
+    public long reserveBlock(CounterKey counter, int count) {
+        if (count <= 0) {
+            throw new IllegalArgumentException("Count must be positive.");
+        }
+        return reserve(counter, count);
+    }
+
+    /**
+     * @return The last value handed out for a counter (0 if never used).
+     */
+    public long lastAssignedValue(CounterKey counter) {
+        AtomicLong value = counters.get(counter);
+        return value == null ? 0 : value.get();
+    }
+
+    @Override
+    public SortedMap<CounterKey, Long> readAll() {
+        SortedMap<CounterKey, Long> all = new TreeMap<>();
+        counters.forEach((counter, value) -> all.put(counter, value.get()));
+        return all;
+    }
+
+    @Override
+    public void close() {
+        counters.clear();
+    }
+
+    private long reserve(CounterKey counter, int count) {
+        long endValue = counters.computeIfAbsent(counter, k -> new AtomicLong()).addAndGet(count);
+        return endValue - count + 1;
+    }
+}
@@ -0,0 +1,48 @@
+package com.budra.uvh.bench;
+
+import com.budra.uvh.utils.PlaceHolderInfo;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmarks for PlaceHolderInfo construction (suffix validation + key building)
+ * and buildResolvedLsk, which run once per unique placeholder.
+ *
+ * Usage:
+ *   mvn -Pbench compile exec:exec@jmh -Djmh.args="PlaceHolderInfoBenchmark -prof gc"
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PlaceHolderInfoBenchmark {
+
+    // Not final, so the JIT cannot constant-fold the inputs
+    private String tableName = "Department";
+    private String columnName = "DEPT_ID";
+    private String placeholderSuffix = "__PLACEHOLDER_DEPT_42__";
+    private final PlaceHolderInfo info = new PlaceHolderInfo("Department", "DEPT_ID", "__PLACEHOLDER_DEPT_42__");
+    private long generatedValue = 1_234_567;
+
+    @Benchmark
+    public PlaceHolderInfo construct() {
+        return new PlaceHolderInfo(tableName, columnName, placeholderSuffix);
+    }
+
+    @Benchmark
+    public String buildResolvedLsk() {
+        return info.buildResolvedLsk(generatedValue++);
+    }
+}
@@ -0,0 +1,97 @@
+package com.budra.uvh.bench;
+
+import com.budra.uvh.utils.PlaceHolderInfo;
+import com.budra.uvh.utils.PlaceholderScan;
+import com.budra.uvh.utils.XmlUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Before/after comparison of placeholder scanning and rewriting:
+ *  - legacy: the original regex scan + one String.replace per mapping (kept here as a baseline)
+ *  - scanner: PlaceholderScanner on UTF-8 bytes + single-pass PlaceholderScan rewrite
+ * Also checks that both produce byte-identical output.
+ *
+ * Usage:
+ *   mvn -Pbench compile exec:java -Dexec.mainClass=com.budra.uvh.bench.PlaceholderScanBenchmark \
+ *       -Dexec.args="[documentMegabytes] [occurrences] [uniquePlaceholders] [counters]"
+ */
+public class PlaceholderScanBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int megabytes = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        int occurrences = args.length > 1 ? Integer.parseInt(args[1]) : 50_000;
+        int unique = args.length > 2 ? Integer.parseInt(args[2]) : 5_000;
+        int counters = args.length > 3 ? Integer.parseInt(args[3]) : 20;
+
+        String xml = SyntheticXml.generate(megabytes * 1024 * 1024, occurrences, unique, counters, 42);
+        byte[] xmlBytes = xml.getBytes(StandardCharsets.UTF_8);
+        System.out.printf("document=%.1f MB occurrences=%d unique=%d counters=%d%n",
+                xmlBytes.length / (1024.0 * 1024.0), occurrences, unique, counters);
+
+        // Mapping every unique placeholder to a resolved value, as LskResolution would
+        Map<String, String> mappings = new HashMap<>();
+        long value = 1;
+        for (PlaceHolderInfo info : XmlUtils.scanPlaceholders(xmlBytes).getPlaceholders()) {
+            mappings.put(info.getFullPlaceholderLsk(), info.buildResolvedLsk(value++));
+        }
+
+        // --- Scan ---
+        double legacyScan = timeMillis(5, () -> LegacyXmlUtils.findUniquePlaceholders(xml));
+        double scannerScan = timeMillis(5, () -> XmlUtils.scanPlaceholders(xmlBytes));
+        System.out.printf("scan     legacy=%10.1f ms  scanner=%8.1f ms  (%.1fx)%n", legacyScan, scannerScan, legacyScan / scannerScan);
+
+        // --- Rewrite (legacy is O(document x mappings), so it gets a single timed run) ---
+        PlaceholderScan scan = XmlUtils.scanPlaceholders(xmlBytes);
+        double legacyRewrite = timeMillis(1, () -> LegacyXmlUtils.replacePlaceholders(xml, mappings));
+        double scannerRewrite = timeMillis(5, () -> scan.toResolvedBytes(mappings));
+        System.out.printf("rewrite  legacy=%10.1f ms  scanner=%8.1f ms  (%.1fx)%n", legacyRewrite, scannerRewrite, legacyRewrite / scannerRewrite);
+
+        byte[] expected = LegacyXmlUtils.replacePlaceholders(xml, mappings).getBytes(StandardCharsets.UTF_8);
+        byte[] actual = scan.toResolvedBytes(mappings);
+        System.out.println("identical output: " + Arrays.equals(expected, actual));
+    }
+
+    private static double timeMillis(int iterations, Runnable task) {
+        task.run(); // warm-up
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            task.run();
+        }
+        return (System.nanoTime() - start) / 1_000_000.0 / iterations;
+    }
+
+    /**
+     * The pre-scanner implementation of XmlUtils, kept verbatim in behaviour as the baseline.
+     */
+    static final class LegacyXmlUtils {
+        private static final Pattern LSK_ATTRIBUTE_PATTERN = Pattern.compile(
+                "([a-zA-Z_]+)\\s*=\\s*\"([a-zA-Z_]+):([a-zA-Z_]+):(__PLACEHOLDER_[a-zA-Z0-9_-]+__)\"");
+
+        static Map<String, PlaceHolderInfo> findUniquePlaceholders(String xmlContent) {
+            Map<String, PlaceHolderInfo> placeholders = new LinkedHashMap<>();
+            Matcher matcher = LSK_ATTRIBUTE_PATTERN.matcher(xmlContent);
+            while (matcher.find()) {
+                PlaceHolderInfo info = new PlaceHolderInfo(matcher.group(2), matcher.group(3), matcher.group(4));
+                placeholders.putIfAbsent(info.getFullPlaceholderLsk(), info);
+            }
+            return placeholders;
+        }
+
+        static String replacePlaceholders(String xmlContent, Map<String, String> resolvedMappings) {
+            String currentContent = xmlContent;
+            for (Map.Entry<String, String> entry : resolvedMappings.entrySet()) {
+                currentContent = currentContent.replace("\"" + entry.getKey() + "\"", "\"" + entry.getValue() + "\"");
+            }
+            return currentContent;
+        }
+
+        private LegacyXmlUtils() {}
+    }
+}
@@ -0,0 +1,143 @@
+package com.budra.uvh.bench;
+
+import com.budra.uvh.dbConfig.ConnectionManager;
+import com.budra.uvh.model.LskCounterRepository;
+import com.budra.uvh.model.LskCounterRepository.ReservationMode;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Compares LOCKING and UPSERT reservation modes under concurrent load against the
+ * database configured in uvh_config.properties.
+ *
+ * Every iteration is one transaction: reserve a block, then commit. Two numbers are reported:
+ *  - reserve latency: time spent in getAndReserveNextValueBlock (the statement round trips)
+ *  - lock hold:       time from the start of the reservation until commit returns,
+ *                     i.e. how long the counter row stays locked for other transactions
+ *
+ * Usage (db.pool.maxSize should be at least the thread count):
+ *   mvn -Pbench compile exec:java -Dexec.mainClass=com.budra.uvh.bench.ReservationModeBenchmark \
+ *       -Dexec.args="[threads] [iterationsPerThread] [distinctCounters]"
+ */
+public class ReservationModeBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+        int distinctCounters = args.length > 2 ? Integer.parseInt(args[2]) : 1; // 1 = a single hot counter
+
+        System.out.printf("threads=%d iterations/thread=%d counters=%d%n", threads, iterations, distinctCounters);
+        try {
+            for (ReservationMode mode : ReservationMode.values()) {
+                run(new LskCounterRepository(mode), threads, 50, distinctCounters, "warmup-" + mode); // JIT + pool warm-up
+                Result result = run(new LskCounterRepository(mode), threads, iterations, distinctCounters, mode.name());
+                System.out.println(result);
+            }
+        } finally {
+            ConnectionManager.closeDataSource();
+        }
+    }
+
+    private static Result run(LskCounterRepository repository, int threads, int iterations, int distinctCounters,
+                              String label) throws Exception {
+        String table = "BenchTable_" + System.nanoTime(); // Fresh counters per run so both modes start equal
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<long[][]>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            final int threadIndex = t;
+            futures.add(pool.submit(() -> {
+                long[] reserveNanos = new long[iterations];
+                long[] lockHoldNanos = new long[iterations];
+                start.await();
+                for (int i = 0; i < iterations; i++) {
+                    String column = "COL_" + ((threadIndex + i) % distinctCounters);
+                    try (Connection conn = ConnectionManager.getConnection()) {
+                        conn.setAutoCommit(false);
+                        long t0 = System.nanoTime();
+                        repository.getAndReserveNextValueBlock(conn, table, column, 1);
+                        long t1 = System.nanoTime();
+                        conn.commit();
+                        long t2 = System.nanoTime();
+                        conn.setAutoCommit(true);
+                        reserveNanos[i] = t1 - t0;
+                        lockHoldNanos[i] = t2 - t0;
+                    } catch (SQLException e) {
+                        // LOCKING mode can fail on the first concurrent INSERT of a new counter
+                        reserveNanos[i] = -1;
+                        lockHoldNanos[i] = -1;
+                    }
+                }
+                return new long[][]{reserveNanos, lockHoldNanos};
+            }));
+        }
+
+        long wallStart = System.nanoTime();
+        start.countDown();
+        List<long[][]> perThread = new ArrayList<>();
+        for (Future<long[][]> future : futures) {
+            perThread.add(future.get());
+        }
+        long wallNanos = System.nanoTime() - wallStart;
+        pool.shutdown();
+        return new Result(label, perThread, wallNanos);
+    }
+
+    private static final class Result {
+        private final String label;
+        private final long[] reserve;
+        private final long[] lockHold;
+        private final int failures;
+        private final long wallNanos;
+
+        Result(String label, List<long[][]> perThread, long wallNanos) {
+            this.label = label;
+            this.wallNanos = wallNanos;
+            List<Long> reserveOk = new ArrayList<>();
+            List<Long> holdOk = new ArrayList<>();
+            int failed = 0;
+            for (long[][] samples : perThread) {
+                for (int i = 0; i < samples[0].length; i++) {
+                    if (samples[0][i] < 0) {
+                        failed++;
+                    } else {
+                        reserveOk.add(samples[0][i]);
+                        holdOk.add(samples[1][i]);
+                    }
+                }
+            }
+            this.failures = failed;
+            this.reserve = reserveOk.stream().mapToLong(Long::longValue).sorted().toArray();
+            this.lockHold = holdOk.stream().mapToLong(Long::longValue).sorted().toArray();
+        }
+
+        private static double percentileMillis(long[] sorted, double p) {
+            if (sorted.length == 0) {
+                return Double.NaN;
+            }
+            int index = (int) Math.min(sorted.length - 1, Math.ceil(p * sorted.length) - 1);
+            return sorted[Math.max(0, index)] / 1_000_000.0;
+        }
+
+        private static double meanMillis(long[] values) {
+            return Arrays.stream(values).average().orElse(Double.NaN) / 1_000_000.0;
+        }
+
+        @Override
+        public String toString() {
+            double throughput = reserve.length / (wallNanos / 1_000_000_000.0);
+            return String.format("%-8s ok=%d failed=%d throughput=%.0f tx/s | reserve ms p50=%.3f p99=%.3f | lock hold ms mean=%.3f p50=%.3f p99=%.3f",
+                    label, reserve.length, failures, throughput,
+                    percentileMillis(reserve, 0.50), percentileMillis(reserve, 0.99),
+                    meanMillis(lockHold), percentileMillis(lockHold, 0.50), percentileMillis(lockHold, 0.99));
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.budra.uvh.bench;
+
+import com.budra.uvh.model.CounterStore;
+import com.budra.uvh.utils.CounterKey;
+import com.budra.uvh.utils.PlaceHolderInfo;
+import com.budra.uvh.utils.XmlUtils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmark of the reservation path of LskResolution against an in-memory counter store:
+ * group placeholders by counter, reserve one block per counter, build every resolved LSK.
+ * Durable stores are excluded on purpose; see ReservationModeBenchmark and CounterStoreBenchmark for those.
+ *
+ * Usage:
+ *   mvn -Pbench compile exec:exec@jmh -Djmh.args="ReservationPathBenchmark -prof gc"
+ *   mvn -Pbench compile exec:exec@jmh -Djmh.args="ReservationPathBenchmark -t 8 -prof gc"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(1)
+public class ReservationPathBenchmark {
+
+    private static final CounterKey HOT_COUNTER = new CounterKey("Department", "DEPT_ID");
+
+    @Param({"10", "1000", "10000"})
+    public int uniquePlaceholders;
+
+    @Param({"1", "20", "200"})
+    public int counters;
+
+    private CounterStore store;
+    private Map<String, PlaceHolderInfo> placeholders;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        store = new InMemoryCounterStore();
+        String xml = SyntheticXml.generate(uniquePlaceholders * 128, uniquePlaceholders, uniquePlaceholders, counters, 42);
+        placeholders = XmlUtils.scanPlaceholders(xml.getBytes(StandardCharsets.UTF_8)).getUniquePlaceholders();
+    }
+
+    @Benchmark
+    public Map<String, String> reserveAndMap() {
+        // Mirrors LskResolution.reserveInStore
+        Map<CounterKey, List<PlaceHolderInfo>> byCounter = new LinkedHashMap<>();
+        for (PlaceHolderInfo info : placeholders.values()) {
+            byCounter.computeIfAbsent(CounterKey.of(info), k -> new ArrayList<>()).add(info);
+        }
+        Map<CounterKey, Integer> counts = new HashMap<>();
+        byCounter.forEach((counter, list) -> counts.put(counter, list.size()));
+        Map<CounterKey, Long> blockStarts = store.reserveBlocks(counts);
+
+        Map<String, String> resolved = new HashMap<>();
+        for (Map.Entry<CounterKey, List<PlaceHolderInfo>> entry : byCounter.entrySet()) {
+            long blockStart = blockStarts.get(entry.getKey());
+            List<PlaceHolderInfo> list = entry.getValue();
+            for (int i = 0; i < list.size(); i++) {
+                resolved.put(list.get(i).getFullPlaceholderLsk(), list.get(i).buildResolvedLsk(blockStart + i));
+            }
+        }
+        return resolved;
+    }
+
+    @Benchmark
+    public long reserveSingleCounter() {
+        return store.reserveBlock(HOT_COUNTER, 1);
+    }
+}
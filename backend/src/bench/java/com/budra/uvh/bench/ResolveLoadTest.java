@@ -0,0 +1,124 @@
+package com.budra.uvh.bench;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Closed-loop HTTP load test for a running resolver.
+ * Each client posts a synthetic document, waits for the answer and immediately posts the next one
+ * until the duration is over. Reports sustained throughput, latency percentiles and status codes.
+ * Run it once against the blocking build and once against the async build with the same settings.
+ *
+ * Usage:
+ *   mvn -Pbench compile exec:java -Dexec.mainClass=com.budra.uvh.bench.ResolveLoadTest \
+ *       -Dexec.args="http://localhost:8080/UVHResolver/api/logical-seed-key/resolve [clients] [seconds] [placeholdersPerDoc]"
+ */
+public class ResolveLoadTest {
+
+    public static void main(String[] args) throws Exception {
+        String url = args.length > 0 ? args[0] : "http://localhost:8080/UVHResolver/api/logical-seed-key/resolve";
+        int clients = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 30;
+        int placeholders = args.length > 3 ? Integer.parseInt(args[3]) : 20;
+
+        byte[] body = SyntheticXml.generate(placeholders * 200, placeholders, placeholders, 5, 7).getBytes(StandardCharsets.UTF_8);
+        HttpClient client = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofSeconds(5))
+                .executor(Executors.newFixedThreadPool(Math.max(4, clients / 4)))
+                .build();
+        HttpRequest request = HttpRequest.newBuilder(URI.create(url))
+                .header("Content-Type", "application/xml")
+                .timeout(Duration.ofSeconds(60))
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body))
+                .build();
+
+        long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+        ExecutorService pool = Executors.newFixedThreadPool(clients);
+        List<Future<ClientStats>> futures = new ArrayList<>();
+        for (int c = 0; c < clients; c++) {
+            futures.add(pool.submit(() -> {
+                ClientStats stats = new ClientStats();
+                while (System.nanoTime() < deadline) {
+                    long start = System.nanoTime();
+                    int status;
+                    try {
+                        status = client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+                    } catch (Exception e) {
+                        status = -1; // connection error or client timeout
+                    }
+                    stats.record(status, System.nanoTime() - start);
+                }
+                return stats;
+            }));
+        }
+
+        ClientStats total = new ClientStats();
+        for (Future<ClientStats> future : futures) {
+            total.merge(future.get());
+        }
+        pool.shutdown();
+
+        long[] latencies = total.sortedLatencies();
+        System.out.printf("clients=%d duration=%ds placeholders/doc=%d%n", clients, seconds, placeholders);
+        System.out.printf("requests=%d ok=%d 5xx=%d errors=%d throughput(ok)=%.1f req/s%n",
+                latencies.length, total.ok, total.serverErrors, total.transportErrors, total.ok / (double) seconds);
+        System.out.printf("latency ms p50=%.1f p90=%.1f p99=%.1f max=%.1f%n",
+                percentile(latencies, 0.50), percentile(latencies, 0.90), percentile(latencies, 0.99),
+                latencies.length == 0 ? Double.NaN : latencies[latencies.length - 1] / 1e6);
+    }
+
+    private static double percentile(long[] sorted, double p) {
+        if (sorted.length == 0) {
+            return Double.NaN;
+        }
+        int index = (int) Math.min(sorted.length - 1, Math.max(0, Math.ceil(p * sorted.length) - 1));
+        return sorted[index] / 1e6;
+    }
+
+    private static final class ClientStats {
+        private long[] latencies = new long[1024];
+        private int count;
+        private long ok;
+        private long serverErrors;
+        private long transportErrors;
+
+        void record(int status, long nanos) {
+            if (count == latencies.length) {
+                latencies = Arrays.copyOf(latencies, count * 2);
+            }
+            latencies[count++] = nanos;
+            if (status == 200) {
+                ok++;
+            } else if (status >= 500) {
+                serverErrors++;
+            } else if (status < 0) {
+                transportErrors++;
+            }
+        }
+
+        void merge(ClientStats other) {
+            for (int i = 0; i < other.count; i++) {
+                record(0, other.latencies[i]);
+            }
+            ok += other.ok;
+            serverErrors += other.serverErrors;
+            transportErrors += other.transportErrors;
+        }
+
+        long[] sortedLatencies() {
+            long[] sorted = Arrays.copyOf(latencies, count);
+            Arrays.sort(sorted);
+            return sorted;
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.budra.uvh.bench;
+
+import java.util.Random;
+
+/**
+ * Generates synthetic manifest-like XML for benchmarks.
+ * Placeholders are spread evenly through filler elements; duplicates reuse earlier descriptors.
+ */
+public final class SyntheticXml {
+
+    /**
+     * @param targetBytes Approximate document size.
+     * @param occurrences Number of placeholder attribute values (duplicates included).
+     * @param unique      Number of distinct placeholders (<= occurrences).
+     * @param counters    Number of distinct Table:Column counters.
+     * @param seed        Random seed, so runs are reproducible.
+     */
+    public static String generate(int targetBytes, int occurrences, int unique, int counters, long seed) {
+        Random random = new Random(seed);
+        StringBuilder xml = new StringBuilder(targetBytes + 1024);
+        xml.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<manifest>\n");
+
+        int fillerPerRow = Math.max(0, targetBytes / Math.max(1, occurrences) - 120);
+        for (int i = 0; i < occurrences; i++) {
+            int placeholder = i < unique ? i : random.nextInt(Math.max(1, unique));
+            int counter = placeholder % Math.max(1, counters);
+            xml.append("  <Row id=\"r").append(i).append("\" ref = \"")
+                    .append(tableName(counter)).append(':').append("ID_COL").append(':')
+                    .append("__PLACEHOLDER_P").append(placeholder).append("__\" note=\"");
+            for (int f = 0; f < fillerPerRow; f++) {
+                xml.append((char) ('a' + random.nextInt(26)));
+            }
+            xml.append("\"/>\n");
+        }
+        while (xml.length() < targetBytes) {
+            xml.append("  <Filler text=\"lorem ipsum dolor sit amet\"/>\n");
+        }
+        xml.append("</manifest>\n");
+        return xml.toString();
+    }
+
+    private static String tableName(int counter) {
+        // Names must be [a-zA-Z_]+, so encode the index in letters
+        StringBuilder name = new StringBuilder("Table_");
+        int n = counter;
+        do {
+            name.append((char) ('A' + n % 26));
+            n /= 26;
+        } while (n > 0);
+        return name.toString();
+    }
+
+    private SyntheticXml() {}
+}
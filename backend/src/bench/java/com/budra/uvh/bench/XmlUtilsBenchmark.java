@@ -0,0 +1,90 @@
+package com.budra.uvh.bench;
+
+import com.budra.uvh.utils.PlaceHolderInfo;
+import com.budra.uvh.utils.PlaceholderScan;
+import com.budra.uvh.utils.XmlUtils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmarks for the XmlUtils scan and rewrite hot paths, over synthetic documents of varying
+ * size, placeholder density and counter spread.
+ *
+ * Usage (throughput plus allocation rate via the gc profiler):
+ *   mvn -Pbench compile exec:exec@jmh -Djmh.args="XmlUtilsBenchmark -prof gc"
+ *   mvn -Pbench compile exec:exec@jmh -Djmh.args="XmlUtilsBenchmark -p documentKilobytes=10240 -prof gc"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class XmlUtilsBenchmark {
+
+    @Param({"16", "1024", "10240"})
+    public int documentKilobytes;
+
+    // Placeholder occurrences per KB of document
+    @Param({"1", "10"})
+    public int placeholdersPerKilobyte;
+
+    @Param({"1", "20", "200"})
+    public int counters;
+
+    private String xml;
+    private byte[] xmlBytes;
+    private PlaceholderScan scan;
+    private Map<String, String> mappings;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        int occurrences = Math.max(1, documentKilobytes * placeholdersPerKilobyte);
+        int unique = Math.max(1, occurrences / 2); // every placeholder used twice on average
+        xml = SyntheticXml.generate(documentKilobytes * 1024, occurrences, unique, counters, 42);
+        xmlBytes = xml.getBytes(StandardCharsets.UTF_8);
+        scan = XmlUtils.scanPlaceholders(xmlBytes);
+
+        mappings = new HashMap<>();
+        long value = 1;
+        for (PlaceHolderInfo info : scan.getPlaceholders()) {
+            mappings.put(info.getFullPlaceholderLsk(), info.buildResolvedLsk(value++));
+        }
+    }
+
+    @Benchmark
+    public Map<String, PlaceHolderInfo> findUniquePlaceholders() throws Exception {
+        return XmlUtils.findUniquePlaceholders(xml);
+    }
+
+    @Benchmark
+    public PlaceholderScan scanPlaceholdersBytes() {
+        return XmlUtils.scanPlaceholders(xmlBytes);
+    }
+
+    @Benchmark
+    public String replacePlaceholders() {
+        return XmlUtils.replacePlaceholders(xml, mappings);
+    }
+
+    @Benchmark
+    public byte[] rewriteScannedBytes() {
+        return scan.toResolvedBytes(mappings);
+    }
+}
@@ -1,8 +1,18 @@
 package com.budra.uvh.config;
 
+import com.budra.uvh.controllers.CounterResource;
+import com.budra.uvh.controllers.HealthResource;
+import com.budra.uvh.controllers.LeaseResource;
+import com.budra.uvh.controllers.MetricsResource;
 import com.budra.uvh.controllers.RequestHandler; // Ensure correct package location
 import jakarta.ws.rs.ApplicationPath;
+import org.glassfish.jersey.message.DeflateEncoder;
+import org.glassfish.jersey.message.GZipEncoder;
 import org.glassfish.jersey.server.ResourceConfig;
+import org.glassfish.jersey.server.ServerProperties;
+import org.glassfish.jersey.server.filter.EncodingFilter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 // Imports needed for the binder and HK2's scope:
 import org.glassfish.jersey.internal.inject.AbstractBinder;
 import org.glassfish.jersey.process.internal.RequestScoped; // <<< IMPORT HK2's Request Scope
@@ -11,21 +21,36 @@ import org.glassfish.jersey.process.internal.RequestScoped; // <<< IMPORT HK2's
 
 @ApplicationPath("/api")
 public class AppConfig extends ResourceConfig {
+    private static final Logger log = LoggerFactory.getLogger(AppConfig.class);
+
     public AppConfig() {
-        // Scan package containing JAX-RS resource classes (@Path)
-        // This allows Jersey to discover the RequestHandler endpoint
-        packages("com.budra.uvh.controllers");
+        // Explicit registration instead of packages("com.budra.uvh.controllers"):
+        // no classpath scan at deploy time. Add new resource classes here.
+        register(RequestHandler.class);
+        register(MetricsResource.class);
+        register(HealthResource.class);
+        register(CounterResource.class);
+        register(LeaseResource.class);
+
+        // WADL generation is never used and costs startup time
+        property(ServerProperties.WADL_FEATURE_DISABLE, true);
 
-        // Optional: Scan exception package if you have ExceptionMappers
-        // packages("com.budra.uvh.exception");
+        // Compressed transport: Content-Encoding: gzip/deflate request bodies are decompressed as a
+        // stream on their way into the resource (InputStream bodies go straight into the spool and
+        // scanner), and responses are compressed while they are written when Accept-Encoding allows.
+        if (UvhConfig.getBoolean("lsk.compression.enabled", true)) {
+            EncodingFilter.enableFor(this, GZipEncoder.class, DeflateEncoder.class);
+            register(RequestDecodingInterceptor.class);
+            log.info("Request/response compression enabled (gzip, deflate).");
+        }
 
-        System.out.println("Initializing AppConfig - Configuring Manual DI Binding...");
+        log.info("Initializing AppConfig - Configuring Manual DI Binding...");
 
         // Register the AbstractBinder to configure our factory binding
         register(new AbstractBinder() {
             @Override
             protected void configure() {
-                System.out.println("Binding ManualDIProviderFactory.RequestHandlerProvider to RequestHandler using HK2 RequestScope...");
+                log.info("Binding ManualDIProviderFactory.RequestHandlerProvider to RequestHandler using HK2 RequestScope...");
 
                 // --- CORRECTED BINDING ---
                 // Assumes ManualDIProviderFactory.RequestHandlerProvider implements java.util.function.Supplier
@@ -37,6 +62,6 @@ public class AppConfig extends ResourceConfig {
             }
         });
 
-        System.out.println("JAX-RS (Jersey) Application Initialized - MANUAL DI WIRED VIA FACTORY.");
+        log.info("JAX-RS (Jersey) Application Initialized - MANUAL DI WIRED VIA FACTORY.");
     }
 }
\ No newline at end of file
@@ -4,8 +4,18 @@ package com.budra.uvh.config;
 import java.util.function.Supplier; // <<< CHANGE IMPORT
 
 import com.budra.uvh.controllers.RequestHandler;
+import com.budra.uvh.model.CounterStore;
 import com.budra.uvh.model.LskCounterRepository;
+import com.budra.uvh.service.AdmissionController;
+import com.budra.uvh.service.AuditTrail;
+import com.budra.uvh.service.CounterSnapshot;
+import com.budra.uvh.service.GitTreeResolution;
+import com.budra.uvh.service.HiLoKeyAllocator;
+import com.budra.uvh.service.IdempotencyCache;
 import com.budra.uvh.service.LskResolution;
+import com.budra.uvh.service.RangeLeaseService;
+import com.budra.uvh.service.ResolutionExecutor;
+import com.budra.uvh.service.ValidationService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 // ... imports for RequestHandler, LskResolution, LskCounterRepository ...
@@ -19,12 +29,173 @@ public class ManualDIProviderFactory {
         return new LskCounterRepository();
     }
 
+    // In-memory counter high-water marks for /api/counters; null when lsk.inspection.enabled is false
+    private static final CounterSnapshot SINGLETON_SNAPSHOT = createSnapshotInstance();
+
+    private static CounterSnapshot createSnapshotInstance() {
+        if (!UvhConfig.getBoolean("lsk.inspection.enabled", false)) {
+            log.info("ManualDIProviderFactory: Counter inspection disabled (lsk.inspection.enabled=false).");
+            return null;
+        }
+        log.info("ManualDIProviderFactory: Creating SINGLETON instance of CounterSnapshot.");
+        return CounterSnapshot.fromConfig(SINGLETON_REPOSITORY);
+    }
+
+    /**
+     * @return The shared counter snapshot, or null if lsk.inspection.enabled is false.
+     */
+    public static CounterSnapshot getCounterSnapshot() {
+        return SINGLETON_SNAPSHOT;
+    }
+
+    // Counter backend selected by counter.store (jdbc = PostgreSQL via the repository, journal = local files)
+    private static final CounterStore SINGLETON_STORE = createStoreInstance();
+
+    private static CounterStore createStoreInstance() {
+        log.info("ManualDIProviderFactory: Creating SINGLETON instance of CounterStore.");
+        CounterStore store = CounterStore.fromConfig(SINGLETON_REPOSITORY, SINGLETON_SNAPSHOT);
+        if (SINGLETON_SNAPSHOT != null) {
+            SINGLETON_SNAPSHOT.start(store); // The store reports reservations to the snapshot from now on
+        }
+        return store;
+    }
+
+    public static CounterStore getCounterStore() {
+        return SINGLETON_STORE;
+    }
+
+    // Range leases for offline key assignment (/api/leases); null when lsk.lease.enabled is false
+    // or the counters are not in PostgreSQL (leases are tracked in the db.* database)
+    private static final RangeLeaseService SINGLETON_LEASES = createLeaseInstance();
+
+    private static RangeLeaseService createLeaseInstance() {
+        if (!UvhConfig.getBoolean("lsk.lease.enabled", false)) {
+            log.info("ManualDIProviderFactory: Range leases disabled (lsk.lease.enabled=false).");
+            return null;
+        }
+        String storeType = UvhConfig.getString("counter.store", "jdbc").trim().toLowerCase();
+        if (!"jdbc".equals(storeType)) {
+            log.warn("ManualDIProviderFactory: Range leases need counter.store=jdbc (configured: {}); leases stay disabled.", storeType);
+            return null;
+        }
+        log.info("ManualDIProviderFactory: Creating SINGLETON instance of RangeLeaseService.");
+        return RangeLeaseService.fromConfig(SINGLETON_STORE);
+    }
+
+    /**
+     * @return The shared range lease service, or null if leases are disabled or counter.store is not jdbc.
+     */
+    public static RangeLeaseService getRangeLeaseService() {
+        return SINGLETON_LEASES;
+    }
+
+    // Optional in-memory lease allocator (lsk.allocator.enabled). Null when disabled.
+    private static final HiLoKeyAllocator SINGLETON_ALLOCATOR = createAllocatorInstance();
+
+    private static HiLoKeyAllocator createAllocatorInstance() {
+        if (!UvhConfig.getBoolean("lsk.allocator.enabled", false)) {
+            log.info("ManualDIProviderFactory: HiLoKeyAllocator disabled; each request reserves in its own transaction.");
+            return null;
+        }
+        log.info("ManualDIProviderFactory: Creating SINGLETON instance of HiLoKeyAllocator.");
+        return HiLoKeyAllocator.fromConfig(SINGLETON_STORE);
+    }
+
+    // Shared executor for async /resolve work (bounded by the connection pool size)
+    private static final ResolutionExecutor SINGLETON_EXECUTOR = createExecutorInstance();
+
+    private static ResolutionExecutor createExecutorInstance() {
+        log.info("ManualDIProviderFactory: Creating SINGLETON instance of ResolutionExecutor.");
+        return ResolutionExecutor.fromConfig();
+    }
+
+    public static ResolutionExecutor getResolutionExecutor() {
+        return SINGLETON_EXECUTOR;
+    }
+
+    // Shared admission control: one view of in-flight work for all request handlers
+    private static final AdmissionController SINGLETON_ADMISSION = createAdmissionInstance();
+
+    private static AdmissionController createAdmissionInstance() {
+        log.info("ManualDIProviderFactory: Creating SINGLETON instance of AdmissionController.");
+        return AdmissionController.fromConfig();
+    }
+
+    public static AdmissionController getAdmissionController() {
+        return SINGLETON_ADMISSION;
+    }
+
+    // Audit trail with its writer thread; null when lsk.audit.enabled is false
+    private static final AuditTrail SINGLETON_AUDIT = createAuditInstance();
+
+    private static AuditTrail createAuditInstance() {
+        if (!UvhConfig.getBoolean("lsk.audit.enabled", false)) {
+            log.info("ManualDIProviderFactory: Audit trail disabled (lsk.audit.enabled=false).");
+            return null;
+        }
+        log.info("ManualDIProviderFactory: Creating SINGLETON instance of AuditTrail.");
+        return AuditTrail.fromConfig();
+    }
+
+    /**
+     * @return The shared audit trail, or null if lsk.audit.enabled is false.
+     */
+    public static AuditTrail getAuditTrail() {
+        return SINGLETON_AUDIT;
+    }
+
+    // Idempotency cache shared by all request handlers; null when lsk.idempotency.enabled is false
+    private static final IdempotencyCache SINGLETON_IDEMPOTENCY = createIdempotencyInstance();
+
+    private static IdempotencyCache createIdempotencyInstance() {
+        if (!UvhConfig.getBoolean("lsk.idempotency.enabled", true)) {
+            log.info("ManualDIProviderFactory: Idempotency cache disabled (lsk.idempotency.enabled=false).");
+            return null;
+        }
+        log.info("ManualDIProviderFactory: Creating SINGLETON instance of IdempotencyCache.");
+        return IdempotencyCache.fromConfig();
+    }
+
+    /**
+     * @return The shared idempotency cache, or null if lsk.idempotency.enabled is false.
+     */
+    public static IdempotencyCache getIdempotencyCache() {
+        return SINGLETON_IDEMPOTENCY;
+    }
+
+    // Git tree resolution (disabled unless git.allowedRoot is set); owns its fork-join scan pool
+    private static final GitTreeResolution SINGLETON_GIT = createGitInstance();
+
+    private static GitTreeResolution createGitInstance() {
+        log.info("ManualDIProviderFactory: Creating SINGLETON instance of GitTreeResolution.");
+        return GitTreeResolution.fromConfig(new LskResolution(SINGLETON_STORE, SINGLETON_ALLOCATOR, SINGLETON_AUDIT));
+    }
+
+    // Dry-run validation with its content-hash cache; needs no database
+    private static final ValidationService SINGLETON_VALIDATION = createValidationInstance();
+
+    private static ValidationService createValidationInstance() {
+        log.info("ManualDIProviderFactory: Creating SINGLETON instance of ValidationService.");
+        return ValidationService.fromConfig();
+    }
+
+    public static ValidationService getValidationService() {
+        return SINGLETON_VALIDATION;
+    }
+
+    /**
+     * @return The shared allocator, or null if lsk.allocator.enabled is false.
+     */
+    public static HiLoKeyAllocator getKeyAllocator() {
+        return SINGLETON_ALLOCATOR;
+    }
+
     // --- Factory for LskResolution (implements Supplier) ---
     public static class LskResolutionProvider implements Supplier<LskResolution> { // <<< CHANGE HERE
         @Override
         public LskResolution get() {
             log.debug("ManualDIProviderFactory: Providing new LskResolution instance.");
-            return new LskResolution(SINGLETON_REPOSITORY);
+            return new LskResolution(SINGLETON_STORE, SINGLETON_ALLOCATOR, SINGLETON_AUDIT);
         }
     }
 
@@ -34,7 +205,36 @@ public class ManualDIProviderFactory {
         public RequestHandler get() {
             log.debug("ManualDIProviderFactory: Providing new RequestHandler instance.");
             LskResolution resolutionService = new LskResolutionProvider().get();
-            return new RequestHandler(resolutionService);
+            return new RequestHandler(resolutionService, SINGLETON_EXECUTOR, SINGLETON_ADMISSION, SINGLETON_IDEMPOTENCY,
+                    SINGLETON_GIT, SINGLETON_VALIDATION);
+        }
+    }
+
+    /**
+     * Stops the shared services on undeploy, most dependent first: no new resolutions, no lease
+     * refills, pending audit records written, then the counter store (which flushes and unlocks
+     * a journal). The connection pool is closed afterwards by the caller.
+     */
+    public static void shutdown() {
+        log.info("ManualDIProviderFactory: Shutting down shared services.");
+        SINGLETON_EXECUTOR.shutdown();
+        SINGLETON_GIT.shutdown();
+        if (SINGLETON_SNAPSHOT != null) {
+            SINGLETON_SNAPSHOT.close();
+        }
+        if (SINGLETON_LEASES != null) {
+            SINGLETON_LEASES.close();
+        }
+        if (SINGLETON_ALLOCATOR != null) {
+            SINGLETON_ALLOCATOR.shutdown();
+        }
+        if (SINGLETON_AUDIT != null) {
+            SINGLETON_AUDIT.close();
+        }
+        try {
+            SINGLETON_STORE.close();
+        } catch (RuntimeException e) {
+            log.error("Error closing counter store: {}", e.getMessage(), e);
         }
     }
 
@@ -0,0 +1,60 @@
+package com.budra.uvh.config;
+
+import com.budra.uvh.dbConfig.ConnectionManager;
+
+/**
+ * Lifecycle state reported by /api/health/ready.
+ *
+ * STARTING until the StartupListener warm-up has finished, READY afterwards, STOPPING once
+ * the application is being undeployed. A READY service whose counter store is the database
+ * still reports not ready while the connection pool is unavailable.
+ */
+public final class Readiness {
+
+    public enum Phase { STARTING, READY, STOPPING }
+
+    private static volatile Phase phase = Phase.STARTING;
+    private static volatile String detail = "Warm-up has not started.";
+
+    public static Phase getPhase() {
+        return phase;
+    }
+
+    public static String getDetail() {
+        return detail;
+    }
+
+    /**
+     * @return true if requests can be served right now.
+     */
+    public static boolean isReady() {
+        return phase == Phase.READY && (!requiresDatabase() || ConnectionManager.isAvailable());
+    }
+
+    /**
+     * @return true if counters live in PostgreSQL (counter.store=jdbc), so the pool is needed to serve requests.
+     */
+    public static boolean requiresDatabase() {
+        return "jdbc".equalsIgnoreCase(UvhConfig.getString("counter.store", "jdbc").trim());
+    }
+
+    static void starting(String step) {
+        if (phase == Phase.STARTING) {
+            detail = step;
+        }
+    }
+
+    static void markReady() {
+        if (phase == Phase.STARTING) {
+            detail = "Warm-up complete.";
+            phase = Phase.READY;
+        }
+    }
+
+    static void markStopping() {
+        detail = "Application is shutting down.";
+        phase = Phase.STOPPING;
+    }
+
+    private Readiness() {}
+}
@@ -0,0 +1,122 @@
+package com.budra.uvh.config;
+
+import com.budra.uvh.utils.SpooledPayload;
+import com.budra.uvh.utils.XmlUtils;
+
+import jakarta.annotation.Priority;
+import jakarta.ws.rs.Priorities;
+import jakarta.ws.rs.WebApplicationException;
+import jakarta.ws.rs.core.HttpHeaders;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.ext.ReaderInterceptor;
+import jakarta.ws.rs.ext.ReaderInterceptorContext;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Guards compressed request bodies (registered in AppConfig together with the gzip/deflate encoders).
+ *
+ * The encoders decompress Content-Encoding: gzip/deflate bodies as a stream, so a 50 MB upload that
+ * inflates to 1 GB is never held compressed and decompressed at the same time. That also means the
+ * decompressed size is unknown until it has been read: this interceptor runs after the decoders and
+ * counts decoded bytes, failing the read with 413 once lsk.compression.maxDecodedBytes is exceeded
+ * (protects against decompression bombs). Bodies with an encoding we cannot decode (e.g. zstd) are
+ * rejected with 415 instead of being scanned as garbage.
+ */
+@Priority(Priorities.ENTITY_CODER + 100) // After GZipEncoder/DeflateEncoder, so we see decoded bytes
+public class RequestDecodingInterceptor implements ReaderInterceptor {
+
+    private static final Set<String> SUPPORTED_ENCODINGS = Set.of("identity", "gzip", "x-gzip", "deflate");
+
+    private final long maxDecodedBytes;
+
+    public RequestDecodingInterceptor() {
+        this(UvhConfig.getLong("lsk.compression.maxDecodedBytes", 1024L * 1024 * 1024));
+    }
+
+    public RequestDecodingInterceptor(long maxDecodedBytes) {
+        this.maxDecodedBytes = maxDecodedBytes;
+    }
+
+    @Override
+    public Object aroundReadFrom(ReaderInterceptorContext context) throws IOException, WebApplicationException {
+        String encoding = context.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING);
+        if (encoding == null) {
+            return context.proceed();
+        }
+        if (!SUPPORTED_ENCODINGS.contains(encoding.trim().toLowerCase(Locale.ROOT))) {
+            throw new WebApplicationException(errorResponse(Response.Status.UNSUPPORTED_MEDIA_TYPE,
+                    "Unsupported Content-Encoding '" + encoding + "'; use gzip or deflate."));
+        }
+        // InputStream parameters are read by the resource itself, which already maps
+        // PayloadTooLargeException to 413; other entity types are read by Jersey here.
+        boolean streamedByResource = InputStream.class.isAssignableFrom(context.getType());
+        context.setInputStream(new LimitedInputStream(context.getInputStream(), maxDecodedBytes, streamedByResource));
+        return context.proceed();
+    }
+
+    private static Response errorResponse(Response.Status status, String message) {
+        return Response.status(status)
+                .entity("<error>" + XmlUtils.escapeXml(message) + "</error>")
+                .type(MediaType.APPLICATION_XML)
+                .build();
+    }
+
+    private static final class LimitedInputStream extends FilterInputStream {
+        private final long limit;
+        private final boolean streamedByResource;
+        private long count;
+
+        LimitedInputStream(InputStream in, long limit, boolean streamedByResource) {
+            super(in);
+            this.limit = limit;
+            this.streamedByResource = streamedByResource;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                advance(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int n = super.read(buffer, offset, length);
+            if (n > 0) {
+                advance(n);
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            advance(skipped);
+            return skipped;
+        }
+
+        private void advance(long n) throws IOException {
+            count += n;
+            if (count > limit) {
+                String message = "Decompressed request body exceeds " + limit + " bytes (lsk.compression.maxDecodedBytes).";
+                if (streamedByResource) {
+                    throw new SpooledPayload.PayloadTooLargeException(message);
+                }
+                throw new WebApplicationException(errorResponse(Response.Status.REQUEST_ENTITY_TOO_LARGE, message));
+            }
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
+}
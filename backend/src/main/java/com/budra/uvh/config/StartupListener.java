@@ -0,0 +1,123 @@
+package com.budra.uvh.config;
+
+import com.budra.uvh.dbConfig.ConnectionManager;
+import com.budra.uvh.service.HiLoKeyAllocator;
+import com.budra.uvh.utils.CounterKey;
+import com.budra.uvh.utils.XmlUtils;
+
+import jakarta.servlet.ServletContextEvent;
+import jakarta.servlet.ServletContextListener;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Moves initialization from the first request to deploy time (registered in web.xml).
+ *
+ * With lsk.startup.warmUp=true (default) a background thread, so deployment itself is not delayed:
+ *  1. loads and JIT-warms the placeholder scanner (compiled patterns, scanner classes)
+ *  2. creates the HikariCP pool, retrying until the database is reachable, and validates a connection
+ *  3. creates the shared services (counter store recovery, executor, allocator, audit trail)
+ *  4. preloads allocator leases for the counters in lsk.startup.preloadCounters
+ * and then marks the service ready (see Readiness and /api/health/ready).
+ * With lsk.startup.warmUp=false everything is created lazily by the first request, as before.
+ *
+ * On undeploy the shared services and the pool are shut down in dependency order.
+ */
+public class StartupListener implements ServletContextListener {
+    private static final Logger log = LoggerFactory.getLogger(StartupListener.class);
+
+    private static final String SAMPLE_DOCUMENT =
+            "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<manifest>\n" +
+            "  <Row id=\"1\" ref=\"WarmUp:ID:__PLACEHOLDER_W1__\"/>\n" +
+            "  <Row id=\"2\" ref=\"WarmUp:ID:__PLACEHOLDER_W2__\" other=\"WarmUp:ID:__PLACEHOLDER_W1__\"/>\n" +
+            "</manifest>\n";
+
+    private Thread warmUpThread;
+
+    @Override
+    public void contextInitialized(ServletContextEvent event) {
+        if (!UvhConfig.getBoolean("lsk.startup.warmUp", true)) {
+            log.info("Startup warm-up disabled (lsk.startup.warmUp=false); services are created by the first request.");
+            Readiness.markReady();
+            return;
+        }
+        warmUpThread = new Thread(this::warmUp, "uvh-startup-warmup");
+        warmUpThread.setDaemon(true);
+        warmUpThread.start();
+    }
+
+    private void warmUp() {
+        long started = System.currentTimeMillis();
+        try {
+            Readiness.starting("Warming up the placeholder scanner.");
+            byte[] sample = SAMPLE_DOCUMENT.getBytes(StandardCharsets.UTF_8);
+            int iterations = UvhConfig.getInt("lsk.startup.scanIterations", 2000);
+            for (int i = 0; i < iterations; i++) {
+                XmlUtils.scanPlaceholders(sample);
+            }
+
+            if (Readiness.requiresDatabase()) {
+                Readiness.starting("Creating the database connection pool.");
+                long retryMillis = UvhConfig.getLong("db.pool.initRetryMillis", 5000);
+                while (!ConnectionManager.initialize()) {
+                    Readiness.starting("Waiting for the database: " + ConnectionManager.getLastInitError());
+                    Thread.sleep(retryMillis);
+                }
+                ConnectionManager.warmUp();
+            }
+
+            Readiness.starting("Creating shared services.");
+            ManualDIProviderFactory.getCounterStore(); // Initializes all ManualDIProviderFactory singletons
+
+            preloadLeases();
+
+            Readiness.markReady();
+            log.info("Startup warm-up finished in {} ms; service is ready.", System.currentTimeMillis() - started);
+        } catch (InterruptedException e) {
+            log.info("Startup warm-up interrupted by shutdown.");
+        } catch (RuntimeException | Error e) {
+            // Requests still initialize lazily; readiness stays STARTING so the instance gets no traffic
+            Readiness.starting("Warm-up failed: " + e.getMessage());
+            log.error("Startup warm-up failed: {}", e.getMessage(), e);
+        }
+    }
+
+    private void preloadLeases() {
+        String counters = UvhConfig.getString("lsk.startup.preloadCounters", "").trim();
+        if (counters.isEmpty()) {
+            return;
+        }
+        HiLoKeyAllocator allocator = ManualDIProviderFactory.getKeyAllocator();
+        if (allocator == null) {
+            log.warn("lsk.startup.preloadCounters is set but the lease allocator is disabled; nothing preloaded.");
+            return;
+        }
+        Readiness.starting("Preloading counter leases.");
+        for (String counter : counters.split(",")) {
+            String[] parts = counter.trim().split(":");
+            if (parts.length != 2) {
+                log.warn("Ignoring invalid entry '{}' in lsk.startup.preloadCounters (expected Table:Column).", counter.trim());
+                continue;
+            }
+            try {
+                allocator.preload(new CounterKey(parts[0].trim(), parts[1].trim()));
+            } catch (RuntimeException e) {
+                // Not fatal: the first request for this counter fetches its lease instead
+                log.warn("Could not preload lease for {}: {}", counter.trim(), e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public void contextDestroyed(ServletContextEvent event) {
+        Readiness.markStopping();
+        if (warmUpThread != null) {
+            warmUpThread.interrupt();
+        }
+        ManualDIProviderFactory.shutdown();
+        ConnectionManager.closeDataSource();
+    }
+}
@@ -0,0 +1,95 @@
+package com.budra.uvh.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+
+/**
+ * Read-only access to uvh_config.properties.
+ * The file is loaded once, the first time any setting is requested.
+ * Every getter takes a default, so a missing file or key never fails the caller.
+ */
+public final class UvhConfig {
+    private static final Logger log = LoggerFactory.getLogger(UvhConfig.class);
+    private static final String CONFIG_FILE = "/uvh_config.properties"; // Ensure this is in src/main/resources
+
+    private static final Properties PROPERTIES = load();
+
+    private static Properties load() {
+        Properties props = new Properties();
+        try (InputStream input = UvhConfig.class.getResourceAsStream(CONFIG_FILE)) {
+            if (input == null) {
+                log.warn("!!! {} not found on classpath. All settings will use their defaults.", CONFIG_FILE);
+                return props;
+            }
+            props.load(input);
+            log.info("Loaded configuration from {}", CONFIG_FILE);
+        } catch (IOException e) {
+            log.error("!!! Error loading configuration file: {}. Using defaults.", CONFIG_FILE, e);
+        }
+        return props;
+    }
+
+    /**
+     * @return A copy of all loaded properties (empty if the file could not be read).
+     */
+    public static Properties getProperties() {
+        Properties copy = new Properties();
+        copy.putAll(PROPERTIES);
+        return copy;
+    }
+
+    public static String getString(String key, String defaultValue) {
+        String value = PROPERTIES.getProperty(key);
+        return (value == null || value.trim().isEmpty()) ? defaultValue : value.trim();
+    }
+
+    public static int getInt(String key, int defaultValue) {
+        String value = getString(key, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            log.warn("Invalid integer '{}' for {}. Using default {}.", value, key, defaultValue);
+            return defaultValue;
+        }
+    }
+
+    public static long getLong(String key, long defaultValue) {
+        String value = getString(key, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            log.warn("Invalid long '{}' for {}. Using default {}.", value, key, defaultValue);
+            return defaultValue;
+        }
+    }
+
+    public static double getDouble(String key, double defaultValue) {
+        String value = getString(key, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            log.warn("Invalid number '{}' for {}. Using default {}.", value, key, defaultValue);
+            return defaultValue;
+        }
+    }
+
+    public static boolean getBoolean(String key, boolean defaultValue) {
+        String value = getString(key, null);
+        return value == null ? defaultValue : Boolean.parseBoolean(value);
+    }
+
+    private UvhConfig() {}
+}
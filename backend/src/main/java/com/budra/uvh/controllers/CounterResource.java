@@ -0,0 +1,106 @@
+package com.budra.uvh.controllers;
+
+import com.budra.uvh.config.ManualDIProviderFactory;
+import com.budra.uvh.service.CounterSnapshot;
+import com.budra.uvh.utils.CounterKey;
+import com.budra.uvh.utils.XmlUtils;
+
+import jakarta.ws.rs.DefaultValue;
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.PathParam;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.QueryParam;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+
+import java.time.Instant;
+
+/**
+ * Read-only counter inspection, served from the in-memory CounterSnapshot (never queries the database).
+ *
+ * GET /api/counters/{table}/{column}              - one counter, 404 if it has never been used
+ * GET /api/counters?prefix=Employee:&after=&limit= - counters by "Table:Column" name, paginated;
+ *                                                   pass the returned next attribute as after
+ *
+ * Every response carries synchronized="false" while the snapshot may be missing changes of other
+ * nodes (listener disconnected or initial load pending).
+ */
+@Path("/counters")
+public class CounterResource {
+
+    @GET
+    @Path("/{table}/{column}")
+    @Produces(MediaType.APPLICATION_XML)
+    public Response getCounter(@PathParam("table") String table, @PathParam("column") String column) {
+        CounterSnapshot snapshot = ManualDIProviderFactory.getCounterSnapshot();
+        if (snapshot == null) {
+            return disabled();
+        }
+        CounterSnapshot.CounterState state;
+        try {
+            state = snapshot.get(new CounterKey(table, column));
+        } catch (IllegalArgumentException e) {
+            return error(Response.Status.BAD_REQUEST, e.getMessage());
+        }
+        if (state == null) {
+            return error(Response.Status.NOT_FOUND, "Unknown counter " + table + ":" + column + ".");
+        }
+        StringBuilder xml = new StringBuilder(256);
+        xml.append("<counterSnapshot").append(syncAttributes(snapshot)).append('>');
+        appendCounter(xml, state);
+        xml.append("</counterSnapshot>");
+        return Response.ok(xml.toString(), MediaType.APPLICATION_XML).build();
+    }
+
+    @GET
+    @Produces(MediaType.APPLICATION_XML)
+    public Response listCounters(@QueryParam("prefix") @DefaultValue("") String prefix,
+                                 @QueryParam("after") String after,
+                                 @QueryParam("limit") @DefaultValue("100") int limit) {
+        CounterSnapshot snapshot = ManualDIProviderFactory.getCounterSnapshot();
+        if (snapshot == null) {
+            return disabled();
+        }
+        CounterSnapshot.Page page = snapshot.list(prefix, after, limit);
+        StringBuilder xml = new StringBuilder(128 + page.getItems().size() * 128);
+        xml.append("<counterSnapshot").append(syncAttributes(snapshot))
+                .append(" count=\"").append(page.getItems().size()).append('"');
+        if (page.getNext() != null) {
+            xml.append(" next=\"").append(XmlUtils.escapeXml(page.getNext())).append('"');
+        }
+        xml.append('>');
+        for (CounterSnapshot.CounterState state : page.getItems()) {
+            appendCounter(xml, state);
+        }
+        xml.append("</counterSnapshot>");
+        return Response.ok(xml.toString(), MediaType.APPLICATION_XML).build();
+    }
+
+    private static String syncAttributes(CounterSnapshot snapshot) {
+        String attributes = " synchronized=\"" + snapshot.isSynchronized() + "\"";
+        if (snapshot.getLastResyncMillis() > 0) {
+            attributes += " lastResync=\"" + Instant.ofEpochMilli(snapshot.getLastResyncMillis()) + "\"";
+        }
+        return attributes;
+    }
+
+    private static void appendCounter(StringBuilder xml, CounterSnapshot.CounterState state) {
+        xml.append("<counter table=\"").append(XmlUtils.escapeXml(state.getCounter().getTableName()))
+                .append("\" column=\"").append(XmlUtils.escapeXml(state.getCounter().getColumnName()))
+                .append("\" lastAssignedValue=\"").append(state.getLastAssignedValue())
+                .append("\" updated=\"").append(Instant.ofEpochMilli(state.getUpdatedMillis()))
+                .append("\"/>");
+    }
+
+    private static Response disabled() {
+        return error(Response.Status.NOT_FOUND, "Counter inspection is disabled (lsk.inspection.enabled=false).");
+    }
+
+    private static Response error(Response.Status status, String message) {
+        return Response.status(status)
+                .entity("<error>" + XmlUtils.escapeXml(message) + "</error>")
+                .type(MediaType.APPLICATION_XML)
+                .build();
+    }
+}
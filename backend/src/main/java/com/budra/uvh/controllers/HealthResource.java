@@ -0,0 +1,43 @@
+package com.budra.uvh.controllers;
+
+import com.budra.uvh.config.Readiness;
+import com.budra.uvh.utils.XmlUtils;
+
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+
+/**
+ * Health probes for load balancers and orchestrators.
+ *
+ * GET /api/health/live  - 200 while the application is deployed (restart the instance otherwise)
+ * GET /api/health/ready - 200 once warm-up has finished and the counter store is reachable,
+ *                         503 while starting, waiting for the database or shutting down
+ */
+@Path("/health")
+public class HealthResource {
+
+    @GET
+    @Path("/live")
+    @Produces(MediaType.APPLICATION_XML)
+    public Response live() {
+        return Response.ok("<health><status>UP</status></health>", MediaType.APPLICATION_XML).build();
+    }
+
+    @GET
+    @Path("/ready")
+    @Produces(MediaType.APPLICATION_XML)
+    public Response ready() {
+        if (Readiness.isReady()) {
+            return Response.ok("<health><status>READY</status></health>", MediaType.APPLICATION_XML).build();
+        }
+        String status = Readiness.getPhase() == Readiness.Phase.READY ? "UNAVAILABLE" : Readiness.getPhase().name();
+        String reason = Readiness.getPhase() == Readiness.Phase.READY ? "Database connection pool is not available." : Readiness.getDetail();
+        return Response.status(Response.Status.SERVICE_UNAVAILABLE)
+                .entity("<health><status>" + status + "</status><reason>" + XmlUtils.escapeXml(reason) + "</reason></health>")
+                .type(MediaType.APPLICATION_XML)
+                .build();
+    }
+}
@@ -0,0 +1,204 @@
+package com.budra.uvh.controllers;
+
+import com.budra.uvh.config.ManualDIProviderFactory;
+import com.budra.uvh.exception.LskGenerationException;
+import com.budra.uvh.exception.ServiceOverloadedException;
+import com.budra.uvh.model.RangeLease;
+import com.budra.uvh.model.ReservationRetryPolicy;
+import com.budra.uvh.service.AdmissionController;
+import com.budra.uvh.service.RangeLeaseService;
+import com.budra.uvh.utils.CounterKey;
+import com.budra.uvh.utils.XmlUtils;
+
+import jakarta.ws.rs.DefaultValue;
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.HeaderParam;
+import jakarta.ws.rs.POST;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.PathParam;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.QueryParam;
+import jakarta.ws.rs.core.Context;
+import jakarta.ws.rs.core.HttpHeaders;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.UriInfo;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Range leases for clients that assign keys themselves (bulk generators).
+ *
+ * POST /api/leases/{table}/{column}?count=N[&ttlSeconds=S] - lease N consecutive values (201 + Location)
+ * GET  /api/leases/{id}                                    - one lease
+ * POST /api/leases/{id}/return?lastUsed=V                  - end the lease; values after V are given
+ *                                                            back if nothing was reserved since
+ * GET  /api/leases?status=ACTIVE&limit=100                 - leases by status, oldest first (audit)
+ *
+ * The X-Client-Id header, if sent, is stored with the lease. Creating a lease reserves counter
+ * values like a resolution does and goes through the same admission control (503 when overloaded).
+ */
+@Path("/leases")
+public class LeaseResource {
+    private static final Logger log = LoggerFactory.getLogger(LeaseResource.class);
+    private static final String CLIENT_ID_HEADER = "X-Client-Id";
+
+    @POST
+    @Path("/{table}/{column}")
+    @Produces(MediaType.APPLICATION_XML)
+    public Response createLease(@PathParam("table") String table, @PathParam("column") String column,
+                                @QueryParam("count") Integer count, @QueryParam("ttlSeconds") Long ttlSeconds,
+                                @HeaderParam(CLIENT_ID_HEADER) String clientId, @Context UriInfo uriInfo) {
+        RangeLeaseService leases = ManualDIProviderFactory.getRangeLeaseService();
+        if (leases == null) {
+            return disabled();
+        }
+        if (count == null) {
+            return error(Response.Status.BAD_REQUEST, "Query parameter count is required.");
+        }
+        AdmissionController admission = ManualDIProviderFactory.getAdmissionController();
+        try (AdmissionController.Ticket ticket = admission.admit(clientId)) {
+            ticket.checkWaitTime();
+            RangeLease lease = leases.lease(new CounterKey(table, column), count, ttlSeconds, clientId);
+            return Response.created(uriInfo.getBaseUriBuilder().path("leases").path(lease.getId()).build())
+                    .entity(toXml(lease))
+                    .type(MediaType.APPLICATION_XML)
+                    .build();
+        } catch (ServiceOverloadedException e) {
+            return Response.status(Response.Status.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, e.getRetryAfterSeconds())
+                    .entity("<error>Service overloaded: " + XmlUtils.escapeXml(e.getMessage()) + "</error>")
+                    .type(MediaType.APPLICATION_XML)
+                    .build();
+        } catch (IllegalArgumentException e) {
+            return error(Response.Status.BAD_REQUEST, e.getMessage());
+        } catch (LskGenerationException e) {
+            return failure(e);
+        }
+    }
+
+    @GET
+    @Path("/{id}")
+    @Produces(MediaType.APPLICATION_XML)
+    public Response getLease(@PathParam("id") String leaseId) {
+        RangeLeaseService leases = ManualDIProviderFactory.getRangeLeaseService();
+        if (leases == null) {
+            return disabled();
+        }
+        try {
+            RangeLease lease = leases.get(leaseId);
+            if (lease == null) {
+                return error(Response.Status.NOT_FOUND, "Unknown lease " + leaseId + ".");
+            }
+            return Response.ok(toXml(lease), MediaType.APPLICATION_XML).build();
+        } catch (LskGenerationException e) {
+            return failure(e);
+        }
+    }
+
+    @POST
+    @Path("/{id}/return")
+    @Produces(MediaType.APPLICATION_XML)
+    public Response returnLease(@PathParam("id") String leaseId, @QueryParam("lastUsed") Long lastUsed) {
+        RangeLeaseService leases = ManualDIProviderFactory.getRangeLeaseService();
+        if (leases == null) {
+            return disabled();
+        }
+        if (lastUsed == null) {
+            return error(Response.Status.BAD_REQUEST, "Query parameter lastUsed is required (range start - 1 if no value was used).");
+        }
+        try {
+            RangeLease lease = leases.returnUnused(leaseId, lastUsed);
+            if (lease == null) {
+                return error(Response.Status.NOT_FOUND, "Unknown lease " + leaseId + ".");
+            }
+            return Response.ok(toXml(lease), MediaType.APPLICATION_XML).build();
+        } catch (IllegalArgumentException e) {
+            return error(Response.Status.BAD_REQUEST, e.getMessage());
+        } catch (IllegalStateException e) {
+            return error(Response.Status.CONFLICT, e.getMessage());
+        } catch (LskGenerationException e) {
+            return failure(e);
+        }
+    }
+
+    @GET
+    @Produces(MediaType.APPLICATION_XML)
+    public Response listLeases(@QueryParam("status") @DefaultValue("ACTIVE") String status,
+                               @QueryParam("limit") @DefaultValue("100") int limit) {
+        RangeLeaseService leases = ManualDIProviderFactory.getRangeLeaseService();
+        if (leases == null) {
+            return disabled();
+        }
+        RangeLease.Status wanted;
+        try {
+            wanted = RangeLease.Status.valueOf(status.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return error(Response.Status.BAD_REQUEST, "status must be ACTIVE, RETURNED or EXPIRED.");
+        }
+        try {
+            List<RangeLease> page = leases.list(wanted, limit);
+            StringBuilder xml = new StringBuilder(64 + page.size() * 256);
+            xml.append("<leases status=\"").append(wanted).append("\" count=\"").append(page.size()).append("\">");
+            page.forEach(lease -> xml.append(toXml(lease)));
+            xml.append("</leases>");
+            return Response.ok(xml.toString(), MediaType.APPLICATION_XML).build();
+        } catch (LskGenerationException e) {
+            return failure(e);
+        }
+    }
+
+    private static String toXml(RangeLease lease) {
+        StringBuilder xml = new StringBuilder(256);
+        xml.append("<lease id=\"").append(lease.getId())
+                .append("\" table=\"").append(XmlUtils.escapeXml(lease.getCounter().getTableName()))
+                .append("\" column=\"").append(XmlUtils.escapeXml(lease.getCounter().getColumnName()))
+                .append("\" start=\"").append(lease.getStart())
+                .append("\" end=\"").append(lease.getEnd())
+                .append("\" count=\"").append(lease.getCount())
+                .append("\" status=\"").append(lease.getStatus())
+                .append("\" created=\"").append(Instant.ofEpochMilli(lease.getCreatedMillis())).append('"');
+        if (lease.getExpiresMillis() > 0) {
+            xml.append(" expires=\"").append(Instant.ofEpochMilli(lease.getExpiresMillis())).append('"');
+        }
+        if (lease.getClient() != null) {
+            xml.append(" client=\"").append(XmlUtils.escapeXml(lease.getClient())).append('"');
+        }
+        if (lease.getLastUsed() != null) {
+            xml.append(" lastUsed=\"").append(lease.getLastUsed()).append('"');
+        }
+        if (lease.getStatus() != RangeLease.Status.ACTIVE) {
+            xml.append(" reclaimed=\"").append(lease.isReclaimed())
+                    .append("\" closed=\"").append(Instant.ofEpochMilli(lease.getClosedMillis())).append('"');
+        }
+        return xml.append("/>").toString();
+    }
+
+    private static Response failure(LskGenerationException e) {
+        if (ReservationRetryPolicy.isRetryable(e)) {
+            log.warn("Lease reservation conflicts persisted after retries: {}", e.getMessage());
+            return Response.status(Response.Status.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, 1)
+                    .entity("<error>Counters are contended, retry shortly.</error>")
+                    .type(MediaType.APPLICATION_XML)
+                    .build();
+        }
+        log.error("Range lease operation failed: {}", e.getMessage(), e);
+        return error(Response.Status.INTERNAL_SERVER_ERROR, "Range lease operation failed: " + e.getMessage());
+    }
+
+    private static Response disabled() {
+        return error(Response.Status.NOT_FOUND, "Range leases are disabled (lsk.lease.enabled=false or counter.store is not jdbc).");
+    }
+
+    private static Response error(Response.Status status, String message) {
+        return Response.status(status)
+                .entity("<error>" + XmlUtils.escapeXml(message) + "</error>")
+                .type(MediaType.APPLICATION_XML)
+                .build();
+    }
+}
@@ -0,0 +1,27 @@
+package com.budra.uvh.controllers;
+
+import com.budra.uvh.metrics.PrometheusExporter;
+
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.core.Response;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Prometheus scrape endpoint: GET /api/metrics
+ */
+@Path("/metrics")
+public class MetricsResource {
+    private static final Logger log = LoggerFactory.getLogger(MetricsResource.class);
+    private static final String PROMETHEUS_TEXT = "text/plain; version=0.0.4; charset=utf-8";
+
+    @GET
+    @Produces(PROMETHEUS_TEXT)
+    public Response scrape() {
+        log.trace("Metrics scrape requested.");
+        return Response.ok(PrometheusExporter.export(), PROMETHEUS_TEXT).build();
+    }
+}
@@ -1,40 +1,119 @@
 package com.budra.uvh.controllers;
 
 // Correct import for your service class
+import com.budra.uvh.config.UvhConfig;
+import com.budra.uvh.model.ReservationRetryPolicy;
+import com.budra.uvh.service.AdmissionController;
+import com.budra.uvh.service.GitTreeResolution;
+import com.budra.uvh.service.IdempotencyCache;
 import com.budra.uvh.service.LskResolution; // Ensure this package is correct
+import com.budra.uvh.service.ResolutionExecutor;
+import com.budra.uvh.service.ResolvedDocument;
+import com.budra.uvh.service.ValidationService;
+import com.budra.uvh.utils.CounterKey;
+import com.budra.uvh.utils.PlaceholderValidation;
+import com.budra.uvh.utils.SpooledPayload;
+import com.budra.uvh.utils.XmlUtils;
 
 // Import standard JAX-RS annotations
 import jakarta.ws.rs.*; // Keep these
+import jakarta.ws.rs.container.AsyncResponse;
+import jakarta.ws.rs.container.Suspended;
+import jakarta.ws.rs.core.Context;
+import jakarta.ws.rs.core.HttpHeaders;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.StreamingOutput;
 
 // Import your custom exceptions
+import com.budra.uvh.exception.GitResolutionException;
+import com.budra.uvh.exception.IdempotencyConflictException;
 import com.budra.uvh.exception.LskGenerationException;
 import com.budra.uvh.exception.PlaceholderFormatException;
+import com.budra.uvh.exception.ServiceOverloadedException;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Paths;
+import java.sql.SQLTransientConnectionException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
 @Path("/logical-seed-key") // KEEP: JAX-RS annotation for routing
 // NO @RequestScoped annotation - Lifecycle managed manually or by factory
 public class RequestHandler {
     private static final Logger log = LoggerFactory.getLogger(RequestHandler.class);
 
-    // Dependency field - made final, initialized by constructor
+    // Streaming mode: bodies above this size are spooled to a temp file and memory-mapped
+    private static final int STREAM_SPOOL_THRESHOLD = UvhConfig.getInt("lsk.stream.spoolThresholdBytes", 16 * 1024 * 1024);
+    private static final java.nio.file.Path STREAM_SPOOL_DIRECTORY =
+            Paths.get(UvhConfig.getString("lsk.stream.spoolDirectory", System.getProperty("java.io.tmpdir")));
+
+    // Mapping-only responses (Accept: application/json or this type): no rewritten document, see MappingWriter
+    private static final String APPLICATION_LSK_MAPPING = "application/vnd.uvh.lsk-mapping";
+
+    // Batch mode
+    private static final String APPLICATION_ZIP = "application/zip";
+    private static final int BATCH_MAX_DOCUMENTS = UvhConfig.getInt("lsk.batch.maxDocuments", 10000);
+    // Zip entries are inflated by ZipInputStream, so lsk.compression.maxDecodedBytes does not apply to them
+    private static final long BATCH_MAX_TOTAL_BYTES = UvhConfig.getLong("lsk.batch.maxTotalBytes", 1024L * 1024 * 1024);
+
+    // Async /resolve: how long a suspended request may wait for its result
+    private static final long ASYNC_TIMEOUT_MILLIS = UvhConfig.getLong("lsk.async.timeoutMillis", 60000);
+
+    // Optional header used for per-client admission limits
+    private static final String CLIENT_ID_HEADER = "X-Client-Id";
+
+    // Retries with the same key (and body) get the first response instead of new values
+    private static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+    private static final String IDEMPOTENT_REPLAYED_HEADER = "Idempotent-Replayed";
+    private static final int UNPROCESSABLE_ENTITY = 422;
+
+    // Dependency fields - made final, initialized by constructor
     private final LskResolution lskResolution;
+    private final ResolutionExecutor resolutionExecutor;
+    private final AdmissionController admissionController;
+    private final IdempotencyCache idempotencyCache; // null = idempotency disabled
+    private final GitTreeResolution gitTreeResolution;
+    private final ValidationService validationService;
 
     // NO @Inject annotation
 
     // --- Constructor for Manual DI ---
     // This constructor MUST be called by whatever mechanism creates RequestHandler
     // (e.g., the ManualDIProviderFactory shown previously)
-    public RequestHandler(LskResolution lskResolution) {
+    public RequestHandler(LskResolution lskResolution, ResolutionExecutor resolutionExecutor,
+                          AdmissionController admissionController, IdempotencyCache idempotencyCache,
+                          GitTreeResolution gitTreeResolution, ValidationService validationService) {
         log.debug("RequestHandler instance MANUALLY created via constructor.");
         if (lskResolution == null) {
             // Fail fast if the dependency wasn't provided during manual wiring
             throw new IllegalArgumentException("LskResolution cannot be null for RequestHandler");
         }
+        if (resolutionExecutor == null) {
+            throw new IllegalArgumentException("ResolutionExecutor cannot be null for RequestHandler");
+        }
+        if (admissionController == null) {
+            throw new IllegalArgumentException("AdmissionController cannot be null for RequestHandler");
+        }
         this.lskResolution = lskResolution;
+        this.resolutionExecutor = resolutionExecutor;
+        this.admissionController = admissionController;
+        this.idempotencyCache = idempotencyCache;
+        this.gitTreeResolution = gitTreeResolution;
+        this.validationService = validationService;
     }
 
     // Default no-arg constructor REMOVED - it's not used by the manual factory approach
@@ -43,37 +122,114 @@ public class RequestHandler {
     @POST // KEEP: JAX-RS annotation
     @Path("/resolve") // KEEP: JAX-RS annotation
     @Consumes(MediaType.APPLICATION_XML) // KEEP: JAX-RS annotation
-    @Produces(MediaType.APPLICATION_XML) // KEEP: JAX-RS annotation
-    public Response resolveLsk(String inputXml)  {
+    @Produces({MediaType.APPLICATION_XML, MediaType.APPLICATION_JSON, APPLICATION_LSK_MAPPING})
+    public void resolveLsk(byte[] inputXml, @HeaderParam(CLIENT_ID_HEADER) String clientId,
+                           @HeaderParam(IDEMPOTENCY_KEY_HEADER) String idempotencyKey,
+                           @Context HttpHeaders headers,
+                           @Suspended AsyncResponse asyncResponse)  { // Raw UTF-8 body: scanned in place, no String decode
         log.info("Received POST request on /api/logical-seed-key/resolve");
-        System.out.println("Entered Request handler"); // For basic testing
+        ResponseFormat format = ResponseFormat.negotiate(headers); // Read now: headers are not available on the executor
 
         // Check for null on the dependency (though constructor should prevent it)
         if (this.lskResolution == null) {
             log.error("Critical error: lskResolution field is null despite constructor injection!");
-            return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
-                    .entity("<error>Internal server configuration error.</error>")
-                    .type(MediaType.APPLICATION_XML)
-                    .build();
+            asyncResponse.resume(errorResponse(Response.Status.INTERNAL_SERVER_ERROR, "Internal server configuration error."));
+            return;
         }
 
-        if (inputXml == null || inputXml.trim().isEmpty()) {
+        if (isBlank(inputXml)) {
             log.warn("Received empty or null XML input for resolution.");
-            return Response.status(Response.Status.BAD_REQUEST)
-                    .entity("<error>Request body requires XML content.</error>")
-                    .type(MediaType.APPLICATION_XML)
-                    .build();
+            asyncResponse.resume(errorResponse(Response.Status.BAD_REQUEST, "Request body requires XML content."));
+            return;
+        }
+
+        if (this.idempotencyCache != null) {
+            try {
+                IdempotencyCache.validateKey(idempotencyKey);
+            } catch (IllegalArgumentException e) {
+                log.warn("Rejected request: {}", e.getMessage());
+                asyncResponse.resume(errorResponse(Response.Status.BAD_REQUEST, e.getMessage()));
+                return;
+            }
+        }
+
+        // The servlet thread is released here; scan, reservation and rewrite run on the resolution executor
+        asyncResponse.setTimeout(ASYNC_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        asyncResponse.setTimeoutHandler(timedOut -> {
+            log.warn("LSK resolution did not complete within {} ms.", ASYNC_TIMEOUT_MILLIS);
+            timedOut.resume(errorResponse(Response.Status.SERVICE_UNAVAILABLE, "LSK resolution timed out."));
+        });
+        AdmissionController.Ticket ticket;
+        try {
+            ticket = this.admissionController.admit(clientId);
+        } catch (ServiceOverloadedException e) {
+            asyncResponse.resume(overloadedResponse(e));
+            return;
+        }
+        try {
+            this.resolutionExecutor.execute(() -> {
+                try {
+                    if (!asyncResponse.isSuspended()) {
+                        return; // Timed out or cancelled while queued: don't reserve values nobody will receive
+                    }
+                    ticket.checkWaitTime();
+                    asyncResponse.resume(resolve(inputXml, clientId, idempotencyKey, format));
+                } catch (ServiceOverloadedException e) {
+                    asyncResponse.resume(overloadedResponse(e));
+                } finally {
+                    ticket.close();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            ticket.close();
+            log.error("Resolution executor rejected the request: {}", e.getMessage());
+            asyncResponse.resume(errorResponse(Response.Status.SERVICE_UNAVAILABLE, "Service is shutting down."));
         }
+    }
 
+    // Runs on the resolution executor; always produces a response, never throws
+    private Response resolve(byte[] inputXml, String clientId, String idempotencyKey, ResponseFormat format) {
         try {
             // Delegate processing to the service layer using the injected field
-            String resolvedXml = this.lskResolution.processAndResolveXml(inputXml);
-            log.info("LSK resolution successful for request.");
-            log.info("");
-            log.info("");
-            log.info("Resolved XML:");
-            log.info(resolvedXml);
-            return Response.ok(resolvedXml).build();
+            byte[] resolvedXml;
+            boolean replayed = false;
+            if (this.idempotencyCache == null && format == ResponseFormat.XML) {
+                resolvedXml = this.lskResolution.processAndResolveXml(inputXml);
+            } else {
+                ResolvedDocument document;
+                if (this.idempotencyCache == null) {
+                    document = this.lskResolution.resolveDocument(ByteBuffer.wrap(inputXml));
+                } else {
+                    IdempotencyCache.Result result = this.idempotencyCache.resolve(clientId, idempotencyKey, inputXml,
+                            () -> this.lskResolution.resolveDocument(ByteBuffer.wrap(inputXml)));
+                    document = result.getDocument();
+                    replayed = result.isReplayed();
+                }
+                if (format != ResponseFormat.XML) {
+                    // Mapping only: the rewrite is skipped entirely
+                    log.info("LSK resolution successful for request ({} bytes in, {} mapping{}).",
+                            inputXml.length, format, replayed ? ", replayed" : "");
+                    Response.ResponseBuilder response = mappingResponse(document, format);
+                    if (replayed) {
+                        response.header(IDEMPOTENT_REPLAYED_HEADER, "true");
+                    }
+                    return response.build();
+                }
+                resolvedXml = document.hasPlaceholders() ? document.toBytes() : inputXml;
+            }
+            log.info("LSK resolution successful for request ({} bytes in, {} bytes out{}).",
+                    inputXml.length, resolvedXml.length, replayed ? ", replayed" : "");
+            Response.ResponseBuilder response = Response.ok(resolvedXml, MediaType.APPLICATION_XML);
+            if (replayed) {
+                response.header(IDEMPOTENT_REPLAYED_HEADER, "true");
+            }
+            return response.build();
+
+        } catch (IdempotencyConflictException e) {
+            return Response.status(UNPROCESSABLE_ENTITY)
+                    .entity("<error>" + e.getMessage() + "</error>")
+                    .type(MediaType.APPLICATION_XML)
+                    .build();
 
         } catch (PlaceholderFormatException e) {
             log.warn("Placeholder format error during resolution: {}", e.getMessage());
@@ -82,11 +238,7 @@ public class RequestHandler {
                     .type(MediaType.APPLICATION_XML)
                     .build();
         } catch (LskGenerationException e) {
-            log.error("LSK Generation or DB error during resolution: {}", e.getMessage(), e);
-            return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
-                    .entity("<error>LSK generation failed: " + e.getMessage() + "</error>") // Include msg
-                    .type(MediaType.APPLICATION_XML)
-                    .build();
+            return generationFailure(e, "resolution");
         } catch (Exception e) { // Catch any other unexpected exceptions
             log.error("Unexpected internal server error during LSK resolution: {}", e.getMessage(), e);
             return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
@@ -95,4 +247,387 @@ public class RequestHandler {
                     .build();
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Streaming variant of /resolve for very large documents.
+     * The body is read once (spooled to a memory-mapped temp file above lsk.stream.spoolThresholdBytes),
+     * values are reserved and committed, and the rewritten document is then streamed straight to the
+     * response. Heap use depends on the number of placeholders, not the document size.
+     */
+    @POST
+    @Path("/resolve/stream")
+    @Consumes(MediaType.APPLICATION_XML)
+    @Produces({MediaType.APPLICATION_XML, MediaType.APPLICATION_JSON, APPLICATION_LSK_MAPPING})
+    public Response resolveLskStreaming(InputStream inputXml, @HeaderParam(CLIENT_ID_HEADER) String clientId,
+                                        @Context HttpHeaders headers) {
+        log.info("Received POST request on /api/logical-seed-key/resolve/stream");
+        try (AdmissionController.Ticket ticket = this.admissionController.admit(clientId)) {
+            ticket.checkWaitTime();
+            return resolveStreaming(inputXml, ResponseFormat.negotiate(headers));
+        } catch (ServiceOverloadedException e) {
+            return overloadedResponse(e);
+        }
+    }
+
+    private Response resolveStreaming(InputStream inputXml, ResponseFormat format) {
+        SpooledPayload payload = null;
+        boolean handedOff = false; // true once the StreamingOutput owns the payload
+        try {
+            payload = SpooledPayload.read(inputXml, STREAM_SPOOL_THRESHOLD, STREAM_SPOOL_DIRECTORY);
+            if (payload.isBlank()) {
+                log.warn("Received empty or null XML input for streaming resolution.");
+                return errorResponse(Response.Status.BAD_REQUEST, "Request body requires XML content.");
+            }
+            log.info("Streaming request body: {} bytes ({}).", payload.size(), payload.isSpooled() ? "spooled to disk" : "in memory");
+
+            ResolvedDocument document = this.lskResolution.resolveDocument(payload.getBuffer());
+            if (format != ResponseFormat.XML) {
+                // Writing the mapping never reads the body, so the payload is released by the finally below
+                return mappingResponse(document, format).build();
+            }
+            final SpooledPayload ownedPayload = payload;
+            StreamingOutput body = out -> {
+                try {
+                    document.writeTo(out);
+                } finally {
+                    ownedPayload.close();
+                }
+            };
+            handedOff = true;
+            return Response.ok(body, MediaType.APPLICATION_XML).build();
+
+        } catch (SpooledPayload.PayloadTooLargeException e) {
+            log.warn("Streaming request rejected: {}", e.getMessage());
+            return errorResponse(Response.Status.REQUEST_ENTITY_TOO_LARGE, e.getMessage());
+        } catch (IOException e) {
+            log.warn("Failed to read streaming request body: {}", e.getMessage());
+            return errorResponse(Response.Status.BAD_REQUEST, "Could not read request body.");
+        } catch (PlaceholderFormatException e) {
+            log.warn("Placeholder format error during resolution: {}", e.getMessage());
+            return errorResponse(Response.Status.BAD_REQUEST, "Invalid placeholder format: " + e.getMessage());
+        } catch (LskGenerationException e) {
+            return generationFailure(e, "streaming resolution");
+        } catch (Exception e) { // Catch any other unexpected exceptions
+            log.error("Unexpected internal server error during LSK resolution: {}", e.getMessage(), e);
+            return errorResponse(Response.Status.INTERNAL_SERVER_ERROR, "An unexpected internal server error occurred.");
+        } finally {
+            if (payload != null && !handedOff) {
+                payload.close();
+            }
+        }
+    }
+
+    /**
+     * Resolves many documents in one request and one transaction.
+     * The body is a zip archive; every entry is scanned (in parallel), placeholders shared between
+     * entries resolve to the same value, each counter is reserved once for the whole batch, and the
+     * response is a zip with the same entry names holding the resolved documents.
+     * If any part of the scan or reservation fails, nothing is reserved.
+     */
+    @POST
+    @Path("/resolve/batch")
+    @Consumes(APPLICATION_ZIP)
+    @Produces(APPLICATION_ZIP)
+    public Response resolveLskBatch(InputStream zipArchive, @HeaderParam(CLIENT_ID_HEADER) String clientId) {
+        log.info("Received POST request on /api/logical-seed-key/resolve/batch");
+        try (AdmissionController.Ticket ticket = this.admissionController.admit(clientId)) {
+            ticket.checkWaitTime();
+            return resolveBatch(zipArchive);
+        } catch (ServiceOverloadedException e) {
+            return overloadedResponse(e);
+        }
+    }
+
+    private Response resolveBatch(InputStream zipArchive) {
+        List<String> names = new ArrayList<>();
+        Set<String> seenNames = new HashSet<>(); // Output entries are keyed by name, so each must be unique
+        List<SpooledPayload> payloads = new ArrayList<>();
+        boolean handedOff = false; // true once the StreamingOutput owns the payloads
+        long totalBytes = 0;
+        long heapBytes = 0; // Entries kept in memory; once one spool threshold is used up, the rest go to disk
+        try (ZipInputStream zipInput = new ZipInputStream(zipArchive)) {
+            ZipEntry entry;
+            while ((entry = zipInput.getNextEntry()) != null) {
+                if (entry.isDirectory()) {
+                    continue;
+                }
+                if (!seenNames.add(entry.getName())) {
+                    log.warn("Batch request rejected: duplicate entry name '{}'.", entry.getName());
+                    return errorResponse(Response.Status.BAD_REQUEST, "Duplicate entry name '" + entry.getName() + "' in zip archive.");
+                }
+                if (payloads.size() >= BATCH_MAX_DOCUMENTS) {
+                    return errorResponse(Response.Status.REQUEST_ENTITY_TOO_LARGE, "Batch exceeds " + BATCH_MAX_DOCUMENTS + " documents.");
+                }
+                int spoolThreshold = (int) Math.max(0, STREAM_SPOOL_THRESHOLD - heapBytes);
+                SpooledPayload payload;
+                try {
+                    payload = SpooledPayload.read(zipInput, spoolThreshold, STREAM_SPOOL_DIRECTORY, BATCH_MAX_TOTAL_BYTES - totalBytes);
+                } catch (SpooledPayload.PayloadTooLargeException e) {
+                    log.warn("Batch request rejected: decompressed entries exceed {} bytes.", BATCH_MAX_TOTAL_BYTES);
+                    return errorResponse(Response.Status.REQUEST_ENTITY_TOO_LARGE,
+                            "Decompressed batch exceeds " + BATCH_MAX_TOTAL_BYTES + " bytes (lsk.batch.maxTotalBytes).");
+                }
+                names.add(entry.getName());
+                payloads.add(payload);
+                totalBytes += payload.size();
+                if (!payload.isSpooled()) {
+                    heapBytes += payload.size();
+                }
+            }
+            if (payloads.isEmpty()) {
+                log.warn("Received batch request without documents.");
+                return errorResponse(Response.Status.BAD_REQUEST, "Request body requires a zip archive with at least one document.");
+            }
+            log.info("Batch request contains {} documents.", payloads.size());
+
+            List<ByteBuffer> documents = new ArrayList<>(payloads.size());
+            for (SpooledPayload payload : payloads) {
+                documents.add(payload.getBuffer());
+            }
+            List<ResolvedDocument> resolved = this.lskResolution.resolveDocuments(documents);
+
+            StreamingOutput body = out -> {
+                try (ZipOutputStream zipOutput = new ZipOutputStream(out)) {
+                    for (int i = 0; i < resolved.size(); i++) {
+                        zipOutput.putNextEntry(new ZipEntry(names.get(i)));
+                        resolved.get(i).writeTo(zipOutput);
+                        zipOutput.closeEntry();
+                    }
+                } finally {
+                    payloads.forEach(SpooledPayload::close);
+                }
+            };
+            handedOff = true;
+            return Response.ok(body, APPLICATION_ZIP).build();
+
+        } catch (SpooledPayload.PayloadTooLargeException e) {
+            log.warn("Batch request rejected: {}", e.getMessage());
+            return errorResponse(Response.Status.REQUEST_ENTITY_TOO_LARGE, e.getMessage());
+        } catch (IOException e) {
+            log.warn("Failed to read batch archive: {}", e.getMessage());
+            return errorResponse(Response.Status.BAD_REQUEST, "Could not read zip archive.");
+        } catch (PlaceholderFormatException e) {
+            log.warn("Placeholder format error during batch resolution: {}", e.getMessage());
+            return errorResponse(Response.Status.BAD_REQUEST, "Invalid placeholder format: " + e.getMessage());
+        } catch (LskGenerationException e) {
+            return generationFailure(e, "batch resolution");
+        } catch (Exception e) { // Catch any other unexpected exceptions
+            log.error("Unexpected internal server error during batch LSK resolution: {}", e.getMessage(), e);
+            return errorResponse(Response.Status.INTERNAL_SERVER_ERROR, "An unexpected internal server error occurred.");
+        } finally {
+            if (!handedOff) {
+                payloads.forEach(SpooledPayload::close);
+            }
+        }
+    }
+
+    /**
+     * Validate-only dry run for CI: reports what /resolve would reserve (per-counter counts),
+     * duplicate placeholders and the location of every malformed placeholder, without opening a
+     * database connection or going through admission control. Always 200; check the valid attribute.
+     */
+    @POST
+    @Path("/validate")
+    @Consumes(MediaType.APPLICATION_XML)
+    @Produces(MediaType.APPLICATION_XML)
+    public Response validateLsk(byte[] inputXml) {
+        log.info("Received POST request on /api/logical-seed-key/validate");
+        if (isBlank(inputXml)) {
+            return errorResponse(Response.Status.BAD_REQUEST, "Request body requires XML content.");
+        }
+        if (this.validationService == null) {
+            log.error("Critical error: validationService is null!");
+            return errorResponse(Response.Status.INTERNAL_SERVER_ERROR, "Internal server configuration error.");
+        }
+        PlaceholderValidation validation = this.validationService.validate(inputXml);
+
+        StringBuilder xml = new StringBuilder(512);
+        xml.append("<validation valid=\"").append(validation.isValid()).append("\">")
+                .append("<documentBytes>").append(validation.getDocumentBytes()).append("</documentBytes>")
+                .append("<occurrences>").append(validation.getOccurrenceCount()).append("</occurrences>")
+                .append("<uniquePlaceholders>").append(validation.getUniqueCount()).append("</uniquePlaceholders>");
+        xml.append("<counters>");
+        for (Map.Entry<CounterKey, PlaceholderValidation.CounterUsage> counter : validation.getCounters().entrySet()) {
+            xml.append("<counter table=\"").append(XmlUtils.escapeXml(counter.getKey().getTableName()))
+                    .append("\" column=\"").append(XmlUtils.escapeXml(counter.getKey().getColumnName()))
+                    .append("\" unique=\"").append(counter.getValue().getUnique())
+                    .append("\" occurrences=\"").append(counter.getValue().getOccurrences()).append("\"/>");
+        }
+        xml.append("</counters>");
+        xml.append("<duplicates count=\"").append(validation.getDuplicateCount()).append("\">");
+        for (PlaceholderValidation.Duplicate duplicate : validation.getDuplicates()) {
+            xml.append("<placeholder occurrences=\"").append(duplicate.getOccurrences()).append("\">")
+                    .append(XmlUtils.escapeXml(duplicate.getPlaceholder())).append("</placeholder>");
+        }
+        xml.append("</duplicates>");
+        xml.append("<malformed count=\"").append(validation.getMalformedCount()).append("\">");
+        for (PlaceholderValidation.Malformed issue : validation.getMalformed()) {
+            xml.append("<placeholder line=\"").append(issue.getLine())
+                    .append("\" column=\"").append(issue.getColumn())
+                    .append("\" reason=\"").append(XmlUtils.escapeXml(issue.getReason())).append("\">")
+                    .append(XmlUtils.escapeXml(issue.getText())).append("</placeholder>");
+        }
+        xml.append("</malformed></validation>");
+        return Response.ok(xml.toString(), MediaType.APPLICATION_XML).build();
+    }
+
+    /**
+     * Resolves every XML file of a Git revision in one pass and commits the result.
+     * The repository (inside git.allowedRoot on the server) is read straight from its object
+     * database; all counters are reserved once for the whole tree. Without a branch parameter no
+     * ref is changed and the new commit is only returned; with one, the branch is moved to the new
+     * commit if it still points at the resolved revision (409 otherwise).
+     *
+     * Example: POST /api/logical-seed-key/resolve/git?repository=configs&revision=main&branch=main
+     */
+    @POST
+    @Path("/resolve/git")
+    @Produces(MediaType.APPLICATION_XML)
+    public Response resolveLskGitTree(@QueryParam("repository") String repository,
+                                      @QueryParam("revision") @DefaultValue("HEAD") String revision,
+                                      @QueryParam("branch") String branch,
+                                      @QueryParam("message") String message,
+                                      @HeaderParam(CLIENT_ID_HEADER) String clientId) {
+        log.info("Received POST request on /api/logical-seed-key/resolve/git for repository '{}' at '{}'", repository, revision);
+        if (this.gitTreeResolution == null || !this.gitTreeResolution.isEnabled()) {
+            return errorResponse(Response.Status.NOT_FOUND, "Git resolution is disabled (git.allowedRoot is not set).");
+        }
+        try (AdmissionController.Ticket ticket = this.admissionController.admit(clientId)) {
+            ticket.checkWaitTime();
+            GitTreeResolution.Result result = this.gitTreeResolution.resolve(repository, revision,
+                    isBlank(branch) ? null : branch.trim(), message);
+            StringBuilder xml = new StringBuilder(256).append("<gitResolution>")
+                    .append("<baseCommit>").append(result.getBaseCommit()).append("</baseCommit>");
+            if (result.getCommit() != null) {
+                xml.append("<commit>").append(result.getCommit()).append("</commit>");
+            }
+            if (result.getUpdatedRef() != null) {
+                xml.append("<updatedRef>").append(XmlUtils.escapeXml(result.getUpdatedRef())).append("</updatedRef>");
+            }
+            xml.append("<filesScanned>").append(result.getFilesScanned()).append("</filesScanned>")
+                    .append("<filesResolved>").append(result.getFilesResolved()).append("</filesResolved>")
+                    .append("<placeholders>").append(result.getPlaceholders()).append("</placeholders>")
+                    .append("</gitResolution>");
+            return Response.ok(xml.toString(), MediaType.APPLICATION_XML).build();
+
+        } catch (ServiceOverloadedException e) {
+            return overloadedResponse(e);
+        } catch (GitResolutionException e) {
+            log.warn("Git tree resolution failed ({}): {}", e.getReason(), e.getMessage());
+            return errorResponse(gitErrorStatus(e.getReason()), e.getMessage());
+        } catch (LskGenerationException e) {
+            return generationFailure(e, "Git tree resolution");
+        } catch (PlaceholderFormatException e) {
+            log.warn("Placeholder format error during Git tree resolution: {}", e.getMessage());
+            return errorResponse(Response.Status.BAD_REQUEST, "Invalid placeholder format: " + e.getMessage());
+        } catch (Exception e) { // Catch any other unexpected exceptions
+            log.error("Unexpected internal server error during Git tree resolution: {}", e.getMessage(), e);
+            return errorResponse(Response.Status.INTERNAL_SERVER_ERROR, "An unexpected internal server error occurred.");
+        }
+    }
+
+    private static Response.Status gitErrorStatus(GitResolutionException.Reason reason) {
+        switch (reason) {
+            case INVALID_REQUEST:
+                return Response.Status.BAD_REQUEST;
+            case DISABLED:
+            case NOT_FOUND:
+                return Response.Status.NOT_FOUND;
+            case FORBIDDEN:
+                return Response.Status.FORBIDDEN;
+            case CONFLICT:
+                return Response.Status.CONFLICT;
+            case TOO_LARGE:
+                return Response.Status.REQUEST_ENTITY_TOO_LARGE;
+            default:
+                return Response.Status.INTERNAL_SERVER_ERROR;
+        }
+    }
+
+    /**
+     * Response representation of /resolve and /resolve/stream, chosen from the Accept header.
+     */
+    private enum ResponseFormat {
+        XML,    // The rewritten document (default, also for */* and a missing Accept header)
+        JSON,   // Mapping and ranges per counter as JSON
+        BINARY; // Mapping and ranges per counter, length-prefixed binary
+
+        // Acceptable types are already sorted by quality; the first one we can produce wins
+        static ResponseFormat negotiate(HttpHeaders headers) {
+            for (MediaType accepted : headers.getAcceptableMediaTypes()) {
+                if (accepted.isWildcardType() || accepted.isCompatible(MediaType.APPLICATION_XML_TYPE)) {
+                    return XML;
+                }
+                if (accepted.isCompatible(MediaType.APPLICATION_JSON_TYPE)) {
+                    return JSON;
+                }
+                if (accepted.isCompatible(MediaType.valueOf(APPLICATION_LSK_MAPPING))) {
+                    return BINARY;
+                }
+            }
+            return XML;
+        }
+    }
+
+    private static Response.ResponseBuilder mappingResponse(ResolvedDocument document, ResponseFormat format) {
+        if (format == ResponseFormat.JSON) {
+            StreamingOutput body = document::writeMappingJson;
+            return Response.ok(body, MediaType.APPLICATION_JSON);
+        }
+        StreamingOutput body = document::writeMappingBinary;
+        return Response.ok(body, APPLICATION_LSK_MAPPING);
+    }
+
+    /**
+     * Maps a failed reservation to a response: 503 with Retry-After when retrying later can help
+     * (pool exhausted, counters contended for the whole retry budget; nothing was reserved), 500
+     * otherwise.
+     *
+     * @param operation For the log message, e.g. "batch resolution".
+     */
+    private static Response generationFailure(LskGenerationException e, String operation) {
+        if (e.getCause() instanceof SQLTransientConnectionException) {
+            // Pool exhausted despite admission control (e.g. other pool users): tell the client to retry
+            log.warn("No database connection available for {}: {}", operation, e.getMessage());
+            return overloadedResponse(new ServiceOverloadedException("No database connection available.", 1));
+        }
+        if (ReservationRetryPolicy.isRetryable(e)) {
+            log.warn("Reservation conflicts persisted after retries during {}: {}", operation, e.getMessage());
+            return overloadedResponse(new ServiceOverloadedException("Counters are contended, retry shortly.", 1));
+        }
+        log.error("LSK Generation or DB error during {}: {}", operation, e.getMessage(), e);
+        return errorResponse(Response.Status.INTERNAL_SERVER_ERROR, "LSK generation failed: " + e.getMessage());
+    }
+
+    private static Response overloadedResponse(ServiceOverloadedException e) {
+        return Response.status(Response.Status.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, e.getRetryAfterSeconds())
+                .entity("<error>Service overloaded: " + e.getMessage() + "</error>")
+                .type(MediaType.APPLICATION_XML)
+                .build();
+    }
+
+    private static Response errorResponse(Response.Status status, String message) {
+        return Response.status(status)
+                .entity("<error>" + XmlUtils.escapeXml(message) + "</error>")
+                .type(MediaType.APPLICATION_XML)
+                .build();
+    }
+
+    private static boolean isBlank(String value) {
+        return value == null || value.trim().isEmpty();
+    }
+
+    // Equivalent of trim().isEmpty() without decoding or copying the body
+    private static boolean isBlank(byte[] body) {
+        if (body == null) {
+            return true;
+        }
+        for (byte b : body) {
+            if ((b & 0xFF) > ' ') {
+                return false;
+            }
+        }
+        return true;
+    }
+}
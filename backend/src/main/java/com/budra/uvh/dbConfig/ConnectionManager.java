@@ -1,24 +1,59 @@
 package com.budra.uvh.dbConfig;
 
+import com.budra.uvh.config.UvhConfig;
+import com.budra.uvh.metrics.Metrics;
 import com.zaxxer.hikari.HikariConfig;
 import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.IOException;
-import java.io.InputStream;
 import java.sql.Connection;
+import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.util.Collections;
+import java.util.Map;
 import java.util.Properties;
+import java.util.function.ToIntFunction;
 
 public class ConnectionManager {
     private static final Logger log = LoggerFactory.getLogger(ConnectionManager.class);
-    private static final String CONFIG_FILE = "/uvh_config.properties"; // Ensure this is in src/main/resources
 
-    private static HikariDataSource dataSource; // Keep this static
+    private static volatile HikariDataSource dataSource; // Keep this static
+
+    // Pool creation is lazy and retryable: a failed attempt (e.g. database not up yet) no longer
+    // leaves the class permanently broken. Request threads retry at most once per retry interval;
+    // the startup warm-up (StartupListener) retries in the background until it succeeds.
+    private static final long INIT_RETRY_INTERVAL_MILLIS = UvhConfig.getLong("db.pool.initRetryMillis", 5000);
+    private static volatile long lastInitAttemptMillis;
+    private static volatile String lastInitError;
+    private static volatile boolean closed;
 
-    // Static initializer block: runs once when the class is loaded
     static {
+        Metrics.registerGauges("hikaricp_connections_active", "Connections in use.", null,
+                () -> poolSample(HikariPoolMXBean::getActiveConnections));
+        Metrics.registerGauges("hikaricp_connections_idle", "Idle connections.", null,
+                () -> poolSample(HikariPoolMXBean::getIdleConnections));
+        Metrics.registerGauges("hikaricp_connections", "Total connections.", null,
+                () -> poolSample(HikariPoolMXBean::getTotalConnections));
+        Metrics.registerGauges("hikaricp_connections_pending", "Threads waiting for a connection.", null,
+                () -> poolSample(HikariPoolMXBean::getThreadsAwaitingConnection));
+        Metrics.registerGauge("hikaricp_connections_max", "Maximum pool size.", ConnectionManager::getMaximumPoolSize);
+    }
+
+    /**
+     * Creates the HikariCP pool if it does not exist yet.
+     *
+     * @return true if the pool is available afterwards.
+     */
+    public static synchronized boolean initialize() {
+        if (dataSource != null) {
+            return true;
+        }
+        if (closed) {
+            return false; // Application is shutting down
+        }
+        lastInitAttemptMillis = System.currentTimeMillis();
         log.info("Initializing HikariCP connection pool...");
         Properties props = null; // Initialize to null
         HikariConfig config = null; // Initialize to null
@@ -56,11 +91,14 @@ public class ConnectionManager {
 
             log.info("HikariConfig object created. Attempting to initialize HikariDataSource...");
             dataSource = new HikariDataSource(config); // <<< Point of potential failure
+            lastInitError = null;
             log.info("HikariCP DataSource initialized successfully for JDBC URL: {}", config.getJdbcUrl());
+            return true;
 
         } catch (Exception e) {
+            lastInitError = e.getMessage();
             // Log the full stack trace of the exception 'e'
-            log.error("!!! CRITICAL: Failed to initialize HikariCP DataSource !!!", e);
+            log.error("!!! CRITICAL: Failed to initialize HikariCP DataSource (will retry) !!!", e);
             // Optionally log config again if helpful
             if (config != null) {
                 log.error("Failed configuration details: URL={}, User={}, Driver={}", config.getJdbcUrl(), config.getUsername(), config.getDriverClassName());
@@ -69,29 +107,46 @@ public class ConnectionManager {
             } else {
                 log.error("Properties could not be loaded.");
             }
+            return false;
         }
     }
 
-    // loadProperties method remains the same as you provided
+    /**
+     * Opens one connection and validates it, so driver classes, TLS/auth handshakes and the
+     * first server round trip are paid before traffic arrives. HikariCP fills db.pool.minIdle on its own.
+     *
+     * @return true if a valid connection could be obtained.
+     */
+    public static boolean warmUp() {
+        try (Connection connection = getConnection()) {
+            return connection.isValid(5);
+        } catch (SQLException e) {
+            log.warn("Connection pool warm-up failed: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * @return true if the pool exists and is open.
+     */
+    public static boolean isAvailable() {
+        HikariDataSource current = dataSource;
+        return current != null && !current.isClosed();
+    }
+
+    /**
+     * @return Message of the last failed initialization, or null if the last attempt succeeded.
+     */
+    public static String getLastInitError() {
+        return lastInitError;
+    }
+
+    // Settings come from UvhConfig (uvh_config.properties); fall back to local defaults if nothing was loaded
     private static Properties loadProperties() {
-        Properties props = new Properties();
-        try (InputStream input = ConnectionManager.class.getResourceAsStream(CONFIG_FILE)) {
-            if (input == null) {
-                log.warn("!!! {} not found on classpath. Using hardcoded defaults (NOT recommended for production).", CONFIG_FILE);
-                // Set some basic defaults if file not found
-                props.setProperty("db.url", "jdbc:postgresql://localhost:5432/postgres"); // Example DB name
-                props.setProperty("db.user", "postgres"); // Corrected property name
-                props.setProperty("db.password", "1234"); // Corrected property name
-                props.setProperty("db.driver", "org.postgresql.Driver");
-                props.setProperty("db.pool.maxSize", "5");
-                return props;
-            }
-            props.load(input);
-            log.info("Loaded database configuration from {}", CONFIG_FILE);
-        } catch (IOException e) {
-            log.error("!!! Error loading database configuration file: {}. Using defaults.", CONFIG_FILE, e);
-            // Set defaults on error too
-            props.setProperty("db.url", "jdbc:postgresql://localhost:5432/postgres");
+        Properties props = UvhConfig.getProperties();
+        if (props.isEmpty()) {
+            log.warn("!!! No configuration loaded. Using hardcoded database defaults (NOT recommended for production).");
+            props.setProperty("db.url", "jdbc:postgresql://localhost:5432/postgres"); // Example DB name
             props.setProperty("db.user", "postgres"); // Corrected property name
             props.setProperty("db.password", "1234"); // Corrected property name
             props.setProperty("db.driver", "org.postgresql.Driver");
@@ -107,16 +162,122 @@ public class ConnectionManager {
      * @throws SQLException if the DataSource was not initialized or fails to provide a connection.
      */
     public static Connection getConnection() throws SQLException {
-        if (dataSource == null) {
-            log.error("Datasource is null! Initialization likely failed during class loading.");
-            throw new SQLException("Database connection pool is not available. Check application startup logs.");
+        HikariDataSource current = dataSource;
+        if (current == null) {
+            // Retry creation, but not on every request while the database is down
+            if (System.currentTimeMillis() - lastInitAttemptMillis >= INIT_RETRY_INTERVAL_MILLIS) {
+                initialize();
+            }
+            current = dataSource;
+            if (current == null) {
+                log.error("Datasource is null! Pool initialization failed: {}", lastInitError);
+                throw new SQLException("Database connection pool is not available: " + lastInitError);
+            }
         }
         log.trace("Requesting connection from pool...");
-        Connection conn = dataSource.getConnection(); // This might block if pool is exhausted
+        long acquireStart = System.nanoTime();
+        Connection conn = current.getConnection(); // This might block if pool is exhausted
+        Metrics.CONNECTION_ACQUIRE.recordSince(acquireStart);
         log.trace("Connection obtained from pool.");
         return conn;
     }
 
+    /**
+     * Opens a connection outside the pool, for long-lived sessions (LISTEN) that would otherwise
+     * hold a pool connection forever. The caller closes it.
+     *
+     * @throws SQLException If the database cannot be reached.
+     */
+    public static Connection openDedicatedConnection() throws SQLException {
+        return openDedicatedConnection(loadProperties(), null);
+    }
+
+    /**
+     * Opens an unpooled connection to the main database (shard == null) or to a counter shard.
+     *
+     * @param props Settings to use (uvh_config.properties, or a file given to an offline tool).
+     * @param shard Shard name from db.shards; its db.shard.&lt;name&gt;.* settings override db.*.
+     */
+    public static Connection openDedicatedConnection(Properties props, String shard) throws SQLException {
+        String dbDriver = shardSetting(props, shard, "driver", "org.postgresql.Driver");
+        try {
+            Class.forName(dbDriver);
+        } catch (ClassNotFoundException e) {
+            throw new SQLException("JDBC driver not found: " + dbDriver, e);
+        }
+        return DriverManager.getConnection(
+                shardSetting(props, shard, "url", "jdbc:postgresql://localhost:5432/postgres"),
+                shardSetting(props, shard, "user", "postgres"),
+                shardSetting(props, shard, "password", "1234"));
+    }
+
+    /**
+     * Creates the HikariCP pool of one counter shard (see ShardRing). Connection and pool settings
+     * come from db.shard.&lt;name&gt;.* and fall back to the db.* value of the same name, so a shard
+     * usually only needs its url (which is required). The caller owns (and closes) the pool.
+     */
+    public static HikariDataSource createShardDataSource(String shard) {
+        Properties props = loadProperties();
+        HikariConfig config = new HikariConfig();
+        config.setPoolName("uvh-shard-" + shard);
+        config.setJdbcUrl(shardSetting(props, shard, "url", null));
+        config.setUsername(shardSetting(props, shard, "user", "postgres"));
+        config.setPassword(shardSetting(props, shard, "password", "1234"));
+        config.setDriverClassName(shardSetting(props, shard, "driver", "org.postgresql.Driver"));
+        config.setMaximumPoolSize(Integer.parseInt(shardSetting(props, shard, "pool.maxSize", "10")));
+        config.setMinimumIdle(Integer.parseInt(shardSetting(props, shard, "pool.minIdle", "2")));
+        config.setIdleTimeout(Long.parseLong(shardSetting(props, shard, "pool.idleTimeout", "600000")));
+        config.setConnectionTimeout(Long.parseLong(shardSetting(props, shard, "pool.connectionTimeout", "30000")));
+        config.setMaxLifetime(Long.parseLong(shardSetting(props, shard, "pool.maxLifetime", "1800000")));
+        // Let the pool start even if the shard is down; requests for its counters fail until it is back
+        config.setInitializationFailTimeout(-1);
+        log.info("Creating connection pool for counter shard '{}' ({}).", shard, config.getJdbcUrl());
+        return new HikariDataSource(config);
+    }
+
+    private static String shardSetting(Properties props, String shard, String key, String defaultValue) {
+        String value = shard == null ? null : props.getProperty("db.shard." + shard + "." + key);
+        // A shard never falls back to the main database's url: that would silently merge the two
+        if ((value == null || value.trim().isEmpty()) && (shard == null || !"url".equals(key))) {
+            value = props.getProperty("db." + key);
+        }
+        if (value == null || value.trim().isEmpty()) {
+            if (defaultValue == null || shard != null && "url".equals(key)) {
+                throw new IllegalArgumentException("Missing setting db.shard." + shard + "." + key);
+            }
+            return defaultValue;
+        }
+        return value.trim();
+    }
+
+    /**
+     * @return Live pool statistics (active, idle, waiting threads), or null if the pool is not available.
+     */
+    public static HikariPoolMXBean getPoolStatistics() {
+        HikariDataSource current = dataSource;
+        if (current == null || current.isClosed()) {
+            return null;
+        }
+        return current.getHikariPoolMXBean();
+    }
+
+    /**
+     * @return The configured maximum pool size, or the db.pool.maxSize default if the pool is not available.
+     */
+    public static int getMaximumPoolSize() {
+        HikariDataSource current = dataSource;
+        if (current == null) {
+            return UvhConfig.getInt("db.pool.maxSize", 10);
+        }
+        return current.getMaximumPoolSize();
+    }
+
+    // One unlabelled sample while the pool is running, none otherwise
+    private static Map<String, Integer> poolSample(ToIntFunction<HikariPoolMXBean> read) {
+        HikariPoolMXBean pool = getPoolStatistics();
+        return pool == null ? Collections.emptyMap() : Collections.singletonMap(null, read.applyAsInt(pool));
+    }
+
     /**
      * Private constructor to prevent instantiation of this utility class.
      */
@@ -125,11 +286,11 @@ public class ConnectionManager {
     }
 
     /**
-     * Optional: Add a shutdown hook or a manual method to close the DataSource
-     * when the application stops, especially in non-server environments.
-     * For web applications, the server shutdown usually handles this implicitly if managed correctly.
+     * Closes the DataSource when the application stops (called by StartupListener on undeploy).
+     * The pool is not recreated afterwards.
      */
-    public static void closeDataSource() {
+    public static synchronized void closeDataSource() {
+        closed = true;
         if (dataSource != null && !dataSource.isClosed()) {
             log.info("Closing HikariCP DataSource...");
             dataSource.close();
@@ -0,0 +1,179 @@
+package com.budra.uvh.dbConfig;
+
+import com.budra.uvh.model.LskCounterRepository;
+import com.budra.uvh.utils.CounterKey;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Offline tool that carries counters over to their new shard when db.shards (or a shard weight,
+ * or db.ring.virtualNodes) changes.
+ *
+ *   java -cp uvh.jar:lib/* com.budra.uvh.dbConfig.ShardRebalancer \
+ *        --from uvh_config.properties --to uvh_config.new.properties [--gap 1000] [--apply]
+ *
+ * It reads every counter from every shard of the --from layout, takes the highest value seen for
+ * each (stale rows of earlier rebalances included), and for every counter whose owner differs
+ * under the --to ring raises the new owner's row to that value + gap (GREATEST, never lowers).
+ * Without --apply it only prints the plan. Source rows are left in place: ShardedCounterStore
+ * ignores rows of counters a shard does not own, and keeping them makes rolling back to the old
+ * configuration safe (run the tool again with --from/--to swapped).
+ *
+ * Procedure (the tool itself is idempotent, so any step can be repeated):
+ *  1. Create the LogicalSeedKeyCounters table (same schema) on every new shard.
+ *  2. Stop every node, or at least stop /resolve traffic: a node still running the old ring would
+ *     keep reserving on the old owner after its value has been copied, and hand out duplicates.
+ *  3. Run without --apply and check the plan.
+ *  4. Run with --apply.
+ *  5. Deploy the --to file as uvh_config.properties and start the nodes.
+ * --gap (default 0) adds headroom so that a reservation missed in step 2 still cannot collide.
+ */
+public final class ShardRebalancer {
+    private static final Logger log = LoggerFactory.getLogger(ShardRebalancer.class);
+
+    // Without db.shards the layout is the single db.* database, modelled as one shard
+    private static final String SINGLE = "(db)";
+
+    private final Properties fromProps;
+    private final Properties toProps;
+    private final ShardRing fromRing;
+    private final ShardRing toRing;
+    private final LskCounterRepository repository = new LskCounterRepository();
+
+    public ShardRebalancer(Properties fromProps, Properties toProps) {
+        this.fromProps = fromProps;
+        this.toProps = toProps;
+        this.fromRing = ringOrSingle(fromProps);
+        this.toRing = ringOrSingle(toProps);
+    }
+
+    public static void main(String[] args) throws Exception {
+        String from = null;
+        String to = null;
+        long gap = 0;
+        boolean apply = false;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--from": from = args[++i]; break;
+                case "--to": to = args[++i]; break;
+                case "--gap": gap = Long.parseLong(args[++i]); break;
+                case "--apply": apply = true; break;
+                default: throw new IllegalArgumentException("Unknown argument: " + args[i]);
+            }
+        }
+        if (from == null || to == null || gap < 0) {
+            System.err.println("Usage: ShardRebalancer --from <current.properties> --to <new.properties> [--gap N] [--apply]");
+            System.exit(2);
+        }
+        ShardRebalancer rebalancer = new ShardRebalancer(load(from), load(to));
+        List<Move> moves = rebalancer.plan(gap);
+        for (Move move : moves) {
+            System.out.println(move);
+        }
+        System.out.println(moves.size() + " counter(s) to move" + (apply ? "." : " (dry run, pass --apply to write)."));
+        if (apply) {
+            rebalancer.apply(moves);
+            System.out.println("Done. Deploy " + to + " as uvh_config.properties before restarting the nodes.");
+        }
+    }
+
+    /**
+     * Reads all source shards and lists the counters whose owner changes.
+     */
+    public List<Move> plan(long gap) throws SQLException {
+        SortedMap<CounterKey, Long> highest = new TreeMap<>();
+        for (String shard : fromRing.getShards()) {
+            try (Connection connection = ConnectionManager.openDedicatedConnection(fromProps, shardName(shard))) {
+                SortedMap<CounterKey, Long> values = repository.readAll(connection);
+                log.info("Read {} counters from shard '{}'.", values.size(), shard);
+                values.forEach((counter, value) -> highest.merge(counter, value, Math::max));
+            }
+        }
+        List<Move> moves = new ArrayList<>();
+        for (Map.Entry<CounterKey, Long> entry : highest.entrySet()) {
+            String source = fromRing.shardFor(entry.getKey());
+            String target = toRing.shardFor(entry.getKey());
+            if (!source.equals(target)) {
+                moves.add(new Move(entry.getKey(), source, target, entry.getValue() + gap));
+            }
+        }
+        return moves;
+    }
+
+    /**
+     * Raises every moved counter on its target shard; one transaction per target shard.
+     */
+    public void apply(List<Move> moves) throws SQLException {
+        Map<String, List<Move>> byTarget = new TreeMap<>();
+        moves.forEach(move -> byTarget.computeIfAbsent(move.target, k -> new ArrayList<>()).add(move));
+        for (Map.Entry<String, List<Move>> target : byTarget.entrySet()) {
+            try (Connection connection = ConnectionManager.openDedicatedConnection(toProps, shardName(target.getKey()))) {
+                connection.setAutoCommit(false);
+                try {
+                    for (Move move : target.getValue()) {
+                        long result = repository.raiseTo(connection, move.counter, move.value);
+                        log.debug("{} is now {} on shard '{}'.", move.counter, result, target.getKey());
+                    }
+                    connection.commit();
+                } catch (SQLException | RuntimeException e) {
+                    connection.rollback();
+                    throw e;
+                }
+            }
+            log.info("Moved {} counters to shard '{}'.", target.getValue().size(), target.getKey());
+        }
+    }
+
+    private static ShardRing ringOrSingle(Properties props) {
+        ShardRing ring = ShardRing.fromProperties(props);
+        return ring != null ? ring : new ShardRing(Map.of(SINGLE, 1), 1);
+    }
+
+    private static String shardName(String shard) {
+        return SINGLE.equals(shard) ? null : shard;
+    }
+
+    private static Properties load(String file) throws IOException {
+        Properties props = new Properties();
+        try (InputStream in = Files.newInputStream(Paths.get(file))) {
+            props.load(in);
+        }
+        return props;
+    }
+
+    /**
+     * One counter that changes owner, and the value its new shard must be raised to.
+     */
+    public static final class Move {
+        private final CounterKey counter;
+        private final String source;
+        private final String target;
+        private final long value;
+
+        Move(CounterKey counter, String source, String target, long value) {
+            this.counter = counter;
+            this.source = source;
+            this.target = target;
+            this.value = value;
+        }
+
+        @Override
+        public String toString() {
+            return counter + ": " + source + " -> " + target + " (raise to " + value + ")";
+        }
+    }
+}
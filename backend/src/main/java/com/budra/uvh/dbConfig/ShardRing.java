@@ -0,0 +1,131 @@
+package com.budra.uvh.dbConfig;
+
+import com.budra.uvh.config.UvhConfig;
+import com.budra.uvh.utils.CounterKey;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Consistent-hash ring that assigns every counter ("Table:Column") to one counter shard.
+ *
+ * Configured in uvh_config.properties:
+ *   db.shards=a,b,c                      shard names; unset = no sharding (single db.url)
+ *   db.shard.a.url=jdbc:postgresql://... per-shard settings, see ConnectionManager#createShardDataSource
+ *   db.shard.a.weight=1                  relative share of the ring (more virtual nodes)
+ *   db.ring.virtualNodes=128             virtual nodes per unit of weight
+ *
+ * Each shard is placed on the ring at virtualNodes * weight points (MD5 of "name#i"); a counter
+ * belongs to the first point at or after the MD5 of its name. Adding a shard therefore moves only
+ * about 1/n of the counters, all of them to the new shard. The mapping depends only on the shard
+ * names, weights and virtualNodes, so every node (and ShardRebalancer) computes the same owner.
+ */
+public final class ShardRing {
+    private static final Logger log = LoggerFactory.getLogger(ShardRing.class);
+
+    private final TreeMap<Long, String> ring = new TreeMap<>();
+    private final List<String> shards;
+    private final ConcurrentHashMap<CounterKey, String> routes = new ConcurrentHashMap<>(); // The ring never changes
+
+    /**
+     * @return The ring configured by db.shards in uvh_config.properties, or null if sharding is not configured.
+     */
+    public static ShardRing fromConfig() {
+        return fromProperties(UvhConfig.getProperties());
+    }
+
+    /**
+     * @return The ring configured by db.shards in {@code props}, or null if db.shards is not set.
+     */
+    public static ShardRing fromProperties(Properties props) {
+        String names = props.getProperty("db.shards", "").trim();
+        if (names.isEmpty()) {
+            return null;
+        }
+        int virtualNodes = Integer.parseInt(props.getProperty("db.ring.virtualNodes", "128").trim());
+        Map<String, Integer> weights = new TreeMap<>();
+        for (String name : names.split(",")) {
+            String shard = name.trim();
+            if (shard.isEmpty()) {
+                continue;
+            }
+            int weight = Integer.parseInt(props.getProperty("db.shard." + shard + ".weight", "1").trim());
+            if (weights.put(shard, weight) != null) {
+                throw new IllegalArgumentException("Shard '" + shard + "' is listed twice in db.shards.");
+            }
+        }
+        return new ShardRing(weights, virtualNodes);
+    }
+
+    /**
+     * @param weights      Shard name -> weight (> 0).
+     * @param virtualNodes Ring points per unit of weight.
+     */
+    public ShardRing(Map<String, Integer> weights, int virtualNodes) {
+        if (weights.isEmpty() || virtualNodes <= 0) {
+            throw new IllegalArgumentException("A shard ring needs at least one shard and virtualNodes > 0.");
+        }
+        MessageDigest md5 = newDigest();
+        for (Map.Entry<String, Integer> entry : weights.entrySet()) {
+            if (entry.getValue() <= 0) {
+                throw new IllegalArgumentException("Weight of shard '" + entry.getKey() + "' must be positive.");
+            }
+            for (int i = 0; i < virtualNodes * entry.getValue(); i++) {
+                long point = hash(md5, entry.getKey() + "#" + i);
+                String previous = ring.putIfAbsent(point, entry.getKey());
+                if (previous != null && entry.getKey().compareTo(previous) < 0) {
+                    ring.put(point, entry.getKey()); // Collision: deterministic winner, independent of insertion order
+                }
+            }
+        }
+        this.shards = Collections.unmodifiableList(new ArrayList<>(weights.keySet()));
+        log.info("Shard ring created: shards={}, virtualNodes={}, points={}", shards, virtualNodes, ring.size());
+    }
+
+    /**
+     * @return The shard that owns {@code counter}.
+     */
+    public String shardFor(CounterKey counter) {
+        return routes.computeIfAbsent(counter, key -> {
+            long point = hash(newDigest(), key.toString());
+            Map.Entry<Long, String> owner = ring.ceilingEntry(point);
+            return owner != null ? owner.getValue() : ring.firstEntry().getValue();
+        });
+    }
+
+    /**
+     * @return Shard names in name order.
+     */
+    public List<String> getShards() {
+        return shards;
+    }
+
+    // First 8 bytes of the MD5 digest; MD5 is used for its spread, not for security
+    private static long hash(MessageDigest md5, String value) {
+        byte[] digest = md5.digest(value.getBytes(StandardCharsets.UTF_8));
+        long hash = 0;
+        for (int i = 0; i < Long.BYTES; i++) {
+            hash = (hash << 8) | (digest[i] & 0xFF);
+        }
+        return hash;
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("MD5 is not available", e); // Required on every Java platform
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.budra.uvh.exception;
+
+public class GitResolutionException extends RuntimeException { // Repository, revision or branch problems
+
+    public enum Reason {
+        DISABLED,       // git.allowedRoot is not configured
+        INVALID_REQUEST, // Malformed revision or branch name
+        FORBIDDEN,      // Repository outside git.allowedRoot
+        NOT_FOUND,      // No repository, or the revision does not exist
+        CONFLICT,       // Target branch moved or is not at the resolved revision
+        TOO_LARGE,      // A matching blob exceeds git.maxBlobBytes
+        REPOSITORY_ERROR // I/O error reading or writing the repository
+    }
+
+    private final Reason reason;
+
+    public GitResolutionException(Reason reason, String message) {
+        super(message);
+        this.reason = reason;
+    }
+
+    public GitResolutionException(Reason reason, String message, Throwable cause) {
+        super(message, cause);
+        this.reason = reason;
+    }
+
+    public Reason getReason() {
+        return reason;
+    }
+}
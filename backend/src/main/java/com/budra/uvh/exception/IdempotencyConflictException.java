@@ -0,0 +1,11 @@
+package com.budra.uvh.exception;
+
+/**
+ * An Idempotency-Key was reused with a different request body.
+ */
+public class IdempotencyConflictException extends RuntimeException {
+
+    public IdempotencyConflictException(String message) {
+        super(message);
+    }
+}
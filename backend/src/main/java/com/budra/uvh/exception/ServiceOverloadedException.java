@@ -0,0 +1,15 @@
+package com.budra.uvh.exception;
+
+public class ServiceOverloadedException extends RuntimeException { // Mapped to 503 + Retry-After
+
+    private final long retryAfterSeconds;
+
+    public ServiceOverloadedException(String message, long retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
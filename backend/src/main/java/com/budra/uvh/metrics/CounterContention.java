@@ -0,0 +1,38 @@
+package com.budra.uvh.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Conflict and retry counts of one counter (table:column).
+ * A conflicting transaction usually covers several counters and the database does not say which
+ * lock was contended, so every counter of the transaction is charged.
+ */
+public final class CounterContention {
+    private final LongAdder conflicts = new LongAdder(); // Deadlocks, serialization failures, lock timeouts
+    private final LongAdder retries = new LongAdder();   // Transactions run again after a conflict
+    private final LongAdder exhausted = new LongAdder(); // Reservations that gave up (attempts or deadline)
+
+    public void recordConflict() {
+        conflicts.increment();
+    }
+
+    public void recordRetry() {
+        retries.increment();
+    }
+
+    public void recordExhausted() {
+        exhausted.increment();
+    }
+
+    public long getConflicts() {
+        return conflicts.sum();
+    }
+
+    public long getRetries() {
+        return retries.sum();
+    }
+
+    public long getExhausted() {
+        return exhausted.sum();
+    }
+}
@@ -0,0 +1,87 @@
+package com.budra.uvh.metrics;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free fixed-bucket histogram (Prometheus style).
+ * Recording is a binary search plus two adder increments, so it is safe to call on every request.
+ */
+public final class Histogram {
+    // Seconds: 50 µs .. 30 s
+    static final double[] LATENCY_BUCKETS = {
+            0.00005, 0.0001, 0.00025, 0.0005, 0.001, 0.0025, 0.005, 0.01, 0.025, 0.05,
+            0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30};
+    // Bytes: 1 KB .. 1 GB
+    static final double[] SIZE_BUCKETS = {
+            1024, 10 * 1024, 100 * 1024, 1024 * 1024, 10 * 1024 * 1024, 100 * 1024 * 1024, 1024 * 1024 * 1024};
+    // Counts: 1 .. 1M
+    static final double[] COUNT_BUCKETS = {1, 5, 10, 50, 100, 500, 1000, 5000, 10_000, 50_000, 100_000, 1_000_000};
+
+    private final double[] upperBounds;
+    private final LongAdder[] buckets; // non-cumulative; the last one is +Inf
+    private final LongAdder count = new LongAdder();
+    private final DoubleAdder sum = new DoubleAdder();
+
+    Histogram(double[] upperBounds) {
+        this.upperBounds = upperBounds.clone();
+        this.buckets = new LongAdder[upperBounds.length + 1];
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    public static Histogram latency() {
+        return new Histogram(LATENCY_BUCKETS);
+    }
+
+    public void record(double value) {
+        int index = Arrays.binarySearch(upperBounds, value);
+        if (index < 0) {
+            index = -index - 1; // first bound >= value
+        }
+        buckets[index].increment();
+        count.increment();
+        sum.add(value);
+    }
+
+    /**
+     * Records a duration measured with System.nanoTime(), in seconds.
+     */
+    public void recordNanos(long nanos) {
+        record(nanos / 1_000_000_000.0);
+    }
+
+    /**
+     * Records the time elapsed since {@code startNanos} (a System.nanoTime() value).
+     */
+    public void recordSince(long startNanos) {
+        recordNanos(System.nanoTime() - startNanos);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public double getSum() {
+        return sum.sum();
+    }
+
+    double[] getUpperBounds() {
+        return upperBounds;
+    }
+
+    /**
+     * @return Cumulative bucket counts; the last entry is the +Inf bucket.
+     */
+    long[] getCumulativeCounts() {
+        long[] cumulative = new long[buckets.length];
+        long running = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            running += buckets[i].sum();
+            cumulative[i] = running;
+        }
+        return cumulative;
+    }
+}
@@ -0,0 +1,196 @@
+package com.budra.uvh.metrics;
+
+import com.budra.uvh.config.UvhConfig;
+import com.budra.uvh.utils.CounterKey;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.DoubleSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Process-wide metrics for the resolution pipeline.
+ * Each phase has its own histogram; instrumented code records into them directly.
+ * Long-lived components (pools, caches, queues) register gauges and counters that are read at
+ * scrape time, so the exporter does not need to know where they live.
+ * Served in Prometheus text format by MetricsResource (/api/metrics).
+ */
+public final class Metrics {
+
+    // --- Per-phase latency (seconds) ---
+    public static final Histogram SCAN = Histogram.latency();
+    public static final Histogram CONNECTION_ACQUIRE = Histogram.latency();
+    public static final Histogram COMMIT = Histogram.latency();
+    public static final Histogram REWRITE = Histogram.latency();
+    // One bulk reservation statement/batch covering all counters of a request
+    public static final Histogram BULK_RESERVATION = Histogram.latency();
+
+    // Time a reservation waits in the request combiner before its batch starts
+    public static final Histogram COMBINER_WAIT = Histogram.latency();
+
+    // --- Request shape ---
+    public static final Histogram DOCUMENT_BYTES = new Histogram(Histogram.SIZE_BUCKETS);
+    public static final Histogram PLACEHOLDER_OCCURRENCES = new Histogram(Histogram.COUNT_BUCKETS);
+    public static final Histogram UNIQUE_PLACEHOLDERS = new Histogram(Histogram.COUNT_BUCKETS);
+
+    // Requests combined into one reservation by CombiningCounterStore
+    public static final Histogram COMBINER_BATCH_REQUESTS = new Histogram(Histogram.COUNT_BUCKETS);
+
+    // Per-counter series are kept for at most this many counters; later counters share the
+    // "other" series, so a stream of distinct table:column names cannot grow memory or scrape size
+    // without bound. The check is not atomic, concurrent first uses may exceed it by a few entries.
+    private static final int MAX_COUNTERS = Math.max(0, UvhConfig.getInt("lsk.metrics.maxCounters", 1000));
+    static final String OTHER_COUNTERS = "other";
+
+    // Reservation latency per counter (table:column)
+    private static final ConcurrentHashMap<CounterKey, Histogram> RESERVATION_BY_COUNTER = new ConcurrentHashMap<>();
+    private static final Histogram RESERVATION_OTHER = Histogram.latency();
+
+    /**
+     * Histogram of reservation latency for one counter (or the shared "other" histogram once
+     * lsk.metrics.maxCounters counters are tracked). In bulk reservations every counter of the
+     * batch records the duration of the whole bulk call.
+     */
+    public static Histogram reservation(CounterKey counter) {
+        Histogram histogram = RESERVATION_BY_COUNTER.get(counter);
+        if (histogram != null) {
+            return histogram;
+        }
+        if (RESERVATION_BY_COUNTER.size() >= MAX_COUNTERS) {
+            return RESERVATION_OTHER;
+        }
+        return RESERVATION_BY_COUNTER.computeIfAbsent(counter, k -> Histogram.latency());
+    }
+
+    /**
+     * @return Histograms by counter label, in counter order, followed by "other" if it was used.
+     */
+    static Map<String, Histogram> reservationsByCounter() {
+        Map<String, Histogram> byCounter = new LinkedHashMap<>();
+        new TreeMap<>(RESERVATION_BY_COUNTER).forEach((counter, histogram) -> byCounter.put(counter.toString(), histogram));
+        long[] otherCounts = RESERVATION_OTHER.getCumulativeCounts();
+        if (otherCounts[otherCounts.length - 1] > 0) {
+            byCounter.put(OTHER_COUNTERS, RESERVATION_OTHER);
+        }
+        return byCounter;
+    }
+
+    // Reservation conflicts and retries per counter (table:column)
+    private static final ConcurrentHashMap<CounterKey, CounterContention> CONTENTION_BY_COUNTER = new ConcurrentHashMap<>();
+    private static final CounterContention CONTENTION_OTHER = new CounterContention();
+
+    /**
+     * Conflict and retry counts for one counter (or the shared "other" counts once
+     * lsk.metrics.maxCounters counters are tracked); see JdbcCounterStore and ReservationRetryPolicy.
+     */
+    public static CounterContention contention(CounterKey counter) {
+        CounterContention contention = CONTENTION_BY_COUNTER.get(counter);
+        if (contention != null) {
+            return contention;
+        }
+        if (CONTENTION_BY_COUNTER.size() >= MAX_COUNTERS) {
+            return CONTENTION_OTHER;
+        }
+        return CONTENTION_BY_COUNTER.computeIfAbsent(counter, k -> new CounterContention());
+    }
+
+    /**
+     * Also read by the stress test harness, so it reports the same numbers as /metrics.
+     *
+     * @return Contention by counter label, in counter order, followed by "other" if it was used.
+     */
+    public static Map<String, CounterContention> contentionByCounter() {
+        Map<String, CounterContention> byCounter = new LinkedHashMap<>();
+        new TreeMap<>(CONTENTION_BY_COUNTER).forEach((counter, contention) -> byCounter.put(counter.toString(), contention));
+        if (CONTENTION_OTHER.getConflicts() > 0 || CONTENTION_OTHER.getRetries() > 0 || CONTENTION_OTHER.getExhausted() > 0) {
+            byCounter.put(OTHER_COUNTERS, CONTENTION_OTHER);
+        }
+        return byCounter;
+    }
+
+    static Map<String, Histogram> phases() {
+        Map<String, Histogram> phases = new TreeMap<>();
+        phases.put("scan", SCAN);
+        phases.put("connection_acquire", CONNECTION_ACQUIRE);
+        phases.put("commit", COMMIT);
+        phases.put("rewrite", REWRITE);
+        phases.put("bulk_reservation", BULK_RESERVATION);
+        phases.put("combine_wait", COMBINER_WAIT);
+        return phases;
+    }
+
+    // --- Gauges and counters registered by components, in registration order ---
+    private static final Map<String, Registered> REGISTERED = new LinkedHashMap<>();
+
+    /**
+     * Registers a gauge read at scrape time. Registering a name again replaces the earlier source
+     * (e.g. a component created again after a restart of the application).
+     */
+    public static void registerGauge(String name, String help, DoubleSupplier value) {
+        register(new Registered(name, "gauge", help, null, () -> Collections.singletonMap(null, value.getAsDouble())));
+    }
+
+    /**
+     * Registers a monotonically increasing count read at scrape time; see {@link #registerGauge}.
+     */
+    public static void registerCounter(String name, String help, DoubleSupplier value) {
+        register(new Registered(name, "counter", help, null, () -> Collections.singletonMap(null, value.getAsDouble())));
+    }
+
+    /**
+     * Registers a family of gauges with one label (e.g. per shard), read at scrape time.
+     * With {@code labelName} null the family has at most one unlabelled sample (key null), and an
+     * empty map leaves the metric out of the scrape, e.g. while a pool is not running.
+     */
+    public static void registerGauges(String name, String help, String labelName,
+                                      Supplier<? extends Map<String, ? extends Number>> values) {
+        register(new Registered(name, "gauge", help, labelName, values));
+    }
+
+    /**
+     * Counter counterpart of {@link #registerGauges}.
+     */
+    public static void registerCounters(String name, String help, String labelName,
+                                        Supplier<? extends Map<String, ? extends Number>> values) {
+        register(new Registered(name, "counter", help, labelName, values));
+    }
+
+    private static void register(Registered metric) {
+        synchronized (REGISTERED) {
+            REGISTERED.put(metric.name, metric);
+        }
+    }
+
+    static List<Registered> registered() {
+        synchronized (REGISTERED) {
+            return new ArrayList<>(REGISTERED.values());
+        }
+    }
+
+    /**
+     * One registered metric family; the supplier is called on every scrape.
+     */
+    static final class Registered {
+        final String name;
+        final String type;
+        final String help;
+        final String labelName;
+        final Supplier<? extends Map<String, ? extends Number>> values;
+
+        Registered(String name, String type, String help, String labelName,
+                   Supplier<? extends Map<String, ? extends Number>> values) {
+            this.name = name;
+            this.type = type;
+            this.help = help;
+            this.labelName = labelName;
+            this.values = values;
+        }
+    }
+
+    private Metrics() {}
+}
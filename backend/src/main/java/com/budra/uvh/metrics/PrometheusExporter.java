@@ -0,0 +1,98 @@
+package com.budra.uvh.metrics;
+
+import java.util.Map;
+
+/**
+ * Renders all metrics in the Prometheus text exposition format (version 0.0.4): the histograms
+ * and per-counter series of {@link Metrics}, then everything registered with it.
+ */
+public final class PrometheusExporter {
+
+    public static String export() {
+        StringBuilder out = new StringBuilder(8192);
+
+        // --- Phase latencies ---
+        header(out, "lsk_phase_seconds", "histogram", "Latency of each resolution phase in seconds.");
+        for (Map.Entry<String, Histogram> phase : Metrics.phases().entrySet()) {
+            histogramSeries(out, "lsk_phase_seconds", "phase", phase.getKey(), phase.getValue());
+        }
+
+        header(out, "lsk_counter_reservation_seconds", "histogram", "Counter reservation latency per table:column in seconds.");
+        for (Map.Entry<String, Histogram> counter : Metrics.reservationsByCounter().entrySet()) {
+            histogramSeries(out, "lsk_counter_reservation_seconds", "counter", counter.getKey(), counter.getValue());
+        }
+
+        // --- Reservation conflicts and retries ---
+        Map<String, CounterContention> contention = Metrics.contentionByCounter();
+        header(out, "lsk_counter_conflicts_total", "counter", "Reservation transactions that hit a deadlock, serialization failure or lock timeout.");
+        contention.forEach((key, c) -> sample(out, "lsk_counter_conflicts_total", "counter", key, c.getConflicts()));
+        header(out, "lsk_counter_retries_total", "counter", "Reservation transactions run again after a conflict.");
+        contention.forEach((key, c) -> sample(out, "lsk_counter_retries_total", "counter", key, c.getRetries()));
+        header(out, "lsk_counter_retries_exhausted_total", "counter", "Reservations that failed after using up their retry attempts or deadline.");
+        contention.forEach((key, c) -> sample(out, "lsk_counter_retries_exhausted_total", "counter", key, c.getExhausted()));
+
+        // --- Request shape ---
+        header(out, "lsk_document_bytes", "histogram", "Size of scanned documents in bytes.");
+        histogramSeries(out, "lsk_document_bytes", null, null, Metrics.DOCUMENT_BYTES);
+        header(out, "lsk_placeholder_occurrences", "histogram", "Placeholder occurrences per document, duplicates included.");
+        histogramSeries(out, "lsk_placeholder_occurrences", null, null, Metrics.PLACEHOLDER_OCCURRENCES);
+        header(out, "lsk_unique_placeholders", "histogram", "Unique placeholders per document.");
+        histogramSeries(out, "lsk_unique_placeholders", null, null, Metrics.UNIQUE_PLACEHOLDERS);
+
+        // --- Request combiner ---
+        header(out, "lsk_combiner_batch_requests", "histogram", "Reservation requests combined into one store call.");
+        histogramSeries(out, "lsk_combiner_batch_requests", null, null, Metrics.COMBINER_BATCH_REQUESTS);
+
+        // --- Pools, queues and caches, registered by the components that own them ---
+        for (Metrics.Registered metric : Metrics.registered()) {
+            Map<String, ? extends Number> values = metric.values.get();
+            if (values.isEmpty()) {
+                continue;
+            }
+            header(out, metric.name, metric.type, metric.help);
+            values.forEach((labelValue, value) -> sample(out, metric.name,
+                    labelValue == null ? null : metric.labelName, labelValue, value.doubleValue()));
+        }
+        return out.toString();
+    }
+
+    private static void header(StringBuilder out, String name, String type, String help) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void histogramSeries(StringBuilder out, String name, String labelName, String labelValue, Histogram histogram) {
+        String labelPrefix = labelName == null ? "" : labelName + "=\"" + escape(labelValue) + "\",";
+        double[] bounds = histogram.getUpperBounds();
+        long[] cumulative = histogram.getCumulativeCounts();
+        for (int i = 0; i < cumulative.length; i++) {
+            String le = i < bounds.length ? formatNumber(bounds[i]) : "+Inf";
+            out.append(name).append("_bucket{").append(labelPrefix).append("le=\"").append(le).append("\"} ")
+                    .append(cumulative[i]).append('\n');
+        }
+        String labels = labelName == null ? "" : "{" + labelName + "=\"" + escape(labelValue) + "\"}";
+        out.append(name).append("_sum").append(labels).append(' ').append(formatNumber(histogram.getSum())).append('\n');
+        out.append(name).append("_count").append(labels).append(' ').append(cumulative[cumulative.length - 1]).append('\n');
+    }
+
+    private static void sample(StringBuilder out, String name, String labelName, String labelValue, double value) {
+        out.append(name);
+        if (labelName != null) {
+            out.append('{').append(labelName).append("=\"").append(escape(labelValue)).append("\"}");
+        }
+        out.append(' ').append(formatNumber(value)).append('\n');
+    }
+
+    private static String formatNumber(double value) {
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            return Long.toString((long) value);
+        }
+        return Double.toString(value);
+    }
+
+    private static String escape(String labelValue) {
+        return labelValue.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    private PrometheusExporter() {}
+}
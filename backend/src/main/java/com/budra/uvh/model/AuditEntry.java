@@ -0,0 +1,58 @@
+package com.budra.uvh.model;
+
+import com.budra.uvh.utils.PlaceHolderInfo;
+
+/**
+ * The values assigned by one resolution request: one audit record
+ * (request id, placeholder, table, column, value, timestamp) per unique placeholder.
+ *
+ * Kept as parallel arrays so the request thread allocates one small object per request,
+ * not one per placeholder; sinks expand it into records.
+ */
+public final class AuditEntry {
+    private final String requestId;
+    private final long timestampMillis;
+    private final PlaceHolderInfo[] placeholders;
+    private final long[] values;
+    private int size;
+
+    /**
+     * @param capacity Number of placeholders the request resolves.
+     */
+    public AuditEntry(String requestId, int capacity) {
+        this.requestId = requestId;
+        this.timestampMillis = System.currentTimeMillis();
+        this.placeholders = new PlaceHolderInfo[capacity];
+        this.values = new long[capacity];
+    }
+
+    /**
+     * Adds the value assigned to a placeholder. Only called by the thread that created the entry,
+     * before it is handed to the audit trail.
+     */
+    public void add(PlaceHolderInfo placeholder, long value) {
+        placeholders[size] = placeholder;
+        values[size] = value;
+        size++;
+    }
+
+    public String getRequestId() {
+        return requestId;
+    }
+
+    public long getTimestampMillis() {
+        return timestampMillis;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public PlaceHolderInfo getPlaceholder(int index) {
+        return placeholders[index];
+    }
+
+    public long getValue(int index) {
+        return values[index];
+    }
+}
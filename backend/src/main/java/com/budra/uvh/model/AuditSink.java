@@ -0,0 +1,46 @@
+package com.budra.uvh.model;
+
+import com.budra.uvh.config.UvhConfig;
+
+import java.nio.file.Paths;
+import java.util.List;
+
+/**
+ * Durable destination of audit records. Called only from the audit writer thread,
+ * so implementations need not be thread-safe.
+ *
+ * Sinks (chosen with lsk.audit.sink in uvh_config.properties):
+ *  - jdbc: multi-row inserts into the LskAuditTrail table (default with counter.store=jdbc)
+ *  - file: length-prefixed binary records in rolling files (default with counter.store=journal,
+ *          which runs without a database)
+ */
+public interface AuditSink extends AutoCloseable {
+
+    /**
+     * Writes all records of the given entries. Either the whole batch is durable afterwards or
+     * an exception is thrown and no record of the batch is kept; the caller may then retry the
+     * same batch without duplicating records.
+     */
+    void write(List<AuditEntry> entries) throws Exception;
+
+    @Override
+    void close();
+
+    static AuditSink fromConfig() {
+        String storeType = UvhConfig.getString("counter.store", "jdbc").trim().toLowerCase();
+        String type = UvhConfig.getString("lsk.audit.sink", "journal".equals(storeType) ? "file" : "jdbc").trim().toLowerCase();
+        switch (type) {
+            case "jdbc":
+                return new JdbcAuditSink();
+            case "file":
+                return new FileAuditSink(
+                        Paths.get(UvhConfig.getString("lsk.audit.file.directory",
+                                Paths.get(System.getProperty("user.home"), ".uvh", "audit").toString())),
+                        UvhConfig.getLong("lsk.audit.file.maxBytes", 64L * 1024 * 1024),
+                        UvhConfig.getInt("lsk.audit.file.maxFiles", 20),
+                        UvhConfig.getBoolean("lsk.audit.file.fsync", false));
+            default:
+                throw new IllegalArgumentException("Unknown lsk.audit.sink '" + type + "'. Expected jdbc or file.");
+        }
+    }
+}
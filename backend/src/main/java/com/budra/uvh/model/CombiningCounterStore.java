@@ -0,0 +1,288 @@
+package com.budra.uvh.model;
+
+import com.budra.uvh.config.UvhConfig;
+import com.budra.uvh.exception.LskGenerationException;
+import com.budra.uvh.metrics.Metrics;
+import com.budra.uvh.utils.CounterKey;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Request combiner (group commit) in front of another CounterStore.
+ *
+ * Concurrent reservations are queued. One waiting thread becomes the batch leader: it waits up to
+ * windowMicros (or until maxBatchRequests are queued), takes the queued requests, adds up their
+ * counts per counter and reserves the totals with ONE delegate call, i.e. one transaction that
+ * locks each counter row once. Each counter's block is then split among the requests in arrival
+ * order, so every request still gets a contiguous block per counter.
+ *
+ * A batch succeeds or fails as a whole, like a single multi-counter reservation. Under light load
+ * a request finds no one queued and goes straight through (after the window, if one is set).
+ */
+public class CombiningCounterStore implements CounterStore {
+    private static final Logger log = LoggerFactory.getLogger(CombiningCounterStore.class);
+    // Safety net for a missed wake-up; waiters are normally unparked explicitly
+    private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final CounterStore delegate;
+    private final long windowNanos;
+    private final int maxBatchRequests;
+    private final int maxInFlightBatches;
+
+    private final ConcurrentLinkedQueue<PendingReservation> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicInteger inFlightBatches = new AtomicInteger();
+
+    /**
+     * Wraps a store using the "lsk.combiner.*" settings from uvh_config.properties.
+     */
+    public static CombiningCounterStore fromConfig(CounterStore delegate) {
+        return new CombiningCounterStore(delegate,
+                UvhConfig.getLong("lsk.combiner.windowMicros", 200),
+                UvhConfig.getInt("lsk.combiner.maxBatchRequests", 64),
+                UvhConfig.getInt("lsk.combiner.maxInFlightBatches", 2));
+    }
+
+    /**
+     * @param delegate           Store that performs the combined reservations.
+     * @param windowMicros       How long a leader waits for more requests before reserving (0 = no wait).
+     * @param maxBatchRequests   Maximum requests combined into one reservation.
+     * @param maxInFlightBatches Batches allowed to run against the delegate at the same time.
+     */
+    public CombiningCounterStore(CounterStore delegate, long windowMicros, int maxBatchRequests, int maxInFlightBatches) {
+        if (delegate == null) {
+            throw new IllegalArgumentException("Delegate CounterStore cannot be null for CombiningCounterStore");
+        }
+        if (windowMicros < 0 || maxBatchRequests <= 0 || maxInFlightBatches <= 0) {
+            throw new IllegalArgumentException("Combiner window must be >= 0 and batch limits > 0.");
+        }
+        this.delegate = delegate;
+        this.windowNanos = TimeUnit.MICROSECONDS.toNanos(windowMicros);
+        this.maxBatchRequests = maxBatchRequests;
+        this.maxInFlightBatches = maxInFlightBatches;
+        Metrics.registerGauge("lsk_combiner_window_seconds", "Configured combine window.",
+                () -> windowNanos / 1_000_000_000.0);
+        Metrics.registerGauge("lsk_combiner_max_batch_requests", "Configured maximum requests per combined batch.",
+                () -> this.maxBatchRequests);
+        log.info("CombiningCounterStore created: windowMicros={}, maxBatchRequests={}, maxInFlightBatches={}",
+                windowMicros, maxBatchRequests, maxInFlightBatches);
+    }
+
+    @Override
+    public SortedMap<CounterKey, Long> reserveBlocks(Map<CounterKey, Integer> counts) {
+        SortedMap<CounterKey, Integer> sortedCounts = new TreeMap<>(counts);
+        // Validate here so one bad request cannot fail a whole batch
+        for (Map.Entry<CounterKey, Integer> entry : sortedCounts.entrySet()) {
+            if (entry.getValue() == null || entry.getValue() <= 0) {
+                throw new IllegalArgumentException("Count must be positive for " + entry.getKey() + ".");
+            }
+        }
+        if (sortedCounts.isEmpty()) {
+            return new TreeMap<>();
+        }
+
+        PendingReservation pending = new PendingReservation(sortedCounts);
+        queue.add(pending);
+        queued.incrementAndGet();
+        while (!pending.done) {
+            try {
+                if (!tryLeadBatch()) {
+                    LockSupport.parkNanos(this, MAX_PARK_NANOS);
+                }
+            } catch (Throwable t) {
+                // Our request may not have been in the batch we led: withdraw it if still queued
+                if (queue.remove(pending)) {
+                    queued.decrementAndGet();
+                }
+                throw t;
+            }
+        }
+        if (pending.error != null) {
+            throw pending.error;
+        }
+        return pending.blockStarts;
+    }
+
+    @Override
+    public void close() {
+        delegate.close();
+    }
+
+    @Override
+    public boolean releaseTail(CounterKey counter, long expectedLast, long newLast) {
+        return delegate.releaseTail(counter, expectedLast, newLast);
+    }
+
+    @Override
+    public SortedMap<CounterKey, Long> readAll() {
+        return delegate.readAll();
+    }
+
+    public CounterStore getDelegate() {
+        return delegate;
+    }
+
+    public long getWindowMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(windowNanos);
+    }
+
+    public int getMaxBatchRequests() {
+        return maxBatchRequests;
+    }
+
+    /**
+     * Runs one batch if a batch slot is free.
+     *
+     * @return true if this thread acted as a leader.
+     */
+    private boolean tryLeadBatch() {
+        int current = inFlightBatches.get();
+        if (current >= maxInFlightBatches || queued.get() == 0 || !inFlightBatches.compareAndSet(current, current + 1)) {
+            return false;
+        }
+        try {
+            if (windowNanos > 0) {
+                long deadline = System.nanoTime() + windowNanos;
+                long remaining;
+                while (queued.get() < maxBatchRequests && (remaining = deadline - System.nanoTime()) > 0) {
+                    LockSupport.parkNanos(this, remaining);
+                }
+            }
+            List<PendingReservation> batch = drainBatch();
+            if (!batch.isEmpty()) {
+                execute(batch);
+            }
+        } finally {
+            inFlightBatches.decrementAndGet();
+            // Hand leadership to the next waiter, if any
+            PendingReservation next = queue.peek();
+            if (next != null) {
+                LockSupport.unpark(next.waiter);
+            }
+        }
+        return true;
+    }
+
+    private List<PendingReservation> drainBatch() {
+        List<PendingReservation> batch = new ArrayList<>(Math.min(maxBatchRequests, Math.max(1, queued.get())));
+        Map<CounterKey, Long> totals = new HashMap<>();
+        PendingReservation pending;
+        while (batch.size() < maxBatchRequests && (pending = queue.peek()) != null) {
+            // A counter's combined total must still fit the int count of a single reservation
+            if (!batch.isEmpty() && wouldOverflow(totals, pending.counts)) {
+                break;
+            }
+            if (!queue.remove(pending)) {
+                continue; // Taken by a concurrent leader
+            }
+            queued.decrementAndGet();
+            pending.counts.forEach((counter, count) -> totals.merge(counter, count.longValue(), Long::sum));
+            batch.add(pending);
+        }
+        return batch;
+    }
+
+    private static boolean wouldOverflow(Map<CounterKey, Long> totals, Map<CounterKey, Integer> counts) {
+        for (Map.Entry<CounterKey, Integer> entry : counts.entrySet()) {
+            if (totals.getOrDefault(entry.getKey(), 0L) + entry.getValue() > Integer.MAX_VALUE) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Runs the combined reservation. Whatever happens, no request of the batch is left waiting:
+     * on an unexpected Throwable (e.g. an Error in the delegate or while splitting the blocks)
+     * every request not yet completed is failed before the Throwable is rethrown to the leader.
+     */
+    private void execute(List<PendingReservation> batch) {
+        try {
+            reserveAndSplit(batch);
+        } catch (Throwable t) {
+            LskGenerationException error = new LskGenerationException("Combined reservation failed: " + t, t);
+            for (PendingReservation pending : batch) {
+                if (!pending.done) {
+                    pending.fail(error);
+                }
+            }
+            throw t;
+        }
+    }
+
+    private void reserveAndSplit(List<PendingReservation> batch) {
+        long batchStart = System.nanoTime();
+        Map<CounterKey, Integer> totals = new TreeMap<>();
+        for (PendingReservation pending : batch) {
+            Metrics.COMBINER_WAIT.recordNanos(batchStart - pending.enqueuedNanos);
+            pending.counts.forEach((counter, count) -> totals.merge(counter, count, Integer::sum));
+        }
+        Metrics.COMBINER_BATCH_REQUESTS.record(batch.size());
+
+        SortedMap<CounterKey, Long> blockStarts;
+        try {
+            blockStarts = delegate.reserveBlocks(totals);
+        } catch (RuntimeException e) {
+            log.warn("Combined reservation of {} requests failed: {}", batch.size(), e.getMessage());
+            RuntimeException error = e instanceof LskGenerationException || e instanceof IllegalArgumentException
+                    ? e : new LskGenerationException("Combined reservation failed: " + e.getMessage(), e);
+            for (PendingReservation pending : batch) {
+                pending.fail(error);
+            }
+            return;
+        }
+
+        // Split each counter's block among the requests in arrival order
+        Map<CounterKey, Long> nextValue = new HashMap<>(blockStarts);
+        for (PendingReservation pending : batch) {
+            SortedMap<CounterKey, Long> starts = new TreeMap<>();
+            for (Map.Entry<CounterKey, Integer> entry : pending.counts.entrySet()) {
+                long start = nextValue.get(entry.getKey());
+                starts.put(entry.getKey(), start);
+                nextValue.put(entry.getKey(), start + entry.getValue());
+            }
+            pending.complete(starts);
+        }
+        if (batch.size() > 1) {
+            log.debug("Combined {} reservations over {} counters into one.", batch.size(), totals.size());
+        }
+    }
+
+    private static final class PendingReservation {
+        final SortedMap<CounterKey, Integer> counts;
+        final Thread waiter = Thread.currentThread();
+        final long enqueuedNanos = System.nanoTime();
+        // Written before 'done' (volatile), read after it
+        SortedMap<CounterKey, Long> blockStarts;
+        RuntimeException error;
+        volatile boolean done;
+
+        PendingReservation(SortedMap<CounterKey, Integer> counts) {
+            this.counts = counts;
+        }
+
+        void complete(SortedMap<CounterKey, Long> starts) {
+            blockStarts = starts;
+            done = true;
+            LockSupport.unpark(waiter);
+        }
+
+        void fail(RuntimeException e) {
+            error = e;
+            done = true;
+            LockSupport.unpark(waiter);
+        }
+    }
+}
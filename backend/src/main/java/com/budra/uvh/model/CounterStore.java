@@ -0,0 +1,110 @@
+package com.budra.uvh.model;
+
+import com.budra.uvh.config.UvhConfig;
+import com.budra.uvh.dbConfig.ShardRing;
+import com.budra.uvh.exception.LskGenerationException;
+import com.budra.uvh.utils.CounterKey;
+
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.Map;
+import java.util.SortedMap;
+
+/**
+ * Durable source of counter values. A reservation advances a counter by {@code count} and
+ * returns the first value of the reserved block; reserved values are never handed out again.
+ *
+ * Backends (chosen with counter.store in uvh_config.properties):
+ *  - jdbc:    LogicalSeedKeyCounters table in PostgreSQL via LskCounterRepository (default);
+ *             spread over several databases by ShardedCounterStore when db.shards is set
+ *  - journal: local memory-mapped journal, for single-node deployments without a database
+ */
+public interface CounterStore extends AutoCloseable {
+
+    /**
+     * Reserves one block per counter atomically: either every counter is advanced or none is.
+     *
+     * @param counts Number of values to reserve per counter (each must be > 0).
+     * @return The starting value of each counter's block, in CounterKey order.
+     * @throws LskGenerationException If the reservation could not be made durable.
+     * @throws IllegalArgumentException If a count is not positive.
+     */
+    SortedMap<CounterKey, Long> reserveBlocks(Map<CounterKey, Integer> counts);
+
+    /**
+     * Reserves one block for a single counter.
+     *
+     * @return The starting value of the block.
+     */
+    default long reserveBlock(CounterKey counter, int count) {
+        return reserveBlocks(Collections.singletonMap(counter, count)).get(counter);
+    }
+
+    /**
+     * Reads the current high-water mark of every counter without reserving anything.
+     * Used to (re)build the in-memory counter snapshot, not on the reservation path.
+     *
+     * @return last assigned value per counter, in CounterKey order.
+     * @throws LskGenerationException If the store could not be read.
+     */
+    SortedMap<CounterKey, Long> readAll();
+
+    /**
+     * Gives back the values after {@code newLast} of a block ending at {@code expectedLast}, which
+     * is only possible while no later reservation has been made on the counter. Otherwise (or if
+     * the backend cannot lower counters) the values simply stay unused.
+     *
+     * @return true if the counter now stands at {@code newLast} and the values will be handed out again.
+     * @throws LskGenerationException If the store could not be updated.
+     */
+    default boolean releaseTail(CounterKey counter, long expectedLast, long newLast) {
+        return false;
+    }
+
+    /**
+     * Releases resources held by the store. Reservations already returned stay durable.
+     */
+    @Override
+    void close();
+
+    /**
+     * Creates the store selected by counter.store ("jdbc" or "journal"), wrapped in a
+     * CombiningCounterStore when lsk.combiner.enabled is true.
+     *
+     * @param repository Repository used by the jdbc backend.
+     */
+    static CounterStore fromConfig(LskCounterRepository repository) {
+        return fromConfig(repository, null);
+    }
+
+    /**
+     * As {@link #fromConfig(LskCounterRepository)}, additionally reporting every reservation of the
+     * backend to {@code listener} (may be null).
+     */
+    static CounterStore fromConfig(LskCounterRepository repository, ReservationListener listener) {
+        CounterStore backend = backendFromConfig(repository);
+        if (listener != null) {
+            backend = new ObservedCounterStore(backend, listener);
+        }
+        return UvhConfig.getBoolean("lsk.combiner.enabled", false) ? CombiningCounterStore.fromConfig(backend) : backend;
+    }
+
+    private static CounterStore backendFromConfig(LskCounterRepository repository) {
+        String type = UvhConfig.getString("counter.store", "jdbc").trim().toLowerCase();
+        switch (type) {
+            case "jdbc":
+                ShardRing ring = ShardRing.fromConfig();
+                return ring == null ? new JdbcCounterStore(repository) : ShardedCounterStore.fromConfig(repository, ring);
+            case "journal":
+                return new JournalCounterStore(
+                        Paths.get(UvhConfig.getString("counter.store.journal.directory",
+                                Paths.get(System.getProperty("user.home"), ".uvh", "counters").toString())),
+                        UvhConfig.getInt("counter.store.journal.sizeBytes", 64 * 1024 * 1024),
+                        UvhConfig.getBoolean("counter.store.journal.fsync", true),
+                        UvhConfig.getLong("counter.store.journal.groupCommitMicros", 200),
+                        UvhConfig.getLong("counter.store.journal.snapshotIntervalSeconds", 300));
+            default:
+                throw new IllegalArgumentException("Unknown counter.store '" + type + "'. Expected jdbc or journal.");
+        }
+    }
+}
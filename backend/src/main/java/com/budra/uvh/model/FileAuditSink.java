@@ -0,0 +1,170 @@
+package com.budra.uvh.model;
+
+import com.budra.uvh.utils.PlaceHolderInfo;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes audit records to rolling binary files in one directory.
+ *
+ * Files are named lsk-audit-&lt;epoch millis&gt;.bin; a new file is started on every restart and
+ * whenever the current one reaches maxBytes, and only the newest maxFiles are kept (0 = keep all).
+ * The size is checked between batches, so a batch never spans two files and a file can exceed
+ * maxBytes by one batch. If a batch fails, the file is truncated to where the batch started and
+ * the retry goes to a new file, so a partly written batch is never written twice.
+ * Every file starts with the 8-byte magic "UVHAUD01", followed by records written with
+ * DataOutputStream: long timestampMillis, UTF requestId, UTF placeholder, UTF table,
+ * UTF column, long value.
+ */
+public class FileAuditSink implements AuditSink {
+    private static final Logger log = LoggerFactory.getLogger(FileAuditSink.class);
+
+    private static final byte[] MAGIC = {'U', 'V', 'H', 'A', 'U', 'D', '0', '1'};
+    private static final String FILE_PREFIX = "lsk-audit-";
+    private static final String FILE_SUFFIX = ".bin";
+
+    private final Path directory;
+    private final long maxBytes;
+    private final int maxFiles;
+    private final boolean fsync;
+
+    private FileOutputStream file;
+    private DataOutputStream out;
+
+    public FileAuditSink(Path directory, long maxBytes, int maxFiles, boolean fsync) {
+        if (maxBytes <= MAGIC.length || maxFiles < 0) {
+            throw new IllegalArgumentException("Audit file size must exceed the header and maxFiles must be >= 0.");
+        }
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        this.maxFiles = maxFiles;
+        this.fsync = fsync;
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not create audit directory " + directory, e);
+        }
+        log.info("FileAuditSink writing to {} (maxBytes={}, maxFiles={}, fsync={})", directory, maxBytes, maxFiles, fsync);
+    }
+
+    @Override
+    public void write(List<AuditEntry> entries) throws IOException {
+        if (out == null || out.size() >= maxBytes) {
+            roll();
+        }
+        out.flush(); // Empty the buffer so the channel position is where this batch starts
+        long batchStart = file.getChannel().position();
+        try {
+            for (AuditEntry entry : entries) {
+                for (int i = 0; i < entry.size(); i++) {
+                    PlaceHolderInfo placeholder = entry.getPlaceholder(i);
+                    out.writeLong(entry.getTimestampMillis());
+                    out.writeUTF(entry.getRequestId());
+                    out.writeUTF(placeholder.getFullPlaceholderLsk());
+                    out.writeUTF(placeholder.getTableName());
+                    out.writeUTF(placeholder.getColumnName());
+                    out.writeLong(entry.getValue(i));
+                }
+            }
+            out.flush();
+            if (fsync) {
+                file.getFD().sync();
+            }
+        } catch (IOException | RuntimeException e) {
+            discardBatch(batchStart);
+            throw e;
+        }
+    }
+
+    /**
+     * Cuts the failed batch off the current file and drops the file, so the retry starts a new one.
+     * The buffered stream is not flushed: what it still holds belongs to the failed batch.
+     */
+    private void discardBatch(long batchStart) {
+        try {
+            file.getChannel().truncate(batchStart);
+            file.getFD().sync();
+        } catch (IOException e) {
+            log.error("Could not remove a partly written batch from the audit file; it may end in a partial batch: {}", e.getMessage());
+        }
+        try {
+            file.close();
+        } catch (IOException e) {
+            log.warn("Error closing audit file: {}", e.getMessage());
+        }
+        out = null;
+        file = null;
+    }
+
+    private void roll() throws IOException {
+        closeCurrent();
+        long name = System.currentTimeMillis();
+        Path next;
+        do { // Two rolls within one millisecond must not reuse a file
+            next = directory.resolve(FILE_PREFIX + name++ + FILE_SUFFIX);
+        } while (Files.exists(next));
+        file = new FileOutputStream(next.toFile());
+        out = new DataOutputStream(new BufferedOutputStream(file, 64 * 1024));
+        out.write(MAGIC);
+        log.info("Started audit file {}", next);
+        deleteOldFiles();
+    }
+
+    private void deleteOldFiles() throws IOException {
+        if (maxFiles == 0) {
+            return;
+        }
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, FILE_PREFIX + "*" + FILE_SUFFIX)) {
+            stream.forEach(files::add);
+        }
+        if (files.size() <= maxFiles) {
+            return;
+        }
+        files.sort((a, b) -> Long.compare(fileMillis(a), fileMillis(b)));
+        for (Path old : files.subList(0, files.size() - maxFiles)) {
+            Files.deleteIfExists(old);
+            log.info("Deleted old audit file {}", old);
+        }
+    }
+
+    private static long fileMillis(Path file) {
+        String name = file.getFileName().toString();
+        try {
+            return Long.parseLong(name.substring(FILE_PREFIX.length(), name.length() - FILE_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return Long.MAX_VALUE; // Not ours; never deleted first
+        }
+    }
+
+    private void closeCurrent() throws IOException {
+        if (out != null) {
+            out.flush();
+            file.getFD().sync(); // A finished file is always durable, whatever the fsync setting
+            out.close();
+            out = null;
+            file = null;
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            closeCurrent();
+        } catch (IOException e) {
+            log.warn("Error closing audit file: {}", e.getMessage());
+        }
+    }
+}
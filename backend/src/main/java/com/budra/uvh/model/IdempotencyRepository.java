@@ -0,0 +1,82 @@
+package com.budra.uvh.model;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+
+/**
+ * Stores resolved mappings of idempotent requests so retries can be answered after the
+ * in-memory cache has evicted them, or by another node.
+ *
+ * Table (create it with db/idempotency_results.sql; the repository does not run DDL):
+ *   LskIdempotencyResults(cache_key PK, content_hash, mappings, created_at)
+ * mappings holds one "placeholder TAB resolved" pair per line.
+ */
+public class IdempotencyRepository {
+    private static final String SELECT_SQL =
+            "SELECT content_hash, mappings FROM LskIdempotencyResults WHERE cache_key = ? AND created_at > ?";
+
+    // The first result for a key wins; a concurrent duplicate from another node is ignored
+    private static final String INSERT_SQL =
+            "INSERT INTO LskIdempotencyResults (cache_key, content_hash, mappings, created_at) VALUES (?, ?, ?, CURRENT_TIMESTAMP) " +
+            "ON CONFLICT (cache_key) DO NOTHING";
+
+    private static final String DELETE_EXPIRED_SQL =
+            "DELETE FROM LskIdempotencyResults WHERE created_at <= ?";
+
+    /**
+     * Stored result of an earlier request.
+     */
+    public static final class StoredResult {
+        private final String contentHash;
+        private final String mappings;
+
+        StoredResult(String contentHash, String mappings) {
+            this.contentHash = contentHash;
+            this.mappings = mappings;
+        }
+
+        public String getContentHash() {
+            return contentHash;
+        }
+
+        public String getMappings() {
+            return mappings;
+        }
+    }
+
+    /**
+     * @param notBefore Results created at or before this time are treated as expired.
+     * @return The stored result, or null if none.
+     */
+    public StoredResult find(Connection conn, String cacheKey, Timestamp notBefore) throws SQLException {
+        try (PreparedStatement statement = conn.prepareStatement(SELECT_SQL)) {
+            statement.setString(1, cacheKey);
+            statement.setTimestamp(2, notBefore);
+            try (ResultSet rs = statement.executeQuery()) {
+                return rs.next() ? new StoredResult(rs.getString(1), rs.getString(2)) : null;
+            }
+        }
+    }
+
+    public void save(Connection conn, String cacheKey, String contentHash, String mappings) throws SQLException {
+        try (PreparedStatement statement = conn.prepareStatement(INSERT_SQL)) {
+            statement.setString(1, cacheKey);
+            statement.setString(2, contentHash);
+            statement.setString(3, mappings);
+            statement.executeUpdate();
+        }
+    }
+
+    /**
+     * @return Number of expired results removed.
+     */
+    public int deleteExpired(Connection conn, Timestamp notBefore) throws SQLException {
+        try (PreparedStatement statement = conn.prepareStatement(DELETE_EXPIRED_SQL)) {
+            statement.setTimestamp(1, notBefore);
+            return statement.executeUpdate();
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.budra.uvh.model;
+
+import com.budra.uvh.dbConfig.ConnectionManager;
+import com.budra.uvh.utils.PlaceHolderInfo;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.List;
+
+/**
+ * Writes audit records to PostgreSQL with multi-row INSERT statements, one transaction per batch.
+ *
+ * Table (create it with db/audit_trail.sql; the sink does not run DDL):
+ *   LskAuditTrail(request_id, placeholder, table_name, column_name, assigned_value, assigned_at)
+ */
+public class JdbcAuditSink implements AuditSink {
+
+    // 6 parameters per row; stays well below PostgreSQL's 32767 bind parameter limit
+    private static final int ROWS_PER_STATEMENT = 1000;
+
+    private static final String INSERT_PREFIX =
+            "INSERT INTO LskAuditTrail (request_id, placeholder, table_name, column_name, assigned_value, assigned_at) VALUES ";
+
+    private static final String FULL_INSERT_SQL = insertSql(ROWS_PER_STATEMENT);
+
+    @Override
+    public void write(List<AuditEntry> entries) throws SQLException {
+        try (Connection connection = ConnectionManager.getConnection()) {
+            connection.setAutoCommit(false);
+            try {
+                insertAll(connection, entries);
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            }
+        }
+    }
+
+    private void insertAll(Connection connection, List<AuditEntry> entries) throws SQLException {
+        int total = 0;
+        for (AuditEntry entry : entries) {
+            total += entry.size();
+        }
+        int remaining = total;
+        int entryIndex = 0;
+        int recordIndex = 0;
+        while (remaining > 0) {
+            int rows = Math.min(remaining, ROWS_PER_STATEMENT);
+            try (PreparedStatement statement = connection.prepareStatement(rows == ROWS_PER_STATEMENT ? FULL_INSERT_SQL : insertSql(rows))) {
+                int parameter = 1;
+                for (int row = 0; row < rows; row++) {
+                    AuditEntry entry = entries.get(entryIndex);
+                    while (recordIndex >= entry.size()) { // Skip to the next entry with records left
+                        entry = entries.get(++entryIndex);
+                        recordIndex = 0;
+                    }
+                    PlaceHolderInfo placeholder = entry.getPlaceholder(recordIndex);
+                    statement.setString(parameter++, entry.getRequestId());
+                    statement.setString(parameter++, placeholder.getFullPlaceholderLsk());
+                    statement.setString(parameter++, placeholder.getTableName());
+                    statement.setString(parameter++, placeholder.getColumnName());
+                    statement.setLong(parameter++, entry.getValue(recordIndex));
+                    statement.setTimestamp(parameter++, new Timestamp(entry.getTimestampMillis()));
+                    recordIndex++;
+                }
+                statement.executeUpdate();
+            }
+            remaining -= rows;
+        }
+    }
+
+    private static String insertSql(int rows) {
+        StringBuilder sql = new StringBuilder(INSERT_PREFIX.length() + rows * 20);
+        sql.append(INSERT_PREFIX);
+        for (int i = 0; i < rows; i++) {
+            sql.append(i == 0 ? "" : ", ").append("(?, ?, ?, ?, ?, ?)");
+        }
+        return sql.toString();
+    }
+
+    @Override
+    public void close() {
+        // The connection pool is owned by ConnectionManager
+    }
+}
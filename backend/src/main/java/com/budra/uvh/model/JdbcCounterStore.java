@@ -0,0 +1,208 @@
+package com.budra.uvh.model;
+
+import com.budra.uvh.dbConfig.ConnectionManager;
+import com.budra.uvh.exception.LskGenerationException;
+import com.budra.uvh.metrics.Metrics;
+import com.budra.uvh.utils.CounterKey;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * CounterStore backed by PostgreSQL. Every call runs in its own transaction on a pooled
+ * connection; LskCounterRepository does the locking and the SQL.
+ *
+ * Counters are always locked in CounterKey order, which rules out deadlocks between requests of
+ * this service. Conflicts can still come from other writers, SERIALIZABLE sessions or a
+ * lock_timeout; those transactions are rolled back and run again according to the
+ * ReservationRetryPolicy. Only the reservation transaction is retried: the document scan happened
+ * before and is not repeated.
+ */
+public class JdbcCounterStore implements CounterStore {
+    private static final Logger log = LoggerFactory.getLogger(JdbcCounterStore.class);
+
+    private final LskCounterRepository repository;
+    private final ReservationRetryPolicy retryPolicy;
+    private final ConnectionSource connectionSource;
+
+    public JdbcCounterStore(LskCounterRepository repository) {
+        this(repository, ReservationRetryPolicy.fromConfig());
+    }
+
+    public JdbcCounterStore(LskCounterRepository repository, ReservationRetryPolicy retryPolicy) {
+        this(repository, retryPolicy, ConnectionManager::getConnection);
+    }
+
+    /**
+     * @param connectionSource Where transactions get their connection (the shared pool by default,
+     *                         a shard's own pool for ShardedCounterStore).
+     */
+    public JdbcCounterStore(LskCounterRepository repository, ReservationRetryPolicy retryPolicy, ConnectionSource connectionSource) {
+        if (connectionSource == null) {
+            throw new IllegalArgumentException("ConnectionSource cannot be null for JdbcCounterStore");
+        }
+        if (repository == null) {
+            throw new IllegalArgumentException("LskCounterRepository cannot be null for JdbcCounterStore");
+        }
+        if (retryPolicy == null) {
+            throw new IllegalArgumentException("ReservationRetryPolicy cannot be null for JdbcCounterStore");
+        }
+        this.repository = repository;
+        this.retryPolicy = retryPolicy;
+        this.connectionSource = connectionSource;
+    }
+
+    public LskCounterRepository getRepository() {
+        return repository;
+    }
+
+    @Override
+    public SortedMap<CounterKey, Long> reserveBlocks(Map<CounterKey, Integer> counts) {
+        if (counts.isEmpty()) {
+            return new TreeMap<>();
+        }
+        // All counters in one bulk call; the repository locks them in sorted order
+        return inTransaction("reserving blocks for " + counts.size() + " counters", counts.keySet(),
+                connection -> repository.reserveBlocks(connection, counts));
+    }
+
+    @Override
+    public long reserveBlock(CounterKey counter, int count) {
+        return inTransaction("reserving " + count + " values for " + counter, Collections.singleton(counter),
+                connection -> repository.getAndReserveNextValueBlock(connection, counter.getTableName(), counter.getColumnName(), count));
+    }
+
+    @Override
+    public boolean releaseTail(CounterKey counter, long expectedLast, long newLast) {
+        return inTransaction("releasing values after " + newLast + " of " + counter, Collections.singleton(counter),
+                connection -> repository.lowerIfUnchanged(connection, counter, expectedLast, newLast));
+    }
+
+    @Override
+    public SortedMap<CounterKey, Long> readAll() {
+        try (Connection connection = connectionSource.getConnection()) {
+            return repository.readAll(connection);
+        } catch (SQLException e) {
+            throw new LskGenerationException("Could not read counters: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void close() {
+        // The connection pool is owned by ConnectionManager
+    }
+
+    /**
+     * Runs the work in a transaction, running it again (in a new transaction) after a retryable
+     * conflict until it succeeds, the attempts are used up or the deadline would be passed.
+     *
+     * @param counters Counters touched by the work; charged with conflicts and retries in Metrics.
+     */
+    private <T> T inTransaction(String description, Collection<CounterKey> counters, TransactionWork<T> work) {
+        long deadline = System.nanoTime() + retryPolicy.getDeadlineMillis() * 1_000_000L;
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return runTransaction(description, work);
+            } catch (SQLException e) {
+                if (!ReservationRetryPolicy.isRetryable(e)) {
+                    log.error("SQL error while {}: {}", description, e.getMessage(), e);
+                    throw new LskGenerationException("Database error during LSK generation: " + e.getMessage(), e);
+                }
+                counters.forEach(counter -> Metrics.contention(counter).recordConflict());
+
+                long backoffMillis = retryPolicy.backoffMillis(attempt);
+                boolean outOfTime = System.nanoTime() + backoffMillis * 1_000_000L > deadline;
+                if (attempt >= retryPolicy.getMaxAttempts() || outOfTime) {
+                    counters.forEach(counter -> Metrics.contention(counter).recordExhausted());
+                    log.error("Giving up {} after {} attempts (SQLState {}): {}",
+                            description, attempt, e.getSQLState(), e.getMessage());
+                    throw new LskGenerationException("Database conflict during LSK generation after " + attempt
+                            + " attempts: " + e.getMessage(), e);
+                }
+                log.info("Conflict (SQLState {}) while {}, attempt {}; retrying in {} ms.",
+                        e.getSQLState(), description, attempt, backoffMillis);
+                sleep(backoffMillis, e);
+                counters.forEach(counter -> Metrics.contention(counter).recordRetry());
+            }
+        }
+    }
+
+    private static void sleep(long millis, SQLException conflict) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException interrupted) {
+            Thread.currentThread().interrupt();
+            throw new LskGenerationException("Interrupted while waiting to retry LSK generation.", conflict);
+        }
+    }
+
+    /**
+     * Runs the work in one transaction: commit on success, rollback on any error.
+     */
+    private <T> T runTransaction(String description, TransactionWork<T> work) throws SQLException {
+        Connection connection = null;
+        boolean transactionSuccess = false;
+        try {
+            connection = connectionSource.getConnection();
+            connection.setAutoCommit(false);
+            log.debug("Database transaction started for {}.", description);
+            if (retryPolicy.getLockTimeoutMillis() > 0) {
+                // Turns a long lock wait into a retryable 55P03 instead of holding the connection
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("SET LOCAL lock_timeout = " + retryPolicy.getLockTimeoutMillis());
+                }
+            }
+
+            T result = work.run(connection);
+
+            long commitStart = System.nanoTime();
+            connection.commit();
+            Metrics.COMMIT.recordSince(commitStart);
+            transactionSuccess = true;
+            log.debug("Database transaction committed successfully.");
+            return result;
+        } finally {
+            if (connection != null) {
+                try {
+                    if (!transactionSuccess) {
+                        log.warn("Rolling back transaction due to error while {}.", description);
+                        connection.rollback();
+                        log.info("Transaction rollback completed.");
+                    }
+                } catch (SQLException ex) {
+                    log.error("!!! CRITICAL: Failed to rollback transaction !!!", ex);
+                } finally {
+                    try {
+                        connection.setAutoCommit(true);
+                        connection.close();
+                        log.debug("Database connection returned to pool.");
+                    } catch (SQLException e) {
+                        log.error("Failed to close database connection/return to pool.", e);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Supplies pooled connections; each one is closed (returned) after its transaction.
+     */
+    @FunctionalInterface
+    public interface ConnectionSource {
+        Connection getConnection() throws SQLException;
+    }
+
+    @FunctionalInterface
+    private interface TransactionWork<T> {
+        T run(Connection connection) throws SQLException;
+    }
+}
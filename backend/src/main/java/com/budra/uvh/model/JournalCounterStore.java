@@ -0,0 +1,597 @@
+package com.budra.uvh.model;
+
+import com.budra.uvh.exception.LskGenerationException;
+import com.budra.uvh.metrics.Metrics;
+import com.budra.uvh.utils.CounterKey;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * CounterStore for single-node deployments: counters live in an off-heap table and every
+ * reservation is appended to a memory-mapped journal before it is handed out.
+ *
+ * Durability: a reservation returns only after the journal region holding it has been forced
+ * to disk. Concurrent reservations share one force() (group commit): the first waiter becomes
+ * the flush leader, optionally lingers for groupCommitMicros so others can join, and forces
+ * everything appended so far. With fsync=false the journal is left to the OS page cache
+ * (survives a process crash, not a power loss).
+ *
+ * Files in the store directory:
+ *  - counters.snapshot  every counter with its last assigned value (CRC-protected)
+ *  - counters.journal   records appended since the snapshot:
+ *                       [int payloadLength][byte type][payload][int crc32(type + payload)]
+ *                       DEFINE(id, table, column) and SET(id, lastAssignedValue)
+ *
+ * SET records carry absolute values and replay keeps the maximum per counter, so replaying an
+ * old journal on top of a newer snapshot is harmless. A torn record at the tail (crash during
+ * append) fails its CRC and ends the replay; that reservation was never handed out.
+ * The journal is compacted into a new snapshot when it fills up, periodically, on startup and on close.
+ */
+public class JournalCounterStore implements CounterStore {
+    private static final Logger log = LoggerFactory.getLogger(JournalCounterStore.class);
+
+    private static final int JOURNAL_MAGIC = 0x55564A31; // "UVJ1"
+    private static final int SNAPSHOT_MAGIC = 0x55565331; // "UVS1"
+    private static final int FORMAT_VERSION = 1;
+    private static final int JOURNAL_HEADER_BYTES = 8;
+    private static final int MIN_JOURNAL_BYTES = 4096;
+    private static final byte RECORD_DEFINE = 1;
+    private static final byte RECORD_SET = 2;
+    private static final int RECORD_OVERHEAD = 4 + 1 + 4; // length + type + crc
+    private static final int SET_RECORD_BYTES = RECORD_OVERHEAD + 4 + 8;
+
+    private final Path directory;
+    private final Path journalPath;
+    private final Path snapshotPath;
+    private final int journalBytes;
+    private final boolean fsync;
+    private final long groupCommitNanos;
+
+    // --- Guarded by appendLock ---
+    private final ReentrantLock appendLock = new ReentrantLock();
+    private final Map<CounterKey, Integer> ids = new HashMap<>();
+    private final List<CounterKey> keysById = new ArrayList<>();
+    private ByteBuffer values = ByteBuffer.allocateDirect(1024 * Long.BYTES); // last assigned value per counter id
+    private FileChannel journalChannel;
+    private MappedByteBuffer journal;
+    private long appendedSequence;
+    private boolean closed;
+
+    // --- Group commit, guarded by flushMonitor (never held while acquiring appendLock) ---
+    private final Object flushMonitor = new Object();
+    private boolean flushing;
+    private long durableSequence;
+
+    private final FileChannel lockChannel;
+    private final FileLock directoryLock;
+    private final ScheduledExecutorService compactor;
+
+    /**
+     * Opens (or creates) the store, recovers the counters from snapshot + journal and starts a fresh journal.
+     *
+     * @param directory               Store directory; only one process may use it at a time.
+     * @param journalBytes            Size of the mapped journal; it is compacted when full.
+     * @param fsync                   Force the journal to disk before handing out values.
+     * @param groupCommitMicros       How long a flush leader waits for more reservations to join (0 = no wait).
+     * @param snapshotIntervalSeconds Periodic compaction interval (0 = only when the journal is full).
+     */
+    public JournalCounterStore(Path directory, int journalBytes, boolean fsync, long groupCommitMicros, long snapshotIntervalSeconds) {
+        if (journalBytes < MIN_JOURNAL_BYTES) {
+            throw new IllegalArgumentException("Journal size must be at least " + MIN_JOURNAL_BYTES + " bytes.");
+        }
+        this.directory = directory;
+        this.journalPath = directory.resolve("counters.journal");
+        this.snapshotPath = directory.resolve("counters.snapshot");
+        this.journalBytes = journalBytes;
+        this.fsync = fsync;
+        this.groupCommitNanos = TimeUnit.MICROSECONDS.toNanos(Math.max(0, groupCommitMicros));
+
+        try {
+            Files.createDirectories(directory);
+            lockChannel = FileChannel.open(directory.resolve("counters.lock"), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            directoryLock = lockChannel.tryLock();
+            if (directoryLock == null) {
+                lockChannel.close();
+                throw new IllegalStateException("Counter store directory " + directory + " is in use by another process.");
+            }
+            Files.deleteIfExists(directory.resolve("counters.snapshot.tmp"));
+            Files.deleteIfExists(directory.resolve("counters.journal.tmp"));
+
+            appendLock.lock();
+            try {
+                loadSnapshot();
+                replayJournal();
+                compactLocked(); // Start from a fresh journal so the old one can be discarded
+            } finally {
+                appendLock.unlock();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not open counter store in " + directory + ": " + e.getMessage(), e);
+        }
+
+        if (snapshotIntervalSeconds > 0) {
+            compactor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "counter-journal-compactor");
+                thread.setDaemon(true);
+                return thread;
+            });
+            compactor.scheduleWithFixedDelay(this::compact, snapshotIntervalSeconds, snapshotIntervalSeconds, TimeUnit.SECONDS);
+        } else {
+            compactor = null;
+        }
+        log.info("JournalCounterStore opened in {}: {} counters, journal={} bytes, fsync={}, groupCommitMicros={}",
+                directory, keysById.size(), journalBytes, fsync, groupCommitMicros);
+    }
+
+    @Override
+    public SortedMap<CounterKey, Long> reserveBlocks(Map<CounterKey, Integer> counts) {
+        SortedMap<CounterKey, Integer> sortedCounts = new TreeMap<>(counts);
+        for (Map.Entry<CounterKey, Integer> entry : sortedCounts.entrySet()) {
+            if (entry.getValue() == null || entry.getValue() <= 0) {
+                throw new IllegalArgumentException("Count must be positive for " + entry.getKey() + ".");
+            }
+        }
+        SortedMap<CounterKey, Long> blockStarts = new TreeMap<>();
+        if (sortedCounts.isEmpty()) {
+            return blockStarts;
+        }
+
+        long reservationStart = System.nanoTime();
+        long sequence;
+        appendLock.lock();
+        try {
+            if (closed) {
+                throw new LskGenerationException("Counter store is closed.");
+            }
+            ensureJournalSpace(sortedCounts.keySet());
+
+            // Compute every new value first, so a failure leaves all counters untouched
+            long[] newValues = new long[sortedCounts.size()];
+            int i = 0;
+            for (Map.Entry<CounterKey, Integer> entry : sortedCounts.entrySet()) {
+                Integer id = ids.get(entry.getKey());
+                long lastAssigned = id == null ? 0 : values.getLong(id * Long.BYTES);
+                try {
+                    newValues[i++] = Math.addExact(lastAssigned, entry.getValue());
+                } catch (ArithmeticException e) {
+                    throw new LskGenerationException("Counter " + entry.getKey() + " would overflow.", e);
+                }
+                blockStarts.put(entry.getKey(), lastAssigned + 1);
+            }
+
+            i = 0;
+            for (CounterKey counter : sortedCounts.keySet()) {
+                int id = idFor(counter);
+                values.putLong(id * Long.BYTES, newValues[i]);
+                appendSet(id, newValues[i]);
+                i++;
+            }
+            sequence = ++appendedSequence;
+        } finally {
+            appendLock.unlock();
+        }
+
+        awaitDurable(sequence);
+        for (CounterKey counter : sortedCounts.keySet()) {
+            Metrics.reservation(counter).recordSince(reservationStart);
+        }
+        log.debug("Reserved blocks for {} counters from the journal store.", blockStarts.size());
+        return blockStarts;
+    }
+
+    /**
+     * @return The last value handed out for a counter (0 if never used).
+     */
+    public long getLastAssignedValue(CounterKey counter) {
+        appendLock.lock();
+        try {
+            Integer id = ids.get(counter);
+            return id == null ? 0 : values.getLong(id * Long.BYTES);
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    @Override
+    public SortedMap<CounterKey, Long> readAll() {
+        appendLock.lock();
+        try {
+            SortedMap<CounterKey, Long> all = new TreeMap<>();
+            for (int id = 0; id < keysById.size(); id++) {
+                all.put(keysById.get(id), values.getLong(id * Long.BYTES));
+            }
+            return all;
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * Writes a snapshot of all counters and starts a new, empty journal.
+     */
+    public void compact() {
+        appendLock.lock();
+        try {
+            if (!closed) {
+                compactLocked();
+            }
+        } catch (IOException | RuntimeException e) {
+            log.error("Counter journal compaction failed: {}", e.getMessage(), e);
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        if (compactor != null) {
+            compactor.shutdownNow();
+        }
+        appendLock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            compactLocked(); // Next start only needs the snapshot
+            closed = true;
+            journalChannel.close();
+            directoryLock.release();
+            lockChannel.close();
+            log.info("JournalCounterStore in {} closed with {} counters.", directory, keysById.size());
+        } catch (IOException e) {
+            log.error("Error while closing counter store in {}: {}", directory, e.getMessage(), e);
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    // --- Group commit ---
+
+    /**
+     * Blocks until every record up to {@code sequence} has been forced to disk.
+     */
+    private void awaitDurable(long sequence) {
+        if (!fsync) {
+            return;
+        }
+        long waitStart = System.nanoTime();
+        while (true) {
+            synchronized (flushMonitor) {
+                while (flushing && durableSequence < sequence) {
+                    try {
+                        flushMonitor.wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new LskGenerationException("Interrupted while waiting for the counter journal to sync.", e);
+                    }
+                }
+                if (durableSequence >= sequence) {
+                    Metrics.COMMIT.recordSince(waitStart);
+                    return;
+                }
+                flushing = true; // This thread is the flush leader
+            }
+
+            long target = 0;
+            boolean flushed = false;
+            try {
+                if (groupCommitNanos > 0) {
+                    LockSupport.parkNanos(groupCommitNanos); // Let concurrent reservations join this flush
+                }
+                MappedByteBuffer toForce;
+                appendLock.lock();
+                try {
+                    target = appendedSequence;
+                    toForce = journal;
+                } finally {
+                    appendLock.unlock();
+                }
+                // Records of an older journal are already covered by the snapshot written on compaction
+                toForce.force();
+                flushed = true;
+            } catch (RuntimeException e) {
+                log.error("Failed to sync counter journal: {}", e.getMessage(), e);
+                throw new LskGenerationException("Failed to sync counter journal: " + e.getMessage(), e);
+            } finally {
+                synchronized (flushMonitor) {
+                    flushing = false;
+                    if (flushed) {
+                        durableSequence = Math.max(durableSequence, target);
+                    }
+                    flushMonitor.notifyAll();
+                }
+            }
+        }
+    }
+
+    // --- Journal records (appendLock held) ---
+
+    private int idFor(CounterKey counter) {
+        Integer id = ids.get(counter);
+        if (id != null) {
+            return id;
+        }
+        int newId = keysById.size();
+        defineLocked(newId, counter);
+        appendDefine(newId, counter);
+        return newId;
+    }
+
+    private void defineLocked(int id, CounterKey counter) {
+        if (id != keysById.size()) {
+            throw new IllegalStateException("Counter store is corrupt: unexpected counter id " + id + " for " + counter + ".");
+        }
+        ids.put(counter, id);
+        keysById.add(counter);
+        if ((id + 1) * Long.BYTES > values.capacity()) {
+            ByteBuffer grown = ByteBuffer.allocateDirect(values.capacity() * 2);
+            values.clear();
+            grown.put(values);
+            grown.clear();
+            values = grown;
+        }
+        values.putLong(id * Long.BYTES, 0);
+    }
+
+    private void ensureJournalSpace(Iterable<CounterKey> counters) throws LskGenerationException {
+        int needed = 0;
+        for (CounterKey counter : counters) {
+            needed += SET_RECORD_BYTES;
+            if (!ids.containsKey(counter)) {
+                needed += defineRecordBytes(counter);
+            }
+        }
+        if (journal.remaining() >= needed) {
+            return;
+        }
+        if (needed > journalBytes - JOURNAL_HEADER_BYTES) {
+            throw new LskGenerationException("Reservation needs " + needed + " journal bytes; counter.store.journal.sizeBytes is too small.");
+        }
+        try {
+            log.info("Counter journal full; compacting into a new snapshot.");
+            compactLocked();
+        } catch (IOException e) {
+            throw new LskGenerationException("Counter journal compaction failed: " + e.getMessage(), e);
+        }
+    }
+
+    private static int defineRecordBytes(CounterKey counter) {
+        return RECORD_OVERHEAD + 4 + 2 + utf8(counter.getTableName()).length + 2 + utf8(counter.getColumnName()).length;
+    }
+
+    private void appendDefine(int id, CounterKey counter) {
+        byte[] table = utf8(counter.getTableName());
+        byte[] column = utf8(counter.getColumnName());
+        int start = beginRecord(RECORD_DEFINE, 4 + 2 + table.length + 2 + column.length);
+        journal.putInt(id);
+        journal.putShort((short) table.length).put(table);
+        journal.putShort((short) column.length).put(column);
+        endRecord(start);
+    }
+
+    private void appendSet(int id, long lastAssignedValue) {
+        int start = beginRecord(RECORD_SET, 4 + 8);
+        journal.putInt(id);
+        journal.putLong(lastAssignedValue);
+        endRecord(start);
+    }
+
+    private int beginRecord(byte type, int payloadLength) {
+        int start = journal.position();
+        journal.putInt(payloadLength);
+        journal.put(type);
+        return start;
+    }
+
+    private void endRecord(int start) {
+        ByteBuffer body = journal.duplicate();
+        body.position(start + 4).limit(journal.position());
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        journal.putInt((int) crc.getValue());
+    }
+
+    // --- Snapshot, recovery and compaction (appendLock held) ---
+
+    private void compactLocked() throws IOException {
+        writeSnapshot();
+        openFreshJournal();
+        // Everything appended so far is now in the snapshot
+        synchronized (flushMonitor) {
+            durableSequence = Math.max(durableSequence, appendedSequence);
+            flushMonitor.notifyAll();
+        }
+        log.debug("Counter journal compacted: {} counters in snapshot.", keysById.size());
+    }
+
+    private void writeSnapshot() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + keysById.size() * 48);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(SNAPSHOT_MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        out.writeInt(keysById.size());
+        for (int id = 0; id < keysById.size(); id++) {
+            CounterKey counter = keysById.get(id);
+            out.writeUTF(counter.getTableName());
+            out.writeUTF(counter.getColumnName());
+            out.writeLong(values.getLong(id * Long.BYTES));
+        }
+        CRC32 crc = new CRC32();
+        crc.update(bytes.toByteArray());
+        out.writeInt((int) crc.getValue());
+        out.flush();
+
+        Path tmp = directory.resolve("counters.snapshot.tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        Files.move(tmp, snapshotPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        syncDirectory();
+    }
+
+    private void openFreshJournal() throws IOException {
+        Path tmp = directory.resolve("counters.journal.tmp");
+        FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        MappedByteBuffer mapped;
+        try {
+            mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, journalBytes); // Zero-filled
+            mapped.putInt(JOURNAL_MAGIC);
+            mapped.putInt(FORMAT_VERSION);
+            mapped.force();
+            Files.move(tmp, journalPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            syncDirectory();
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        if (journalChannel != null) {
+            journalChannel.close(); // The old mapping stays valid until it is garbage collected
+        }
+        journalChannel = channel;
+        journal = mapped;
+    }
+
+    private void loadSnapshot() throws IOException {
+        if (!Files.exists(snapshotPath)) {
+            log.info("No counter snapshot in {}; starting empty.", directory);
+            return;
+        }
+        byte[] bytes = Files.readAllBytes(snapshotPath);
+        if (bytes.length < 16) {
+            throw new IllegalStateException("Counter snapshot " + snapshotPath + " is truncated.");
+        }
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length - 4);
+        if ((int) crc.getValue() != ByteBuffer.wrap(bytes, bytes.length - 4, 4).getInt()) {
+            throw new IllegalStateException("Counter snapshot " + snapshotPath + " failed its checksum.");
+        }
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes, 0, bytes.length - 4));
+        if (in.readInt() != SNAPSHOT_MAGIC || in.readInt() != FORMAT_VERSION) {
+            throw new IllegalStateException("Counter snapshot " + snapshotPath + " has an unknown format.");
+        }
+        int count = in.readInt();
+        for (int id = 0; id < count; id++) {
+            CounterKey counter = new CounterKey(in.readUTF(), in.readUTF());
+            defineLocked(id, counter);
+            values.putLong(id * Long.BYTES, in.readLong());
+        }
+        log.info("Loaded {} counters from snapshot {}.", count, snapshotPath);
+    }
+
+    private void replayJournal() throws IOException {
+        if (!Files.exists(journalPath)) {
+            return;
+        }
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(journalPath, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (buffer.remaining() < JOURNAL_HEADER_BYTES || buffer.getInt() != JOURNAL_MAGIC || buffer.getInt() != FORMAT_VERSION) {
+            log.warn("Counter journal {} has no valid header; ignoring it.", journalPath);
+            return;
+        }
+
+        int records = 0;
+        while (buffer.remaining() >= RECORD_OVERHEAD) {
+            int start = buffer.position();
+            int payloadLength = buffer.getInt();
+            if (payloadLength <= 0 || payloadLength > buffer.remaining() - 1 - 4) {
+                break; // End of journal (zero-filled) or torn length
+            }
+            ByteBuffer body = buffer.duplicate();
+            body.position(start + 4).limit(start + 4 + 1 + payloadLength);
+            CRC32 crc = new CRC32();
+            crc.update(body);
+            byte type = buffer.get();
+            int payloadStart = buffer.position();
+            buffer.position(payloadStart + payloadLength);
+            if ((int) crc.getValue() != buffer.getInt()) {
+                log.warn("Counter journal record at offset {} failed its checksum (torn write); replay stops here.", start);
+                break;
+            }
+            buffer.position(payloadStart);
+            if (type == RECORD_DEFINE) {
+                int id = buffer.getInt();
+                String table = readShortString(buffer);
+                String column = readShortString(buffer);
+                CounterKey counter = new CounterKey(table, column);
+                Integer known = ids.get(counter);
+                if (known == null) {
+                    defineLocked(id, counter);
+                } else if (known != id) {
+                    throw new IllegalStateException("Counter store is corrupt: " + counter + " has ids " + known + " and " + id + ".");
+                }
+            } else if (type == RECORD_SET) {
+                int id = buffer.getInt();
+                long value = buffer.getLong();
+                if (id < 0 || id >= keysById.size()) {
+                    throw new IllegalStateException("Counter store is corrupt: SET for unknown counter id " + id + ".");
+                }
+                // Values only grow; keep the maximum so an old journal never moves a counter back
+                values.putLong(id * Long.BYTES, Math.max(values.getLong(id * Long.BYTES), value));
+            } else {
+                throw new IllegalStateException("Counter store is corrupt: unknown journal record type " + type + ".");
+            }
+            buffer.position(payloadStart + payloadLength + 4);
+            records++;
+        }
+        log.info("Replayed {} records from counter journal {}.", records, journalPath);
+    }
+
+    private void syncDirectory() {
+        // Makes the renames durable; not supported on every platform
+        try (FileChannel dir = FileChannel.open(directory, StandardOpenOption.READ)) {
+            dir.force(true);
+        } catch (IOException e) {
+            log.trace("Directory fsync not supported for {}: {}", directory, e.getMessage());
+        }
+    }
+
+    private static String readShortString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static byte[] utf8(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > 0xFFFF) {
+            throw new IllegalArgumentException("Counter name too long: " + value.length() + " characters.");
+        }
+        return bytes;
+    }
+}
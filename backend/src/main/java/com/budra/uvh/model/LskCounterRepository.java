@@ -3,12 +3,19 @@ package com.budra.uvh.model; // Correct package
 // Removed jakarta.enterprise.context.ApplicationScoped import
 
 // Import your custom exception
+import com.budra.uvh.config.UvhConfig;
 import com.budra.uvh.exception.LskGenerationException;
+import com.budra.uvh.metrics.Metrics;
+import com.budra.uvh.utils.CounterKey;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.sql.*;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
 
 // NO @ApplicationScoped annotation - Lifecycle managed manually (as a singleton in the factory)
 public class LskCounterRepository {
@@ -18,17 +25,86 @@ public class LskCounterRepository {
     private static final String SELECT_FOR_UPDATE_SQL = "SELECT last_assigned_value FROM LogicalSeedKeyCounters WHERE table_name = ? AND column_name = ? FOR UPDATE";
     private static final String UPDATE_SQL = "UPDATE LogicalSeedKeyCounters SET last_assigned_value = ?, last_updated = CURRENT_TIMESTAMP WHERE table_name = ? AND column_name = ?";
     private static final String INSERT_SQL = "INSERT INTO LogicalSeedKeyCounters (table_name, column_name, last_assigned_value) VALUES (?, ?, ?)";
+    // Single statement: creates the row or advances it, and returns the new high-water mark.
+    // Requires a unique constraint (or primary key) on (table_name, column_name).
+    private static final String UPSERT_RETURNING_SQL = "INSERT INTO LogicalSeedKeyCounters (table_name, column_name, last_assigned_value) VALUES (?, ?, ?) "
+            + "ON CONFLICT (table_name, column_name) DO UPDATE "
+            + "SET last_assigned_value = LogicalSeedKeyCounters.last_assigned_value + EXCLUDED.last_assigned_value, last_updated = CURRENT_TIMESTAMP "
+            + "RETURNING last_assigned_value";
+
+    // --- Bulk variants: one statement for all counters of a request ---
+    // The request arrays are sorted by CounterKey in Java; WITH ORDINALITY + ORDER BY ord makes
+    // PostgreSQL lock the rows in exactly that order, so concurrent requests cannot deadlock.
+    private static final String BULK_UPSERT_RETURNING_SQL = "INSERT INTO LogicalSeedKeyCounters (table_name, column_name, last_assigned_value) "
+            + "SELECT req.t, req.c, req.n FROM unnest(?::text[], ?::text[], ?::bigint[]) WITH ORDINALITY AS req(t, c, n, ord) ORDER BY req.ord "
+            + "ON CONFLICT (table_name, column_name) DO UPDATE "
+            + "SET last_assigned_value = LogicalSeedKeyCounters.last_assigned_value + EXCLUDED.last_assigned_value, last_updated = CURRENT_TIMESTAMP "
+            + "RETURNING table_name, column_name, last_assigned_value";
+    private static final String BULK_SELECT_FOR_UPDATE_SQL = "SELECT lsk.table_name, lsk.column_name, lsk.last_assigned_value FROM LogicalSeedKeyCounters lsk "
+            + "JOIN unnest(?::text[], ?::text[]) WITH ORDINALITY AS req(t, c, ord) ON lsk.table_name = req.t AND lsk.column_name = req.c "
+            + "ORDER BY req.ord FOR UPDATE OF lsk";
+
+    // --- Read-only access for the counter snapshot (plain MVCC reads, never wait for row locks) ---
+    private static final String SELECT_ALL_SQL = "SELECT table_name, column_name, last_assigned_value FROM LogicalSeedKeyCounters";
+
+    // --- Shard rebalancing: only ever moves a counter forward, so running it twice is harmless ---
+    private static final String RAISE_TO_SQL = "INSERT INTO LogicalSeedKeyCounters (table_name, column_name, last_assigned_value) VALUES (?, ?, ?) "
+            + "ON CONFLICT (table_name, column_name) DO UPDATE "
+            + "SET last_assigned_value = GREATEST(LogicalSeedKeyCounters.last_assigned_value, EXCLUDED.last_assigned_value), last_updated = CURRENT_TIMESTAMP "
+            + "RETURNING last_assigned_value";
+
+    // --- Range leases: give unused trailing values back, only if nothing was reserved after them ---
+    private static final String LOWER_IF_UNCHANGED_SQL = "UPDATE LogicalSeedKeyCounters SET last_assigned_value = ?, last_updated = CURRENT_TIMESTAMP "
+            + "WHERE table_name = ? AND column_name = ? AND last_assigned_value = ?";
+
+    /**
+     * Channel on which the optional trigger from db/counter_change_notification.sql publishes
+     * "table TAB column TAB last_assigned_value". The service never installs it itself.
+     */
+    public static final String CHANGE_CHANNEL = "lsk_counter_changes";
+
+    /**
+     * How a block is reserved. Selected with lsk.reservation.mode in uvh_config.properties.
+     */
+    public enum ReservationMode {
+        /** SELECT ... FOR UPDATE followed by UPDATE or INSERT (two round trips). */
+        LOCKING,
+        /** One INSERT ... ON CONFLICT DO UPDATE ... RETURNING (one round trip, no first-insert race). */
+        UPSERT;
+
+        public static ReservationMode fromConfig() {
+            String configured = UvhConfig.getString("lsk.reservation.mode", LOCKING.name());
+            try {
+                return valueOf(configured.toUpperCase());
+            } catch (IllegalArgumentException e) {
+                log.warn("Unknown lsk.reservation.mode '{}'. Falling back to {}.", configured, LOCKING);
+                return LOCKING;
+            }
+        }
+    }
+
+    private final ReservationMode reservationMode;
 
     // Keep public no-arg constructor - This is how the factory will create the singleton instance
     public LskCounterRepository() {
+        this(ReservationMode.fromConfig());
+    }
+
+    public LskCounterRepository(ReservationMode reservationMode) {
         // Updated log message for clarity
-        log.debug("LskCounterRepository instance MANUALLY created.");
+        log.debug("LskCounterRepository instance MANUALLY created with reservation mode {}.", reservationMode);
+        this.reservationMode = reservationMode;
+    }
+
+    public ReservationMode getReservationMode() {
+        return reservationMode;
     }
 
 
     /**
      * Atomically retrieves and reserves the next block of LSK values for a given prefix.
-     * Uses SELECT FOR UPDATE for locking to ensure atomicity and prevent race conditions.
+     * In LOCKING mode uses SELECT FOR UPDATE for locking to ensure atomicity and prevent race conditions;
+     * in UPSERT mode a single INSERT ... ON CONFLICT ... RETURNING does the same in one round trip.
      * IMPORTANT: This method MUST be called within an active database transaction
      * managed by the calling service layer (e.g., LskResolutionService),
      * with autoCommit set to false.
@@ -42,7 +118,6 @@ public class LskCounterRepository {
      * @throws LskGenerationException If the update/insert fails unexpectedly after locking.
      * @throws IllegalArgumentException If count is not positive or names are invalid.
      */
-    // Method signature and body remain exactly the same
     public long getAndReserveNextValueBlock(Connection conn, String tableName, String columnName, int count)
             throws SQLException, LskGenerationException, IllegalArgumentException {
 
@@ -60,6 +135,13 @@ public class LskCounterRepository {
             throw new IllegalArgumentException("Column name cannot be null or empty.");
         }
 
+        long reservationStart = System.nanoTime();
+        if (reservationMode == ReservationMode.UPSERT) {
+            long blockStart = upsertAndReturnBlockStart(conn, tableName, columnName, count);
+            Metrics.reservation(new CounterKey(tableName, columnName)).recordSince(reservationStart);
+            return blockStart;
+        }
+
         long currentMaxValue = -1;
         boolean found = false;
 
@@ -110,7 +192,242 @@ public class LskCounterRepository {
             throw new LskGenerationException("Failed to update/insert counter row for " + tableName + ":" + columnName + ". Concurrency issue or DB error?");
         }
 
+        Metrics.reservation(new CounterKey(tableName, columnName)).recordSince(reservationStart);
+        log.info("Successfully reserved LSK block [{}-{}] for {}:{}", nextValue, endValue, tableName, columnName);
+        return nextValue; // Return STARTING value
+    }
+
+    /**
+     * UPSERT mode: reserves the block with one statement. The row lock is taken by the
+     * INSERT/UPDATE itself and held until the caller commits, exactly like LOCKING mode,
+     * but without the extra SELECT round trip. Two transactions creating the same new
+     * counter serialize on the unique index instead of failing with a duplicate key.
+     */
+    private long upsertAndReturnBlockStart(Connection conn, String tableName, String columnName, int count)
+            throws SQLException, LskGenerationException {
+        long endValue;
+        try (PreparedStatement upsertStatement = conn.prepareStatement(UPSERT_RETURNING_SQL)) {
+            upsertStatement.setString(1, tableName);
+            upsertStatement.setString(2, columnName);
+            upsertStatement.setLong(3, count);
+            log.debug("Upserting counter for {}:{} by {}", tableName, columnName, count);
+
+            try (ResultSet rs = upsertStatement.executeQuery()) {
+                if (!rs.next()) {
+                    log.error("Critical error: Upsert for {}:{} returned no row! Transaction will be rolled back.", tableName, columnName);
+                    throw new LskGenerationException("Failed to upsert counter row for " + tableName + ":" + columnName + ". No value returned.");
+                }
+                endValue = rs.getLong(1);
+            }
+        }
+
+        long nextValue = endValue - count + 1;
         log.info("Successfully reserved LSK block [{}-{}] for {}:{}", nextValue, endValue, tableName, columnName);
         return nextValue; // Return STARTING value
     }
-}
\ No newline at end of file
+
+    /**
+     * Reserves one block for each of several counters in one go.
+     * Counters are always locked in CounterKey order (table, then column), whatever the order of the
+     * input map, so two requests touching overlapping counters cannot deadlock each other.
+     * IMPORTANT: Like getAndReserveNextValueBlock, this MUST run inside a transaction
+     * (autoCommit=false) owned by the caller.
+     *
+     * UPSERT mode uses a single unnest-based INSERT ... ON CONFLICT ... RETURNING statement.
+     * LOCKING mode uses one ordered SELECT ... FOR UPDATE followed by batched UPDATEs/INSERTs.
+     *
+     * @param conn   The active database connection (with autoCommit=false).
+     * @param counts Number of values to reserve per counter (each must be > 0).
+     * @return The starting value of each counter's reserved block, in CounterKey order.
+     * @throws SQLException If any database access fails during the operation.
+     * @throws LskGenerationException If a counter row could not be updated/inserted.
+     * @throws IllegalArgumentException If a count is not positive.
+     */
+    public SortedMap<CounterKey, Long> reserveBlocks(Connection conn, Map<CounterKey, Integer> counts)
+            throws SQLException, LskGenerationException, IllegalArgumentException {
+        SortedMap<CounterKey, Integer> sortedCounts = new TreeMap<>(counts);
+        for (Map.Entry<CounterKey, Integer> entry : sortedCounts.entrySet()) {
+            if (entry.getValue() == null || entry.getValue() <= 0) {
+                log.warn("Invalid count requested for LSK generation: {} for {}", entry.getValue(), entry.getKey());
+                throw new IllegalArgumentException("Count must be positive for " + entry.getKey() + ".");
+            }
+        }
+        if (sortedCounts.isEmpty()) {
+            return new TreeMap<>();
+        }
+
+        long reservationStart = System.nanoTime();
+        SortedMap<CounterKey, Long> blockStarts = (reservationMode == ReservationMode.UPSERT)
+                ? bulkUpsert(conn, sortedCounts)
+                : bulkLockAndUpdate(conn, sortedCounts);
+        long reservationNanos = System.nanoTime() - reservationStart;
+        Metrics.BULK_RESERVATION.recordNanos(reservationNanos);
+        for (CounterKey counter : sortedCounts.keySet()) {
+            Metrics.reservation(counter).recordNanos(reservationNanos);
+        }
+
+        if (blockStarts.size() != sortedCounts.size()) {
+            log.error("Critical error: Bulk reservation returned {} rows for {} counters! Transaction will be rolled back.", blockStarts.size(), sortedCounts.size());
+            throw new LskGenerationException("Bulk reservation returned " + blockStarts.size() + " rows for " + sortedCounts.size() + " counters.");
+        }
+        log.info("Successfully reserved LSK blocks for {} counters in one pass.", blockStarts.size());
+        return blockStarts;
+    }
+
+    private SortedMap<CounterKey, Long> bulkUpsert(Connection conn, SortedMap<CounterKey, Integer> sortedCounts) throws SQLException {
+        String[] tables = new String[sortedCounts.size()];
+        String[] columns = new String[sortedCounts.size()];
+        Long[] increments = new Long[sortedCounts.size()];
+        int i = 0;
+        for (Map.Entry<CounterKey, Integer> entry : sortedCounts.entrySet()) {
+            tables[i] = entry.getKey().getTableName();
+            columns[i] = entry.getKey().getColumnName();
+            increments[i] = entry.getValue().longValue();
+            i++;
+        }
+
+        SortedMap<CounterKey, Long> blockStarts = new TreeMap<>();
+        try (PreparedStatement upsertStatement = conn.prepareStatement(BULK_UPSERT_RETURNING_SQL)) {
+            upsertStatement.setArray(1, conn.createArrayOf("text", tables));
+            upsertStatement.setArray(2, conn.createArrayOf("text", columns));
+            upsertStatement.setArray(3, conn.createArrayOf("bigint", increments));
+            log.debug("Bulk upserting {} counters", sortedCounts.size());
+
+            try (ResultSet rs = upsertStatement.executeQuery()) {
+                while (rs.next()) {
+                    CounterKey counter = new CounterKey(rs.getString(1), rs.getString(2));
+                    long endValue = rs.getLong(3);
+                    long nextValue = endValue - sortedCounts.get(counter) + 1;
+                    blockStarts.put(counter, nextValue);
+                    log.debug("Reserved LSK block [{}-{}] for {}", nextValue, endValue, counter);
+                }
+            }
+        }
+        return blockStarts;
+    }
+
+    private SortedMap<CounterKey, Long> bulkLockAndUpdate(Connection conn, SortedMap<CounterKey, Integer> sortedCounts) throws SQLException {
+        String[] tables = new String[sortedCounts.size()];
+        String[] columns = new String[sortedCounts.size()];
+        int i = 0;
+        for (CounterKey counter : sortedCounts.keySet()) {
+            tables[i] = counter.getTableName();
+            columns[i] = counter.getColumnName();
+            i++;
+        }
+
+        // --- 1. Lock all existing rows, in order ---
+        Map<CounterKey, Long> currentMaxValues = new HashMap<>();
+        try (PreparedStatement selectStatement = conn.prepareStatement(BULK_SELECT_FOR_UPDATE_SQL)) {
+            selectStatement.setArray(1, conn.createArrayOf("text", tables));
+            selectStatement.setArray(2, conn.createArrayOf("text", columns));
+            try (ResultSet rs = selectStatement.executeQuery()) {
+                while (rs.next()) {
+                    currentMaxValues.put(new CounterKey(rs.getString(1), rs.getString(2)), rs.getLong(3));
+                }
+            }
+        }
+        log.debug("Locked {} existing counters of {} requested", currentMaxValues.size(), sortedCounts.size());
+
+        // --- 2. Advance existing rows and create missing ones, each as one batch ---
+        SortedMap<CounterKey, Long> blockStarts = new TreeMap<>();
+        try (PreparedStatement updateStatement = conn.prepareStatement(UPDATE_SQL);
+             PreparedStatement insertStatement = conn.prepareStatement(INSERT_SQL)) {
+            int updates = 0;
+            int inserts = 0;
+            for (Map.Entry<CounterKey, Integer> entry : sortedCounts.entrySet()) {
+                CounterKey counter = entry.getKey();
+                Long currentMaxValue = currentMaxValues.get(counter);
+                long nextValue = (currentMaxValue == null ? 0 : currentMaxValue) + 1;
+                long endValue = nextValue + entry.getValue() - 1;
+                if (currentMaxValue != null) {
+                    updateStatement.setLong(1, endValue);
+                    updateStatement.setString(2, counter.getTableName());
+                    updateStatement.setString(3, counter.getColumnName());
+                    updateStatement.addBatch();
+                    updates++;
+                } else {
+                    insertStatement.setString(1, counter.getTableName());
+                    insertStatement.setString(2, counter.getColumnName());
+                    insertStatement.setLong(3, endValue);
+                    insertStatement.addBatch();
+                    inserts++;
+                }
+                blockStarts.put(counter, nextValue);
+                log.debug("Reserving LSK block [{}-{}] for {}", nextValue, endValue, counter);
+            }
+            if (updates > 0) {
+                verifyBatch(updateStatement.executeBatch(), "update");
+            }
+            if (inserts > 0) {
+                verifyBatch(insertStatement.executeBatch(), "insert");
+            }
+        }
+        return blockStarts;
+    }
+
+    private static void verifyBatch(int[] rowsAffected, String operation) throws LskGenerationException {
+        for (int rows : rowsAffected) {
+            // SUCCESS_NO_INFO means the driver did not report a count; treat it as success
+            if (rows != 1 && rows != Statement.SUCCESS_NO_INFO) {
+                log.error("Critical error: Batched counter {} affected {} rows! Transaction will be rolled back.", operation, rows);
+                throw new LskGenerationException("Failed to " + operation + " counter row during bulk reservation. Concurrency issue or DB error?");
+            }
+        }
+    }
+
+    /**
+     * Reads the high-water mark of every counter. A plain snapshot read: it neither takes nor
+     * waits for row locks, so it never blocks behind (or delays) reservations.
+     *
+     * @param conn Any connection; autoCommit may be on.
+     * @return last_assigned_value per counter, in CounterKey order.
+     */
+    public SortedMap<CounterKey, Long> readAll(Connection conn) throws SQLException {
+        SortedMap<CounterKey, Long> values = new TreeMap<>();
+        try (Statement statement = conn.createStatement();
+             ResultSet rs = statement.executeQuery(SELECT_ALL_SQL)) {
+            while (rs.next()) {
+                values.put(new CounterKey(rs.getString(1), rs.getString(2)), rs.getLong(3));
+            }
+        }
+        log.debug("Read {} counters from LogicalSeedKeyCounters.", values.size());
+        return values;
+    }
+
+    /**
+     * Raises a counter to at least {@code value}, creating the row if needed; a higher existing
+     * value is kept. Used by ShardRebalancer to carry counters over to their new shard.
+     *
+     * @return The counter's last_assigned_value afterwards.
+     */
+    public long raiseTo(Connection conn, CounterKey counter, long value) throws SQLException {
+        try (PreparedStatement statement = conn.prepareStatement(RAISE_TO_SQL)) {
+            statement.setString(1, counter.getTableName());
+            statement.setString(2, counter.getColumnName());
+            statement.setLong(3, value);
+            try (ResultSet rs = statement.executeQuery()) {
+                if (!rs.next()) {
+                    throw new LskGenerationException("Failed to raise counter " + counter + ". No value returned.");
+                }
+                return rs.getLong(1);
+            }
+        }
+    }
+
+    /**
+     * Moves a counter back from {@code expectedLast} to {@code newLast}, but only if it is still at
+     * {@code expectedLast}, i.e. nothing has been reserved after the values being given back.
+     *
+     * @return true if the counter was lowered.
+     */
+    public boolean lowerIfUnchanged(Connection conn, CounterKey counter, long expectedLast, long newLast) throws SQLException {
+        try (PreparedStatement statement = conn.prepareStatement(LOWER_IF_UNCHANGED_SQL)) {
+            statement.setLong(1, newLast);
+            statement.setString(2, counter.getTableName());
+            statement.setString(3, counter.getColumnName());
+            statement.setLong(4, expectedLast);
+            return statement.executeUpdate() == 1;
+        }
+    }
+}
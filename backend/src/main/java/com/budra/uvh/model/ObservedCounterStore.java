@@ -0,0 +1,72 @@
+package com.budra.uvh.model;
+
+import com.budra.uvh.utils.CounterKey;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.SortedMap;
+
+/**
+ * Reports every successful reservation of the wrapped store to a ReservationListener.
+ * Sits directly on the backend (below a CombiningCounterStore), so combined batches are
+ * reported once per counter with the batch's high-water mark.
+ */
+public class ObservedCounterStore implements CounterStore {
+    private static final Logger log = LoggerFactory.getLogger(ObservedCounterStore.class);
+
+    private final CounterStore delegate;
+    private final ReservationListener listener;
+
+    public ObservedCounterStore(CounterStore delegate, ReservationListener listener) {
+        if (delegate == null || listener == null) {
+            throw new IllegalArgumentException("ObservedCounterStore needs a delegate store and a listener");
+        }
+        this.delegate = delegate;
+        this.listener = listener;
+    }
+
+    @Override
+    public SortedMap<CounterKey, Long> reserveBlocks(Map<CounterKey, Integer> counts) {
+        SortedMap<CounterKey, Long> blockStarts = delegate.reserveBlocks(counts);
+        blockStarts.forEach((counter, start) -> notifyReserved(counter, start + counts.get(counter) - 1));
+        return blockStarts;
+    }
+
+    @Override
+    public long reserveBlock(CounterKey counter, int count) {
+        long start = delegate.reserveBlock(counter, count);
+        notifyReserved(counter, start + count - 1);
+        return start;
+    }
+
+    private void notifyReserved(CounterKey counter, long lastAssigned) {
+        try {
+            listener.reserved(counter, lastAssigned);
+        } catch (RuntimeException e) {
+            // The values are committed; a listener problem must not fail the reservation
+            log.warn("Reservation listener failed for {}: {}", counter, e.getMessage());
+        }
+    }
+
+    // Not reported: listeners only move counters forward, the next resync picks up the lower value
+    @Override
+    public boolean releaseTail(CounterKey counter, long expectedLast, long newLast) {
+        return delegate.releaseTail(counter, expectedLast, newLast);
+    }
+
+    @Override
+    public SortedMap<CounterKey, Long> readAll() {
+        return delegate.readAll();
+    }
+
+    @Override
+    public void close() {
+        delegate.close();
+    }
+
+    public CounterStore getDelegate() {
+        return delegate;
+    }
+}
@@ -0,0 +1,102 @@
+package com.budra.uvh.model;
+
+import com.budra.uvh.utils.CounterKey;
+
+/**
+ * A contiguous range [start, end] of one counter handed to a client that numbers rows itself.
+ * One row of LskRangeLeases.
+ */
+public final class RangeLease {
+
+    public enum Status {
+        /** The client may assign values from the range. */
+        ACTIVE,
+        /** The client returned it; values after lastUsed were given back if the counter allowed it. */
+        RETURNED,
+        /** Its TTL passed without a return; the client must no longer assign values from it. */
+        EXPIRED
+    }
+
+    private final String id;
+    private final CounterKey counter;
+    private final long start;
+    private final long end;
+    private final String client;
+    private final Status status;
+    private final Long lastUsed;
+    private final boolean reclaimed;
+    private final long createdMillis;
+    private final long expiresMillis;
+    private final long closedMillis;
+
+    /**
+     * @param lastUsed      Last value the client used, as reported on return (null while active or
+     *                      after expiry); start - 1 means none.
+     * @param reclaimed     The values after lastUsed were given back to the counter.
+     * @param expiresMillis Expiry time, or 0 for a lease without TTL.
+     * @param closedMillis  Time of return or expiry, or 0 while active.
+     */
+    public RangeLease(String id, CounterKey counter, long start, long end, String client, Status status, Long lastUsed,
+                      boolean reclaimed, long createdMillis, long expiresMillis, long closedMillis) {
+        this.id = id;
+        this.counter = counter;
+        this.start = start;
+        this.end = end;
+        this.client = client;
+        this.status = status;
+        this.lastUsed = lastUsed;
+        this.reclaimed = reclaimed;
+        this.createdMillis = createdMillis;
+        this.expiresMillis = expiresMillis;
+        this.closedMillis = closedMillis;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public CounterKey getCounter() {
+        return counter;
+    }
+
+    public long getStart() {
+        return start;
+    }
+
+    /** @return Last value of the range (inclusive). */
+    public long getEnd() {
+        return end;
+    }
+
+    public long getCount() {
+        return end - start + 1;
+    }
+
+    public String getClient() {
+        return client;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public Long getLastUsed() {
+        return lastUsed;
+    }
+
+    public boolean isReclaimed() {
+        return reclaimed;
+    }
+
+    public long getCreatedMillis() {
+        return createdMillis;
+    }
+
+    public long getExpiresMillis() {
+        return expiresMillis;
+    }
+
+    public long getClosedMillis() {
+        return closedMillis;
+    }
+}
@@ -0,0 +1,164 @@
+package com.budra.uvh.model;
+
+import com.budra.uvh.utils.CounterKey;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tracks range leases so that active ones can be listed, expired ones reclaimed and all of them
+ * audited later. Rows are never deleted by the service.
+ *
+ * Table (create it with db/range_leases.sql; the repository does not run DDL):
+ *   LskRangeLeases(lease_id PK, table_name, column_name, range_start, range_end, client, status,
+ *                  last_used, reclaimed, created_at, expires_at, closed_at)
+ */
+public class RangeLeaseRepository {
+
+    private static final String COLUMNS =
+            "lease_id, table_name, column_name, range_start, range_end, client, status, last_used, reclaimed, created_at, expires_at, closed_at";
+
+    private static final String INSERT_SQL =
+            "INSERT INTO LskRangeLeases (" + COLUMNS + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private static final String SELECT_SQL =
+            "SELECT " + COLUMNS + " FROM LskRangeLeases WHERE lease_id = ?";
+
+    // Oldest first: a long-running ACTIVE lease is the one worth looking at
+    private static final String SELECT_BY_STATUS_SQL =
+            "SELECT " + COLUMNS + " FROM LskRangeLeases WHERE status = ? ORDER BY created_at LIMIT ?";
+
+    private static final String SELECT_DUE_SQL =
+            "SELECT " + COLUMNS + " FROM LskRangeLeases WHERE status = 'ACTIVE' AND expires_at <= ? ORDER BY expires_at LIMIT ?";
+
+    // Only an active lease can be closed, so a lease is returned or expired exactly once
+    private static final String CLOSE_SQL =
+            "UPDATE LskRangeLeases SET status = ?, last_used = ?, closed_at = ? WHERE lease_id = ? AND status = 'ACTIVE'";
+
+    private static final String MARK_RECLAIMED_SQL =
+            "UPDATE LskRangeLeases SET reclaimed = TRUE WHERE lease_id = ?";
+
+    public void insert(Connection conn, RangeLease lease) throws SQLException {
+        try (PreparedStatement statement = conn.prepareStatement(INSERT_SQL)) {
+            statement.setString(1, lease.getId());
+            statement.setString(2, lease.getCounter().getTableName());
+            statement.setString(3, lease.getCounter().getColumnName());
+            statement.setLong(4, lease.getStart());
+            statement.setLong(5, lease.getEnd());
+            statement.setString(6, lease.getClient());
+            statement.setString(7, lease.getStatus().name());
+            setNullableLong(statement, 8, lease.getLastUsed());
+            statement.setBoolean(9, lease.isReclaimed());
+            statement.setTimestamp(10, new Timestamp(lease.getCreatedMillis()));
+            statement.setTimestamp(11, timestampOrNull(lease.getExpiresMillis()));
+            statement.setTimestamp(12, timestampOrNull(lease.getClosedMillis()));
+            statement.executeUpdate();
+        }
+    }
+
+    /**
+     * @return The lease, or null if there is none with this id.
+     */
+    public RangeLease find(Connection conn, String leaseId) throws SQLException {
+        try (PreparedStatement statement = conn.prepareStatement(SELECT_SQL)) {
+            statement.setString(1, leaseId);
+            try (ResultSet rs = statement.executeQuery()) {
+                return rs.next() ? read(rs) : null;
+            }
+        }
+    }
+
+    /**
+     * @return Up to {@code limit} leases with the given status, oldest first.
+     */
+    public List<RangeLease> findByStatus(Connection conn, RangeLease.Status status, int limit) throws SQLException {
+        try (PreparedStatement statement = conn.prepareStatement(SELECT_BY_STATUS_SQL)) {
+            statement.setString(1, status.name());
+            statement.setInt(2, limit);
+            return readAll(statement);
+        }
+    }
+
+    /**
+     * @return Up to {@code limit} active leases whose TTL has passed at {@code now}.
+     */
+    public List<RangeLease> findDue(Connection conn, Timestamp now, int limit) throws SQLException {
+        try (PreparedStatement statement = conn.prepareStatement(SELECT_DUE_SQL)) {
+            statement.setTimestamp(1, now);
+            statement.setInt(2, limit);
+            return readAll(statement);
+        }
+    }
+
+    /**
+     * Closes an active lease.
+     *
+     * @param lastUsed Last value used by the client, or null if unknown (expiry).
+     * @return false if the lease does not exist or is no longer active.
+     */
+    public boolean close(Connection conn, String leaseId, RangeLease.Status status, Long lastUsed, Timestamp closedAt) throws SQLException {
+        try (PreparedStatement statement = conn.prepareStatement(CLOSE_SQL)) {
+            statement.setString(1, status.name());
+            setNullableLong(statement, 2, lastUsed);
+            statement.setTimestamp(3, closedAt);
+            statement.setString(4, leaseId);
+            return statement.executeUpdate() == 1;
+        }
+    }
+
+    public void markReclaimed(Connection conn, String leaseId) throws SQLException {
+        try (PreparedStatement statement = conn.prepareStatement(MARK_RECLAIMED_SQL)) {
+            statement.setString(1, leaseId);
+            statement.executeUpdate();
+        }
+    }
+
+    private static List<RangeLease> readAll(PreparedStatement statement) throws SQLException {
+        List<RangeLease> leases = new ArrayList<>();
+        try (ResultSet rs = statement.executeQuery()) {
+            while (rs.next()) {
+                leases.add(read(rs));
+            }
+        }
+        return leases;
+    }
+
+    private static RangeLease read(ResultSet rs) throws SQLException {
+        long lastUsed = rs.getLong("last_used");
+        Long lastUsedOrNull = rs.wasNull() ? null : lastUsed;
+        return new RangeLease(
+                rs.getString("lease_id"),
+                new CounterKey(rs.getString("table_name"), rs.getString("column_name")),
+                rs.getLong("range_start"),
+                rs.getLong("range_end"),
+                rs.getString("client"),
+                RangeLease.Status.valueOf(rs.getString("status")),
+                lastUsedOrNull,
+                rs.getBoolean("reclaimed"),
+                rs.getTimestamp("created_at").getTime(),
+                millisOrZero(rs.getTimestamp("expires_at")),
+                millisOrZero(rs.getTimestamp("closed_at")));
+    }
+
+    private static void setNullableLong(PreparedStatement statement, int index, Long value) throws SQLException {
+        if (value == null) {
+            statement.setNull(index, Types.BIGINT);
+        } else {
+            statement.setLong(index, value);
+        }
+    }
+
+    private static Timestamp timestampOrNull(long millis) {
+        return millis > 0 ? new Timestamp(millis) : null;
+    }
+
+    private static long millisOrZero(Timestamp timestamp) {
+        return timestamp == null ? 0 : timestamp.getTime();
+    }
+}
@@ -0,0 +1,17 @@
+package com.budra.uvh.model;
+
+import com.budra.uvh.utils.CounterKey;
+
+/**
+ * Told about every reservation a CounterStore made durable (see CounterStore#fromConfig).
+ * Called on the reserving thread after the commit, so implementations must be cheap and must not block.
+ */
+@FunctionalInterface
+public interface ReservationListener {
+
+    /**
+     * @param counter        The counter that was advanced.
+     * @param lastAssigned   Its new high-water mark (last value of the reserved block).
+     */
+    void reserved(CounterKey counter, long lastAssigned);
+}
@@ -0,0 +1,120 @@
+package com.budra.uvh.model;
+
+import com.budra.uvh.config.UvhConfig;
+
+import java.sql.SQLException;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Decides which failed reservation transactions are worth running again, and how long to wait.
+ *
+ * Only conflicts between concurrent transactions are retried; the transaction was rolled back and
+ * nothing was reserved, so running it again is safe:
+ *  - 40P01 deadlock_detected
+ *  - 40001 serialization_failure
+ *  - 55P03 lock_not_available (lock_timeout, see lsk.retry.lockTimeoutMillis)
+ *  - 23505 unique_violation: two transactions used a new counter at the same time. SELECT ... FOR
+ *          UPDATE finds no row to lock, so both INSERT it and the loser fails. Its transaction is
+ *          rolled back; the retry finds the winner's row and locks it like any other. Reservation
+ *          transactions only write LogicalSeedKeyCounters, so no other unique constraint can fire.
+ * Everything else (other constraint violations, connection loss, where the commit outcome is
+ * unknown) fails immediately as before.
+ *
+ * Backoff is exponential with full jitter (a random wait between 0 and the current cap), so
+ * transactions that collided once do not collide again in lockstep. A reservation gives up after
+ * lsk.retry.maxAttempts attempts or when the next wait would pass lsk.retry.deadlineMillis,
+ * measured from the first attempt.
+ */
+public final class ReservationRetryPolicy {
+    public static final String DEADLOCK_DETECTED = "40P01";
+    public static final String SERIALIZATION_FAILURE = "40001";
+    public static final String LOCK_NOT_AVAILABLE = "55P03";
+    public static final String UNIQUE_VIOLATION = "23505";
+
+    private final int maxAttempts;
+    private final long initialBackoffMillis;
+    private final long maxBackoffMillis;
+    private final long deadlineMillis;
+    private final long lockTimeoutMillis;
+
+    /**
+     * Creates the policy using the "lsk.retry.*" settings from uvh_config.properties.
+     */
+    public static ReservationRetryPolicy fromConfig() {
+        return new ReservationRetryPolicy(
+                UvhConfig.getInt("lsk.retry.maxAttempts", 5),
+                UvhConfig.getLong("lsk.retry.initialBackoffMillis", 5),
+                UvhConfig.getLong("lsk.retry.maxBackoffMillis", 200),
+                UvhConfig.getLong("lsk.retry.deadlineMillis", 2000),
+                UvhConfig.getLong("lsk.retry.lockTimeoutMillis", 0));
+    }
+
+    /**
+     * @param maxAttempts       Attempts in total, including the first (1 = no retries).
+     * @param lockTimeoutMillis Per-transaction lock_timeout; 0 leaves the server setting alone.
+     */
+    public ReservationRetryPolicy(int maxAttempts, long initialBackoffMillis, long maxBackoffMillis,
+                                  long deadlineMillis, long lockTimeoutMillis) {
+        if (maxAttempts < 1 || initialBackoffMillis < 0 || maxBackoffMillis < initialBackoffMillis
+                || deadlineMillis < 0 || lockTimeoutMillis < 0) {
+            throw new IllegalArgumentException("Invalid reservation retry settings.");
+        }
+        this.maxAttempts = maxAttempts;
+        this.initialBackoffMillis = initialBackoffMillis;
+        this.maxBackoffMillis = maxBackoffMillis;
+        this.deadlineMillis = deadlineMillis;
+        this.lockTimeoutMillis = lockTimeoutMillis;
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    public long getDeadlineMillis() {
+        return deadlineMillis;
+    }
+
+    public long getLockTimeoutMillis() {
+        return lockTimeoutMillis;
+    }
+
+    /**
+     * @param attempt The attempt that just failed (1-based).
+     * @return Jittered wait before the next attempt, in milliseconds.
+     */
+    public long backoffMillis(int attempt) {
+        long cap = initialBackoffMillis << Math.min(attempt - 1, 30);
+        if (cap <= 0 || cap > maxBackoffMillis) {
+            cap = maxBackoffMillis;
+        }
+        return cap == 0 ? 0 : ThreadLocalRandom.current().nextLong(cap + 1);
+    }
+
+    /**
+     * @return true if the failure (or one of its causes) is a transaction conflict worth retrying.
+     */
+    public static boolean isRetryable(Throwable failure) {
+        String sqlState = sqlState(failure);
+        return DEADLOCK_DETECTED.equals(sqlState) || SERIALIZATION_FAILURE.equals(sqlState)
+                || LOCK_NOT_AVAILABLE.equals(sqlState) || UNIQUE_VIOLATION.equals(sqlState);
+    }
+
+    /**
+     * @return The first SQLState found in the cause chain (and batch next-exception chain), or null.
+     */
+    public static String sqlState(Throwable failure) {
+        for (Throwable t = failure; t != null; t = t.getCause()) {
+            if (t instanceof SQLException) {
+                for (SQLException e = (SQLException) t; e != null; e = e.getNextException()) {
+                    if (e.getSQLState() != null) {
+                        return e.getSQLState();
+                    }
+                }
+            }
+            if (t.getCause() == t) {
+                break;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,224 @@
+package com.budra.uvh.model;
+
+import com.budra.uvh.dbConfig.ConnectionManager;
+import com.budra.uvh.dbConfig.ShardRing;
+import com.budra.uvh.exception.LskGenerationException;
+import com.budra.uvh.metrics.Metrics;
+import com.budra.uvh.utils.CounterKey;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.ToIntFunction;
+
+/**
+ * Spreads counters over several PostgreSQL databases (db.shards), each with its own pool and
+ * LogicalSeedKeyCounters table. ShardRing decides which shard owns a counter.
+ *
+ * A reservation touching several shards runs one transaction per shard in parallel (the calling
+ * thread takes one shard itself), so its latency is that of the slowest shard rather than the sum,
+ * and total reservation capacity grows with the number of databases.
+ *
+ * Atomicity is per shard. If one shard fails, the call fails and no value is handed out, but
+ * shards that already committed keep their advanced counters: those values are skipped (gaps),
+ * never handed out twice.
+ */
+public class ShardedCounterStore implements CounterStore {
+    private static final Logger log = LoggerFactory.getLogger(ShardedCounterStore.class);
+
+    private final ShardRing ring;
+    private final Map<String, CounterStore> stores;
+    private final Map<String, HikariDataSource> pools;
+    private final ExecutorService executor;
+
+    /**
+     * Creates one pool and one JdbcCounterStore per shard of the ring.
+     */
+    public static ShardedCounterStore fromConfig(LskCounterRepository repository, ShardRing ring) {
+        ReservationRetryPolicy retryPolicy = ReservationRetryPolicy.fromConfig();
+        Map<String, CounterStore> stores = new LinkedHashMap<>();
+        Map<String, HikariDataSource> pools = new LinkedHashMap<>();
+        for (String shard : ring.getShards()) {
+            HikariDataSource pool = ConnectionManager.createShardDataSource(shard);
+            pools.put(shard, pool);
+            stores.put(shard, new JdbcCounterStore(repository, retryPolicy, () -> {
+                long acquireStart = System.nanoTime();
+                Connection connection = pool.getConnection();
+                Metrics.CONNECTION_ACQUIRE.recordSince(acquireStart);
+                return connection;
+            }));
+        }
+        return new ShardedCounterStore(ring, stores, pools);
+    }
+
+    /**
+     * @param stores One store per shard name of the ring.
+     * @param pools  Pools closed together with the store (may be empty).
+     */
+    public ShardedCounterStore(ShardRing ring, Map<String, CounterStore> stores, Map<String, HikariDataSource> pools) {
+        for (String shard : ring.getShards()) {
+            if (!stores.containsKey(shard)) {
+                throw new IllegalArgumentException("No counter store for shard '" + shard + "'");
+            }
+        }
+        this.ring = ring;
+        this.stores = stores;
+        this.pools = pools;
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "uvh-shard-reserve-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        Metrics.registerGauges("lsk_shard_connections_active", "Connections in use per counter shard.", "shard",
+                () -> shardPoolSample(HikariPoolMXBean::getActiveConnections));
+        Metrics.registerGauges("lsk_shard_connections_idle", "Idle connections per counter shard.", "shard",
+                () -> shardPoolSample(HikariPoolMXBean::getIdleConnections));
+        Metrics.registerGauges("lsk_shard_connections_pending", "Threads waiting for a connection per counter shard.", "shard",
+                () -> shardPoolSample(HikariPoolMXBean::getThreadsAwaitingConnection));
+        log.info("ShardedCounterStore created over shards {}.", ring.getShards());
+    }
+
+    @Override
+    public SortedMap<CounterKey, Long> reserveBlocks(Map<CounterKey, Integer> counts) {
+        Map<String, Map<CounterKey, Integer>> countsByShard = new TreeMap<>();
+        counts.forEach((counter, count) ->
+                countsByShard.computeIfAbsent(ring.shardFor(counter), k -> new TreeMap<>()).put(counter, count));
+        if (countsByShard.size() <= 1) {
+            if (countsByShard.isEmpty()) {
+                return new TreeMap<>();
+            }
+            Map.Entry<String, Map<CounterKey, Integer>> only = countsByShard.entrySet().iterator().next();
+            return stores.get(only.getKey()).reserveBlocks(only.getValue());
+        }
+
+        // Hand all shards but the first to the executor, run the first on this thread
+        Iterator<Map.Entry<String, Map<CounterKey, Integer>>> shards = countsByShard.entrySet().iterator();
+        Map.Entry<String, Map<CounterKey, Integer>> first = shards.next();
+        List<String> forkedShards = new ArrayList<>();
+        List<Future<SortedMap<CounterKey, Long>>> forked = new ArrayList<>();
+        while (shards.hasNext()) {
+            Map.Entry<String, Map<CounterKey, Integer>> shard = shards.next();
+            CounterStore store = stores.get(shard.getKey());
+            forkedShards.add(shard.getKey());
+            forked.add(executor.submit(() -> store.reserveBlocks(shard.getValue())));
+        }
+
+        SortedMap<CounterKey, Long> blockStarts = new TreeMap<>();
+        RuntimeException failure = null;
+        String failedShard = null;
+        try {
+            blockStarts.putAll(stores.get(first.getKey()).reserveBlocks(first.getValue()));
+        } catch (RuntimeException e) {
+            failure = e;
+            failedShard = first.getKey();
+        }
+        // Always wait for every shard, so no transaction is still running when we return
+        for (int i = 0; i < forked.size(); i++) {
+            try {
+                blockStarts.putAll(forked.get(i).get());
+            } catch (ExecutionException e) {
+                if (failure == null) {
+                    failure = e.getCause() instanceof RuntimeException
+                            ? (RuntimeException) e.getCause()
+                            : new LskGenerationException("Reservation failed on shard " + forkedShards.get(i) + ": " + e.getCause(), e.getCause());
+                    failedShard = forkedShards.get(i);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                if (failure == null) {
+                    failure = new LskGenerationException("Interrupted while waiting for shard " + forkedShards.get(i) + ".", e);
+                    failedShard = forkedShards.get(i);
+                }
+            }
+        }
+        if (failure != null) {
+            log.warn("Reservation over {} shards failed on shard {}; values committed on the other shards are skipped: {}",
+                    countsByShard.size(), failedShard, failure.getMessage());
+            throw failure;
+        }
+        return blockStarts;
+    }
+
+    @Override
+    public long reserveBlock(CounterKey counter, int count) {
+        return stores.get(ring.shardFor(counter)).reserveBlock(counter, count);
+    }
+
+    @Override
+    public boolean releaseTail(CounterKey counter, long expectedLast, long newLast) {
+        return stores.get(ring.shardFor(counter)).releaseTail(counter, expectedLast, newLast);
+    }
+
+    /**
+     * Reads every shard; rows a shard holds for counters it no longer owns (left behind by a
+     * rebalance) are ignored.
+     */
+    @Override
+    public SortedMap<CounterKey, Long> readAll() {
+        SortedMap<CounterKey, Long> all = new TreeMap<>();
+        stores.forEach((shard, store) -> store.readAll().forEach((counter, value) -> {
+            if (shard.equals(ring.shardFor(counter))) {
+                all.put(counter, value);
+            }
+        }));
+        return all;
+    }
+
+    public ShardRing getRing() {
+        return ring;
+    }
+
+    /**
+     * @return Live pool statistics per shard (shards whose pool is not running are left out).
+     */
+    public Map<String, HikariPoolMXBean> getPoolStatistics() {
+        Map<String, HikariPoolMXBean> statistics = new TreeMap<>();
+        pools.forEach((shard, pool) -> {
+            if (!pool.isClosed() && pool.getHikariPoolMXBean() != null) {
+                statistics.put(shard, pool.getHikariPoolMXBean());
+            }
+        });
+        return statistics;
+    }
+
+    // One metric sample per shard whose pool is running
+    private Map<String, Integer> shardPoolSample(ToIntFunction<HikariPoolMXBean> read) {
+        Map<String, Integer> samples = new TreeMap<>();
+        getPoolStatistics().forEach((shard, pool) -> samples.put(shard, read.applyAsInt(pool)));
+        return samples;
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+                log.warn("Shard reservations still running at shutdown.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        stores.values().forEach(CounterStore::close);
+        pools.forEach((shard, pool) -> {
+            log.info("Closing connection pool of counter shard '{}'.", shard);
+            pool.close();
+        });
+    }
+}
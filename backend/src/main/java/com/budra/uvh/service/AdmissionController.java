@@ -0,0 +1,185 @@
+package com.budra.uvh.service;
+
+import com.budra.uvh.config.UvhConfig;
+import com.budra.uvh.dbConfig.ConnectionManager;
+import com.budra.uvh.exception.ServiceOverloadedException;
+import com.budra.uvh.metrics.Metrics;
+import com.zaxxer.hikari.HikariPoolMXBean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Admission control in front of LskResolution.
+ *
+ * A request is admitted if it can start right away (fewer requests in flight than the pool has
+ * connections) or if it fits into a short bounded wait queue. Everything else is rejected at once
+ * with a ServiceOverloadedException carrying a Retry-After estimate, instead of waiting for
+ * HikariCP's connectionTimeout and failing with a 500.
+ *
+ * Admitted requests that wait in the queue longer than maxWaitMillis are shed when they reach the
+ * front (see {@link Ticket#checkWaitTime()}), so latency stays bounded under overload.
+ */
+public class AdmissionController {
+    private static final Logger log = LoggerFactory.getLogger(AdmissionController.class);
+    private static final String ANONYMOUS_CLIENT = "";
+
+    private final int maxQueue;
+    private final long maxWaitMillis;
+    private final int perClientMaxInFlight; // 0 = no per-client limit
+
+    private final AtomicInteger admitted = new AtomicInteger(); // running + queued
+    private final ConcurrentHashMap<String, AtomicInteger> perClient = new ConcurrentHashMap<>();
+    // Exponentially weighted average of request service time, used for Retry-After
+    private final AtomicLong averageServiceMicros = new AtomicLong(50_000);
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder shed = new LongAdder();
+
+    public static AdmissionController fromConfig() {
+        return new AdmissionController(
+                UvhConfig.getInt("lsk.admission.maxQueue", 2 * UvhConfig.getInt("db.pool.maxSize", 10)),
+                UvhConfig.getLong("lsk.admission.maxWaitMillis", 500),
+                UvhConfig.getInt("lsk.admission.perClientMaxInFlight", 0));
+    }
+
+    public AdmissionController(int maxQueue, long maxWaitMillis, int perClientMaxInFlight) {
+        if (maxQueue < 0 || maxWaitMillis < 0 || perClientMaxInFlight < 0) {
+            throw new IllegalArgumentException("Admission limits cannot be negative.");
+        }
+        this.maxQueue = maxQueue;
+        this.maxWaitMillis = maxWaitMillis;
+        this.perClientMaxInFlight = perClientMaxInFlight;
+        Metrics.registerGauge("lsk_admission_in_system", "Admitted requests, running or queued.", this::getAdmittedCount);
+        Metrics.registerCounter("lsk_admission_rejected_total", "Requests rejected at admission.", this::getRejectedCount);
+        Metrics.registerCounter("lsk_admission_shed_total", "Admitted requests shed after waiting too long.", this::getShedCount);
+        log.info("AdmissionController created: maxQueue={}, maxWaitMillis={}, perClientMaxInFlight={}", maxQueue, maxWaitMillis, perClientMaxInFlight);
+    }
+
+    /**
+     * Admits a request or rejects it immediately.
+     *
+     * @param clientId Optional client identifier for per-client limits (null or empty = unlimited).
+     * @return A ticket that MUST be closed when the request finishes.
+     * @throws ServiceOverloadedException If the service is at capacity.
+     */
+    public Ticket admit(String clientId) {
+        String client = clientId == null ? ANONYMOUS_CLIENT : clientId.trim();
+        int capacity = currentCapacity();
+
+        int inSystem = admitted.incrementAndGet();
+        if (inSystem > capacity + maxQueue) {
+            admitted.decrementAndGet();
+            throw reject("Service at capacity (" + capacity + " running, " + maxQueue + " queued).", inSystem - capacity);
+        }
+
+        if (perClientMaxInFlight > 0 && !client.isEmpty()) {
+            AtomicInteger clientCount = perClient.computeIfAbsent(client, c -> new AtomicInteger());
+            if (clientCount.incrementAndGet() > perClientMaxInFlight) {
+                clientCount.decrementAndGet();
+                admitted.decrementAndGet();
+                throw reject("Client '" + client + "' exceeds " + perClientMaxInFlight + " requests in flight.", 1);
+            }
+        }
+        return new Ticket(client);
+    }
+
+    /**
+     * Requests that can run concurrently: the pool size, reduced while other pool users
+     * (e.g. lease refills) already have threads waiting for a connection.
+     */
+    private int currentCapacity() {
+        int maxPoolSize = ConnectionManager.getMaximumPoolSize();
+        HikariPoolMXBean pool = ConnectionManager.getPoolStatistics();
+        if (pool == null) {
+            return maxPoolSize;
+        }
+        int externalWaiters = Math.max(0, pool.getThreadsAwaitingConnection() - Math.max(0, admitted.get() - maxPoolSize));
+        return Math.max(1, maxPoolSize - externalWaiters);
+    }
+
+    private ServiceOverloadedException reject(String reason, int positionsAhead) {
+        rejected.increment();
+        long retryAfter = retryAfterSeconds(positionsAhead);
+        log.warn("Request rejected: {} Retry-After {} s.", reason, retryAfter);
+        return new ServiceOverloadedException(reason, retryAfter);
+    }
+
+    // Time for the requests ahead to drain at the current service rate, at least one second
+    private long retryAfterSeconds(int positionsAhead) {
+        int capacity = Math.max(1, ConnectionManager.getMaximumPoolSize());
+        double drainMicros = (double) Math.max(1, positionsAhead) * averageServiceMicros.get() / capacity;
+        return Math.max(1, (long) Math.ceil(drainMicros / 1_000_000.0));
+    }
+
+    private void recordServiceTime(long micros) {
+        averageServiceMicros.getAndUpdate(avg -> avg + (micros - avg) / 8);
+    }
+
+    public int getAdmittedCount() {
+        return admitted.get();
+    }
+
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    public long getShedCount() {
+        return shed.sum();
+    }
+
+    /**
+     * One admitted request. Close it exactly once when the request is done (success or failure).
+     */
+    public final class Ticket implements AutoCloseable {
+        private final String client;
+        private final long admittedNanos = System.nanoTime();
+        private long startedNanos;
+        private boolean closed;
+
+        private Ticket(String client) {
+            this.client = client;
+        }
+
+        /**
+         * Call when the request is about to start its real work.
+         *
+         * @throws ServiceOverloadedException If it waited longer than maxWaitMillis in the queue.
+         */
+        public void checkWaitTime() {
+            startedNanos = System.nanoTime();
+            long waitedMillis = TimeUnit.NANOSECONDS.toMillis(startedNanos - admittedNanos);
+            if (waitedMillis > maxWaitMillis) {
+                shed.increment();
+                long retryAfter = retryAfterSeconds(Math.max(0, admitted.get() - ConnectionManager.getMaximumPoolSize()));
+                log.warn("Request shed after waiting {} ms in the admission queue. Retry-After {} s.", waitedMillis, retryAfter);
+                throw new ServiceOverloadedException("Request waited " + waitedMillis + " ms for capacity.", retryAfter);
+            }
+        }
+
+        @Override
+        public void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (startedNanos != 0) {
+                recordServiceTime(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startedNanos));
+            }
+            admitted.decrementAndGet();
+            if (perClientMaxInFlight > 0 && !client.isEmpty()) {
+                AtomicInteger clientCount = perClient.get(client);
+                // Idle clients are dropped so the map does not grow with every id ever seen;
+                // a racing admit may briefly count against a fresh entry (limit is best-effort)
+                if (clientCount != null && clientCount.decrementAndGet() <= 0) {
+                    perClient.remove(client, clientCount);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package com.budra.uvh.service;
+
+import com.budra.uvh.config.UvhConfig;
+import com.budra.uvh.exception.LskGenerationException;
+import com.budra.uvh.metrics.Metrics;
+import com.budra.uvh.model.AuditEntry;
+import com.budra.uvh.model.AuditSink;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Structured record of which value went to which placeholder.
+ *
+ * Request threads only enqueue one AuditEntry per request into a bounded ring buffer;
+ * a single writer thread drains it and hands batches to the AuditSink (multi-row inserts or
+ * rolling binary files), so no audit I/O happens on the request thread.
+ *
+ * When the buffer is full, lsk.audit.overflowPolicy decides:
+ *  - DROP:  the entry is discarded and counted (default; never slows requests down)
+ *  - BLOCK: the request waits up to lsk.audit.blockMillis for space, then drops
+ *  - FAIL:  the request fails, so no value is ever handed out without an audit record
+ *           (the reserved values are burned, like after any other failed request)
+ */
+public class AuditTrail implements AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(AuditTrail.class);
+    private static final long DROP_WARNING_INTERVAL_MILLIS = 10_000;
+    private static final int MAX_WRITE_ATTEMPTS = 3;
+
+    public enum OverflowPolicy { DROP, BLOCK, FAIL }
+
+    private final ArrayBlockingQueue<AuditEntry> buffer;
+    private final AuditSink sink;
+    private final OverflowPolicy overflowPolicy;
+    private final long blockMillis;
+    private final int batchSize;
+    private final long flushIntervalMillis;
+    private final Thread writer;
+    private volatile boolean running = true;
+
+    // Request ids: per-process prefix + sequence; cheaper than UUID.randomUUID() and still unique across restarts
+    private final String requestIdPrefix = Long.toString(System.currentTimeMillis(), 36) + "-";
+    private final AtomicLong requestSequence = new AtomicLong();
+
+    private final LongAdder writtenRecords = new LongAdder();
+    private final LongAdder droppedRecords = new LongAdder();
+    private final LongAdder failedRecords = new LongAdder();
+    private final AtomicLong lastDropWarningMillis = new AtomicLong();
+
+    /**
+     * Creates an audit trail using the "lsk.audit.*" settings from uvh_config.properties.
+     */
+    public static AuditTrail fromConfig() {
+        return new AuditTrail(
+                AuditSink.fromConfig(),
+                UvhConfig.getInt("lsk.audit.queueCapacity", 65536),
+                OverflowPolicy.valueOf(UvhConfig.getString("lsk.audit.overflowPolicy", "DROP").trim().toUpperCase()),
+                UvhConfig.getLong("lsk.audit.blockMillis", 50),
+                UvhConfig.getInt("lsk.audit.batchSize", 512),
+                UvhConfig.getLong("lsk.audit.flushIntervalMillis", 200));
+    }
+
+    /**
+     * @param capacity            Maximum queued requests (entries, not records).
+     * @param batchSize           Maximum entries per sink write.
+     * @param flushIntervalMillis Maximum time the writer waits for more entries before checking for shutdown.
+     */
+    public AuditTrail(AuditSink sink, int capacity, OverflowPolicy overflowPolicy, long blockMillis,
+                      int batchSize, long flushIntervalMillis) {
+        if (sink == null) {
+            throw new IllegalArgumentException("AuditSink cannot be null for AuditTrail");
+        }
+        if (capacity <= 0 || batchSize <= 0 || flushIntervalMillis <= 0) {
+            throw new IllegalArgumentException("Audit capacity, batch size and flush interval must be positive.");
+        }
+        this.sink = sink;
+        this.buffer = new ArrayBlockingQueue<>(capacity);
+        this.overflowPolicy = overflowPolicy;
+        this.blockMillis = blockMillis;
+        this.batchSize = batchSize;
+        this.flushIntervalMillis = flushIntervalMillis;
+        this.writer = new Thread(this::drainLoop, "lsk-audit-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+        Metrics.registerGauge("lsk_audit_queued", "Requests waiting in the audit buffer.", this::getQueuedCount);
+        Metrics.registerCounter("lsk_audit_records_written_total", "Audit records written to the sink.", this::getWrittenCount);
+        Metrics.registerCounter("lsk_audit_records_dropped_total", "Audit records dropped because the buffer was full.", this::getDroppedCount);
+        Metrics.registerCounter("lsk_audit_records_failed_total", "Audit records lost after repeated sink failures.", this::getFailedCount);
+        log.info("AuditTrail started: sink={}, capacity={}, overflowPolicy={}, batchSize={}",
+                sink.getClass().getSimpleName(), capacity, overflowPolicy, batchSize);
+    }
+
+    public String newRequestId() {
+        return requestIdPrefix + requestSequence.incrementAndGet();
+    }
+
+    /**
+     * Queues the records of one request; never does I/O.
+     *
+     * @throws LskGenerationException If the buffer is full and the overflow policy is FAIL.
+     */
+    public void record(AuditEntry entry) {
+        if (entry.size() == 0) {
+            return;
+        }
+        boolean queued = buffer.offer(entry);
+        if (!queued && overflowPolicy == OverflowPolicy.BLOCK) {
+            try {
+                queued = buffer.offer(entry, blockMillis, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (queued) {
+            return;
+        }
+        if (overflowPolicy == OverflowPolicy.FAIL) {
+            throw new LskGenerationException("Audit buffer is full; request " + entry.getRequestId() + " rejected.");
+        }
+        droppedRecords.add(entry.size());
+        long now = System.currentTimeMillis();
+        long last = lastDropWarningMillis.get();
+        if (now - last >= DROP_WARNING_INTERVAL_MILLIS && lastDropWarningMillis.compareAndSet(last, now)) {
+            log.warn("Audit buffer full: dropped records of request {} ({} records dropped so far).",
+                    entry.getRequestId(), droppedRecords.sum());
+        }
+    }
+
+    public int getQueuedCount() {
+        return buffer.size();
+    }
+
+    public long getWrittenCount() {
+        return writtenRecords.sum();
+    }
+
+    public long getDroppedCount() {
+        return droppedRecords.sum();
+    }
+
+    public long getFailedCount() {
+        return failedRecords.sum();
+    }
+
+    private void drainLoop() {
+        List<AuditEntry> batch = new ArrayList<>(batchSize);
+        while (running || !buffer.isEmpty()) {
+            try {
+                AuditEntry first = buffer.poll(flushIntervalMillis, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                buffer.drainTo(batch, batchSize - 1);
+                write(batch);
+            } catch (InterruptedException e) {
+                running = false; // Still drains what is queued
+            } finally {
+                batch.clear();
+            }
+        }
+        log.debug("Audit writer stopped.");
+    }
+
+    private void write(List<AuditEntry> batch) {
+        int records = 0;
+        for (AuditEntry entry : batch) {
+            records += entry.size();
+        }
+        for (int attempt = 1; attempt <= MAX_WRITE_ATTEMPTS; attempt++) {
+            try {
+                sink.write(batch);
+                writtenRecords.add(records);
+                return;
+            } catch (Exception e) {
+                if (attempt == MAX_WRITE_ATTEMPTS) {
+                    failedRecords.add(records);
+                    log.error("Could not write {} audit records after {} attempts: {}", records, attempt, e.getMessage(), e);
+                    return;
+                }
+                log.warn("Audit write failed (attempt {}), retrying: {}", attempt, e.getMessage());
+                try {
+                    Thread.sleep(100L * attempt);
+                } catch (InterruptedException interrupted) {
+                    running = false; // Finish this batch and the rest of the buffer without waiting
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes everything still buffered, stops the writer and closes the sink.
+     */
+    @Override
+    public void close() {
+        running = false;
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(30));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (writer.isAlive()) {
+            log.warn("Audit writer did not finish within 30 s; {} entries left unwritten.", buffer.size());
+        }
+        sink.close();
+        log.info("AuditTrail closed: {} records written, {} dropped, {} failed.",
+                writtenRecords.sum(), droppedRecords.sum(), failedRecords.sum());
+    }
+}
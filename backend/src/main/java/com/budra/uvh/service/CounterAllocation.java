@@ -0,0 +1,83 @@
+package com.budra.uvh.service;
+
+import com.budra.uvh.utils.CounterKey;
+import com.budra.uvh.utils.PlaceHolderInfo;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The values one resolution assigned from a single counter.
+ * Placeholders are in document order and values[i] belongs to placeholders.get(i).
+ * The only guarantee is that the values are unique: they are not necessarily contiguous or
+ * ascending, and callers must not rely on either. A store reservation is one contiguous block, but
+ * values drawn from the lease allocator can span several leases, which is why
+ * getRanges() may return more than one range.
+ */
+public final class CounterAllocation {
+    private final CounterKey counter;
+    private final List<PlaceHolderInfo> placeholders;
+    private final long[] values;
+
+    CounterAllocation(CounterKey counter, List<PlaceHolderInfo> placeholders, long[] values) {
+        if (placeholders.size() != values.length) {
+            throw new IllegalArgumentException("Expected " + placeholders.size() + " values for " + counter + " but got " + values.length);
+        }
+        this.counter = counter;
+        this.placeholders = Collections.unmodifiableList(placeholders);
+        this.values = values;
+    }
+
+    public CounterKey getCounter() {
+        return counter;
+    }
+
+    public List<PlaceHolderInfo> getPlaceholders() {
+        return placeholders;
+    }
+
+    public int size() {
+        return values.length;
+    }
+
+    public long getValue(int index) {
+        return values[index];
+    }
+
+    /**
+     * @return The assigned values as runs of consecutive numbers, in placeholder order (not sorted by value).
+     */
+    public List<Range> getRanges() {
+        List<Range> ranges = new ArrayList<>();
+        int runStart = 0;
+        for (int i = 1; i <= values.length; i++) {
+            if (i == values.length || values[i] != values[i - 1] + 1) {
+                ranges.add(new Range(values[runStart], i - runStart));
+                runStart = i;
+            }
+        }
+        return ranges;
+    }
+
+    /**
+     * A run of consecutive values: start, start + 1, ..., start + count - 1.
+     */
+    public static final class Range {
+        private final long start;
+        private final int count;
+
+        Range(long start, int count) {
+            this.start = start;
+            this.count = count;
+        }
+
+        public long getStart() {
+            return start;
+        }
+
+        public int getCount() {
+            return count;
+        }
+    }
+}
@@ -0,0 +1,397 @@
+package com.budra.uvh.service;
+
+import com.budra.uvh.config.UvhConfig;
+import com.budra.uvh.dbConfig.ConnectionManager;
+import com.budra.uvh.dbConfig.ShardRing;
+import com.budra.uvh.metrics.Metrics;
+import com.budra.uvh.model.CounterStore;
+import com.budra.uvh.model.JdbcCounterStore;
+import com.budra.uvh.model.LskCounterRepository;
+import com.budra.uvh.model.ReservationListener;
+import com.budra.uvh.utils.CounterKey;
+
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+/**
+ * In-memory copy of every counter's high-water mark, so dashboards and clients can read counters
+ * without touching LogicalSeedKeyCounters (and without queueing behind FOR UPDATE locks).
+ *
+ * Kept current from three sources:
+ *  - local reservations, reported by the counter store right after commit (ReservationListener)
+ *  - with counter.store=jdbc, PostgreSQL LISTEN on LskCounterRepository.CHANGE_CHANNEL, so
+ *    reservations of other nodes (and manual fixes) show up too. The channel is fed by the trigger
+ *    in db/counter_change_notification.sql, which is applied by hand since it costs every
+ *    reservation commit a NOTIFY; without it the listener only resyncs
+ *  - a full resync on every (re)connect of the listener and every lsk.inspection.resyncSeconds,
+ *    which also catches anything missed while disconnected
+ * With counter shards (db.shards) there is one listener per shard, and each one only resyncs the
+ * counters its shard owns.
+ * Incremental updates only ever move a counter forward (notifications can arrive out of order);
+ * a resync replaces the snapshot with what the database says.
+ *
+ * With the allocator enabled the high-water mark includes values leased to nodes but not yet used.
+ */
+public class CounterSnapshot implements ReservationListener {
+    private static final Logger log = LoggerFactory.getLogger(CounterSnapshot.class);
+
+    private final ConcurrentSkipListMap<String, CounterState> counters = new ConcurrentSkipListMap<>(); // "Table:Column" -> state
+    private final LskCounterRepository repository;
+    private final List<ChangeSource> sources; // Empty = no LISTEN
+    private final int pollMillis;
+    private final long reconnectMillis;
+    private final long resyncIntervalMillis;
+    private final int maxPageSize;
+
+    private final LongAdder localUpdates = new LongAdder();
+    private final LongAdder notifications = new LongAdder();
+    private final LongAdder resyncs = new LongAdder();
+    private volatile boolean loaded; // Without listeners: initial load from the store succeeded
+    private volatile long lastResyncMillis;
+    private volatile boolean closed;
+    private final List<Thread> listenerThreads = new ArrayList<>();
+
+    /**
+     * Creates the snapshot using the "lsk.inspection.*" settings from uvh_config.properties.
+     * Call {@link #start(CounterStore)} once the counter store exists.
+     */
+    public static CounterSnapshot fromConfig(LskCounterRepository repository) {
+        boolean jdbc = "jdbc".equalsIgnoreCase(UvhConfig.getString("counter.store", "jdbc"));
+        List<ChangeSource> sources = new ArrayList<>();
+        if (jdbc && UvhConfig.getBoolean("lsk.inspection.listen", true)) {
+            ShardRing ring = ShardRing.fromConfig();
+            if (ring == null) {
+                sources.add(new ChangeSource("main", ConnectionManager::openDedicatedConnection, counter -> true));
+            } else {
+                Properties props = UvhConfig.getProperties();
+                for (String shard : ring.getShards()) {
+                    sources.add(new ChangeSource(shard,
+                            () -> ConnectionManager.openDedicatedConnection(props, shard),
+                            counter -> shard.equals(ring.shardFor(counter))));
+                }
+            }
+        }
+        return new CounterSnapshot(repository, sources,
+                UvhConfig.getInt("lsk.inspection.pollMillis", 500),
+                UvhConfig.getLong("lsk.inspection.reconnectMillis", 5000),
+                UvhConfig.getLong("lsk.inspection.resyncSeconds", 300) * 1000,
+                UvhConfig.getInt("lsk.inspection.maxPageSize", 1000));
+    }
+
+    /**
+     * @param sources              Databases to LISTEN on for changes, one dedicated connection each
+     *                             (jdbc store only; empty = local reservations and one initial load).
+     * @param resyncIntervalMillis Periodic full resync while listening (0 = only on connect).
+     */
+    public CounterSnapshot(LskCounterRepository repository, List<ChangeSource> sources, int pollMillis,
+                           long reconnectMillis, long resyncIntervalMillis, int maxPageSize) {
+        if (!sources.isEmpty() && repository == null) {
+            throw new IllegalArgumentException("Listening for counter changes needs an LskCounterRepository");
+        }
+        if (pollMillis <= 0 || reconnectMillis <= 0 || resyncIntervalMillis < 0 || maxPageSize <= 0) {
+            throw new IllegalArgumentException("Invalid counter snapshot settings.");
+        }
+        this.repository = repository;
+        this.sources = Collections.unmodifiableList(new ArrayList<>(sources));
+        this.pollMillis = pollMillis;
+        this.reconnectMillis = reconnectMillis;
+        this.resyncIntervalMillis = resyncIntervalMillis;
+        this.maxPageSize = maxPageSize;
+        Metrics.registerGauge("lsk_counter_snapshot_entries", "Counters held in the inspection snapshot.", this::size);
+        Metrics.registerGauge("lsk_counter_snapshot_synchronized", "1 while the snapshot is loaded and the change listener is connected.",
+                () -> isSynchronized() ? 1 : 0);
+        Metrics.registerCounter("lsk_counter_snapshot_local_updates_total", "Snapshot updates from this node's reservations.", this::getLocalUpdateCount);
+        Metrics.registerCounter("lsk_counter_snapshot_notifications_total", "Snapshot updates from database change notifications.", this::getNotificationCount);
+        Metrics.registerCounter("lsk_counter_snapshot_resyncs_total", "Full reloads of the snapshot from the counter store.", this::getResyncCount);
+        log.info("CounterSnapshot created: listeners={}, resyncIntervalMillis={}, maxPageSize={}",
+                this.sources.size(), resyncIntervalMillis, maxPageSize);
+    }
+
+    /**
+     * Loads the initial state: starts the change listeners (each resyncs as soon as it is
+     * connected) or, without any, reads all counters from the store once.
+     */
+    public void start(CounterStore store) {
+        if (!sources.isEmpty()) {
+            for (ChangeSource source : sources) {
+                String name = sources.size() == 1 ? "uvh-counter-snapshot" : "uvh-counter-snapshot-" + source.name;
+                Thread thread = new Thread(() -> listenLoop(source), name);
+                thread.setDaemon(true);
+                listenerThreads.add(thread);
+                thread.start();
+            }
+            return;
+        }
+        try {
+            resync(store.readAll(), counter -> true);
+            loaded = true;
+        } catch (RuntimeException e) {
+            // Local reservations still fill the snapshot; reads report synchronized=false
+            log.warn("Could not load counters into the snapshot: {}", e.getMessage());
+        }
+    }
+
+    @Override
+    public void reserved(CounterKey counter, long lastAssigned) {
+        localUpdates.increment();
+        advance(counter, lastAssigned);
+    }
+
+    /**
+     * @return The counter's state, or null if it has never been used (or is not known yet).
+     */
+    public CounterState get(CounterKey counter) {
+        return counters.get(counter.toString());
+    }
+
+    /**
+     * Lists counters whose "Table:Column" name starts with {@code prefix}, in name order.
+     *
+     * @param prefix Name prefix ("" for all, "Employee:" for one table).
+     * @param after  Cursor from the previous page (exclusive), or null for the first page.
+     * @param limit  Page size, capped at lsk.inspection.maxPageSize.
+     */
+    public Page list(String prefix, String after, int limit) {
+        String namePrefix = prefix == null ? "" : prefix;
+        int pageSize = Math.max(1, Math.min(limit, maxPageSize));
+        NavigableMap<String, CounterState> tail = (after != null && after.compareTo(namePrefix) >= 0)
+                ? counters.tailMap(after, false)
+                : counters.tailMap(namePrefix, true);
+
+        List<CounterState> items = new ArrayList<>(Math.min(pageSize, 64));
+        String next = null;
+        Iterator<Map.Entry<String, CounterState>> it = tail.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, CounterState> entry = it.next();
+            if (!entry.getKey().startsWith(namePrefix)) {
+                break;
+            }
+            if (items.size() == pageSize) {
+                next = items.get(items.size() - 1).getCounter().toString(); // There is at least one more
+                break;
+            }
+            items.add(entry.getValue());
+        }
+        return new Page(items, next);
+    }
+
+    public int size() {
+        return counters.size();
+    }
+
+    /**
+     * @return true once the snapshot has been loaded from the store and, when listening, while
+     *         every listener is connected (changes of other nodes may be missing otherwise).
+     */
+    public boolean isSynchronized() {
+        if (sources.isEmpty()) {
+            return loaded;
+        }
+        for (ChangeSource source : sources) {
+            if (!source.synced) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public long getLastResyncMillis() {
+        return lastResyncMillis;
+    }
+
+    public long getLocalUpdateCount() {
+        return localUpdates.sum();
+    }
+
+    public long getNotificationCount() {
+        return notifications.sum();
+    }
+
+    public long getResyncCount() {
+        return resyncs.sum();
+    }
+
+    public void close() {
+        closed = true;
+        listenerThreads.forEach(Thread::interrupt);
+    }
+
+    private void advance(CounterKey counter, long lastAssigned) {
+        CounterState update = new CounterState(counter, lastAssigned, System.currentTimeMillis());
+        counters.merge(counter.toString(), update,
+                (current, candidate) -> candidate.lastAssignedValue > current.lastAssignedValue ? candidate : current);
+    }
+
+    // Replaces the counters selected by owns with values (rows for other counters are ignored)
+    private void resync(Map<CounterKey, Long> values, Predicate<CounterKey> owns) {
+        long now = System.currentTimeMillis();
+        counters.keySet().removeIf(name -> {
+            CounterKey counter = parse(name);
+            return owns.test(counter) && !values.containsKey(counter);
+        });
+        values.forEach((counter, value) -> {
+            if (!owns.test(counter)) {
+                return; // Left on this shard by a rebalance
+            }
+            CounterState current = counters.get(counter.toString());
+            if (current == null || current.lastAssignedValue != value) {
+                counters.put(counter.toString(), new CounterState(counter, value, now));
+            }
+        });
+        resyncs.increment();
+        lastResyncMillis = now;
+        log.info("Counter snapshot resynchronized: {} counters.", values.size());
+    }
+
+    private static CounterKey parse(String name) {
+        int colon = name.indexOf(':');
+        return new CounterKey(name.substring(0, colon), name.substring(colon + 1));
+    }
+
+    // --- LISTEN loop on a dedicated connection per database (counter.store=jdbc) ---
+
+    private void listenLoop(ChangeSource source) {
+        long sourceResyncMillis = 0;
+        while (!closed) {
+            try (Connection connection = source.opener.getConnection()) {
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("LISTEN " + LskCounterRepository.CHANGE_CHANNEL);
+                }
+                // After LISTEN: every commit the read does not see is delivered as a notification
+                resync(repository.readAll(connection), source.owns);
+                sourceResyncMillis = System.currentTimeMillis();
+                source.synced = true;
+                PGConnection pgConnection = connection.unwrap(PGConnection.class);
+                while (!closed) {
+                    PGNotification[] received = pgConnection.getNotifications(pollMillis);
+                    if (received != null) {
+                        for (PGNotification notification : received) {
+                            applyNotification(source, notification.getParameter());
+                        }
+                    }
+                    if (resyncIntervalMillis > 0 && System.currentTimeMillis() - sourceResyncMillis >= resyncIntervalMillis) {
+                        resync(repository.readAll(connection), source.owns);
+                        sourceResyncMillis = System.currentTimeMillis();
+                    }
+                }
+            } catch (SQLException | RuntimeException e) {
+                source.synced = false;
+                if (closed) {
+                    break;
+                }
+                log.warn("Counter change listener on '{}' disconnected ({}); reconnecting in {} ms.",
+                        source.name, e.getMessage(), reconnectMillis);
+                try {
+                    Thread.sleep(reconnectMillis);
+                } catch (InterruptedException interrupted) {
+                    break;
+                }
+            }
+        }
+        source.synced = false;
+        log.info("Counter change listener on '{}' stopped.", source.name);
+    }
+
+    // Payload from the trigger: table TAB column TAB last_assigned_value
+    private void applyNotification(ChangeSource source, String payload) {
+        String[] parts = payload.split("\t");
+        if (parts.length != 3) {
+            log.warn("Ignoring malformed counter notification '{}'.", payload);
+            return;
+        }
+        try {
+            CounterKey counter = new CounterKey(parts[0], parts[1]);
+            if (source.owns.test(counter)) {
+                notifications.increment();
+                advance(counter, Long.parseLong(parts[2]));
+            }
+        } catch (IllegalArgumentException e) {
+            log.warn("Ignoring malformed counter notification '{}': {}", payload, e.getMessage());
+        }
+    }
+
+    /**
+     * A database to LISTEN on and the counters it is authoritative for.
+     */
+    public static final class ChangeSource {
+        private final String name;
+        private final JdbcCounterStore.ConnectionSource opener;
+        private final Predicate<CounterKey> owns;
+        private volatile boolean synced;
+
+        /**
+         * @param opener Opens a new dedicated (unpooled) connection on every call.
+         * @param owns   Counters this database owns; its rows for other counters are ignored.
+         */
+        public ChangeSource(String name, JdbcCounterStore.ConnectionSource opener, Predicate<CounterKey> owns) {
+            this.name = name;
+            this.opener = opener;
+            this.owns = owns;
+        }
+    }
+
+    /**
+     * A counter's high-water mark as last seen by this node.
+     */
+    public static final class CounterState {
+        private final CounterKey counter;
+        private final long lastAssignedValue;
+        private final long updatedMillis;
+
+        CounterState(CounterKey counter, long lastAssignedValue, long updatedMillis) {
+            this.counter = counter;
+            this.lastAssignedValue = lastAssignedValue;
+            this.updatedMillis = updatedMillis;
+        }
+
+        public CounterKey getCounter() {
+            return counter;
+        }
+
+        public long getLastAssignedValue() {
+            return lastAssignedValue;
+        }
+
+        /** @return When this node last saw the value change (not the database's last_updated). */
+        public long getUpdatedMillis() {
+            return updatedMillis;
+        }
+    }
+
+    /**
+     * One page of a listing; {@code next} is the cursor for the following page, or null.
+     */
+    public static final class Page {
+        private final List<CounterState> items;
+        private final String next;
+
+        Page(List<CounterState> items, String next) {
+            this.items = items;
+            this.next = next;
+        }
+
+        public List<CounterState> getItems() {
+            return items;
+        }
+
+        public String getNext() {
+            return next;
+        }
+    }
+}
@@ -0,0 +1,402 @@
+package com.budra.uvh.service;
+
+import com.budra.uvh.config.UvhConfig;
+import com.budra.uvh.exception.GitResolutionException;
+import com.budra.uvh.exception.GitResolutionException.Reason;
+import com.budra.uvh.exception.PlaceholderFormatException;
+import com.budra.uvh.utils.PlaceholderScan;
+import com.budra.uvh.utils.XmlUtils;
+
+import org.eclipse.jgit.dircache.DirCache;
+import org.eclipse.jgit.dircache.DirCacheEditor;
+import org.eclipse.jgit.dircache.DirCacheEntry;
+import org.eclipse.jgit.errors.LargeObjectException;
+import org.eclipse.jgit.errors.RevisionSyntaxException;
+import org.eclipse.jgit.lib.CommitBuilder;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.RefUpdate;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.RepositoryCache;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.util.FS;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Resolves every XML file of a Git revision in one pass, without a working tree.
+ *
+ * The tree of the revision is walked once, matching blobs are loaded and scanned in parallel on a
+ * fork-join pool, all counters are reserved in one store reservation (LskResolution#resolveScans),
+ * the resolved blobs are written to the object database and a new commit with the original commit
+ * as parent is created from an in-core DirCache. Optionally a branch is moved to the new commit,
+ * but only if it still points at the resolved revision. The index and working tree are never
+ * touched, so a moved branch that is checked out elsewhere needs a reset there (bare repositories are simplest).
+ *
+ * Only repositories below git.allowedRoot can be used; without that setting the feature is disabled.
+ */
+public class GitTreeResolution {
+    private static final Logger log = LoggerFactory.getLogger(GitTreeResolution.class);
+
+    // Leaves of the fork-join scan; each leaf uses its own ObjectReader (readers are not thread-safe)
+    private static final int FILES_PER_TASK = 16;
+
+    private final LskResolution lskResolution;
+    private final Path allowedRoot; // null = disabled
+    private final List<String> fileSuffixes;
+    private final int maxBlobBytes;
+    private final ForkJoinPool scanPool;
+    private final String committerName;
+    private final String committerEmail;
+
+    /**
+     * Outcome of a tree resolution.
+     */
+    public static final class Result {
+        private final String baseCommit;
+        private final String commit; // null if nothing needed resolving
+        private final String updatedRef;
+        private final int filesScanned;
+        private final int filesResolved;
+        private final int placeholders;
+
+        Result(String baseCommit, String commit, String updatedRef, int filesScanned, int filesResolved, int placeholders) {
+            this.baseCommit = baseCommit;
+            this.commit = commit;
+            this.updatedRef = updatedRef;
+            this.filesScanned = filesScanned;
+            this.filesResolved = filesResolved;
+            this.placeholders = placeholders;
+        }
+
+        public String getBaseCommit() {
+            return baseCommit;
+        }
+
+        /**
+         * @return The new commit, or null if no file contained placeholders.
+         */
+        public String getCommit() {
+            return commit;
+        }
+
+        /**
+         * @return The branch moved to the new commit, or null if none was requested.
+         */
+        public String getUpdatedRef() {
+            return updatedRef;
+        }
+
+        public int getFilesScanned() {
+            return filesScanned;
+        }
+
+        public int getFilesResolved() {
+            return filesResolved;
+        }
+
+        public int getPlaceholders() {
+            return placeholders;
+        }
+    }
+
+    /**
+     * Creates the service from the "git.*" settings in uvh_config.properties.
+     */
+    public static GitTreeResolution fromConfig(LskResolution lskResolution) {
+        String root = UvhConfig.getString("git.allowedRoot", "").trim();
+        List<String> suffixes = new ArrayList<>();
+        for (String suffix : UvhConfig.getString("git.fileSuffixes", ".xml").split(",")) {
+            if (!suffix.trim().isEmpty()) {
+                suffixes.add(suffix.trim().toLowerCase(Locale.ROOT));
+            }
+        }
+        return new GitTreeResolution(lskResolution,
+                root.isEmpty() ? null : Paths.get(root),
+                suffixes,
+                UvhConfig.getInt("git.maxBlobBytes", 64 * 1024 * 1024),
+                UvhConfig.getInt("git.parallelism", Runtime.getRuntime().availableProcessors()),
+                UvhConfig.getString("git.committerName", "UVH Resolver"),
+                UvhConfig.getString("git.committerEmail", "uvh-resolver@localhost"));
+    }
+
+    /**
+     * @param allowedRoot Directory that repositories must be inside, or null to disable the feature.
+     */
+    public GitTreeResolution(LskResolution lskResolution, Path allowedRoot, List<String> fileSuffixes, int maxBlobBytes,
+                             int parallelism, String committerName, String committerEmail) {
+        if (lskResolution == null) {
+            throw new IllegalArgumentException("LskResolution cannot be null for GitTreeResolution");
+        }
+        this.lskResolution = lskResolution;
+        this.allowedRoot = allowedRoot;
+        this.fileSuffixes = new ArrayList<>(fileSuffixes);
+        this.maxBlobBytes = maxBlobBytes;
+        this.scanPool = new ForkJoinPool(Math.max(1, parallelism));
+        this.committerName = committerName;
+        this.committerEmail = committerEmail;
+    }
+
+    public boolean isEnabled() {
+        return allowedRoot != null;
+    }
+
+    /**
+     * Resolves all matching files of a revision and commits the result.
+     *
+     * @param repositoryPath Repository directory (work tree or bare), inside git.allowedRoot.
+     * @param revision       Any revision string JGit understands (branch, tag, SHA-1, HEAD~1, ...).
+     * @param targetBranch   Optional branch name to move to the new commit; null leaves all refs unchanged.
+     * @param message        Optional commit message.
+     * @throws GitResolutionException     For repository, revision or branch problems.
+     * @throws PlaceholderFormatException If a placeholder in one of the files could not be parsed.
+     */
+    public Result resolve(String repositoryPath, String revision, String targetBranch, String message)
+            throws PlaceholderFormatException {
+        // Check the branch name before opening anything; "main..x" or "a b" would otherwise reach RefUpdate
+        String refName = targetBranch == null ? null : Constants.R_HEADS + targetBranch;
+        if (refName != null && !Repository.isValidRefName(refName)) {
+            throw new GitResolutionException(Reason.INVALID_REQUEST, "Invalid branch name '" + targetBranch + "'.");
+        }
+        File gitDir = locateRepository(repositoryPath);
+        try (Repository repository = new FileRepositoryBuilder().setGitDir(gitDir).setMustExist(true).build();
+             RevWalk revWalk = new RevWalk(repository)) {
+
+            ObjectId revisionId;
+            try {
+                revisionId = repository.resolve(revision + "^{commit}");
+            } catch (RevisionSyntaxException e) {
+                throw new GitResolutionException(Reason.INVALID_REQUEST, "Invalid revision '" + revision + "'.", e);
+            }
+            if (revisionId == null) {
+                throw new GitResolutionException(Reason.NOT_FOUND, "Revision '" + revision + "' not found.");
+            }
+            RevCommit base = revWalk.parseCommit(revisionId);
+            if (refName != null) {
+                checkBranchAt(repository, refName, base); // Fail before reserving anything
+            }
+
+            List<TreeFile> files = listFiles(repository, base);
+            try {
+                scanPool.invoke(new ScanTask(repository, files, 0, files.size()));
+            } catch (IllegalArgumentException e) { // Same translation as XmlUtils.findUniquePlaceholders
+                throw new PlaceholderFormatException("Error parsing placeholder structure. Reason: " + e.getMessage(), e);
+            }
+
+            List<TreeFile> withPlaceholders = new ArrayList<>();
+            List<PlaceholderScan> scans = new ArrayList<>();
+            int placeholders = 0;
+            for (TreeFile file : files) {
+                if (file.scan.getOccurrenceCount() > 0) {
+                    withPlaceholders.add(file);
+                    scans.add(file.scan);
+                    placeholders += file.scan.getPlaceholders().size();
+                }
+            }
+            log.info("Scanned {} files of {} at {}: {} contain placeholders.",
+                    files.size(), repositoryPath, base.name(), withPlaceholders.size());
+            if (withPlaceholders.isEmpty()) {
+                return new Result(base.name(), null, null, files.size(), 0, 0);
+            }
+
+            // One reservation per counter for the whole tree
+            List<ResolvedDocument> resolved = lskResolution.resolveScans(scans);
+
+            ObjectId commitId = writeCommit(repository, base, withPlaceholders, resolved,
+                    message != null && !message.trim().isEmpty() ? message
+                            : "Resolve LSK placeholders in " + withPlaceholders.size() + " files");
+            if (refName != null) {
+                updateBranch(repository, refName, base, commitId);
+            }
+            log.info("Created commit {} on top of {} ({} files, {} placeholders){}.", commitId.name(), base.name(),
+                    withPlaceholders.size(), placeholders, refName != null ? "; moved " + refName : "");
+            return new Result(base.name(), commitId.name(), refName, files.size(), withPlaceholders.size(), placeholders);
+
+        } catch (IOException e) {
+            throw new GitResolutionException(Reason.REPOSITORY_ERROR, "Repository error: " + e.getMessage(), e);
+        }
+    }
+
+    // Resolves the path against git.allowedRoot (symlinks included) and finds the .git directory
+    private File locateRepository(String repositoryPath) {
+        if (allowedRoot == null) {
+            throw new GitResolutionException(Reason.DISABLED, "Git resolution is disabled (git.allowedRoot is not set).");
+        }
+        if (repositoryPath == null || repositoryPath.trim().isEmpty()) {
+            throw new GitResolutionException(Reason.NOT_FOUND, "A repository path is required.");
+        }
+        Path requested;
+        Path root;
+        try {
+            root = allowedRoot.toRealPath();
+            requested = root.resolve(repositoryPath.trim()).toRealPath();
+        } catch (IOException e) {
+            throw new GitResolutionException(Reason.NOT_FOUND, "Repository '" + repositoryPath + "' not found.");
+        }
+        if (!requested.startsWith(root)) {
+            throw new GitResolutionException(Reason.FORBIDDEN, "Repository '" + repositoryPath + "' is outside git.allowedRoot.");
+        }
+        File gitDir = RepositoryCache.FileKey.resolve(requested.toFile(), FS.DETECTED);
+        if (gitDir == null || !Files.isDirectory(gitDir.toPath())) {
+            throw new GitResolutionException(Reason.NOT_FOUND, "'" + repositoryPath + "' is not a Git repository.");
+        }
+        return gitDir;
+    }
+
+    private List<TreeFile> listFiles(Repository repository, RevCommit base) throws IOException {
+        List<TreeFile> files = new ArrayList<>();
+        try (TreeWalk treeWalk = new TreeWalk(repository)) {
+            treeWalk.addTree(base.getTree());
+            treeWalk.setRecursive(true);
+            while (treeWalk.next()) {
+                FileMode mode = treeWalk.getFileMode(0);
+                String path = treeWalk.getPathString();
+                if ((mode == FileMode.REGULAR_FILE || mode == FileMode.EXECUTABLE_FILE) && matchesSuffix(path)) {
+                    files.add(new TreeFile(path, treeWalk.getObjectId(0), mode));
+                }
+            }
+        }
+        return files;
+    }
+
+    private boolean matchesSuffix(String path) {
+        String lower = path.toLowerCase(Locale.ROOT);
+        for (String suffix : fileSuffixes) {
+            if (lower.endsWith(suffix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void checkBranchAt(Repository repository, String refName, RevCommit base) throws IOException {
+        Ref ref = repository.exactRef(refName);
+        if (ref != null && !base.equals(ref.getObjectId())) {
+            throw new GitResolutionException(Reason.CONFLICT,
+                    refName + " is at " + ref.getObjectId().name() + ", not at the resolved revision " + base.name() + ".");
+        }
+    }
+
+    private ObjectId writeCommit(Repository repository, RevCommit base, List<TreeFile> files,
+                                 List<ResolvedDocument> resolved, String message) throws IOException {
+        try (ObjectInserter inserter = repository.newObjectInserter();
+             ObjectReader reader = repository.newObjectReader()) {
+            DirCache index = DirCache.read(reader, base.getTree());
+            DirCacheEditor editor = index.editor();
+            for (int i = 0; i < files.size(); i++) {
+                TreeFile file = files.get(i);
+                ObjectId blob = inserter.insert(Constants.OBJ_BLOB, resolved.get(i).toBytes());
+                editor.add(new DirCacheEditor.PathEdit(file.path) {
+                    @Override
+                    public void apply(DirCacheEntry entry) {
+                        entry.setFileMode(file.mode);
+                        entry.setObjectId(blob);
+                    }
+                });
+            }
+            editor.finish();
+
+            PersonIdent committer = new PersonIdent(committerName, committerEmail);
+            CommitBuilder commit = new CommitBuilder();
+            commit.setTreeId(index.writeTree(inserter));
+            commit.setParentId(base);
+            commit.setAuthor(committer);
+            commit.setCommitter(committer);
+            commit.setMessage(message);
+            ObjectId commitId = inserter.insert(commit);
+            inserter.flush();
+            return commitId;
+        }
+    }
+
+    private void updateBranch(Repository repository, String refName, RevCommit base, ObjectId commitId) throws IOException {
+        RefUpdate update = repository.updateRef(refName);
+        Ref current = repository.exactRef(refName);
+        update.setExpectedOldObjectId(current == null ? ObjectId.zeroId() : base);
+        update.setNewObjectId(commitId);
+        update.setRefLogMessage("uvh: resolve LSK placeholders", false);
+        RefUpdate.Result result = update.update();
+        if (result != RefUpdate.Result.NEW && result != RefUpdate.Result.FAST_FORWARD) {
+            // Values are reserved and the commit exists; report it so the caller can still use it
+            throw new GitResolutionException(Reason.CONFLICT,
+                    "Could not move " + refName + " to " + commitId.name() + " (" + result + ").");
+        }
+    }
+
+    /**
+     * Stops the scan pool.
+     */
+    public void shutdown() {
+        scanPool.shutdown();
+    }
+
+    // --- One matching file of the tree; the scan is filled in by ScanTask ---
+    private static final class TreeFile {
+        private final String path;
+        private final ObjectId blobId;
+        private final FileMode mode;
+        private PlaceholderScan scan;
+
+        private TreeFile(String path, ObjectId blobId, FileMode mode) {
+            this.path = path;
+            this.blobId = blobId;
+            this.mode = mode;
+        }
+    }
+
+    // Loads and scans files[from, to): splits until FILES_PER_TASK, then reads with its own ObjectReader
+    private final class ScanTask extends RecursiveAction {
+        private final Repository repository;
+        private final List<TreeFile> files;
+        private final int from;
+        private final int to;
+
+        private ScanTask(Repository repository, List<TreeFile> files, int from, int to) {
+            this.repository = repository;
+            this.files = files;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > FILES_PER_TASK) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new ScanTask(repository, files, from, middle), new ScanTask(repository, files, middle, to));
+                return;
+            }
+            try (ObjectReader reader = repository.newObjectReader()) {
+                for (int i = from; i < to; i++) {
+                    TreeFile file = files.get(i);
+                    byte[] content = reader.open(file.blobId, Constants.OBJ_BLOB).getCachedBytes(maxBlobBytes);
+                    file.scan = XmlUtils.scanPlaceholders(ByteBuffer.wrap(content));
+                }
+            } catch (LargeObjectException e) {
+                throw new GitResolutionException(Reason.TOO_LARGE, "A file exceeds git.maxBlobBytes (" + maxBlobBytes + " bytes).", e);
+            } catch (IOException e) {
+                throw new GitResolutionException(Reason.REPOSITORY_ERROR, "Could not read blob: " + e.getMessage(), e);
+            }
+        }
+    }
+}
@@ -0,0 +1,360 @@
+package com.budra.uvh.service;
+
+import com.budra.uvh.config.UvhConfig;
+import com.budra.uvh.exception.LskGenerationException;
+import com.budra.uvh.metrics.Metrics;
+import com.budra.uvh.model.CounterStore;
+import com.budra.uvh.utils.CounterKey;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * In-process hi/lo allocator that sits in front of a CounterStore.
+ *
+ * For every counter (table:column) it leases a contiguous range of values from the
+ * counter store in its own short transaction and then serves keys from memory using
+ * atomic increments. When the remaining part of a lease drops below the refill
+ * threshold, the next lease is fetched in the background so callers normally never
+ * wait on the database. Lease sizes adapt to each counter's observed demand.
+ *
+ * IMPORTANT: Values of a lease that are never handed out (e.g. on shutdown) are lost.
+ * Only enable this where gaps in the key sequence are acceptable.
+ */
+public class HiLoKeyAllocator {
+    private static final Logger log = LoggerFactory.getLogger(HiLoKeyAllocator.class);
+
+    private final CounterStore counterStore;
+    private final ConcurrentHashMap<CounterKey, CounterState> counters = new ConcurrentHashMap<>();
+    private final ExecutorService refillExecutor;
+
+    private final int initialLeaseSize;
+    private final int minLeaseSize;
+    private final int maxLeaseSize;
+    private final double refillThreshold;
+    private final long targetLeaseMillis;
+
+    /**
+     * Creates an allocator using the "lsk.allocator.*" settings from uvh_config.properties.
+     */
+    public static HiLoKeyAllocator fromConfig(CounterStore counterStore) {
+        return new HiLoKeyAllocator(counterStore,
+                UvhConfig.getInt("lsk.allocator.initialLeaseSize", 1000),
+                UvhConfig.getInt("lsk.allocator.minLeaseSize", 100),
+                UvhConfig.getInt("lsk.allocator.maxLeaseSize", 100000),
+                UvhConfig.getDouble("lsk.allocator.refillThreshold", 0.25),
+                UvhConfig.getLong("lsk.allocator.targetLeaseMillis", 10000));
+    }
+
+    /**
+     * @param counterStore      Store used to lease ranges.
+     * @param initialLeaseSize  Lease size for a counter that has no demand history yet.
+     * @param minLeaseSize      Lower bound for adaptive lease sizing.
+     * @param maxLeaseSize      Upper bound for adaptive lease sizing.
+     * @param refillThreshold   Fraction of the lease left (0-1) at which the next lease is prefetched.
+     * @param targetLeaseMillis How long a lease should last at the observed demand rate.
+     */
+    public HiLoKeyAllocator(CounterStore counterStore, int initialLeaseSize, int minLeaseSize,
+                            int maxLeaseSize, double refillThreshold, long targetLeaseMillis) {
+        if (counterStore == null) {
+            throw new IllegalArgumentException("CounterStore cannot be null for HiLoKeyAllocator");
+        }
+        if (minLeaseSize <= 0 || maxLeaseSize < minLeaseSize) {
+            throw new IllegalArgumentException("Lease size bounds must satisfy 0 < min <= max.");
+        }
+        if (refillThreshold < 0 || refillThreshold >= 1) {
+            throw new IllegalArgumentException("Refill threshold must be in [0, 1).");
+        }
+        this.counterStore = counterStore;
+        this.minLeaseSize = minLeaseSize;
+        this.maxLeaseSize = maxLeaseSize;
+        this.initialLeaseSize = clamp(initialLeaseSize);
+        this.refillThreshold = refillThreshold;
+        this.targetLeaseMillis = targetLeaseMillis;
+        this.refillExecutor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "lsk-lease-refill");
+            thread.setDaemon(true);
+            return thread;
+        });
+        Metrics.registerCounters("lsk_allocator_hits_total", "Allocations served from an in-memory lease.", "counter",
+                () -> statisticsByCounter(LeaseStatistics::getHits));
+        Metrics.registerCounters("lsk_allocator_misses_total", "Allocations that waited for a database lease.", "counter",
+                () -> statisticsByCounter(LeaseStatistics::getMisses));
+        Metrics.registerGauges("lsk_allocator_lease_size", "Current adaptive lease size.", "counter",
+                () -> statisticsByCounter(LeaseStatistics::getLeaseSize));
+        log.info("HiLoKeyAllocator created: initialLeaseSize={}, bounds=[{}, {}], refillThreshold={}, targetLeaseMillis={}",
+                this.initialLeaseSize, minLeaseSize, maxLeaseSize, refillThreshold, targetLeaseMillis);
+    }
+
+    /**
+     * Allocates {@code count} unique values for a counter.
+     * Values are unique but not necessarily contiguous (a request can span two leases).
+     *
+     * @param counter The counter to draw from.
+     * @param count   Number of values required (must be > 0).
+     * @return The allocated values.
+     * @throws LskGenerationException If a lease could not be obtained from the counter store.
+     */
+    public long[] allocate(CounterKey counter, int count) {
+        if (count <= 0) {
+            throw new IllegalArgumentException("Count must be positive.");
+        }
+        CounterState state = counters.computeIfAbsent(counter, k -> new CounterState(initialLeaseSize));
+        state.demand.add(count);
+
+        long[] values = new long[count];
+        int filled = 0;
+        boolean missed = false;
+        Lease lease = state.current;
+        while (true) {
+            int wanted = count - filled;
+            long first = lease.next.getAndAdd(wanted);
+            long last = Math.min(lease.end, first + wanted - 1);
+            for (long value = first; value <= last; value++) {
+                values[filled++] = value;
+            }
+            if (filled == count) {
+                break;
+            }
+            // Lease exhausted: switch to the prefetched lease, or fetch one synchronously
+            missed |= advance(counter, state, lease, count - filled);
+            lease = state.current;
+        }
+
+        if (missed) {
+            state.misses.increment();
+        } else {
+            state.hits.increment();
+        }
+        maybePrefetch(counter, state, lease);
+        return values;
+    }
+
+    /**
+     * Fetches the first lease of a counter ahead of traffic (used at startup for hot counters),
+     * so the first request for it is served from memory. Does nothing if the counter already has values.
+     *
+     * @throws LskGenerationException If the lease could not be obtained from the counter store.
+     */
+    public void preload(CounterKey counter) {
+        CounterState state = counters.computeIfAbsent(counter, k -> new CounterState(initialLeaseSize));
+        synchronized (state) {
+            if (state.current.remaining() > 0) {
+                return;
+            }
+            // No demand has been seen yet, so skip adaptLeaseSize (it would shrink the lease)
+            long start = counterStore.reserveBlock(counter, state.leaseSize);
+            state.leases.increment();
+            state.lastFetchMillis = System.currentTimeMillis();
+            state.current = new Lease(start, start + state.leaseSize - 1);
+            log.info("Preloaded lease [{}-{}] for {}", start, start + state.leaseSize - 1, counter);
+        }
+    }
+
+    /**
+     * Replaces an exhausted lease. Only one thread per counter does the swap; the others
+     * wait on the monitor and then retry against the new lease.
+     *
+     * @return true if the caller had to wait for a synchronous database fetch.
+     */
+    private boolean advance(CounterKey counter, CounterState state, Lease exhausted, int stillNeeded) {
+        synchronized (state) {
+            if (state.current != exhausted) {
+                return false; // Another thread already installed a fresh lease
+            }
+            Lease next = state.prefetched.getAndSet(null);
+            if (next != null) {
+                state.current = next;
+                log.debug("Switched {} to prefetched lease [{}-{}]", counter, next.start, next.end);
+                return false;
+            }
+            int size = Math.max(state.leaseSize, stillNeeded);
+            log.debug("Lease for {} exhausted with no prefetched lease; fetching {} values synchronously.", counter, size);
+            state.current = fetchLease(counter, state, size);
+            return true;
+        }
+    }
+
+    private void maybePrefetch(CounterKey counter, CounterState state, Lease lease) {
+        long remaining = lease.remaining();
+        if (remaining > (long) (state.leaseSize * refillThreshold) || state.prefetched.get() != null) {
+            return;
+        }
+        if (!state.refillInFlight.compareAndSet(false, true)) {
+            return; // A refill for this counter is already running
+        }
+        refillExecutor.execute(() -> {
+            try {
+                Lease prefetched = fetchLease(counter, state, state.leaseSize);
+                state.prefetched.set(prefetched);
+                log.debug("Prefetched lease [{}-{}] for {}", prefetched.start, prefetched.end, counter);
+            } catch (RuntimeException e) {
+                // Not fatal: the next caller that runs out will fetch synchronously
+                log.warn("Background lease refill failed for {}: {}", counter, e.getMessage());
+            } finally {
+                state.refillInFlight.set(false);
+            }
+        });
+    }
+
+    /**
+     * Reserves a new range in its own transaction and adapts the lease size to the
+     * demand observed since the previous fetch.
+     * Called from advance (holding the state monitor) and from background refills (not holding it);
+     * the database call itself runs outside the monitor for refills, so allocations keep being
+     * served from the current lease meanwhile.
+     */
+    private Lease fetchLease(CounterKey counter, CounterState state, int size) {
+        long start;
+        try {
+            start = counterStore.reserveBlock(counter, size);
+        } catch (LskGenerationException e) {
+            log.error("Error while leasing {} values for {}: {}", size, counter, e.getMessage(), e);
+            throw e;
+        }
+
+        // Same monitor as advance/preload: demand, lastFetchMillis and leaseSize change together
+        synchronized (state) {
+            state.leases.increment();
+            adaptLeaseSize(counter, state);
+        }
+        return new Lease(start, start + size - 1);
+    }
+
+    // Caller holds the state monitor
+    private void adaptLeaseSize(CounterKey counter, CounterState state) {
+        long now = System.currentTimeMillis();
+        long elapsed = Math.max(1, now - state.lastFetchMillis);
+        long demanded = state.demand.sumThenReset();
+        state.lastFetchMillis = now;
+
+        // Size the next lease so it lasts about targetLeaseMillis, smoothed against the current size
+        double ratePerMilli = (double) demanded / elapsed;
+        long ideal = (long) Math.ceil(ratePerMilli * targetLeaseMillis);
+        int newSize = clamp((state.leaseSize + ideal) / 2);
+        if (newSize != state.leaseSize) {
+            log.debug("Lease size for {} adjusted {} -> {} (demand {} values in {} ms)", counter, state.leaseSize, newSize, demanded, elapsed);
+            state.leaseSize = newSize;
+        }
+    }
+
+    private int clamp(long size) {
+        return (int) Math.max(minLeaseSize, Math.min(maxLeaseSize, size));
+    }
+
+    /**
+     * @return Per-counter lease statistics, ordered by counter.
+     */
+    public Map<CounterKey, LeaseStatistics> getStatistics() {
+        Map<CounterKey, LeaseStatistics> stats = new TreeMap<>();
+        counters.forEach((counter, state) -> stats.put(counter, new LeaseStatistics(
+                state.hits.sum(), state.misses.sum(), state.leases.sum(), state.leaseSize, state.current.remaining())));
+        return stats;
+    }
+
+    // One metric sample per counter, labelled table:column
+    private Map<String, Number> statisticsByCounter(Function<LeaseStatistics, Number> read) {
+        Map<String, Number> samples = new LinkedHashMap<>();
+        getStatistics().forEach((counter, statistics) -> samples.put(counter.toString(), read.apply(statistics)));
+        return samples;
+    }
+
+    /**
+     * Stops background refills. Values remaining in current leases are abandoned.
+     */
+    public void shutdown() {
+        refillExecutor.shutdownNow();
+        log.info("HiLoKeyAllocator shut down. Final lease statistics: {}", getStatistics());
+    }
+
+    // --- A leased range [start, end]; next is the cursor handed out with getAndAdd ---
+    private static final class Lease {
+        private final long start;
+        private final long end;
+        private final AtomicLong next;
+
+        private Lease(long start, long end) {
+            this.start = start;
+            this.end = end;
+            this.next = new AtomicLong(start);
+        }
+
+        private long remaining() {
+            return Math.max(0, end - next.get() + 1);
+        }
+    }
+
+    private static final class CounterState {
+        private volatile Lease current = new Lease(1, 0); // Empty: the first allocation triggers a fetch
+        private final AtomicReference<Lease> prefetched = new AtomicReference<>();
+        private final AtomicBoolean refillInFlight = new AtomicBoolean();
+        private volatile int leaseSize;
+        private volatile long lastFetchMillis = System.currentTimeMillis();
+        private final LongAdder demand = new LongAdder();
+        private final LongAdder hits = new LongAdder();
+        private final LongAdder misses = new LongAdder();
+        private final LongAdder leases = new LongAdder();
+
+        private CounterState(int leaseSize) {
+            this.leaseSize = leaseSize;
+        }
+    }
+
+    /**
+     * Snapshot of one counter's allocator activity.
+     * A hit is an allocation served entirely from memory; a miss had to wait for the database.
+     */
+    public static final class LeaseStatistics {
+        private final long hits;
+        private final long misses;
+        private final long leases;
+        private final int leaseSize;
+        private final long remaining;
+
+        LeaseStatistics(long hits, long misses, long leases, int leaseSize, long remaining) {
+            this.hits = hits;
+            this.misses = misses;
+            this.leases = leases;
+            this.leaseSize = leaseSize;
+            this.remaining = remaining;
+        }
+
+        public long getHits() {
+            return hits;
+        }
+
+        public long getMisses() {
+            return misses;
+        }
+
+        public long getLeases() {
+            return leases;
+        }
+
+        public int getLeaseSize() {
+            return leaseSize;
+        }
+
+        public long getRemaining() {
+            return remaining;
+        }
+
+        @Override
+        public String toString() {
+            return "LeaseStatistics{hits=" + hits + ", misses=" + misses + ", leases=" + leases
+                    + ", leaseSize=" + leaseSize + ", remaining=" + remaining + '}';
+        }
+    }
+}
@@ -0,0 +1,328 @@
+package com.budra.uvh.service;
+
+import com.budra.uvh.config.UvhConfig;
+import com.budra.uvh.dbConfig.ConnectionManager;
+import com.budra.uvh.exception.IdempotencyConflictException;
+import com.budra.uvh.exception.PlaceholderFormatException;
+import com.budra.uvh.metrics.Metrics;
+import com.budra.uvh.model.IdempotencyRepository;
+import com.budra.uvh.utils.ContentHash;
+import com.budra.uvh.utils.LruCache;
+import com.budra.uvh.utils.XmlUtils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Makes /resolve idempotent: a retried request gets the values of its first attempt instead of
+ * reserving new ones.
+ *
+ * Requests are keyed by the Idempotency-Key header (scoped to the X-Client-Id). Requests without
+ * the header always reserve new values, since posting the same template twice is normal use; only
+ * with lsk.idempotency.contentHashKeys=true are identical bodies (SHA-256) treated as retries.
+ * The resolved mapping is kept in a bounded LRU cache with a TTL and, optionally, in the
+ * LskIdempotencyResults table (lsk.idempotency.spill.enabled) so it survives eviction and restarts.
+ *
+ * Identical requests that arrive while the first one is still running are collapsed onto it
+ * (single-flight): only the first reserves keys, the others wait and replay its mapping.
+ * Reusing an Idempotency-Key with a different body is rejected with IdempotencyConflictException.
+ */
+public class IdempotencyCache {
+    private static final Logger log = LoggerFactory.getLogger(IdempotencyCache.class);
+    private static final int MAX_KEY_LENGTH = 255;
+    private static final long ENTRY_OVERHEAD_BYTES = 64;
+
+    private final LruCache<String, CachedResult> cache;
+    private final ConcurrentHashMap<String, CompletableFuture<CachedResult>> inFlight = new ConcurrentHashMap<>();
+    private final boolean contentHashKeys;
+    private final long ttlMillis;
+    private final IdempotencyRepository spillRepository; // null = memory only
+    private final AtomicLong lastSpillPurgeMillis = new AtomicLong(System.currentTimeMillis());
+
+    private final LongAdder replays = new LongAdder();
+    private final LongAdder collapsed = new LongAdder();
+    private final LongAdder spillHits = new LongAdder();
+
+    /**
+     * Unit of work that reserves values for a document; runs only on a cache miss.
+     */
+    @FunctionalInterface
+    public interface Resolver {
+        ResolvedDocument resolve() throws PlaceholderFormatException;
+    }
+
+    /**
+     * Outcome of {@link #resolve}: the document and whether it was replayed from an earlier request.
+     */
+    public static final class Result {
+        private final ResolvedDocument document;
+        private final boolean replayed;
+
+        Result(ResolvedDocument document, boolean replayed) {
+            this.document = document;
+            this.replayed = replayed;
+        }
+
+        public ResolvedDocument getDocument() {
+            return document;
+        }
+
+        public boolean isReplayed() {
+            return replayed;
+        }
+    }
+
+    /**
+     * Creates a cache using the "lsk.idempotency.*" settings from uvh_config.properties.
+     */
+    public static IdempotencyCache fromConfig() {
+        return new IdempotencyCache(
+                UvhConfig.getInt("lsk.idempotency.maxEntries", 100_000),
+                UvhConfig.getLong("lsk.idempotency.maxBytes", 64L * 1024 * 1024),
+                UvhConfig.getLong("lsk.idempotency.ttlSeconds", 600) * 1000,
+                UvhConfig.getBoolean("lsk.idempotency.contentHashKeys", false),
+                UvhConfig.getBoolean("lsk.idempotency.spill.enabled", false) ? new IdempotencyRepository() : null);
+    }
+
+    /**
+     * @param spillRepository Repository for the database spill, or null to keep results in memory only.
+     */
+    public IdempotencyCache(int maxEntries, long maxBytes, long ttlMillis, boolean contentHashKeys,
+                            IdempotencyRepository spillRepository) {
+        this.cache = new LruCache<>(maxEntries, maxBytes, ttlMillis, CachedResult::weight);
+        this.contentHashKeys = contentHashKeys;
+        this.ttlMillis = ttlMillis;
+        this.spillRepository = spillRepository;
+        Metrics.registerGauge("lsk_idempotency_entries", "Results held in the idempotency cache.", () -> cache.size());
+        Metrics.registerGauge("lsk_idempotency_bytes", "Approximate size of the idempotency cache in bytes.", () -> cache.getWeight());
+        Metrics.registerCounter("lsk_idempotency_replays_total", "Requests answered with an earlier result.", this::getReplayCount);
+        Metrics.registerCounter("lsk_idempotency_collapsed_total", "Requests that waited for an identical in-flight request.", this::getCollapsedCount);
+        Metrics.registerCounter("lsk_idempotency_spill_hits_total", "Results found in the database spill table.", this::getSpillHitCount);
+        Metrics.registerCounter("lsk_idempotency_evictions_total", "Results evicted to stay within the cache bounds.", () -> cache.getEvictions());
+        log.info("IdempotencyCache created: maxEntries={}, maxBytes={}, ttlMillis={}, contentHashKeys={}, spill={}",
+                maxEntries, maxBytes, ttlMillis, contentHashKeys, spillRepository != null);
+    }
+
+    /**
+     * Checks an Idempotency-Key header before any work is done for the request.
+     *
+     * @param idempotencyKey Optional Idempotency-Key header; null or blank is valid (no key).
+     * @throws IllegalArgumentException If the idempotency key is too long.
+     */
+    public static void validateKey(String idempotencyKey) {
+        if (idempotencyKey != null && idempotencyKey.trim().length() > MAX_KEY_LENGTH) {
+            throw new IllegalArgumentException("Idempotency-Key must be at most " + MAX_KEY_LENGTH + " characters.");
+        }
+    }
+
+    /**
+     * Resolves a request body, replaying an earlier result for the same key if there is one.
+     *
+     * @param clientId       Optional X-Client-Id; scopes the idempotency key.
+     * @param idempotencyKey Optional Idempotency-Key header.
+     * @param body           The UTF-8 request body.
+     * @param resolver       Reserves values on a miss.
+     * @throws IdempotencyConflictException If the key was used before with a different body.
+     * @throws IllegalArgumentException If the idempotency key is too long.
+     */
+    public Result resolve(String clientId, String idempotencyKey, byte[] body, Resolver resolver) throws PlaceholderFormatException {
+        String headerKey = headerCacheKey(clientId, idempotencyKey);
+        if (headerKey == null && !contentHashKeys) {
+            return new Result(resolver.resolve(), false); // Not idempotent: skip hashing the body
+        }
+        // Needed as the key itself, or for the conflict check of a reused Idempotency-Key
+        String contentHash = ContentHash.sha256Hex(body);
+        String cacheKey = headerKey != null ? headerKey : "sha256:" + contentHash;
+
+        CachedResult cached = cache.get(cacheKey);
+        if (cached != null) {
+            return replay(cacheKey, cached, contentHash, body);
+        }
+
+        CompletableFuture<CachedResult> mine = new CompletableFuture<>();
+        CompletableFuture<CachedResult> running = inFlight.putIfAbsent(cacheKey, mine);
+        if (running != null) {
+            collapsed.increment();
+            log.debug("Identical request {} already in flight; waiting for its result.", cacheKey);
+            return replay(cacheKey, await(running), contentHash, body);
+        }
+
+        try {
+            // The previous leader may have finished between the cache lookup and putIfAbsent
+            cached = cache.get(cacheKey);
+            if (cached == null) {
+                cached = loadSpilled(cacheKey);
+            }
+            if (cached != null) {
+                mine.complete(cached);
+                return replay(cacheKey, cached, contentHash, body);
+            }
+
+            ResolvedDocument document = resolver.resolve();
+            CachedResult result = new CachedResult(cacheKey, contentHash, document.getResolvedMappings());
+            if (document.hasPlaceholders()) { // Nothing was reserved otherwise, so nothing to remember
+                cache.put(cacheKey, result);
+                spill(cacheKey, result);
+            }
+            mine.complete(result);
+            return new Result(document, false);
+        } catch (PlaceholderFormatException | RuntimeException e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(cacheKey, mine);
+        }
+    }
+
+    public long getReplayCount() {
+        return replays.sum();
+    }
+
+    public long getCollapsedCount() {
+        return collapsed.sum();
+    }
+
+    public long getSpillHitCount() {
+        return spillHits.sum();
+    }
+
+    public LruCache<String, CachedResult> getCache() {
+        return cache;
+    }
+
+    // Cache key from the Idempotency-Key header, or null if the request has none
+    private static String headerCacheKey(String clientId, String idempotencyKey) {
+        if (idempotencyKey != null && !idempotencyKey.trim().isEmpty()) {
+            validateKey(idempotencyKey);
+            String key = idempotencyKey.trim();
+            return "key:" + (clientId == null ? "" : clientId.trim()) + ":" + key;
+        }
+        return null;
+    }
+
+    private Result replay(String cacheKey, CachedResult cached, String contentHash, byte[] body) {
+        if (!cached.contentHash.equals(contentHash)) {
+            log.warn("Idempotency key {} reused with a different request body.", cacheKey);
+            throw new IdempotencyConflictException("Idempotency-Key was already used with a different request body.");
+        }
+        replays.increment();
+        log.info("Replaying resolution of {} ({} mappings); no new values reserved.", cacheKey, cached.mappings.size());
+        return new Result(ResolvedDocument.fromMappings(XmlUtils.scanPlaceholders(body), cached.mappings), true);
+    }
+
+    private static CachedResult await(CompletableFuture<CachedResult> running) throws PlaceholderFormatException {
+        try {
+            return running.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof PlaceholderFormatException) {
+                throw (PlaceholderFormatException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw e;
+        }
+    }
+
+    // --- Database spill (failures are logged; the cache keeps working from memory) ---
+
+    private CachedResult loadSpilled(String cacheKey) {
+        if (spillRepository == null) {
+            return null;
+        }
+        try (Connection connection = ConnectionManager.getConnection()) {
+            IdempotencyRepository.StoredResult stored = spillRepository.find(connection, cacheKey, expiryCutoff());
+            if (stored == null) {
+                return null;
+            }
+            spillHits.increment();
+            CachedResult result = new CachedResult(cacheKey, stored.getContentHash(), parseMappings(stored.getMappings()));
+            cache.put(cacheKey, result);
+            return result;
+        } catch (SQLException e) {
+            log.warn("Could not read idempotency spill for {}: {}", cacheKey, e.getMessage());
+            return null;
+        }
+    }
+
+    private void spill(String cacheKey, CachedResult result) {
+        if (spillRepository == null) {
+            return;
+        }
+        try (Connection connection = ConnectionManager.getConnection()) {
+            spillRepository.save(connection, cacheKey, result.contentHash, formatMappings(result.mappings));
+            purgeExpiredSpill(connection);
+        } catch (SQLException e) {
+            log.warn("Could not spill idempotency result for {}: {}", cacheKey, e.getMessage());
+        }
+    }
+
+    // At most once per TTL, so expired rows do not pile up
+    private void purgeExpiredSpill(Connection connection) throws SQLException {
+        long last = lastSpillPurgeMillis.get();
+        long now = System.currentTimeMillis();
+        if (ttlMillis > 0 && now - last > ttlMillis && lastSpillPurgeMillis.compareAndSet(last, now)) {
+            int removed = spillRepository.deleteExpired(connection, expiryCutoff());
+            log.info("Removed {} expired idempotency results from the spill table.", removed);
+        }
+    }
+
+    private Timestamp expiryCutoff() {
+        return new Timestamp(ttlMillis > 0 ? System.currentTimeMillis() - ttlMillis : 0);
+    }
+
+    // Placeholders and resolved LSKs never contain tabs or newlines
+    private static String formatMappings(Map<String, String> mappings) {
+        StringBuilder text = new StringBuilder(mappings.size() * 64);
+        mappings.forEach((placeholder, resolved) -> text.append(placeholder).append('\t').append(resolved).append('\n'));
+        return text.toString();
+    }
+
+    private static Map<String, String> parseMappings(String text) {
+        Map<String, String> mappings = new LinkedHashMap<>();
+        for (String line : text.split("\n")) {
+            int tab = line.indexOf('\t');
+            if (tab > 0) {
+                mappings.put(line.substring(0, tab), line.substring(tab + 1));
+            }
+        }
+        return mappings;
+    }
+
+    /**
+     * Cached mapping of one request, with the hash of the body that produced it.
+     */
+    public static final class CachedResult {
+        private final String contentHash;
+        private final Map<String, String> mappings;
+        private final long weight;
+
+        CachedResult(String cacheKey, String contentHash, Map<String, String> mappings) {
+            this.contentHash = contentHash;
+            this.mappings = Collections.unmodifiableMap(mappings);
+            long chars = cacheKey.length() + contentHash.length();
+            for (Map.Entry<String, String> entry : mappings.entrySet()) {
+                chars += entry.getKey().length() + entry.getValue().length();
+            }
+            // Approximate retained size: 2 bytes per char plus per-entry object overhead
+            this.weight = 2 * chars + ENTRY_OVERHEAD_BYTES * (mappings.size() + 1);
+        }
+
+        long weight() {
+            return weight;
+        }
+    }
+}
@@ -1,12 +1,14 @@
 package com.budra.uvh.service;
 
-import com.budra.uvh.dbConfig.ConnectionManager;
 // Ensure correct package for repository
-import com.budra.uvh.model.LskCounterRepository;
+import com.budra.uvh.model.AuditEntry;
+import com.budra.uvh.model.CounterStore;
 import com.budra.uvh.exception.PlaceholderFormatException;
 // Assuming LskGenerationException might be thrown from repo or needed for future catches
 import com.budra.uvh.exception.LskGenerationException;
+import com.budra.uvh.utils.CounterKey;
 import com.budra.uvh.utils.PlaceHolderInfo;
+import com.budra.uvh.utils.PlaceholderScan;
 import com.budra.uvh.utils.XmlUtils;
 
 // Removed jakarta.enterprise.context.RequestScoped
@@ -14,122 +16,244 @@ import com.budra.uvh.utils.XmlUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.sql.Connection;
-import java.sql.SQLException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.stream.Collectors;
 
 // NO @RequestScoped annotation
 public class LskResolution {
     private static final Logger log = LoggerFactory.getLogger(LskResolution.class);
 
     // Dependency field - made final, initialized by constructor
-    private final LskCounterRepository counterRepository;
+    private final CounterStore counterStore;
+    // Optional: when set, values are served from in-memory leases instead of a per-request store reservation
+    private final HiLoKeyAllocator keyAllocator;
+    // Optional: when set, every assigned value is recorded asynchronously
+    private final AuditTrail auditTrail;
 
     // NO @Inject annotation
 
     // --- Constructor for Manual DI ---
     // This constructor must be called by whatever creates LskResolution
     // (e.g., the ManualDIProviderFactory)
-    public LskResolution(LskCounterRepository counterRepository) {
+    public LskResolution(CounterStore counterStore) {
+        this(counterStore, null);
+    }
+
+    // keyAllocator may be null, in which case every request reserves directly in the store
+    public LskResolution(CounterStore counterStore, HiLoKeyAllocator keyAllocator) {
+        this(counterStore, keyAllocator, null);
+    }
+
+    // auditTrail may be null, in which case assigned values are not recorded
+    public LskResolution(CounterStore counterStore, HiLoKeyAllocator keyAllocator, AuditTrail auditTrail) {
         log.debug("LskResolution instance MANUALLY created via constructor.");
-        if (counterRepository == null) {
+        if (counterStore == null) {
             // Fail fast if the dependency wasn't provided during manual wiring
-            throw new IllegalArgumentException("LskCounterRepository cannot be null for LskResolution");
+            throw new IllegalArgumentException("CounterStore cannot be null for LskResolution");
         }
-        this.counterRepository = counterRepository;
+        this.counterStore = counterStore;
+        this.keyAllocator = keyAllocator;
+        this.auditTrail = auditTrail;
     }
 
     // Default no-arg constructor REMOVED - no longer needed for this manual approach
 
 
     public String processAndResolveXml(String inputXml) throws PlaceholderFormatException {
+        byte[] resolved = processAndResolveXml(inputXml.getBytes(StandardCharsets.UTF_8));
+        return new String(resolved, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Resolves all placeholders in a UTF-8 XML document.
+     * The input is scanned in place and the output is built in a single pass.
+     *
+     * @param inputXml The UTF-8 encoded request body.
+     * @return The resolved document (the same array if it contains no placeholders).
+     */
+    public byte[] processAndResolveXml(byte[] inputXml) throws PlaceholderFormatException {
+        ResolvedDocument document = resolveDocument(ByteBuffer.wrap(inputXml));
+        if (!document.hasPlaceholders()) {
+            return inputXml;
+        }
+        log.debug("Replacing placeholders in XML content...");
+        byte[] resolvedXml = document.toBytes();
+        log.info("LSK resolution service finished successfully.");
+        return resolvedXml;
+    }
+
+    /**
+     * Scans a document and reserves values for its placeholders, but does not rewrite it.
+     * Used directly by the streaming endpoint, which writes the result straight to the response.
+     *
+     * @param inputXml UTF-8 document bytes (heap or memory-mapped); referenced, not copied.
+     * @return The scan plus committed mappings; write it with ResolvedDocument#writeTo.
+     */
+    public ResolvedDocument resolveDocument(ByteBuffer inputXml) throws PlaceholderFormatException {
         log.info("Starting LSK resolution process for provided XML.");
+        PlaceholderScan scan = XmlUtils.scanPlaceholders(inputXml);
+        List<CounterAllocation> allocations = reserveFor(scan.getUniquePlaceholders());
+        return new ResolvedDocument(scan, toMappings(allocations), allocations);
+    }
 
-        // Check dependency (though constructor should prevent null)
-        if (this.counterRepository == null) {
-            log.error("Critical error: counterRepository field is null despite constructor injection!");
-            // Or throw a more specific internal error exception
-            throw new LskGenerationException("Internal server configuration error: Repository unavailable.");
+    /**
+     * Resolves several documents as one unit of work.
+     * Documents are scanned in parallel, their placeholders are merged (a placeholder that appears in
+     * several documents gets the same value everywhere) and each counter is reserved once for the
+     * whole batch in a single store reservation, so the batch either fully succeeds or reserves nothing.
+     *
+     * @param documents UTF-8 documents; referenced, not copied.
+     * @return One ResolvedDocument per input, in input order.
+     */
+    public List<ResolvedDocument> resolveDocuments(List<ByteBuffer> documents) throws PlaceholderFormatException {
+        log.info("Starting batch LSK resolution for {} documents.", documents.size());
+        List<PlaceholderScan> scans = documents.parallelStream()
+                .map(XmlUtils::scanPlaceholders)
+                .collect(Collectors.toList());
+        return resolveScans(scans);
+    }
+
+    /**
+     * Reservation and mapping step of {@link #resolveDocuments} for documents the caller has
+     * already scanned (e.g. the Git tree resolution, which scans while loading blobs).
+     *
+     * @param scans Scans of the documents; each keeps referencing its document buffer.
+     * @return One ResolvedDocument per scan, in input order.
+     */
+    public List<ResolvedDocument> resolveScans(List<PlaceholderScan> scans) {
+        Map<String, PlaceHolderInfo> mergedPlaceholders = new LinkedHashMap<>();
+        for (PlaceholderScan scan : scans) {
+            for (PlaceHolderInfo info : scan.getPlaceholders()) {
+                mergedPlaceholders.putIfAbsent(info.getFullPlaceholderLsk(), info);
+            }
         }
+        List<CounterAllocation> allocations = reserveFor(mergedPlaceholders);
+        Map<String, String> resolvedMappings = toMappings(allocations);
 
+        List<ResolvedDocument> resolved = new ArrayList<>(scans.size());
+        for (PlaceholderScan scan : scans) {
+            resolved.add(new ResolvedDocument(scan, resolvedMappings, allocations));
+        }
+        log.info("Batch LSK resolution finished: {} documents, {} unique placeholders.", scans.size(), mergedPlaceholders.size());
+        return resolved;
+    }
 
-        Map<String, PlaceHolderInfo> uniquePlaceholders = XmlUtils.findUniquePlaceholders(inputXml);
+    /**
+     * Reservation phase shared by all entry points: groups placeholders per counter and reserves
+     * the values (allocator or one counter store reservation).
+     *
+     * @return The values assigned per counter, in document order (empty if there are no placeholders).
+     */
+    private List<CounterAllocation> reserveFor(Map<String, PlaceHolderInfo> uniquePlaceholders) {
+        // Check dependency (though constructor should prevent null)
+        if (this.counterStore == null) {
+            log.error("Critical error: counterStore field is null despite constructor injection!");
+            // Or throw a more specific internal error exception
+            throw new LskGenerationException("Internal server configuration error: Counter store unavailable.");
+        }
 
         if (uniquePlaceholders.isEmpty()) {
             log.info("No LSK placeholders found in the input XML. Returning original content.");
-            return inputXml;
+            return new ArrayList<>();
         }
 
         log.info("Found {} unique LSK placeholders to resolve.", uniquePlaceholders.size());
 
-        Map<String, String> resolvedMappings = new HashMap<>();
-        Connection connection = null;
-        boolean transactionSuccess = false;
+        // One block reservation per counter instead of one per placeholder
+        Map<CounterKey, List<PlaceHolderInfo>> placeholdersByCounter = groupByCounter(uniquePlaceholders);
+        log.info("Reserving values for {} distinct counters.", placeholdersByCounter.size());
 
-        try {
-            connection = ConnectionManager.getConnection();
-            connection.setAutoCommit(false);
-            log.debug("Database transaction started for LSK generation.");
+        List<CounterAllocation> allocations = (this.keyAllocator != null)
+                ? allocateFromLeases(placeholdersByCounter)
+                : reserveInStore(placeholdersByCounter);
+        if (this.auditTrail != null) {
+            AuditEntry audit = new AuditEntry(this.auditTrail.newRequestId(), uniquePlaceholders.size());
+            for (CounterAllocation allocation : allocations) {
+                for (int i = 0; i < allocation.size(); i++) {
+                    audit.add(allocation.getPlaceholders().get(i), allocation.getValue(i));
+                }
+            }
+            // Values are committed at this point; the record is written off the request thread
+            this.auditTrail.record(audit);
+            log.info("Assigned {} values for audit request id {}.", audit.size(), audit.getRequestId());
+        }
+        return allocations;
+    }
 
-            for (Map.Entry<String, PlaceHolderInfo> entry : uniquePlaceholders.entrySet()) {
-                String placeHolderKey = entry.getKey();
-                PlaceHolderInfo info = entry.getValue();
+    /**
+     * Reserves one block per counter in a single CounterStore call.
+     * Either every counter is advanced or, on any error, none is.
+     */
+    private List<CounterAllocation> reserveInStore(Map<CounterKey, List<PlaceHolderInfo>> placeholdersByCounter) {
+        List<CounterAllocation> allocations = new ArrayList<>(placeholdersByCounter.size());
+        Map<CounterKey, Long> blockStarts;
+        try {
+            Map<CounterKey, Integer> counts = new HashMap<>();
+            placeholdersByCounter.forEach((counter, counterPlaceholders) -> counts.put(counter, counterPlaceholders.size()));
+            blockStarts = this.counterStore.reserveBlocks(counts);
+        } catch (IllegalArgumentException e) { // Catch potential validation errors from the store
+            log.warn("Invalid argument during LSK generation: {}", e.getMessage());
+            throw new LskGenerationException("Invalid data provided for LSK generation: " + e.getMessage(), e);
+        }
 
-                // Use the 'this.counterRepository' field
-                long generatedValue = this.counterRepository.getAndReserveNextValueBlock(connection, info.getTableName(), info.getColumnName(), 1);
-                // Use the buildResolvedLsk method from PlaceHolderInfo
-                String resolvedLsk = info.buildResolvedLsk(generatedValue);
+        for (Map.Entry<CounterKey, List<PlaceHolderInfo>> entry : placeholdersByCounter.entrySet()) {
+            long blockStart = blockStarts.get(entry.getKey());
+            List<PlaceHolderInfo> counterPlaceholders = entry.getValue();
 
-                resolvedMappings.put(placeHolderKey, resolvedLsk);
-                log.debug("Mapped placeholder '{}' to resolved LSK '{}'", placeHolderKey, resolvedLsk);
+            // Hand out the block in document order: first placeholder gets blockStart, next gets blockStart + 1, ...
+            long[] values = new long[counterPlaceholders.size()];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = blockStart + i;
             }
+            allocations.add(new CounterAllocation(entry.getKey(), counterPlaceholders, values));
+        }
+        return allocations;
+    }
 
-            connection.commit();
-            transactionSuccess = true;
-            log.debug("Database transaction committed successfully.");
-
-        } catch (SQLException e) {
-            log.error("SQL error during LSK generation transaction: {}", e.getMessage(), e);
-            // Consider re-throwing as LskGenerationException if appropriate
-            throw new LskGenerationException("Database error during LSK generation: " + e.getMessage(), e);
-        } catch (IllegalArgumentException e) { // Catch potential validation errors from repo
-            log.warn("Invalid argument during LSK generation: {}", e.getMessage());
-            // Re-throw as LskGenerationException or handle as appropriate
-            throw new LskGenerationException("Invalid data provided for LSK generation: " + e.getMessage(), e);
+    /**
+     * Draws values from the in-memory lease allocator; no per-request transaction is opened.
+     */
+    private List<CounterAllocation> allocateFromLeases(Map<CounterKey, List<PlaceHolderInfo>> placeholdersByCounter) {
+        List<CounterAllocation> allocations = new ArrayList<>(placeholdersByCounter.size());
+        for (Map.Entry<CounterKey, List<PlaceHolderInfo>> entry : placeholdersByCounter.entrySet()) {
+            List<PlaceHolderInfo> counterPlaceholders = entry.getValue();
+            long[] values = this.keyAllocator.allocate(entry.getKey(), counterPlaceholders.size());
+            allocations.add(new CounterAllocation(entry.getKey(), counterPlaceholders, values));
         }
-        // Consider adding catch (LskGenerationException e) if getAndReserveNextValueBlock throws it directly
-        // catch (LskGenerationException e) {
-        //     log.error("LSK Generation error during resolution: {}", e.getMessage(), e);
-        //     // Rollback happens in finally
-        //     throw e; // Re-throw to be potentially handled by RequestHandler
-        // }
-        finally {
-            // Finally block remains the same - crucial for connection handling
-            if (connection != null) {
-                try {
-                    if (!transactionSuccess) {
-                        log.warn("Rolling back transaction due to error during LSK resolution.");
-                        connection.rollback();
-                        log.info("Transaction rollback completed.");
-                    }
-                } catch (SQLException ex) {
-                    log.error("!!! CRITICAL: Failed to rollback transaction !!!", ex);
-                } finally {
-                    try {
-                        connection.setAutoCommit(true);
-                        connection.close();
-                        log.debug("Database connection returned to pool.");
-                    } catch (SQLException e) {
-                        log.error("Failed to close database connection/return to pool.", e);
-                    }
-                }
+        return allocations;
+    }
+
+    /**
+     * @return Full placeholder string -> resolved LSK string, as used by the document rewrite.
+     */
+    private static Map<String, String> toMappings(List<CounterAllocation> allocations) {
+        Map<String, String> resolvedMappings = new HashMap<>();
+        for (CounterAllocation allocation : allocations) {
+            List<PlaceHolderInfo> placeholders = allocation.getPlaceholders();
+            for (int i = 0; i < placeholders.size(); i++) {
+                PlaceHolderInfo info = placeholders.get(i);
+                resolvedMappings.put(info.getFullPlaceholderLsk(), info.buildResolvedLsk(allocation.getValue(i)));
             }
         }
-        log.debug("Replacing placeholders in XML content...");
-        String resolvedXml = XmlUtils.replacePlaceholders(inputXml, resolvedMappings);
+        return resolvedMappings;
+    }
 
-        log.info("LSK resolution service finished successfully.");
-        return resolvedXml;
+    /**
+     * Groups placeholders by the counter (table, column) they draw from.
+     * Both the counter order and the placeholder order within a counter follow the
+     * iteration order of the input map (document order from XmlUtils).
+     */
+    private static Map<CounterKey, List<PlaceHolderInfo>> groupByCounter(Map<String, PlaceHolderInfo> uniquePlaceholders) {
+        Map<CounterKey, List<PlaceHolderInfo>> grouped = new LinkedHashMap<>();
+        for (PlaceHolderInfo info : uniquePlaceholders.values()) {
+            grouped.computeIfAbsent(CounterKey.of(info), k -> new ArrayList<>()).add(info);
+        }
+        return grouped;
     }
 }
\ No newline at end of file
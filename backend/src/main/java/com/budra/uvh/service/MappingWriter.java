@@ -0,0 +1,111 @@
+package com.budra.uvh.service;
+
+import com.budra.uvh.utils.PlaceHolderInfo;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Serializes the counter allocations of a resolution for clients that apply the mapping to their
+ * own copy of the document (mapping-only response mode). Nothing of the document is written.
+ *
+ * JSON (application/json):
+ * <pre>
+ * {"placeholders":3,"counters":[
+ *   {"table":"Employee","column":"EMP_ID","ranges":[[101,2]],
+ *    "mapping":{"Employee:EMP_ID:__PLACEHOLDER_a__":101,"Employee:EMP_ID:__PLACEHOLDER_b__":102}},
+ *   ...]}
+ * </pre>
+ * Binary (application/vnd.uvh.lsk-mapping), big-endian, strings as DataOutput.writeUTF
+ * (2-byte length + modified UTF-8):
+ * <pre>
+ * "UVHMAP01", int counterCount, then per counter:
+ *   UTF table, UTF column,
+ *   int rangeCount, rangeCount x (long start, int count),
+ *   int placeholderCount, placeholderCount x UTF suffix ("__PLACEHOLDER_a__")
+ * </pre>
+ * The binary form does not repeat the values: the i-th placeholder of a counter gets the i-th value
+ * of its ranges taken in order.
+ */
+final class MappingWriter {
+    static final byte[] BINARY_MAGIC = {'U', 'V', 'H', 'M', 'A', 'P', '0', '1'};
+
+    private MappingWriter() {
+    }
+
+    static void writeJson(List<CounterAllocation> allocations, OutputStream out) throws IOException {
+        // Table, column and descriptor are restricted by the scanner to [a-zA-Z0-9_:-], so no escaping is needed
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 16 * 1024);
+        int total = 0;
+        for (CounterAllocation allocation : allocations) {
+            total += allocation.size();
+        }
+        writer.write("{\"placeholders\":");
+        writer.write(Integer.toString(total));
+        writer.write(",\"counters\":[");
+        for (int c = 0; c < allocations.size(); c++) {
+            CounterAllocation allocation = allocations.get(c);
+            if (c > 0) {
+                writer.write(',');
+            }
+            writer.write("{\"table\":\"");
+            writer.write(allocation.getCounter().getTableName());
+            writer.write("\",\"column\":\"");
+            writer.write(allocation.getCounter().getColumnName());
+            writer.write("\",\"ranges\":[");
+            List<CounterAllocation.Range> ranges = allocation.getRanges();
+            for (int r = 0; r < ranges.size(); r++) {
+                if (r > 0) {
+                    writer.write(',');
+                }
+                writer.write('[');
+                writer.write(Long.toString(ranges.get(r).getStart()));
+                writer.write(',');
+                writer.write(Integer.toString(ranges.get(r).getCount()));
+                writer.write(']');
+            }
+            writer.write("],\"mapping\":{");
+            List<PlaceHolderInfo> placeholders = allocation.getPlaceholders();
+            for (int i = 0; i < placeholders.size(); i++) {
+                if (i > 0) {
+                    writer.write(',');
+                }
+                writer.write('"');
+                writer.write(placeholders.get(i).getFullPlaceholderLsk());
+                writer.write("\":");
+                writer.write(Long.toString(allocation.getValue(i)));
+            }
+            writer.write("}}");
+        }
+        writer.write("]}");
+        writer.flush();
+    }
+
+    static void writeBinary(List<CounterAllocation> allocations, OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out, 16 * 1024));
+        data.write(BINARY_MAGIC);
+        data.writeInt(allocations.size());
+        for (CounterAllocation allocation : allocations) {
+            data.writeUTF(allocation.getCounter().getTableName());
+            data.writeUTF(allocation.getCounter().getColumnName());
+            List<CounterAllocation.Range> ranges = allocation.getRanges();
+            data.writeInt(ranges.size());
+            for (CounterAllocation.Range range : ranges) {
+                data.writeLong(range.getStart());
+                data.writeInt(range.getCount());
+            }
+            data.writeInt(allocation.size());
+            for (PlaceHolderInfo placeholder : allocation.getPlaceholders()) {
+                data.writeUTF(placeholder.getPlaceholderSuffix());
+            }
+        }
+        data.flush();
+    }
+}
@@ -0,0 +1,296 @@
+package com.budra.uvh.service;
+
+import com.budra.uvh.config.UvhConfig;
+import com.budra.uvh.dbConfig.ConnectionManager;
+import com.budra.uvh.exception.LskGenerationException;
+import com.budra.uvh.metrics.Metrics;
+import com.budra.uvh.model.CounterStore;
+import com.budra.uvh.model.RangeLease;
+import com.budra.uvh.model.RangeLeaseRepository;
+import com.budra.uvh.utils.CounterKey;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Hands out contiguous ranges of a counter to bulk generators that number their rows themselves,
+ * so high-volume key assignment does not go through /resolve at all.
+ *
+ * A lease is one reservation on the counter store (same path as a resolution, so it works with
+ * every backend, the combiner and shards) plus one row in LskRangeLeases in the db.* database.
+ *  - return: the client reports the last value it used; the values after it go back to the counter
+ *    if nothing has been reserved since (CounterStore#releaseTail), otherwise they stay unused
+ *  - TTL: an active lease past its expiry is marked EXPIRED by a background reaper (any node may
+ *    run it; the status guard makes exactly one win). The client must stop assigning from it then.
+ *    With lsk.lease.reclaimExpired the whole range is also given back when the counter allows it,
+ *    which is only safe if clients really honour the TTL.
+ * A value is never handed out twice: giving values back only ever happens while the counter still
+ * stands at the end of the lease, and a lease is closed before its values are given back.
+ */
+public class RangeLeaseService implements AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(RangeLeaseService.class);
+    private static final int REAP_BATCH_SIZE = 500;
+
+    private final CounterStore counterStore;
+    private final RangeLeaseRepository repository;
+    private final int maxCount;
+    private final long defaultTtlSeconds;
+    private final long maxTtlSeconds;
+    private final boolean reclaimExpired;
+    private final int maxListSize;
+    private final ScheduledExecutorService reaper; // null = no expiry sweep on this node
+
+    private final LongAdder granted = new LongAdder();
+    private final LongAdder valuesLeased = new LongAdder();
+    private final LongAdder returned = new LongAdder();
+    private final LongAdder expired = new LongAdder();
+    private final LongAdder valuesReclaimed = new LongAdder();
+
+    /**
+     * Creates the service using the "lsk.lease.*" settings from uvh_config.properties.
+     */
+    public static RangeLeaseService fromConfig(CounterStore counterStore) {
+        return new RangeLeaseService(counterStore, new RangeLeaseRepository(),
+                UvhConfig.getInt("lsk.lease.maxCount", 10_000_000),
+                UvhConfig.getLong("lsk.lease.defaultTtlSeconds", 0),
+                UvhConfig.getLong("lsk.lease.maxTtlSeconds", 7 * 24 * 3600),
+                UvhConfig.getBoolean("lsk.lease.reclaimExpired", false),
+                UvhConfig.getInt("lsk.lease.maxListSize", 1000),
+                UvhConfig.getLong("lsk.lease.reapIntervalSeconds", 60));
+    }
+
+    /**
+     * @param defaultTtlSeconds   TTL of leases requested without one (0 = no expiry).
+     * @param maxTtlSeconds       Longest TTL a client may ask for (0 = no limit).
+     * @param reapIntervalSeconds How often to look for expired leases (0 = never on this node).
+     */
+    public RangeLeaseService(CounterStore counterStore, RangeLeaseRepository repository, int maxCount,
+                             long defaultTtlSeconds, long maxTtlSeconds, boolean reclaimExpired, int maxListSize,
+                             long reapIntervalSeconds) {
+        if (counterStore == null || repository == null) {
+            throw new IllegalArgumentException("RangeLeaseService needs a counter store and a repository");
+        }
+        if (maxCount <= 0 || defaultTtlSeconds < 0 || maxTtlSeconds < 0 || maxListSize <= 0 || reapIntervalSeconds < 0) {
+            throw new IllegalArgumentException("Invalid range lease settings.");
+        }
+        this.counterStore = counterStore;
+        this.repository = repository;
+        this.maxCount = maxCount;
+        this.defaultTtlSeconds = defaultTtlSeconds;
+        this.maxTtlSeconds = maxTtlSeconds;
+        this.reclaimExpired = reclaimExpired;
+        this.maxListSize = maxListSize;
+        if (reapIntervalSeconds > 0) {
+            this.reaper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "uvh-lease-reaper");
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.reaper.scheduleWithFixedDelay(this::reapQuietly, reapIntervalSeconds, reapIntervalSeconds, TimeUnit.SECONDS);
+        } else {
+            this.reaper = null;
+        }
+        Metrics.registerCounter("lsk_range_leases_granted_total", "Range leases handed out by this node.", this::getGrantedCount);
+        Metrics.registerCounter("lsk_range_lease_values_total", "Values handed out in range leases by this node.", this::getValuesLeasedCount);
+        Metrics.registerCounter("lsk_range_leases_returned_total", "Range leases returned to this node.", this::getReturnedCount);
+        Metrics.registerCounter("lsk_range_leases_expired_total", "Range leases expired by this node's reaper.", this::getExpiredCount);
+        Metrics.registerCounter("lsk_range_lease_values_reclaimed_total", "Unused leased values given back to their counter.", this::getValuesReclaimedCount);
+        log.info("RangeLeaseService created: maxCount={}, defaultTtlSeconds={}, maxTtlSeconds={}, reclaimExpired={}, reapIntervalSeconds={}",
+                maxCount, defaultTtlSeconds, maxTtlSeconds, reclaimExpired, reapIntervalSeconds);
+    }
+
+    /**
+     * Reserves {@code count} consecutive values of a counter and records the lease.
+     *
+     * @param ttlSeconds Lease lifetime, or null for lsk.lease.defaultTtlSeconds (0 = no expiry).
+     * @param client     Free-form caller identification stored with the lease (may be null).
+     * @throws IllegalArgumentException If count or TTL are out of bounds.
+     * @throws LskGenerationException   If the reservation or the lease row could not be written.
+     */
+    public RangeLease lease(CounterKey counter, int count, Long ttlSeconds, String client) {
+        if (count <= 0 || count > maxCount) {
+            throw new IllegalArgumentException("count must be between 1 and " + maxCount + ".");
+        }
+        long ttl = ttlSeconds == null ? defaultTtlSeconds : ttlSeconds;
+        if (ttl < 0 || (maxTtlSeconds > 0 && ttl > maxTtlSeconds)) {
+            throw new IllegalArgumentException("ttlSeconds must be between 0 and " + maxTtlSeconds + ".");
+        }
+        if (client != null && client.length() > 255) {
+            client = client.substring(0, 255);
+        }
+
+        long start = counterStore.reserveBlock(counter, count);
+        long now = System.currentTimeMillis();
+        RangeLease lease = new RangeLease(UUID.randomUUID().toString(), counter, start, start + count - 1, client,
+                RangeLease.Status.ACTIVE, null, false, now, ttl > 0 ? now + ttl * 1000 : 0, 0);
+        try (Connection connection = ConnectionManager.getConnection()) {
+            repository.insert(connection, lease);
+        } catch (SQLException e) {
+            // The range is reserved but nobody holds it: it stays unused
+            log.error("Could not record lease of {} [{}..{}]; the range is skipped: {}",
+                    counter, lease.getStart(), lease.getEnd(), e.getMessage(), e);
+            throw new LskGenerationException("Could not record range lease: " + e.getMessage(), e);
+        }
+        granted.increment();
+        valuesLeased.add(count);
+        log.info("Leased {} [{}..{}] as {} to client '{}', ttl={}s.", counter, lease.getStart(), lease.getEnd(),
+                lease.getId(), client, ttl);
+        return lease;
+    }
+
+    /**
+     * @return The lease, or null if the id is unknown.
+     */
+    public RangeLease get(String leaseId) {
+        try (Connection connection = ConnectionManager.getConnection()) {
+            return repository.find(connection, leaseId);
+        } catch (SQLException e) {
+            throw new LskGenerationException("Could not read range lease: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @param limit Capped at lsk.lease.maxListSize.
+     * @return Leases with the given status, oldest first.
+     */
+    public List<RangeLease> list(RangeLease.Status status, int limit) {
+        try (Connection connection = ConnectionManager.getConnection()) {
+            return repository.findByStatus(connection, status, Math.max(1, Math.min(limit, maxListSize)));
+        } catch (SQLException e) {
+            throw new LskGenerationException("Could not list range leases: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Ends an active lease. The values after {@code lastUsed} go back to the counter if no later
+     * reservation has been made on it; the result's reclaimed flag says whether they did.
+     *
+     * @param lastUsed Last value the client assigned; start - 1 if it used none.
+     * @return The closed lease, or null if the id is unknown.
+     * @throws IllegalArgumentException If lastUsed is outside the lease.
+     * @throws IllegalStateException    If the lease is no longer active (returned twice, or expired).
+     */
+    public RangeLease returnUnused(String leaseId, long lastUsed) {
+        RangeLease lease;
+        long now = System.currentTimeMillis();
+        try (Connection connection = ConnectionManager.getConnection()) {
+            lease = repository.find(connection, leaseId);
+            if (lease == null) {
+                return null;
+            }
+            if (lastUsed < lease.getStart() - 1 || lastUsed > lease.getEnd()) {
+                throw new IllegalArgumentException("lastUsed must be between " + (lease.getStart() - 1) + " and " + lease.getEnd() + ".");
+            }
+            if (!repository.close(connection, leaseId, RangeLease.Status.RETURNED, lastUsed, new Timestamp(now))) {
+                RangeLease current = repository.find(connection, leaseId);
+                throw new IllegalStateException("Lease " + leaseId + " is " + (current == null ? "gone" : current.getStatus()) + ".");
+            }
+        } catch (SQLException e) {
+            throw new LskGenerationException("Could not return range lease: " + e.getMessage(), e);
+        }
+        returned.increment();
+
+        boolean reclaimed = lastUsed < lease.getEnd() && giveBack(lease, lastUsed);
+        log.info("Lease {} of {} returned: last used {}, {} values {}.", leaseId, lease.getCounter(), lastUsed,
+                lease.getEnd() - lastUsed, reclaimed ? "given back" : "left unused");
+        return new RangeLease(lease.getId(), lease.getCounter(), lease.getStart(), lease.getEnd(), lease.getClient(),
+                RangeLease.Status.RETURNED, lastUsed, reclaimed, lease.getCreatedMillis(), lease.getExpiresMillis(), now);
+    }
+
+    /**
+     * Marks every active lease past its TTL as EXPIRED (and gives its range back with
+     * lsk.lease.reclaimExpired). Runs on the reaper thread; callable directly by admin tooling.
+     *
+     * @return Number of leases expired by this call.
+     */
+    public int expireDue() throws SQLException {
+        int count = 0;
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+        List<RangeLease> due;
+        do {
+            try (Connection connection = ConnectionManager.getConnection()) {
+                due = repository.findDue(connection, now, REAP_BATCH_SIZE);
+                for (RangeLease lease : due) {
+                    if (!repository.close(connection, lease.getId(), RangeLease.Status.EXPIRED, null, now)) {
+                        continue; // Returned meanwhile, or expired by another node
+                    }
+                    count++;
+                    expired.increment();
+                    if (reclaimExpired) {
+                        giveBack(lease, lease.getStart() - 1);
+                    }
+                    log.info("Lease {} of {} [{}..{}] expired.", lease.getId(), lease.getCounter(), lease.getStart(), lease.getEnd());
+                }
+            }
+        } while (due.size() == REAP_BATCH_SIZE);
+        return count;
+    }
+
+    // Called only after the lease has been closed, so its holder can no longer return it a second time
+    private boolean giveBack(RangeLease lease, long newLast) {
+        try {
+            if (!counterStore.releaseTail(lease.getCounter(), lease.getEnd(), newLast)) {
+                return false;
+            }
+        } catch (RuntimeException e) {
+            log.warn("Could not give back values {}..{} of {}; they stay unused: {}",
+                    newLast + 1, lease.getEnd(), lease.getCounter(), e.getMessage());
+            return false;
+        }
+        valuesReclaimed.add(lease.getEnd() - newLast);
+        try (Connection connection = ConnectionManager.getConnection()) {
+            repository.markReclaimed(connection, lease.getId());
+        } catch (SQLException e) {
+            log.warn("Values of lease {} were given back but the lease row could not be updated: {}", lease.getId(), e.getMessage());
+        }
+        return true;
+    }
+
+    private void reapQuietly() {
+        try {
+            int count = expireDue();
+            if (count > 0) {
+                log.info("Expired {} range leases.", count);
+            }
+        } catch (SQLException | RuntimeException e) {
+            log.warn("Range lease expiry sweep failed: {}", e.getMessage());
+        }
+    }
+
+    public long getGrantedCount() {
+        return granted.sum();
+    }
+
+    public long getValuesLeasedCount() {
+        return valuesLeased.sum();
+    }
+
+    public long getReturnedCount() {
+        return returned.sum();
+    }
+
+    public long getExpiredCount() {
+        return expired.sum();
+    }
+
+    public long getValuesReclaimedCount() {
+        return valuesReclaimed.sum();
+    }
+
+    @Override
+    public void close() {
+        if (reaper != null) {
+            reaper.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.budra.uvh.service;
+
+import com.budra.uvh.config.UvhConfig;
+import com.budra.uvh.metrics.Metrics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs resolution work off the servlet threads.
+ *
+ * On a JDK with virtual threads (21+) every task gets its own virtual thread, so tasks that wait for
+ * a pool connection cost no platform thread. On older runtimes a bounded platform pool is used.
+ * Either way, at most {@code maxConcurrency} tasks run at once (by default the Hikari pool size),
+ * because running more than the pool can serve only moves the queue into HikariCP.
+ */
+public class ResolutionExecutor {
+    private static final Logger log = LoggerFactory.getLogger(ResolutionExecutor.class);
+
+    private final ExecutorService executor;
+    private final Semaphore permits;
+    private final int maxConcurrency;
+    private final boolean virtualThreads;
+
+    /**
+     * Creates an executor from lsk.async.* settings; concurrency defaults to db.pool.maxSize.
+     */
+    public static ResolutionExecutor fromConfig() {
+        int poolSize = UvhConfig.getInt("db.pool.maxSize", 10);
+        return new ResolutionExecutor(UvhConfig.getInt("lsk.async.maxConcurrency", poolSize));
+    }
+
+    public ResolutionExecutor(int maxConcurrency) {
+        if (maxConcurrency <= 0) {
+            throw new IllegalArgumentException("maxConcurrency must be positive.");
+        }
+        this.maxConcurrency = maxConcurrency;
+        this.permits = new Semaphore(maxConcurrency, true);
+        ExecutorService virtual = newVirtualThreadExecutor();
+        this.virtualThreads = virtual != null;
+        this.executor = virtualThreads ? virtual : newPlatformExecutor(maxConcurrency);
+        Metrics.registerGauge("lsk_executor_active", "Resolutions currently running.", this::getActiveCount);
+        Metrics.registerGauge("lsk_executor_queued", "Resolutions waiting for a concurrency permit.", this::getQueuedCount);
+        log.info("ResolutionExecutor created: maxConcurrency={}, virtualThreads={}", maxConcurrency, virtualThreads);
+    }
+
+    /**
+     * Runs the task once a concurrency permit is free.
+     *
+     * @throws RejectedExecutionException If the executor has been shut down.
+     */
+    public void execute(Runnable task) {
+        executor.execute(() -> {
+            try {
+                permits.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                log.warn("Resolution task interrupted while waiting for a permit.");
+                return;
+            }
+            try {
+                task.run();
+            } finally {
+                permits.release();
+            }
+        });
+    }
+
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    /**
+     * @return Tasks currently holding a permit.
+     */
+    public int getActiveCount() {
+        return maxConcurrency - permits.availablePermits();
+    }
+
+    /**
+     * @return Approximate number of tasks waiting for a permit.
+     */
+    public int getQueuedCount() {
+        return permits.getQueueLength();
+    }
+
+    public boolean usesVirtualThreads() {
+        return virtualThreads;
+    }
+
+    public void shutdown() {
+        executor.shutdown();
+        log.info("ResolutionExecutor shut down.");
+    }
+
+    // Executors.newVirtualThreadPerTaskExecutor() exists from JDK 21; the build targets 11, so look it up reflectively
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            log.info("Virtual threads not available on this JVM ({}); using a platform thread pool.", System.getProperty("java.version"));
+            return null;
+        }
+    }
+
+    // Threads beyond maxConcurrency only wait on the semaphore, so keep a modest headroom for queued tasks
+    private static ExecutorService newPlatformExecutor(int maxConcurrency) {
+        AtomicInteger threadNumber = new AtomicInteger();
+        return Executors.newFixedThreadPool(maxConcurrency * 2, runnable -> {
+            Thread thread = new Thread(runnable, "lsk-resolve-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+}
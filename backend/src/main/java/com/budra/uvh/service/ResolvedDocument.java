@@ -0,0 +1,112 @@
+package com.budra.uvh.service;
+
+import com.budra.uvh.metrics.Metrics;
+import com.budra.uvh.utils.CounterKey;
+import com.budra.uvh.utils.PlaceHolderInfo;
+import com.budra.uvh.utils.PlaceholderScan;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A scanned document together with the values reserved for its placeholders.
+ * The reservation has already been committed; producing the output is pure byte copying.
+ */
+public final class ResolvedDocument {
+    private final PlaceholderScan scan;
+    private final Map<String, String> resolvedMappings;
+    private final List<CounterAllocation> allocations;
+
+    ResolvedDocument(PlaceholderScan scan, Map<String, String> resolvedMappings, List<CounterAllocation> allocations) {
+        this.scan = scan;
+        this.resolvedMappings = Collections.unmodifiableMap(resolvedMappings);
+        this.allocations = Collections.unmodifiableList(allocations);
+    }
+
+    /**
+     * Rebuilds a resolution from previously committed mappings (idempotent replay), including the
+     * per-counter allocations needed for mapping-only responses.
+     */
+    static ResolvedDocument fromMappings(PlaceholderScan scan, Map<String, String> resolvedMappings) {
+        Map<CounterKey, List<PlaceHolderInfo>> placeholdersByCounter = new LinkedHashMap<>();
+        for (PlaceHolderInfo info : scan.getPlaceholders()) {
+            placeholdersByCounter.computeIfAbsent(CounterKey.of(info), k -> new ArrayList<>()).add(info);
+        }
+        List<CounterAllocation> allocations = new ArrayList<>(placeholdersByCounter.size());
+        for (Map.Entry<CounterKey, List<PlaceHolderInfo>> entry : placeholdersByCounter.entrySet()) {
+            List<PlaceHolderInfo> placeholders = entry.getValue();
+            long[] values = new long[placeholders.size()];
+            for (int i = 0; i < values.length; i++) {
+                String resolved = resolvedMappings.get(placeholders.get(i).getFullPlaceholderLsk());
+                if (resolved == null) {
+                    throw new IllegalStateException("No stored value for " + placeholders.get(i).getFullPlaceholderLsk());
+                }
+                values[i] = Long.parseLong(resolved.substring(resolved.lastIndexOf(':') + 1)); // "Table:Column:value"
+            }
+            allocations.add(new CounterAllocation(entry.getKey(), placeholders, values));
+        }
+        return new ResolvedDocument(scan, resolvedMappings, allocations);
+    }
+
+    public PlaceholderScan getScan() {
+        return scan;
+    }
+
+    /**
+     * @return Full placeholder string -> resolved LSK string.
+     */
+    public Map<String, String> getResolvedMappings() {
+        return resolvedMappings;
+    }
+
+    /**
+     * @return Values assigned per counter. For documents resolved as part of a batch this covers the
+     *         whole batch, since the batch is reserved as one unit.
+     */
+    public List<CounterAllocation> getAllocations() {
+        return allocations;
+    }
+
+    public boolean hasPlaceholders() {
+        return !scan.getPlaceholders().isEmpty();
+    }
+
+    /**
+     * @return The rewritten document as one array.
+     */
+    public byte[] toBytes() {
+        long rewriteStart = System.nanoTime();
+        byte[] resolved = scan.toResolvedBytes(resolvedMappings);
+        Metrics.REWRITE.recordSince(rewriteStart);
+        return resolved;
+    }
+
+    /**
+     * Writes the rewritten document without materialising it.
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        long rewriteStart = System.nanoTime();
+        scan.writeResolved(resolvedMappings, out);
+        Metrics.REWRITE.recordSince(rewriteStart);
+    }
+
+    /**
+     * Writes only the placeholder -> value mapping and the ranges per counter as JSON; the document
+     * itself is never rewritten (see MappingWriter for the format).
+     */
+    public void writeMappingJson(OutputStream out) throws IOException {
+        MappingWriter.writeJson(allocations, out);
+    }
+
+    /**
+     * Binary, length-prefixed variant of {@link #writeMappingJson} (see MappingWriter for the format).
+     */
+    public void writeMappingBinary(OutputStream out) throws IOException {
+        MappingWriter.writeBinary(allocations, out);
+    }
+}
@@ -0,0 +1,71 @@
+package com.budra.uvh.service;
+
+import com.budra.uvh.config.UvhConfig;
+import com.budra.uvh.metrics.Metrics;
+import com.budra.uvh.utils.ContentHash;
+import com.budra.uvh.utils.LruCache;
+import com.budra.uvh.utils.PlaceholderValidation;
+import com.budra.uvh.utils.XmlUtils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Dry-run validation for CI: scans a document exactly like a resolution would, but never opens
+ * a database connection, takes a lock or reserves a value.
+ *
+ * Results are cached by SHA-256 of the body, since pre-merge checks validate the same files over
+ * and over; validation is a pure function of the content, so cached results never go stale
+ * (the TTL only bounds memory held by documents nobody validates any more).
+ */
+public class ValidationService {
+    private static final Logger log = LoggerFactory.getLogger(ValidationService.class);
+
+    private final LruCache<String, PlaceholderValidation> cache;
+    private final int maxReported;
+
+    /**
+     * Creates the service using the "lsk.validate.*" settings from uvh_config.properties.
+     */
+    public static ValidationService fromConfig() {
+        return new ValidationService(
+                UvhConfig.getInt("lsk.validate.cache.maxEntries", 10_000),
+                UvhConfig.getLong("lsk.validate.cache.maxBytes", 16L * 1024 * 1024),
+                UvhConfig.getLong("lsk.validate.cache.ttlSeconds", 3600) * 1000,
+                UvhConfig.getInt("lsk.validate.maxReportedIssues", 1000));
+    }
+
+    public ValidationService(int maxEntries, long maxBytes, long ttlMillis, int maxReported) {
+        this.cache = new LruCache<>(maxEntries, maxBytes, ttlMillis, PlaceholderValidation::estimateSize);
+        this.maxReported = maxReported;
+        Metrics.registerCounter("lsk_validation_cache_hits_total", "Validations answered from the content-hash cache.", () -> cache.getHits());
+        Metrics.registerCounter("lsk_validation_cache_misses_total", "Validations that scanned the document.", () -> cache.getMisses());
+        Metrics.registerGauge("lsk_validation_cache_entries", "Validation results held in the cache.", () -> cache.size());
+        log.info("ValidationService created: cache maxEntries={}, maxBytes={}, ttlMillis={}, maxReported={}",
+                maxEntries, maxBytes, ttlMillis, maxReported);
+    }
+
+    /**
+     * @param body UTF-8 document bytes.
+     * @return The validation of the document (possibly from the cache).
+     */
+    public PlaceholderValidation validate(byte[] body) {
+        String key = ContentHash.sha256Hex(body);
+        PlaceholderValidation cached = cache.get(key);
+        if (cached != null) {
+            log.debug("Validation cache hit for {}.", key);
+            return cached;
+        }
+        PlaceholderValidation validation = XmlUtils.validatePlaceholders(ByteBuffer.wrap(body), maxReported);
+        cache.put(key, validation);
+        log.info("Validated {} bytes: {} unique placeholders, {} malformed.",
+                body.length, validation.getUniqueCount(), validation.getMalformedCount());
+        return validation;
+    }
+
+    public LruCache<String, PlaceholderValidation> getCache() {
+        return cache;
+    }
+}
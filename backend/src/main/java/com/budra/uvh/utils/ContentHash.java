@@ -0,0 +1,28 @@
+package com.budra.uvh.utils;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * SHA-256 digests of request bodies, used as cache keys.
+ */
+public final class ContentHash {
+
+    /**
+     * @return Lower-case hex SHA-256 of the bytes.
+     */
+    public static String sha256Hex(byte[] content) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(content);
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available.", e); // Mandatory on every JVM
+        }
+    }
+
+    private ContentHash() {}
+}
@@ -0,0 +1,65 @@
+package com.budra.uvh.utils;
+
+import java.util.Objects;
+
+/**
+ * Identifies a single LSK counter row, i.e. one (table_name, column_name) pair
+ * in LogicalSeedKeyCounters. Placeholders that share a CounterKey draw their
+ * values from the same counter.
+ * Example: "Employee:EMP_ID"
+ */
+public final class CounterKey implements Comparable<CounterKey> {
+    private final String tableName;
+    private final String columnName;
+
+    public CounterKey(String tableName, String columnName) {
+        if (tableName == null || tableName.trim().isEmpty()) {
+            throw new IllegalArgumentException("Table name cannot be null or empty.");
+        }
+        if (columnName == null || columnName.trim().isEmpty()) {
+            throw new IllegalArgumentException("Column name cannot be null or empty.");
+        }
+        this.tableName = tableName;
+        this.columnName = columnName;
+    }
+
+    /**
+     * Convenience factory for the counter a placeholder belongs to.
+     */
+    public static CounterKey of(PlaceHolderInfo info) {
+        return new CounterKey(info.getTableName(), info.getColumnName());
+    }
+
+    public String getTableName() {
+        return tableName;
+    }
+
+    public String getColumnName() {
+        return columnName;
+    }
+
+    // Ordered by table, then column. Used wherever counters must be visited in a stable order.
+    @Override
+    public int compareTo(CounterKey other) {
+        int cmp = tableName.compareTo(other.tableName);
+        return cmp != 0 ? cmp : columnName.compareTo(other.columnName);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        CounterKey that = (CounterKey) o;
+        return tableName.equals(that.tableName) && columnName.equals(that.columnName);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(tableName, columnName);
+    }
+
+    @Override
+    public String toString() {
+        return tableName + ":" + columnName;
+    }
+}
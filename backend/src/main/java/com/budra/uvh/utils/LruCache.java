@@ -0,0 +1,153 @@
+package com.budra.uvh.utils;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToLongFunction;
+
+/**
+ * Thread-safe LRU cache bounded by entry count and total weight (e.g. approximate bytes),
+ * with a time-to-live per entry. Expired entries are dropped lazily on access and while evicting.
+ *
+ * All operations take the cache's monitor; they are O(1) apart from eviction, so keep the
+ * weigher cheap and do expensive work outside the cache.
+ */
+public final class LruCache<K, V> {
+    private final int maxEntries;
+    private final long maxWeight;
+    private final long ttlNanos;
+    private final ToLongFunction<V> weigher;
+
+    // Access-ordered: iteration starts at the least recently used entry
+    private final LinkedHashMap<K, Entry<V>> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalWeight;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * @param maxEntries Maximum number of entries.
+     * @param maxWeight  Maximum total weight; a single value heavier than this is not cached.
+     * @param ttlMillis  Time-to-live of an entry after it was put (0 = no expiry).
+     * @param weigher    Weight of a value (must be >= 0).
+     */
+    public LruCache(int maxEntries, long maxWeight, long ttlMillis, ToLongFunction<V> weigher) {
+        if (maxEntries <= 0 || maxWeight <= 0 || ttlMillis < 0) {
+            throw new IllegalArgumentException("Cache limits must be positive and the TTL >= 0.");
+        }
+        this.maxEntries = maxEntries;
+        this.maxWeight = maxWeight;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        this.weigher = weigher;
+    }
+
+    /**
+     * @return The cached value, or null if absent or expired.
+     */
+    public synchronized V get(K key) {
+        Entry<V> entry = entries.get(key);
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        if (isExpired(entry, System.nanoTime())) {
+            removeEntry(key, entry);
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry.value;
+    }
+
+    /**
+     * Adds or replaces a value and evicts least recently used entries until the cache fits its bounds.
+     *
+     * @return true if the value was cached (false if it alone exceeds the weight bound).
+     */
+    public synchronized boolean put(K key, V value) {
+        long weight = weigher.applyAsLong(value);
+        if (weight > maxWeight) {
+            return false;
+        }
+        Entry<V> previous = entries.put(key, new Entry<>(value, weight, System.nanoTime()));
+        if (previous != null) {
+            totalWeight -= previous.weight;
+        }
+        totalWeight += weight;
+        evict();
+        return true;
+    }
+
+    public synchronized V remove(K key) {
+        Entry<V> entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        removeEntry(key, entry);
+        return entry.value;
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        totalWeight = 0;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getWeight() {
+        return totalWeight;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    private void evict() {
+        long now = System.nanoTime();
+        Iterator<Map.Entry<K, Entry<V>>> eldest = entries.entrySet().iterator();
+        while (eldest.hasNext() && (entries.size() > maxEntries || totalWeight > maxWeight || ttlNanos > 0)) {
+            Map.Entry<K, Entry<V>> candidate = eldest.next();
+            boolean overBounds = entries.size() > maxEntries || totalWeight > maxWeight;
+            if (!overBounds && !isExpired(candidate.getValue(), now)) {
+                break; // Within bounds and the LRU entry is still fresh
+            }
+            eldest.remove();
+            totalWeight -= candidate.getValue().weight;
+            if (overBounds) {
+                evictions++;
+            }
+        }
+    }
+
+    private boolean isExpired(Entry<V> entry, long now) {
+        return ttlNanos > 0 && now - entry.createdNanos > ttlNanos;
+    }
+
+    private void removeEntry(K key, Entry<V> entry) {
+        entries.remove(key);
+        totalWeight -= entry.weight;
+    }
+
+    private static final class Entry<V> {
+        final V value;
+        final long weight;
+        final long createdNanos;
+
+        Entry(V value, long weight, long createdNanos) {
+            this.value = value;
+            this.weight = weight;
+            this.createdNanos = createdNanos;
+        }
+    }
+}
@@ -1,12 +1,16 @@
 package com.budra.uvh.utils;
 
 import java.util.Objects;
+import java.util.regex.Pattern;
 
 /**
  * Represents the parsed components of a logical seed key placeholder.
  * Example Placeholder: TableName:ColumnName:__PLACEHOLDER_UniqueDesc__
  */
 public class PlaceHolderInfo { // Renamed from PlaceholderInfo for convention
+    // Compiled once instead of on every String.matches call
+    private static final Pattern PLACEHOLDER_SUFFIX_PATTERN = Pattern.compile("__PLACEHOLDER_[a-zA-Z0-9_-]+__");
+
     private final String tableName;
     private final String columnName;
     private final String placeholderSuffix; // The __PLACEHOLDER_...__ part
@@ -28,7 +32,7 @@ public class PlaceHolderInfo { // Renamed from PlaceholderInfo for convention
             throw new IllegalArgumentException("Column name cannot be null or empty.");
         }
         // Slightly stricter check for placeholder format
-        if (placeholderSuffix == null || !placeholderSuffix.matches("__PLACEHOLDER_[a-zA-Z0-9_-]+__")) {
+        if (placeholderSuffix == null || !PLACEHOLDER_SUFFIX_PATTERN.matcher(placeholderSuffix).matches()) {
             throw new IllegalArgumentException("Invalid placeholder suffix format: '" + placeholderSuffix + "'. Must match '__PLACEHOLDER_<descriptor>__'");
         }
 
@@ -39,6 +43,21 @@ public class PlaceHolderInfo { // Renamed from PlaceholderInfo for convention
         this.fullPlaceholderLsk = this.tableName + ":" + this.columnName + ":" + this.placeholderSuffix;
     }
 
+    // Used by PlaceholderScanner, which has already validated every part byte by byte
+    private PlaceHolderInfo(String tableName, String columnName, String placeholderSuffix, String fullPlaceholderLsk) {
+        this.tableName = tableName;
+        this.columnName = columnName;
+        this.placeholderSuffix = placeholderSuffix;
+        this.fullPlaceholderLsk = fullPlaceholderLsk;
+    }
+
+    /**
+     * Creates an instance from parts the scanner has already validated (no regex, no trimming).
+     */
+    static PlaceHolderInfo ofScanned(String tableName, String columnName, String placeholderSuffix, String fullPlaceholderLsk) {
+        return new PlaceHolderInfo(tableName, columnName, placeholderSuffix, fullPlaceholderLsk);
+    }
+
     // Getters remain the same
     public String getTableName() {
         return tableName;
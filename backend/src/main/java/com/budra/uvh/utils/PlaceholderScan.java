@@ -0,0 +1,188 @@
+package com.budra.uvh.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Result of one PlaceholderScanner pass over a UTF-8 document.
+ *
+ * Holds a reference to the scanned bytes (no copy), the offsets of every placeholder
+ * attribute value in a primitive array, and the unique placeholders in document order.
+ * The rewrite methods copy the unchanged spans and splice in resolved values in a single pass.
+ */
+public final class PlaceholderScan {
+    private static final Logger log = LoggerFactory.getLogger(PlaceholderScan.class);
+    private static final int COPY_CHUNK_SIZE = 64 * 1024;
+
+    private final ByteBuffer source;
+    // Triples per occurrence: [valueStart, valueEnd (exclusive), placeholderIndex]
+    private final int[] occurrences;
+    private final int occurrenceCount;
+    private final List<PlaceHolderInfo> placeholders; // index = placeholderIndex
+
+    PlaceholderScan(ByteBuffer source, int[] occurrences, int occurrenceCount, List<PlaceHolderInfo> placeholders) {
+        this.source = source;
+        this.occurrences = occurrences;
+        this.occurrenceCount = occurrenceCount;
+        this.placeholders = Collections.unmodifiableList(placeholders);
+    }
+
+    /**
+     * @return Unique placeholders in order of first appearance.
+     */
+    public List<PlaceHolderInfo> getPlaceholders() {
+        return placeholders;
+    }
+
+    /**
+     * @return Unique placeholders keyed by their full placeholder string, in order of first appearance.
+     */
+    public Map<String, PlaceHolderInfo> getUniquePlaceholders() {
+        Map<String, PlaceHolderInfo> unique = new LinkedHashMap<>();
+        for (PlaceHolderInfo info : placeholders) {
+            unique.put(info.getFullPlaceholderLsk(), info);
+        }
+        return unique;
+    }
+
+    /**
+     * @return Total number of placeholder attribute values found, duplicates included.
+     */
+    public int getOccurrenceCount() {
+        return occurrenceCount;
+    }
+
+    // Occurrence accessors for PlaceholderValidator; occurrences are in document order
+    int getOccurrenceStart(int occurrence) {
+        return occurrences[3 * occurrence];
+    }
+
+    int getOccurrenceEnd(int occurrence) {
+        return occurrences[3 * occurrence + 1];
+    }
+
+    int getOccurrencePlaceholder(int occurrence) {
+        return occurrences[3 * occurrence + 2];
+    }
+
+    /**
+     * @return Size of the scanned document in bytes.
+     */
+    public int getDocumentLength() {
+        return source.limit();
+    }
+
+    /**
+     * Builds the rewritten document in one exactly-sized array.
+     *
+     * @param resolvedMappings Full placeholder string -> resolved LSK string. Placeholders without a
+     *                         mapping are left unchanged.
+     * @return The rewritten UTF-8 document.
+     */
+    public byte[] toResolvedBytes(Map<String, String> resolvedMappings) {
+        byte[][] replacements = encodeReplacements(resolvedMappings);
+        long size = source.limit();
+        for (int i = 0; i < occurrenceCount; i++) {
+            byte[] replacement = replacements[occurrences[3 * i + 2]];
+            if (replacement != null) {
+                size += replacement.length - (occurrences[3 * i + 1] - occurrences[3 * i]);
+            }
+        }
+        if (size > Integer.MAX_VALUE - 8) {
+            throw new IllegalStateException("Resolved document too large for a single array: " + size + " bytes");
+        }
+
+        byte[] output = new byte[(int) size];
+        ByteBuffer view = source.duplicate();
+        int written = 0;
+        int copyFrom = 0;
+        for (int i = 0; i < occurrenceCount; i++) {
+            byte[] replacement = replacements[occurrences[3 * i + 2]];
+            if (replacement == null) {
+                continue; // Unchanged span, copied together with the surrounding bytes
+            }
+            int valueStart = occurrences[3 * i];
+            written += copy(view, copyFrom, valueStart, output, written);
+            System.arraycopy(replacement, 0, output, written, replacement.length);
+            written += replacement.length;
+            copyFrom = occurrences[3 * i + 1];
+        }
+        copy(view, copyFrom, source.limit(), output, written);
+        return output;
+    }
+
+    /**
+     * Streams the rewritten document to {@code out} without materialising it.
+     *
+     * @param resolvedMappings Full placeholder string -> resolved LSK string.
+     * @param out              Destination; not closed by this method.
+     */
+    public void writeResolved(Map<String, String> resolvedMappings, OutputStream out) throws IOException {
+        byte[][] replacements = encodeReplacements(resolvedMappings);
+        ByteBuffer view = source.duplicate();
+        byte[] chunk = view.hasArray() ? null : new byte[COPY_CHUNK_SIZE];
+        int copyFrom = 0;
+        for (int i = 0; i < occurrenceCount; i++) {
+            byte[] replacement = replacements[occurrences[3 * i + 2]];
+            if (replacement == null) {
+                continue;
+            }
+            write(view, copyFrom, occurrences[3 * i], out, chunk);
+            out.write(replacement);
+            copyFrom = occurrences[3 * i + 1];
+        }
+        write(view, copyFrom, source.limit(), out, chunk);
+    }
+
+    private byte[][] encodeReplacements(Map<String, String> resolvedMappings) {
+        byte[][] replacements = new byte[placeholders.size()][];
+        int missing = 0;
+        for (int i = 0; i < replacements.length; i++) {
+            String resolved = resolvedMappings == null ? null : resolvedMappings.get(placeholders.get(i).getFullPlaceholderLsk());
+            if (resolved != null) {
+                replacements[i] = resolved.getBytes(StandardCharsets.UTF_8);
+            } else {
+                missing++;
+            }
+        }
+        if (missing > 0) {
+            log.warn("{} of {} placeholders have no resolved value and are left unchanged.", missing, replacements.length);
+        }
+        return replacements;
+    }
+
+    private static int copy(ByteBuffer view, int from, int to, byte[] output, int outputOffset) {
+        int length = to - from;
+        if (view.hasArray()) {
+            System.arraycopy(view.array(), view.arrayOffset() + from, output, outputOffset, length);
+        } else {
+            view.position(from);
+            view.get(output, outputOffset, length);
+        }
+        return length;
+    }
+
+    private static void write(ByteBuffer view, int from, int to, OutputStream out, byte[] chunk) throws IOException {
+        if (view.hasArray()) {
+            out.write(view.array(), view.arrayOffset() + from, to - from);
+            return;
+        }
+        view.position(from);
+        int remaining = to - from;
+        while (remaining > 0) {
+            int length = Math.min(remaining, chunk.length);
+            view.get(chunk, 0, length);
+            out.write(chunk, 0, length);
+            remaining -= length;
+        }
+    }
+}
@@ -0,0 +1,247 @@
+package com.budra.uvh.utils;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Hand-written, single-pass scanner for LSK placeholder attribute values in UTF-8 XML.
+ *
+ * Recognises exactly what XmlUtils' original regex did:
+ *   attr = "Table:Column:__PLACEHOLDER_Descriptor__"
+ * where attr and Table/Column are [a-zA-Z_]+, the descriptor is [a-zA-Z0-9_-]+ and
+ * whitespace is allowed around '='. All syntax characters are ASCII, so the scanner can
+ * work on raw UTF-8 bytes (multi-byte sequences never match).
+ *
+ * Per occurrence only offsets are recorded (in an int array); strings are created once per
+ * unique placeholder, and table/column names are shared between placeholders.
+ */
+public final class PlaceholderScanner {
+    static final byte[] PLACEHOLDER_PREFIX = "__PLACEHOLDER_".getBytes(StandardCharsets.US_ASCII);
+    private static final int MIN_SUFFIX_TAIL = 3; // at least one descriptor char + closing "__"
+
+    private final ByteBuffer source;
+    private final int limit;
+
+    private int[] occurrences = new int[3 * 64];
+    private int occurrenceCount;
+    private final List<PlaceHolderInfo> placeholders = new ArrayList<>();
+    private final List<int[]> placeholderSpans = new ArrayList<>(); // first occurrence per unique placeholder
+    private final Map<String, String> internedNames = new HashMap<>();
+
+    // Open-addressing table: byte-range hash -> placeholder index + 1 (0 = empty)
+    private int[] table = new int[256];
+
+    private PlaceholderScanner(ByteBuffer source) {
+        this.source = source;
+        this.limit = source.limit();
+    }
+
+    /**
+     * Scans the bytes between index 0 and {@code source.limit()}.
+     * The buffer is referenced, not copied, and must not change until the result is no longer used.
+     *
+     * @param source UTF-8 document bytes (heap, direct or memory-mapped buffer).
+     * @return Offsets and unique placeholders found.
+     */
+    public static PlaceholderScan scan(ByteBuffer source) {
+        PlaceholderScanner scanner = new PlaceholderScanner(source);
+        scanner.run();
+        return new PlaceholderScan(source, scanner.occurrences, scanner.occurrenceCount, scanner.placeholders);
+    }
+
+    private void run() {
+        int i = 0;
+        while (i < limit) {
+            if (source.get(i) != '"') {
+                i++;
+                continue;
+            }
+            int valueEnd = hasAttributePrefix(i) ? matchValue(i + 1) : -1;
+            if (valueEnd < 0) {
+                i++;
+                continue;
+            }
+            record(i + 1, valueEnd);
+            i = valueEnd + 1; // Continue after the closing quote
+        }
+    }
+
+    /**
+     * Checks that the quote at {@code quote} is preceded by {@code name\s*=\s*}.
+     */
+    private boolean hasAttributePrefix(int quote) {
+        int j = quote - 1;
+        while (j >= 0 && isWhitespace(source.get(j))) {
+            j--;
+        }
+        if (j < 0 || source.get(j) != '=') {
+            return false;
+        }
+        j--;
+        while (j >= 0 && isWhitespace(source.get(j))) {
+            j--;
+        }
+        return j >= 0 && isNameChar(source.get(j));
+    }
+
+    /**
+     * Matches {@code Table:Column:__PLACEHOLDER_x__"} starting at {@code start}.
+     *
+     * @return Index of the closing quote, or -1 if the value is not a placeholder.
+     */
+    private int matchValue(int start) {
+        int i = start;
+        int tableEnd = skipNameChars(i);
+        if (tableEnd == i || tableEnd >= limit || source.get(tableEnd) != ':') {
+            return -1;
+        }
+        i = tableEnd + 1;
+        int columnEnd = skipNameChars(i);
+        if (columnEnd == i || columnEnd >= limit || source.get(columnEnd) != ':') {
+            return -1;
+        }
+        i = columnEnd + 1;
+        if (i + PLACEHOLDER_PREFIX.length > limit) {
+            return -1;
+        }
+        for (byte expected : PLACEHOLDER_PREFIX) {
+            if (source.get(i++) != expected) {
+                return -1;
+            }
+        }
+        int tailStart = i;
+        while (i < limit && isDescriptorChar(source.get(i))) {
+            i++;
+        }
+        if (i >= limit || source.get(i) != '"' || i - tailStart < MIN_SUFFIX_TAIL
+                || source.get(i - 1) != '_' || source.get(i - 2) != '_') {
+            return -1;
+        }
+        return i;
+    }
+
+    private int skipNameChars(int i) {
+        while (i < limit && isNameChar(source.get(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    private void record(int valueStart, int valueEnd) {
+        int placeholderIndex = findOrAdd(valueStart, valueEnd);
+        if (3 * occurrenceCount + 3 > occurrences.length) {
+            occurrences = Arrays.copyOf(occurrences, occurrences.length * 2);
+        }
+        occurrences[3 * occurrenceCount] = valueStart;
+        occurrences[3 * occurrenceCount + 1] = valueEnd;
+        occurrences[3 * occurrenceCount + 2] = placeholderIndex;
+        occurrenceCount++;
+    }
+
+    private int findOrAdd(int valueStart, int valueEnd) {
+        int hash = hash(valueStart, valueEnd);
+        int mask = table.length - 1;
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            int entry = table[slot];
+            if (entry == 0) {
+                int index = addPlaceholder(valueStart, valueEnd);
+                table[slot] = index + 1;
+                if (placeholders.size() * 2 > table.length) {
+                    rehash();
+                }
+                return index;
+            }
+            int[] span = placeholderSpans.get(entry - 1);
+            if (rangeEquals(span[0], span[1], valueStart, valueEnd)) {
+                return entry - 1;
+            }
+        }
+    }
+
+    private int addPlaceholder(int valueStart, int valueEnd) {
+        int firstColon = valueStart;
+        while (source.get(firstColon) != ':') {
+            firstColon++;
+        }
+        int secondColon = firstColon + 1;
+        while (source.get(secondColon) != ':') {
+            secondColon++;
+        }
+        String tableName = intern(valueStart, firstColon);
+        String columnName = intern(firstColon + 1, secondColon);
+        String suffix = ascii(secondColon + 1, valueEnd);
+        String fullKey = ascii(valueStart, valueEnd);
+
+        placeholders.add(PlaceHolderInfo.ofScanned(tableName, columnName, suffix, fullKey));
+        placeholderSpans.add(new int[]{valueStart, valueEnd});
+        return placeholders.size() - 1;
+    }
+
+    private void rehash() {
+        int[] newTable = new int[table.length * 2];
+        int mask = newTable.length - 1;
+        for (int index = 0; index < placeholderSpans.size(); index++) {
+            int[] span = placeholderSpans.get(index);
+            int slot = hash(span[0], span[1]) & mask;
+            while (newTable[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            newTable[slot] = index + 1;
+        }
+        table = newTable;
+    }
+
+    private int hash(int from, int to) {
+        int h = 1;
+        for (int i = from; i < to; i++) {
+            h = 31 * h + source.get(i);
+        }
+        return h ^ (h >>> 16);
+    }
+
+    private boolean rangeEquals(int aFrom, int aTo, int bFrom, int bTo) {
+        if (aTo - aFrom != bTo - bFrom) {
+            return false;
+        }
+        for (int i = 0; i < aTo - aFrom; i++) {
+            if (source.get(aFrom + i) != source.get(bFrom + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String intern(int from, int to) {
+        String name = ascii(from, to);
+        String existing = internedNames.putIfAbsent(name, name);
+        return existing != null ? existing : name;
+    }
+
+    private String ascii(int from, int to) {
+        byte[] bytes = new byte[to - from];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = source.get(from + i);
+        }
+        return new String(bytes, StandardCharsets.US_ASCII);
+    }
+
+    // [a-zA-Z_]
+    static boolean isNameChar(byte b) {
+        return (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z') || b == '_';
+    }
+
+    // [a-zA-Z0-9_-]
+    static boolean isDescriptorChar(byte b) {
+        return isNameChar(b) || (b >= '0' && b <= '9') || b == '-';
+    }
+
+    // Same set as regex \s
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t' || b == '\n' || b == 0x0B || b == '\f' || b == '\r';
+    }
+}
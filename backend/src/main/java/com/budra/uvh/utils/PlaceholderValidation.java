@@ -0,0 +1,192 @@
+package com.budra.uvh.utils;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Result of a dry-run validation of a document: what a resolution would reserve, and which
+ * placeholder-like values would be ignored because they are malformed. Immutable.
+ */
+public final class PlaceholderValidation {
+    private final int documentBytes;
+    private final int occurrenceCount;
+    private final int uniqueCount;
+    private final Map<CounterKey, CounterUsage> counters;
+    private final List<Duplicate> duplicates;
+    private final int duplicateCount;
+    private final List<Malformed> malformed;
+    private final int malformedCount;
+
+    PlaceholderValidation(int documentBytes, int occurrenceCount, int uniqueCount, Map<CounterKey, CounterUsage> counters,
+                          List<Duplicate> duplicates, int duplicateCount, List<Malformed> malformed, int malformedCount) {
+        this.documentBytes = documentBytes;
+        this.occurrenceCount = occurrenceCount;
+        this.uniqueCount = uniqueCount;
+        this.counters = Collections.unmodifiableMap(counters);
+        this.duplicates = Collections.unmodifiableList(duplicates);
+        this.duplicateCount = duplicateCount;
+        this.malformed = Collections.unmodifiableList(malformed);
+        this.malformedCount = malformedCount;
+    }
+
+    /**
+     * @return true if no malformed placeholder was found.
+     */
+    public boolean isValid() {
+        return malformedCount == 0;
+    }
+
+    public int getDocumentBytes() {
+        return documentBytes;
+    }
+
+    /**
+     * @return Well-formed placeholder values, duplicates included.
+     */
+    public int getOccurrenceCount() {
+        return occurrenceCount;
+    }
+
+    /**
+     * @return Distinct placeholders, i.e. the number of values a resolution would reserve.
+     */
+    public int getUniqueCount() {
+        return uniqueCount;
+    }
+
+    /**
+     * @return Usage per counter, in CounterKey order.
+     */
+    public Map<CounterKey, CounterUsage> getCounters() {
+        return counters;
+    }
+
+    /**
+     * @return Placeholders used more than once (they all get the same value), most used first; possibly truncated.
+     */
+    public List<Duplicate> getDuplicates() {
+        return duplicates;
+    }
+
+    /**
+     * @return Total number of placeholders used more than once (the list may be truncated).
+     */
+    public int getDuplicateCount() {
+        return duplicateCount;
+    }
+
+    /**
+     * @return Malformed placeholders in document order; possibly truncated.
+     */
+    public List<Malformed> getMalformed() {
+        return malformed;
+    }
+
+    /**
+     * @return Total number of malformed placeholders (the list may be truncated).
+     */
+    public int getMalformedCount() {
+        return malformedCount;
+    }
+
+    /**
+     * @return Rough retained size in bytes, for cache weighing.
+     */
+    public long estimateSize() {
+        long size = 128 + 96L * counters.size();
+        for (Duplicate duplicate : duplicates) {
+            size += 48 + 2L * duplicate.placeholder.length();
+        }
+        for (Malformed issue : malformed) {
+            size += 64 + 2L * issue.text.length();
+        }
+        return size;
+    }
+
+    /**
+     * Placeholders of one counter (table, column).
+     */
+    public static final class CounterUsage {
+        private int unique;
+        private int occurrences;
+
+        void add(boolean first) {
+            occurrences++;
+            if (first) {
+                unique++;
+            }
+        }
+
+        /**
+         * @return Values a resolution would reserve from this counter.
+         */
+        public int getUnique() {
+            return unique;
+        }
+
+        public int getOccurrences() {
+            return occurrences;
+        }
+    }
+
+    /**
+     * A placeholder that appears more than once.
+     */
+    public static final class Duplicate {
+        private final String placeholder;
+        private final int occurrences;
+
+        Duplicate(String placeholder, int occurrences) {
+            this.placeholder = placeholder;
+            this.occurrences = occurrences;
+        }
+
+        public String getPlaceholder() {
+            return placeholder;
+        }
+
+        public int getOccurrences() {
+            return occurrences;
+        }
+    }
+
+    /**
+     * A value containing __PLACEHOLDER_ that the resolver does not recognise (and would leave unchanged).
+     */
+    public static final class Malformed {
+        private final int line;
+        private final int column;
+        private final String text;
+        private final String reason;
+
+        Malformed(int line, int column, String text, String reason) {
+            this.line = line;
+            this.column = column;
+            this.text = text;
+            this.reason = reason;
+        }
+
+        /**
+         * @return 1-based line of the value.
+         */
+        public int getLine() {
+            return line;
+        }
+
+        /**
+         * @return 1-based column (in characters) where the value starts.
+         */
+        public int getColumn() {
+            return column;
+        }
+
+        public String getText() {
+            return text;
+        }
+
+        public String getReason() {
+            return reason;
+        }
+    }
+}
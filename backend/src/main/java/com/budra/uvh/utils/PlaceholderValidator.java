@@ -0,0 +1,193 @@
+package com.budra.uvh.utils;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Builds a PlaceholderValidation from a scan: per-counter usage, duplicates, and every
+ * "__PLACEHOLDER_" in the document that the scanner did not accept (malformed placeholders
+ * are silently left unchanged by a resolution, which is what CI wants to catch).
+ */
+final class PlaceholderValidator {
+    private static final byte[] PREFIX = PlaceholderScanner.PLACEHOLDER_PREFIX;
+    private static final int MAX_TOKEN_BYTES = 256; // How far around a malformed prefix the value is searched
+
+    private final ByteBuffer source;
+    private final int limit;
+    private final PlaceholderScan scan;
+    private final int maxReported;
+
+    // Running position for line/column numbers (the malformed search only moves forward)
+    private int line = 1;
+    private int lineStart;
+    private int countedUpTo;
+
+    private PlaceholderValidator(ByteBuffer source, PlaceholderScan scan, int maxReported) {
+        this.source = source;
+        this.limit = source.limit();
+        this.scan = scan;
+        this.maxReported = maxReported;
+    }
+
+    /**
+     * @param source      The scanned document.
+     * @param scan        Scan of {@code source}.
+     * @param maxReported Maximum duplicates and malformed placeholders listed (counts are always complete).
+     */
+    static PlaceholderValidation validate(ByteBuffer source, PlaceholderScan scan, int maxReported) {
+        return new PlaceholderValidator(source, scan, maxReported).run();
+    }
+
+    private PlaceholderValidation run() {
+        List<PlaceHolderInfo> placeholders = scan.getPlaceholders();
+        int[] occurrencesPerPlaceholder = new int[placeholders.size()];
+        Map<CounterKey, PlaceholderValidation.CounterUsage> counters = new TreeMap<>();
+        for (int i = 0; i < scan.getOccurrenceCount(); i++) {
+            int index = scan.getOccurrencePlaceholder(i);
+            boolean first = occurrencesPerPlaceholder[index]++ == 0;
+            counters.computeIfAbsent(CounterKey.of(placeholders.get(index)), k -> new PlaceholderValidation.CounterUsage()).add(first);
+        }
+
+        List<PlaceholderValidation.Duplicate> duplicates = new ArrayList<>();
+        for (int index = 0; index < occurrencesPerPlaceholder.length; index++) {
+            if (occurrencesPerPlaceholder[index] > 1) {
+                duplicates.add(new PlaceholderValidation.Duplicate(placeholders.get(index).getFullPlaceholderLsk(), occurrencesPerPlaceholder[index]));
+            }
+        }
+        int duplicateCount = duplicates.size();
+        duplicates.sort((a, b) -> Integer.compare(b.getOccurrences(), a.getOccurrences()));
+        if (duplicates.size() > maxReported) {
+            duplicates = new ArrayList<>(duplicates.subList(0, maxReported));
+        }
+
+        List<PlaceholderValidation.Malformed> malformed = new ArrayList<>();
+        int malformedCount = findMalformed(malformed);
+
+        return new PlaceholderValidation(limit, scan.getOccurrenceCount(), placeholders.size(), counters,
+                duplicates, duplicateCount, malformed, malformedCount);
+    }
+
+    private int findMalformed(List<PlaceholderValidation.Malformed> malformed) {
+        int count = 0;
+        int occurrence = 0;
+        int i = 0;
+        while (i + PREFIX.length <= limit) {
+            if (source.get(i) != '_' || !prefixAt(i)) {
+                i++;
+                continue;
+            }
+            // Skip accepted occurrences that end before this prefix
+            while (occurrence < scan.getOccurrenceCount() && scan.getOccurrenceEnd(occurrence) <= i) {
+                occurrence++;
+            }
+            if (occurrence < scan.getOccurrenceCount() && scan.getOccurrenceStart(occurrence) <= i) {
+                i = scan.getOccurrenceEnd(occurrence); // Part of a well-formed placeholder
+                continue;
+            }
+            int valueStart = tokenStart(i);
+            int valueEnd = tokenEnd(i + PREFIX.length);
+            count++;
+            if (malformed.size() < maxReported) {
+                malformed.add(new PlaceholderValidation.Malformed(lineOf(valueStart), columnOf(valueStart),
+                        text(valueStart, valueEnd), reason(valueStart, i, valueEnd)));
+            }
+            i = Math.max(valueEnd, i + PREFIX.length);
+        }
+        return count;
+    }
+
+    private boolean prefixAt(int i) {
+        for (int k = 0; k < PREFIX.length; k++) {
+            if (source.get(i + k) != PREFIX[k]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // The value around a prefix ends at quotes, markup or whitespace
+    private static boolean isTokenBoundary(byte b) {
+        return b == '"' || b == '\'' || b == '<' || b == '>' || b == '=' || b == ' ' || b == '\t' || b == '\n' || b == '\r';
+    }
+
+    private int tokenStart(int prefix) {
+        int start = prefix;
+        while (start > 0 && prefix - start < MAX_TOKEN_BYTES && !isTokenBoundary(source.get(start - 1))) {
+            start--;
+        }
+        return start;
+    }
+
+    private int tokenEnd(int from) {
+        int end = from;
+        while (end < limit && end - from < MAX_TOKEN_BYTES && !isTokenBoundary(source.get(end))) {
+            end++;
+        }
+        return end;
+    }
+
+    private String reason(int valueStart, int prefix, int valueEnd) {
+        if (!isTableColumnPrefix(valueStart, prefix)) {
+            return "Expected Table:Column: before __PLACEHOLDER_ (names are letters and underscores).";
+        }
+        int tailStart = prefix + PREFIX.length;
+        boolean descriptorValid = valueEnd - tailStart >= 3
+                && source.get(valueEnd - 1) == '_' && source.get(valueEnd - 2) == '_';
+        for (int k = tailStart; descriptorValid && k < valueEnd; k++) {
+            descriptorValid = PlaceholderScanner.isDescriptorChar(source.get(k));
+        }
+        if (!descriptorValid) {
+            return "Descriptor must be letters, digits, '_' or '-' and end with '__'.";
+        }
+        return "Placeholder must be the whole value of a double-quoted attribute (name=\"Table:Column:__PLACEHOLDER_x__\").";
+    }
+
+    // [a-zA-Z_]+:[a-zA-Z_]+: exactly fills [valueStart, prefix)
+    private boolean isTableColumnPrefix(int valueStart, int prefix) {
+        int i = valueStart;
+        for (int part = 0; part < 2; part++) {
+            int nameStart = i;
+            while (i < prefix && PlaceholderScanner.isNameChar(source.get(i))) {
+                i++;
+            }
+            if (i == nameStart || i >= prefix || source.get(i) != ':') {
+                return false;
+            }
+            i++;
+        }
+        return i == prefix;
+    }
+
+    private int lineOf(int position) {
+        for (; countedUpTo < position; countedUpTo++) {
+            if (source.get(countedUpTo) == '\n') {
+                line++;
+                lineStart = countedUpTo + 1;
+            }
+        }
+        return line;
+    }
+
+    // Call after lineOf(position); counts characters, not UTF-8 continuation bytes
+    private int columnOf(int position) {
+        int column = 1;
+        for (int k = lineStart; k < position; k++) {
+            if ((source.get(k) & 0xC0) != 0x80) {
+                column++;
+            }
+        }
+        return column;
+    }
+
+    private String text(int from, int to) {
+        byte[] bytes = new byte[to - from];
+        for (int k = 0; k < bytes.length; k++) {
+            bytes[k] = source.get(from + k);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,161 @@
+package com.budra.uvh.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * A request body read exactly once from an InputStream.
+ *
+ * Small bodies stay on the heap. Once the body grows past the spool threshold, everything
+ * read so far and the rest of the stream go to a temp file, which is then memory-mapped
+ * read-only. Either way getBuffer() returns the whole body without a further copy, so the
+ * heap cost of a large document is independent of its size.
+ *
+ * Close the payload when done; that deletes the temp file.
+ */
+public final class SpooledPayload implements Closeable {
+    private static final Logger log = LoggerFactory.getLogger(SpooledPayload.class);
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+    // PlaceholderScanner uses int offsets, and a single mapping is limited to 2 GB
+    public static final long MAX_PAYLOAD_BYTES = Integer.MAX_VALUE - 8;
+
+    private final ByteBuffer buffer;
+    private final Path spoolFile; // null if the body stayed in memory
+
+    private SpooledPayload(ByteBuffer buffer, Path spoolFile) {
+        this.buffer = buffer;
+        this.spoolFile = spoolFile;
+    }
+
+    /**
+     * Reads the stream to the end (the stream is not closed).
+     *
+     * @param input          Request body.
+     * @param spoolThreshold Bodies larger than this many bytes are spooled to disk.
+     * @param spoolDirectory Directory for temp files.
+     * @throws PayloadTooLargeException If the body exceeds MAX_PAYLOAD_BYTES.
+     */
+    public static SpooledPayload read(InputStream input, int spoolThreshold, Path spoolDirectory) throws IOException {
+        return read(input, spoolThreshold, spoolDirectory, MAX_PAYLOAD_BYTES);
+    }
+
+    /**
+     * As {@link #read(InputStream, int, Path)}, with a lower size limit (e.g. what is left of a
+     * batch's total budget).
+     *
+     * @param maxBytes Largest accepted body, at most MAX_PAYLOAD_BYTES.
+     * @throws PayloadTooLargeException If the body exceeds maxBytes.
+     */
+    public static SpooledPayload read(InputStream input, int spoolThreshold, Path spoolDirectory, long maxBytes) throws IOException {
+        long limit = Math.min(maxBytes, MAX_PAYLOAD_BYTES);
+        byte[] memory = new byte[Math.min(READ_BUFFER_SIZE, Math.max(1, spoolThreshold))];
+        int size = 0;
+        while (true) {
+            if (size == memory.length) {
+                if (size >= spoolThreshold) {
+                    return spoolToFile(input, memory, size, spoolDirectory, limit);
+                }
+                memory = Arrays.copyOf(memory, (int) Math.min((long) memory.length * 2, spoolThreshold));
+            }
+            int read = input.read(memory, size, memory.length - size);
+            if (read < 0) {
+                break;
+            }
+            size += read;
+            if (size > limit) {
+                throw new PayloadTooLargeException("Request body exceeds " + limit + " bytes.");
+            }
+        }
+        log.debug("Request body kept in memory ({} bytes).", size);
+        return new SpooledPayload(ByteBuffer.wrap(memory, 0, size).slice(), null);
+    }
+
+    private static SpooledPayload spoolToFile(InputStream input, byte[] head, int headLength, Path spoolDirectory, long limit) throws IOException {
+        Path file = Files.createTempFile(spoolDirectory, "uvh-payload-", ".xml");
+        boolean success = false;
+        try {
+            long size = headLength;
+            try (OutputStream out = Files.newOutputStream(file, StandardOpenOption.WRITE)) {
+                out.write(head, 0, headLength);
+                byte[] chunk = new byte[READ_BUFFER_SIZE];
+                int read;
+                while ((read = input.read(chunk)) >= 0) {
+                    size += read;
+                    if (size > limit) {
+                        throw new PayloadTooLargeException("Request body exceeds " + limit + " bytes.");
+                    }
+                    out.write(chunk, 0, read);
+                }
+            }
+            ByteBuffer mapped;
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size); // Mapping stays valid after close
+            }
+            log.debug("Request body spooled to {} ({} bytes) and memory-mapped.", file, size);
+            success = true;
+            return new SpooledPayload(mapped, file);
+        } finally {
+            if (!success) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    /**
+     * @return The whole body, position 0 to limit. Treat as read-only.
+     */
+    public ByteBuffer getBuffer() {
+        return buffer;
+    }
+
+    public int size() {
+        return buffer.limit();
+    }
+
+    public boolean isSpooled() {
+        return spoolFile != null;
+    }
+
+    /**
+     * @return true if the body has no non-whitespace bytes.
+     */
+    public boolean isBlank() {
+        for (int i = 0; i < buffer.limit(); i++) {
+            if ((buffer.get(i) & 0xFF) > ' ') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void close() {
+        if (spoolFile != null) {
+            try {
+                Files.deleteIfExists(spoolFile);
+            } catch (IOException e) {
+                log.warn("Could not delete spooled payload {}: {}", spoolFile, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Thrown when a body does not fit the scanner's addressable size.
+     */
+    public static final class PayloadTooLargeException extends IOException {
+        public PayloadTooLargeException(String message) {
+            super(message);
+        }
+    }
+}
@@ -2,91 +2,123 @@ package com.budra.uvh.utils;
 
 // Import custom exception
 import com.budra.uvh.exception.PlaceholderFormatException;
+import com.budra.uvh.metrics.Metrics;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.HashMap;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 /**
  * Utility class for XML related operations, specifically finding and replacing
  * LSK placeholders.
  *
- * WARNING: Uses basic Regex and String replacement which can be unreliable for complex XML.
- * A production system should use a proper XML parser (StAX, DOM4J, JAXB etc.).
+ * Scanning is done by PlaceholderScanner, a single pass over the UTF-8 bytes that
+ * recognises attribute values of the form
+ *   attr="Table:Column:__PLACEHOLDER_Descriptor__"
+ *
+ * WARNING: This is a lexical scan, not an XML parser. Placeholders inside comments or
+ * CDATA sections that look like attributes are treated like any other.
  */
 public class XmlUtils {
     private static final Logger log = LoggerFactory.getLogger(XmlUtils.class);
 
-    // Updated Regex Pattern reflecting Table/Column naming constraints
-    // Captures: 1=AttributeName, 2=TableName, 3=ColumnName, 4=PlaceholderSuffix
-    private static final Pattern LSK_ATTRIBUTE_PATTERN = Pattern.compile(
-            // Allowing underscore also in attribute name for flexibility (e.g., emp_id)
-            "([a-zA-Z_]+)\\s*=\\s*\"([a-zA-Z_]+):([a-zA-Z_]+):(__PLACEHOLDER_[a-zA-Z0-9_-]+__)\""
-            // Attr Name      =   " Table    : Column   : __PLACEHOLDER_Descriptor__ "
-    );
+    /**
+     * Scans UTF-8 XML bytes for placeholders without copying them.
+     * The returned scan can later rewrite the same bytes in one pass.
+     *
+     * @param xmlContent The XML document bytes (the buffer is referenced, not copied).
+     * @return Placeholder offsets and unique placeholders in document order.
+     */
+    public static PlaceholderScan scanPlaceholders(ByteBuffer xmlContent) {
+        log.debug("Scanning {} bytes of XML content for placeholders...", xmlContent.limit());
+        long scanStart = System.nanoTime();
+        PlaceholderScan scan = PlaceholderScanner.scan(xmlContent);
+        Metrics.SCAN.recordSince(scanStart);
+        Metrics.DOCUMENT_BYTES.record(scan.getDocumentLength());
+        Metrics.PLACEHOLDER_OCCURRENCES.record(scan.getOccurrenceCount());
+        Metrics.UNIQUE_PLACEHOLDERS.record(scan.getPlaceholders().size());
+        log.debug("Finished scanning. Found {} unique placeholders in {} occurrences.", scan.getPlaceholders().size(), scan.getOccurrenceCount());
+        return scan;
+    }
+
+    /**
+     * Convenience overload for a byte array.
+     */
+    public static PlaceholderScan scanPlaceholders(byte[] xmlContent) {
+        return scanPlaceholders(ByteBuffer.wrap(xmlContent));
+    }
 
     /**
      * Finds unique placeholder logical seed key strings within attribute values in the XML content.
      *
-     * WARNING: Uses Regex, which is not a robust way to parse XML.
-     *
      * @param xmlContent The XML content as a string.
      * @return A Map where the key is the full placeholder LSK string (e.g., "Dept:ID:__PLACEHOLDER_A__")
      *         and the value is a PlaceholderInfo object containing parsed components.
-     * @throws PlaceholderFormatException if parsing fails based on the regex match or internal validation.
+     *         Iteration order is the order of first appearance in the document.
+     * @throws PlaceholderFormatException if a placeholder could not be parsed.
      */
-    // --- FIX: Added throws clause back ---
     public static Map<String, PlaceHolderInfo> findUniquePlaceholders(String xmlContent) throws PlaceholderFormatException {
-        Map<String, PlaceHolderInfo> placeholders = new HashMap<>();
         if (xmlContent == null || xmlContent.trim().isEmpty()) {
             log.warn("XML content provided for placeholder scanning is null or empty.");
-            return placeholders; // Return empty map
+            return new LinkedHashMap<>(); // Return empty map
         }
+        try {
+            return scanPlaceholders(xmlContent.getBytes(StandardCharsets.UTF_8)).getUniquePlaceholders();
+        } catch (IllegalArgumentException e) {
+            log.error("Error parsing placeholder structure.", e);
+            throw new PlaceholderFormatException("Error parsing placeholder structure. Reason: " + e.getMessage(), e);
+        }
+    }
 
-        Matcher matcher = LSK_ATTRIBUTE_PATTERN.matcher(xmlContent);
-        log.debug("Scanning XML content for placeholders...");
-
-        int count = 0;
-        while (matcher.find()){
-            try {
-                // Groups match the capturing groups in the regex pattern
-                String attributeName = matcher.group(1);
-                String tableName = matcher.group(2);
-                String columnName = matcher.group(3);
-                String placeholderSuffix = matcher.group(4);
-
-                PlaceHolderInfo info = new PlaceHolderInfo(tableName, columnName, placeholderSuffix);
+    /**
+     * Dry run of a resolution: the same scan as {@link #findUniquePlaceholders}, plus per-counter
+     * counts, duplicate statistics and the location of every malformed placeholder. Never touches
+     * the database.
+     *
+     * @param xmlContent  UTF-8 document bytes (referenced, not copied).
+     * @param maxReported Maximum duplicates and malformed placeholders listed individually.
+     */
+    public static PlaceholderValidation validatePlaceholders(ByteBuffer xmlContent, int maxReported) {
+        PlaceholderScan scan = scanPlaceholders(xmlContent);
+        return PlaceholderValidator.validate(xmlContent, scan, maxReported);
+    }
 
-                // Use the full LSK string as the key for the map
-                String fullPlaceholderKey = info.getFullPlaceholderLsk();
-                if(!placeholders.containsKey(fullPlaceholderKey)){
-                    placeholders.put(fullPlaceholderKey, info);
-                    count++;
-                    log.trace("Found unique placeholder: {}", fullPlaceholderKey);
+    /**
+     * Escapes text for use in XML element content and attribute values.
+     */
+    public static String escapeXml(String text) {
+        if (text == null) {
+            return "";
+        }
+        StringBuilder escaped = null;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            String replacement = c == '&' ? "&amp;" : c == '<' ? "&lt;" : c == '>' ? "&gt;" : c == '"' ? "&quot;" : null;
+            if (replacement != null && escaped == null) {
+                escaped = new StringBuilder(text.length() + 16).append(text, 0, i);
+            }
+            if (escaped != null) {
+                if (replacement != null) {
+                    escaped.append(replacement);
                 } else {
-                    log.trace("Found duplicate placeholder instance (already collected): {}", fullPlaceholderKey);
+                    escaped.append(c);
                 }
-            } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
-                // Catch errors during parsing/validation (e.g., from PlaceholderInfo constructor)
-                log.error("Error parsing potential placeholder match: {}", matcher.group(0), e);
-                // --- FIX: Re-throw the exception ---
-                throw new PlaceholderFormatException("Error parsing placeholder structure near: '" + matcher.group(0) + "'. Reason: " + e.getMessage(), e);
             }
         }
-
-        log.debug("Finished scanning. Found {} unique placeholders.", count);
-        return placeholders;
+        return escaped == null ? text : escaped.toString();
     }
 
     /**
-     * Replaces all occurrences of placeholder LSK strings (within attribute quotes)
-     * with their corresponding resolved LSK strings in the XML content.
+     * Replaces all placeholder attribute values with their corresponding resolved LSK
+     * strings in the XML content.
      *
-     * WARNING: Uses simple String.replace, which is NOT robust for XML.
+     * The document is scanned once and rebuilt in one pass (unchanged spans are copied,
+     * resolved values spliced in), so the cost is linear in the document size regardless
+     * of the number of mappings.
      *
      * @param xmlContent       The original XML content string.
      * @param resolvedMappings A Map where the key is the full placeholder LSK string
@@ -94,41 +126,17 @@ public class XmlUtils {
      * @return The XML content string with replacements made.
      */
     public static String replacePlaceholders(String xmlContent, Map<String, String> resolvedMappings){
-        String currentContent = xmlContent;
         if (xmlContent == null || resolvedMappings == null || resolvedMappings.isEmpty()) {
             return xmlContent; // Nothing to replace
         }
 
         log.debug("Starting placeholder replacement...");
-        int replacements = 0;
-
-        for(Map.Entry<String,String> entry : resolvedMappings.entrySet()){
-            String placeholderLsk = entry.getKey(); // e.g., "DepartmentInfo:DEPT_ID:__PLACEHOLDER_HR_BenefitsDept__"
-            String resolvedLsk = entry.getValue();    // e.g., "DepartmentInfo:DEPT_ID:7"
-
-            // Need to match the placeholder within quotes in the attribute value
-            String placeholderInQuotes = "\"" + placeholderLsk + "\"";
-            String resolvedInQuotes = "\"" + resolvedLsk + "\"";
-
-            // Perform simple string replacement
-            String beforeReplacement = currentContent;
-            currentContent = currentContent.replace(placeholderInQuotes, resolvedInQuotes);
-
-            // Log if a replacement actually occurred based on the map entry
-            if(!beforeReplacement.equals(currentContent)){
-                replacements++;
-                log.trace("Replaced '{}' with '{}'", placeholderInQuotes, resolvedInQuotes);
-            } else {
-                // This warning indicates the placeholder key from the map wasn't found
-                // exactly as expected (within quotes) in the current XML content string.
-                // This could happen if the XML was malformed or the string replace is failing.
-                log.warn("Simple string replace did not find exact match for placeholder attribute value: {}", placeholderInQuotes);
-            }
-        }
-        log.debug("Finished replacement. Attempted {} replacements based on map size {}.", replacements, resolvedMappings.size());
-        return currentContent;
+        PlaceholderScan scan = scanPlaceholders(xmlContent.getBytes(StandardCharsets.UTF_8));
+        String resolved = new String(scan.toResolvedBytes(resolvedMappings), StandardCharsets.UTF_8);
+        log.debug("Finished replacement of {} occurrences based on map size {}.", scan.getOccurrenceCount(), resolvedMappings.size());
+        return resolved;
     }
 
     // Private constructor for utility class
     private XmlUtils(){};
-}
\ No newline at end of file
+}
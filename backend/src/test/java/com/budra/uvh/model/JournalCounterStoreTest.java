@@ -0,0 +1,170 @@
+package com.budra.uvh.model;
+
+import com.budra.uvh.utils.CounterKey;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Recovery and compaction of the journal store; runs on local files only, no database.
+ *
+ * A store keeps its directory locked while open, so a crash is simulated by copying the snapshot
+ * and journal of an open store into a second directory and opening a store there.
+ */
+class JournalCounterStoreTest {
+
+    private static final int JOURNAL_BYTES = 4096; // Smallest allowed journal
+    private static final int RECORD_OVERHEAD = 4 + 1 + 4; // length + type + crc
+    private static final int SET_RECORD_BYTES = RECORD_OVERHEAD + 4 + 8;
+
+    private static final CounterKey DEPARTMENTS = new CounterKey("Department", "id");
+    private static final CounterKey EMPLOYEES = new CounterKey("Employee", "id");
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void reopenContinuesAfterLastReservedValue() {
+        Path directory = tempDir.resolve("store");
+        try (JournalCounterStore store = open(directory)) {
+            assertEquals(1, store.reserveBlock(DEPARTMENTS, 10));
+            Map<CounterKey, Integer> counts = new TreeMap<>();
+            counts.put(DEPARTMENTS, 5);
+            counts.put(EMPLOYEES, 3);
+            SortedMap<CounterKey, Long> starts = store.reserveBlocks(counts);
+            assertEquals(11, starts.get(DEPARTMENTS));
+            assertEquals(1, starts.get(EMPLOYEES));
+        }
+
+        try (JournalCounterStore reopened = open(directory)) {
+            assertEquals(15, reopened.getLastAssignedValue(DEPARTMENTS));
+            assertEquals(3, reopened.getLastAssignedValue(EMPLOYEES));
+            assertEquals(16, reopened.reserveBlock(DEPARTMENTS, 1));
+            assertEquals(4, reopened.reserveBlock(EMPLOYEES, 1));
+        }
+    }
+
+    @Test
+    void crashRecoveryReplaysTheJournal() throws IOException {
+        Path directory = tempDir.resolve("store");
+        Path crashed = tempDir.resolve("crashed");
+        try (JournalCounterStore store = open(directory)) {
+            store.reserveBlock(DEPARTMENTS, 7);
+            store.reserveBlock(EMPLOYEES, 2);
+            store.reserveBlock(DEPARTMENTS, 4);
+            copyStoreFiles(directory, crashed); // Not closed: nothing was compacted since the reservations
+        }
+
+        try (JournalCounterStore recovered = open(crashed)) {
+            assertEquals(11, recovered.getLastAssignedValue(DEPARTMENTS));
+            assertEquals(2, recovered.getLastAssignedValue(EMPLOYEES));
+            assertEquals(12, recovered.reserveBlock(DEPARTMENTS, 1));
+        }
+    }
+
+    @Test
+    void corruptedLastRecordEndsReplay() throws IOException {
+        Path directory = tempDir.resolve("store");
+        Path crashed = tempDir.resolve("crashed");
+        try (JournalCounterStore store = open(directory)) {
+            store.reserveBlock(DEPARTMENTS, 5);
+            store.reserveBlock(DEPARTMENTS, 3);
+            copyStoreFiles(directory, crashed);
+        }
+
+        // Flip one byte of the value in the last SET record: its CRC no longer matches
+        int lastSet = lastSetRecordOffset(DEPARTMENTS);
+        try (FileChannel journal = FileChannel.open(crashed.resolve("counters.journal"), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            int valueOffset = lastSet + 4 + 1 + 4 + 7; // Lowest byte of the value
+            ByteBuffer value = ByteBuffer.allocate(1);
+            journal.read(value, valueOffset);
+            value.put(0, (byte) (value.get(0) ^ 0x40)).rewind();
+            journal.write(value, valueOffset);
+        }
+
+        try (JournalCounterStore recovered = open(crashed)) {
+            // The second reservation was never acknowledged, so only the first survives
+            assertEquals(5, recovered.getLastAssignedValue(DEPARTMENTS));
+            assertEquals(6, recovered.reserveBlock(DEPARTMENTS, 1));
+        }
+    }
+
+    @Test
+    void truncatedLastRecordEndsReplay() throws IOException {
+        Path directory = tempDir.resolve("store");
+        Path crashed = tempDir.resolve("crashed");
+        try (JournalCounterStore store = open(directory)) {
+            store.reserveBlock(DEPARTMENTS, 5);
+            store.reserveBlock(DEPARTMENTS, 3);
+            copyStoreFiles(directory, crashed);
+        }
+
+        // Torn append: the file ends in the middle of the last SET record
+        int lastSet = lastSetRecordOffset(DEPARTMENTS);
+        try (FileChannel journal = FileChannel.open(crashed.resolve("counters.journal"), StandardOpenOption.WRITE)) {
+            journal.truncate(lastSet + SET_RECORD_BYTES - 3);
+        }
+
+        try (JournalCounterStore recovered = open(crashed)) {
+            assertEquals(5, recovered.getLastAssignedValue(DEPARTMENTS));
+        }
+    }
+
+    @Test
+    void fullJournalIsCompactedIntoTheSnapshot() throws IOException {
+        Path directory = tempDir.resolve("store");
+        Path crashed = tempDir.resolve("crashed");
+        int reservations = 3 * JOURNAL_BYTES / SET_RECORD_BYTES; // Fills the journal about three times
+        try (JournalCounterStore store = open(directory)) {
+            for (int i = 1; i <= reservations; i++) {
+                assertEquals(i, store.reserveBlock(DEPARTMENTS, 1));
+            }
+            store.reserveBlock(EMPLOYEES, 2);
+            assertEquals(JOURNAL_BYTES, Files.size(directory.resolve("counters.journal"))); // Compacted, never grown
+            copyStoreFiles(directory, crashed); // Snapshot from the last compaction plus the journal since
+        }
+
+        try (JournalCounterStore recovered = open(crashed)) {
+            assertEquals(reservations, recovered.getLastAssignedValue(DEPARTMENTS));
+            assertEquals(2, recovered.getLastAssignedValue(EMPLOYEES));
+        }
+        try (JournalCounterStore reopened = open(directory)) {
+            assertEquals(reservations + 1, reopened.reserveBlock(DEPARTMENTS, 1));
+            assertEquals(3, reopened.reserveBlock(EMPLOYEES, 1));
+        }
+    }
+
+    private static JournalCounterStore open(Path directory) {
+        return new JournalCounterStore(directory, JOURNAL_BYTES, true, 0, 0);
+    }
+
+    private static void copyStoreFiles(Path from, Path to) throws IOException {
+        Files.createDirectories(to);
+        for (String file : new String[] {"counters.snapshot", "counters.journal"}) {
+            if (Files.exists(from.resolve(file))) {
+                Files.copy(from.resolve(file), to.resolve(file));
+            }
+        }
+    }
+
+    // Offset of the second SET record in a fresh journal holding DEFINE(counter), SET, SET
+    private static int lastSetRecordOffset(CounterKey counter) {
+        int defineBytes = RECORD_OVERHEAD + 4
+                + 2 + counter.getTableName().getBytes(StandardCharsets.UTF_8).length
+                + 2 + counter.getColumnName().getBytes(StandardCharsets.UTF_8).length;
+        return 8 + defineBytes + SET_RECORD_BYTES;
+    }
+}
@@ -0,0 +1,155 @@
+package com.budra.uvh.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * PlaceholderScanner against the regex and String.replace implementation it replaced.
+ *
+ * Each fixture is scanned by both; the unique placeholders (with their parts), the occurrence count
+ * and the rewritten document must match. The legacy rewrite replaced the quoted placeholder anywhere
+ * in the text, the scanner only in attribute values, so fixtures only quote placeholders as values.
+ */
+class PlaceholderScannerTest {
+
+    // XmlUtils' pattern before the byte scanner; 1=AttributeName, 2=TableName, 3=ColumnName, 4=PlaceholderSuffix
+    private static final Pattern LEGACY_PATTERN = Pattern.compile(
+            "([a-zA-Z_]+)\\s*=\\s*\"([a-zA-Z_]+):([a-zA-Z_]+):(__PLACEHOLDER_[a-zA-Z0-9_-]+__)\"");
+
+    @Test
+    void attributeQuotingAndWhitespace() {
+        assertSameAsLegacy("<Row a=\"Dept:ID:__PLACEHOLDER_A__\"/>\n"
+                + "<Row a = \"Dept:ID:__PLACEHOLDER_B__\"/>\n"
+                + "<Row a\t=\n\"Dept:ID:__PLACEHOLDER_C__\"/>\n"
+                + "<Row a='Dept:ID:__PLACEHOLDER_D__'/>\n"         // Single quotes never matched
+                + "<Row a=Dept:ID:__PLACEHOLDER_E__/>\n"           // Unquoted
+                + "<Row a=\"Dept:ID:__PLACEHOLDER_F__ \"/>\n"      // Trailing space inside the quotes
+                + "<Row a=\" Dept:ID:__PLACEHOLDER_G__\"/>\n"      // Leading space inside the quotes
+                + "<Row =\"Dept:ID:__PLACEHOLDER_H__\"/>\n"        // No attribute name
+                + "<Row a==\"Dept:ID:__PLACEHOLDER_I__\"/>\n"
+                + "<Row a=\"Dept:ID:__PLACEHOLDER_J__\"b=\"Dept:ID:__PLACEHOLDER_K__\"/>\n");
+    }
+
+    @Test
+    void nameCharset() {
+        assertSameAsLegacy("<Row emp_id=\"Employee_Info:EMP_ID:__PLACEHOLDER_A__\"/>\n"
+                + "<Row data-ref=\"Dept:ID:__PLACEHOLDER_B__\"/>\n"      // Only "ref" is the attribute name
+                + "<Row x:ref=\"Dept:ID:__PLACEHOLDER_C__\"/>\n"
+                + "<Row ref1=\"Dept:ID:__PLACEHOLDER_D__\"/>\n"          // Digit before '='
+                + "<Row ref=\"Dept1:ID:__PLACEHOLDER_E__\"/>\n"          // Digit in the table name
+                + "<Row ref=\"Dept:ID-2:__PLACEHOLDER_F__\"/>\n"         // Dash in the column name
+                + "<Row ref=\"Dept::__PLACEHOLDER_G__\"/>\n"             // Empty column
+                + "<Row ref=\":ID:__PLACEHOLDER_H__\"/>\n"               // Empty table
+                + "<Row ref=\"Dept:ID:__placeholder_I__\"/>\n"           // Prefix is case sensitive
+                + "<Row ref=\"Dept:ID:Extra:__PLACEHOLDER_J__\"/>\n"
+                + "<Row ref=\"_:_:__PLACEHOLDER_K__\"/>\n");
+    }
+
+    @Test
+    void descriptorCharsetAndTrailingUnderscores() {
+        assertSameAsLegacy("<Row ref=\"Dept:ID:__PLACEHOLDER_HR-Benefits_2024__\"/>\n"
+                + "<Row ref=\"Dept:ID:__PLACEHOLDER_a.b__\"/>\n"         // '.' not allowed
+                + "<Row ref=\"Dept:ID:__PLACEHOLDER_a b__\"/>\n"
+                + "<Row ref=\"Dept:ID:__PLACEHOLDER_0__\"/>\n"
+                + "<Row ref=\"Dept:ID:__PLACEHOLDER_-__\"/>\n"
+                + "<Row ref=\"Dept:ID:__PLACEHOLDER_x___\"/>\n"          // Descriptor "x_"
+                + "<Row ref=\"Dept:ID:__PLACEHOLDER_____\"/>\n"          // Descriptor "_"
+                + "<Row ref=\"Dept:ID:__PLACEHOLDER___\"/>\n"            // No descriptor
+                + "<Row ref=\"Dept:ID:__PLACEHOLDER_x_\"/>\n"            // One trailing underscore
+                + "<Row ref=\"Dept:ID:__PLACEHOLDER_x\"/>\n"
+                + "<Row ref=\"Dept:ID:__PLACEHOLDER_x__y\"/>\n"
+                + "<Row ref=\"Dept:ID:__PLACEHOLDER_x__\n");             // Unterminated value at the end
+    }
+
+    @Test
+    void duplicatesKeepFirstAppearanceOrder() {
+        assertSameAsLegacy("<Data>\n"
+                + "  <Row ref=\"Dept:ID:__PLACEHOLDER_B__\"/>\n"
+                + "  <Row ref=\"Emp:ID:__PLACEHOLDER_A__\" dept=\"Dept:ID:__PLACEHOLDER_B__\"/>\n"
+                + "  <Row ref=\"Dept:ID:__PLACEHOLDER_A__\"/>\n"         // Same descriptor, other counter
+                + "  <Row ref=\"Emp:ID:__PLACEHOLDER_A__\"/>\n"
+                + "  <Row ref=\"Dept:ID:__PLACEHOLDER_B__\"/>\n"
+                + "</Data>\n");
+    }
+
+    @Test
+    void multiByteUtf8() {
+        assertSameAsLegacy("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                + "<Daten beschreibung=\"Größe €\">\n"
+                + "  <Zeile ref=\"Dept:ID:__PLACEHOLDER_A__\">日本語のテキスト</Zeile>\n"
+                + "  <Zeile 名前=\"Dept:ID:__PLACEHOLDER_B__\"/>\n"           // Non-ASCII attribute name
+                + "  <Zeile aé=\"Dept:ID:__PLACEHOLDER_C__\"/>\n"
+                + "  <Zeile ref=\"Dépt:ID:__PLACEHOLDER_D__\"/>\n"
+                + "  <Zeile ref=\"Dept:ID:__PLACEHOLDER_Ä__\"/>\n"
+                + "  <Zeile ref=\"Dept:ID:__PLACEHOLDER_E__\" note=\"😀\"/>\n"
+                + "</Daten>\n");
+    }
+
+    @Test
+    void noPlaceholders() {
+        assertSameAsLegacy("");
+        assertSameAsLegacy("<Data><Row ref=\"Dept:ID:7\"/></Data>");
+    }
+
+    private static void assertSameAsLegacy(String xml) {
+        byte[] bytes = xml.getBytes(StandardCharsets.UTF_8);
+        PlaceholderScan scan = PlaceholderScanner.scan(ByteBuffer.wrap(bytes));
+
+        List<PlaceHolderInfo> legacy = new ArrayList<>();
+        Map<String, PlaceHolderInfo> legacyUnique = new LinkedHashMap<>();
+        Matcher matcher = LEGACY_PATTERN.matcher(xml);
+        while (matcher.find()) {
+            PlaceHolderInfo info = new PlaceHolderInfo(matcher.group(2), matcher.group(3), matcher.group(4));
+            legacy.add(info);
+            legacyUnique.putIfAbsent(info.getFullPlaceholderLsk(), info);
+        }
+
+        assertEquals(legacy.size(), scan.getOccurrenceCount(), "occurrences");
+        assertEquals(new ArrayList<>(legacyUnique.keySet()), new ArrayList<>(scan.getUniquePlaceholders().keySet()), "unique placeholders");
+        for (PlaceHolderInfo info : scan.getPlaceholders()) {
+            PlaceHolderInfo expected = legacyUnique.get(info.getFullPlaceholderLsk());
+            assertEquals(expected.getTableName(), info.getTableName());
+            assertEquals(expected.getColumnName(), info.getColumnName());
+            assertEquals(expected.getPlaceholderSuffix(), info.getPlaceholderSuffix());
+        }
+
+        // Resolved values of different lengths, so the rewrite has to shift the following bytes
+        Map<String, String> resolvedMappings = new LinkedHashMap<>();
+        long value = 1;
+        for (PlaceHolderInfo info : legacyUnique.values()) {
+            resolvedMappings.put(info.getFullPlaceholderLsk(), info.buildResolvedLsk(value));
+            value *= 1000;
+        }
+        String expected = xml;
+        for (Map.Entry<String, String> entry : resolvedMappings.entrySet()) {
+            expected = expected.replace("\"" + entry.getKey() + "\"", "\"" + entry.getValue() + "\"");
+        }
+        byte[] expectedBytes = expected.getBytes(StandardCharsets.UTF_8);
+
+        assertArrayEquals(expectedBytes, scan.toResolvedBytes(resolvedMappings), "toResolvedBytes");
+        ByteArrayOutputStream streamed = new ByteArrayOutputStream();
+        try {
+            scan.writeResolved(resolvedMappings, streamed);
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+        assertArrayEquals(expectedBytes, streamed.toByteArray(), "writeResolved");
+        // Direct buffers take the chunked copy path
+        ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length).put(bytes);
+        direct.flip();
+        assertArrayEquals(expectedBytes, PlaceholderScanner.scan(direct).toResolvedBytes(resolvedMappings), "direct buffer");
+    }
+}
@@ -2,6 +2,10 @@
 
 API_ENDPOINT=""
 
+# Send the file gzip-compressed (Content-Encoding: gzip) and accept a compressed response.
+# Set UVH_COMPRESS=0 to send the raw bytes instead.
+UVH_COMPRESS="${UVH_COMPRESS:-1}"
+
 if [ -z "$1" ]; then
     echo "Error: Please provide the XML file as an argument." >&2
     echo "Usage: $0 <xml_file_path>" >&2
@@ -18,12 +22,24 @@ fi
 echo "Sending '$XML_FILE' to UVH Resolver..."
 
 
-HTTP_STATUS=$(curl -sS -X POST \
-              -H "Content-Type: application/xml" \
-              --data-binary "@$XML_FILE" \
-              -w "%{http_code}" \
-              -o /dev/null \
-              "${API_ENDPOINT}")
+if [ "$UVH_COMPRESS" = "1" ]; then
+    # Compressed as it is piped and uploaded chunked (-T -), so the file is never buffered whole
+    HTTP_STATUS=$(gzip -c "$XML_FILE" | curl -sS -X POST \
+                  -H "Content-Type: application/xml" \
+                  -H "Content-Encoding: gzip" \
+                  --compressed \
+                  -T - \
+                  -w "%{http_code}" \
+                  -o /dev/null \
+                  "${API_ENDPOINT}")
+else
+    HTTP_STATUS=$(curl -sS -X POST \
+                  -H "Content-Type: application/xml" \
+                  --data-binary "@$XML_FILE" \
+                  -w "%{http_code}" \
+                  -o /dev/null \
+                  "${API_ENDPOINT}")
+fi
               
 if [ "$HTTP_STATUS" -eq 200 ]; then
     echo "----------------------------------------"